@@ -0,0 +1,648 @@
+package com.petrosp.structures.multibucket;
+
+import com.petrosp.structures.Pair;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The base of the {@code Multibucket} implementations that keep the Buckets of every key in a {@code BucketList},
+ * inside a {@code Map} that is given by the subclass. Optional {@link BucketIndex} indexes can be enabled at
+ * construction time. Indexes only track changes made through the {@code Multibucket} methods, so the elements of
+ * the returned Buckets must not be replaced directly when indexes are enabled.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ *
+ *
+ * @param <K> Type of the keys.
+ */
+abstract class AbstractMapMultibucket<K> implements Multibucket<K>
+{
+    final Map<K,BucketList> bucketMap;
+    final Set<BucketIndex> indexes;
+
+    AbstractMapMultibucket(final Map<K,BucketList> bucketMap, final Set<BucketIndex> indexes)
+    {
+        this.bucketMap = bucketMap;
+        this.indexes = indexes;
+    }
+
+
+    /**
+     * @return {@code true} if the given index is kept for the Buckets of every key.
+     */
+    public boolean isIndexed(BucketIndex index)
+    {
+        return indexes.contains(index);
+    }
+
+
+    @Override
+    public int size()
+    {
+        return bucketMap.size();
+    }
+
+
+    @Override
+    public <V> void put(final K key, final V e)
+    {
+        BucketList list = bucketMap.computeIfAbsent(key, k -> newBucketList(k, BucketList.DEFAULT_CAPACITY));
+        list.add(Bucket.of(e));
+    }
+
+
+    /**
+     * Grows the Buckets of the key only once for all the elements.
+     */
+    @Override
+    public <V> void putAll(final K key, final Collection<V> elements)
+    {
+        if(elements.isEmpty()) return;
+
+        BucketList list = bucketMap.computeIfAbsent(key, k -> newBucketList(k, elements.size()));
+        list.ensureCapacity(list.size() + elements.size());
+        for(V e : elements)
+        {
+            list.add(Bucket.of(e));
+        }
+    }
+
+
+    @Override
+    public void putInt(final K key, final int e)
+    {
+        BucketList list = bucketMap.computeIfAbsent(key, k -> newBucketList(k, BucketList.DEFAULT_CAPACITY));
+        list.add(IntBucket.of(e));
+    }
+
+
+    @Override
+    public void putLong(final K key, final long e)
+    {
+        BucketList list = bucketMap.computeIfAbsent(key, k -> newBucketList(k, BucketList.DEFAULT_CAPACITY));
+        list.add(LongBucket.of(e));
+    }
+
+
+    @Override
+    public void putDouble(final K key, final double e)
+    {
+        BucketList list = bucketMap.computeIfAbsent(key, k -> newBucketList(k, BucketList.DEFAULT_CAPACITY));
+        list.add(DoubleBucket.of(e));
+    }
+
+
+    @Override
+    public int addAndGet(final K key, final int delta)
+    {
+        BucketList list = bucketMap.computeIfAbsent(key, k -> newBucketList(k, BucketList.DEFAULT_CAPACITY));
+        int generalIndex = list.indexOfType(Integer.class, 0);
+        if(generalIndex == -1){
+            list.add(IntBucket.of(delta));
+            return delta;
+        }
+
+        Bucket<?> existing = list.get(generalIndex);
+        if(existing instanceof IntBucket){
+            list.update(generalIndex, b -> {
+                ((IntBucket) b).addAndGet(delta);
+                return null;
+            });
+            return ((IntBucket) existing).getAsInt();
+        }
+
+        int next = (Integer) existing.get() + delta;
+        list.set(generalIndex, IntBucket.of(next));
+        return next;
+    }
+
+
+    @Override
+    public long addAndGet(final K key, final long delta)
+    {
+        BucketList list = bucketMap.computeIfAbsent(key, k -> newBucketList(k, BucketList.DEFAULT_CAPACITY));
+        int generalIndex = list.indexOfType(Long.class, 0);
+        if(generalIndex == -1){
+            list.add(LongBucket.of(delta));
+            return delta;
+        }
+
+        Bucket<?> existing = list.get(generalIndex);
+        if(existing instanceof LongBucket){
+            list.update(generalIndex, b -> {
+                ((LongBucket) b).addAndGet(delta);
+                return null;
+            });
+            return ((LongBucket) existing).getAsLong();
+        }
+
+        long next = (Long) existing.get() + delta;
+        list.set(generalIndex, LongBucket.of(next));
+        return next;
+    }
+
+
+    @Override
+    public double addAndGet(final K key, final double delta)
+    {
+        BucketList list = bucketMap.computeIfAbsent(key, k -> newBucketList(k, BucketList.DEFAULT_CAPACITY));
+        int generalIndex = list.indexOfType(Double.class, 0);
+        if(generalIndex == -1){
+            list.add(DoubleBucket.of(delta));
+            return delta;
+        }
+
+        Bucket<?> existing = list.get(generalIndex);
+        if(existing instanceof DoubleBucket){
+            list.update(generalIndex, b -> {
+                ((DoubleBucket) b).addAndGet(delta);
+                return null;
+            });
+            return ((DoubleBucket) existing).getAsDouble();
+        }
+
+        double next = (Double) existing.get() + delta;
+        list.set(generalIndex, DoubleBucket.of(next));
+        return next;
+    }
+
+
+    @Override
+    public int getAsInt(final K key, final int index, final int defaultValue)
+    {
+        BucketList existing = bucketMap.get(key);
+        if(existing == null) return defaultValue;
+
+        int generalIndex = existing.indexOfType(Integer.class, index);
+        if(generalIndex == -1) return defaultValue;
+
+        Bucket<?> b = existing.get(generalIndex);
+        return b instanceof IntBucket ? ((IntBucket) b).getAsInt() : (Integer) b.get();
+    }
+
+
+    @Override
+    public long getAsLong(final K key, final int index, final long defaultValue)
+    {
+        BucketList existing = bucketMap.get(key);
+        if(existing == null) return defaultValue;
+
+        int generalIndex = existing.indexOfType(Long.class, index);
+        if(generalIndex == -1) return defaultValue;
+
+        Bucket<?> b = existing.get(generalIndex);
+        return b instanceof LongBucket ? ((LongBucket) b).getAsLong() : (Long) b.get();
+    }
+
+
+    @Override
+    public double getAsDouble(final K key, final int index, final double defaultValue)
+    {
+        BucketList existing = bucketMap.get(key);
+        if(existing == null) return defaultValue;
+
+        int generalIndex = existing.indexOfType(Double.class, index);
+        if(generalIndex == -1) return defaultValue;
+
+        Bucket<?> b = existing.get(generalIndex);
+        return b instanceof DoubleBucket ? ((DoubleBucket) b).getAsDouble() : (Double) b.get();
+    }
+
+
+    @Override
+    public <V> boolean putIfAbsent(K key, V e)
+    {
+        BucketList list = bucketMap.computeIfAbsent(key, k -> newBucketList(k, BucketList.DEFAULT_CAPACITY));
+        if(list.indexOfElement(e) != -1) return false;
+
+        list.add(Bucket.of(e));
+        return true;
+    }
+
+
+    @Override
+    public <V> boolean putIfAbsentType(final K key, final V e)
+    {
+        Class<?> type = e.getClass();
+        BucketList list = bucketMap.computeIfAbsent(key, k -> newBucketList(k, BucketList.DEFAULT_CAPACITY));
+        if(list.containsType(type)) return false;
+
+        list.add(Bucket.of(e));
+        return true;
+    }
+
+
+    @Override
+    public <V> boolean putInCollection(K key, V e, int index)
+    {
+        BucketList existing = bucketMap.get(key);
+        if(existing == null) return false;
+
+        try{
+            return existing.update(index, b -> {
+                if(!b.containsCollection()) return false;
+                b.addToCollection(e);
+                return true;
+            });
+        }catch (Exception ex) {
+            return false;
+        }
+    }
+
+
+    @Override
+    public <T, V> boolean putInCollectionOfType(final K key, final V e, final T t, final int index)
+    {
+        return putInCollection(key, e, index);
+    }
+
+
+    @Override
+    public <M, V> boolean putInMap(K key, M mapKey, V e, int index)
+    {
+        BucketList existing = bucketMap.get(key);
+        if(existing == null) return false;
+
+        try{
+            return existing.update(index, b -> {
+                if(!b.containsMap()) return false;
+                b.addToMap(mapKey, e);
+                return true;
+            });
+        }catch (Exception ex) {
+            return false;
+        }
+    }
+
+
+    @Override
+    public <V> Object replace(final K key, final V e, final int index)
+    {
+        BucketList existing = bucketMap.get(key);
+        if(existing == null) return null;
+
+        try{
+            Object prev = existing.get(index).get();
+            Bucket<V> newBucket = Bucket.of(e);
+            existing.set(index, newBucket);
+            return prev;
+        }catch (Exception ex) {
+            return null;
+        }
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <V> V replaceSameType(final K key, final V e, final int index)
+    {
+        BucketList existing = bucketMap.get(key);
+        if(existing == null) return null;
+
+        int generalIndex = existing.indexOfType(e.getClass(), index);
+        if(generalIndex == -1) return null;
+
+        return (V)existing.set(generalIndex, Bucket.of(e)).get();
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <V> V compute(final K key, final int index, final Function<? super V, ? extends V> remappingFunction)
+    {
+        BucketList existing = bucketMap.get(key);
+        if(existing == null || index < 0 || index >= existing.size()) return null;
+
+        V next = remappingFunction.apply((V) existing.get(index).get());
+        setOrRemove(key, existing, index, next);
+        return next;
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <T> T computeIfAbsentOfType(final K key, final Class<T> t, final Supplier<? extends T> supplier)
+    {
+        BucketList list = bucketMap.computeIfAbsent(key, k -> newBucketList(k, BucketList.DEFAULT_CAPACITY));
+        int generalIndex = list.indexOfType(t, 0);
+        if(generalIndex != -1) return (T) list.get(generalIndex).get();
+
+        try{
+            T created = supplier.get();
+            if(created != null) list.add(Bucket.of(created));
+            return created;
+        }finally {
+            if(list.isEmpty()) bucketMap.remove(key);
+        }
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <V> V merge(final K key, final V e, final BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+    {
+        Class<?> type = e.getClass();
+        BucketList list = bucketMap.computeIfAbsent(key, k -> newBucketList(k, BucketList.DEFAULT_CAPACITY));
+        int generalIndex = list.indexOfType(type, 0);
+        if(generalIndex == -1){
+            list.add(Bucket.of(e));
+            return e;
+        }
+
+        V next = remappingFunction.apply((V) list.get(generalIndex).get(), e);
+        setOrRemove(key, list, generalIndex, next);
+        return next;
+    }
+
+
+    @Override
+    public <V> boolean contains(final K key, final V e)
+    {
+        BucketList existing = bucketMap.get(key);
+        if(existing == null) return false;
+
+        return existing.indexOfElement(e) != -1;
+    }
+
+
+    @Override
+    public <T> boolean containsType(final K key, final Class<T> t)
+    {
+        BucketList existing = bucketMap.get(key);
+        if(existing == null) return false;
+
+        return existing.containsType(t);
+    }
+
+
+    @Override
+    public boolean containsKey(K key)
+    {
+        return bucketMap.containsKey(key);
+    }
+
+
+    @Override
+    public Set<K> keySet()
+    {
+        return bucketMap.keySet();
+    }
+
+
+    @Override
+    public <V> int getFirstIndex(final K key, final V e)
+    {
+        BucketList existing = bucketMap.get(key);
+        if(existing == null) return -1;
+
+        return existing.indexOfElement(e);
+    }
+
+
+    @Override
+    public <V> List<Integer> getAllIndexes(final K key, final V e)
+    {
+        BucketList existing = bucketMap.get(key);
+        if(existing == null) return new ArrayList<>();
+
+        int[] indexes = existing.indexesOfElement(e);
+        List<Integer> out = new ArrayList<>(indexes.length);
+        for(int i : indexes){
+            out.add(i);
+        }
+
+        return out;
+    }
+
+
+    /**
+     * The cursor searches for the next index only when it is advanced, using the {@link BucketIndex#VALUE} index
+     * if it is enabled. The Buckets of the key must not change while the cursor is used.
+     */
+    @Override
+    public <V> PrimitiveIterator.OfInt indexCursor(final K key, final V e)
+    {
+        BucketList existing = bucketMap.get(key);
+        if(existing == null) return BucketList.EMPTY_CURSOR;
+
+        return existing.indexCursor(e);
+    }
+
+
+    @Override
+    public <V> int[] getAllIndexesAsArray(final K key, final V e)
+    {
+        BucketList existing = bucketMap.get(key);
+        if(existing == null) return new int[0];
+
+        return existing.indexesOfElement(e);
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <E> E get(final K key, final int index)
+    {
+        BucketList existing = bucketMap.get(key);
+        if(existing == null) return null;
+
+        try{
+            return (E)existing.get(index).get();
+        }catch (Exception e){
+            return null;
+        }
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <M, V> V getFromMap(final K key, final M mapKey, final int index)
+    {
+        BucketList existing = bucketMap.get(key);
+        if(existing == null) return null;
+
+        try{
+            return ((Map<M,V>)existing.get(index).get()).get(mapKey);
+        }catch (Exception e){
+            return null;
+        }
+    }
+
+
+    @Override
+    public <T> List<Bucket<?>> getAllOfType(final K key, final Class<T> t)
+    {
+        BucketList existing = bucketMap.get(key);
+        if(existing == null) return new ArrayList<>();
+
+        return existing.getAllOfType(t);
+    }
+
+
+    /**
+     * The view is live: it reflects the later changes of the Buckets of the key, until the key is removed.
+     * Its iterator walks the Buckets once, and with the {@link BucketIndex#TYPE} index every access is constant time.
+     */
+    @Override
+    public <T> List<Bucket<?>> viewAllOfType(final K key, final Class<T> t)
+    {
+        BucketList existing = bucketMap.get(key);
+        if(existing == null) return Collections.emptyList();
+
+        return existing.viewOfType(t);
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <T> T getOfType(final K key, final Class<T> t, final int index)
+    {
+        BucketList existing = bucketMap.get(key);
+        if(existing == null) return null;
+
+        int generalIndex = existing.indexOfType(t, index);
+        if(generalIndex == -1) return null;
+
+        return (T)existing.get(generalIndex).get();
+    }
+
+
+    @Override
+    public List<Bucket<?>> getAll(final K key)
+    {
+        BucketList existing = bucketMap.get(key);
+        if(existing == null) return Collections.emptyList();
+
+        return existing.readOnly();
+    }
+
+
+    @Override
+    public List<Bucket<?>> remove(final K key)
+    {
+        return bucketMap.remove(key);
+    }
+
+
+    @Override
+    public Object remove(final K key, final int index)
+    {
+        BucketList existing = bucketMap.get(key);
+        if(existing == null || index < 0 || index >= existing.size()) return null;
+
+        Object prev = existing.remove(index).get();
+        if(existing.isEmpty()) bucketMap.remove(key);
+
+        return prev;
+    }
+
+    /**
+     * Backed by a {@code Spliterator} over the internal map, that visits the Buckets of every key without looking the key up.
+     */
+    @Override
+    public Stream<Pair<K, Bucket<?>>> stream()
+    {
+        return StreamSupport.stream(new BucketSpliterator<>(bucketMap.entrySet().spliterator(), null, Pair::of), false);
+    }
+
+
+    /**
+     * Backed by a {@code Spliterator} over the internal map, which splits the keys evenly between the threads.
+     */
+    @Override
+    public Stream<Pair<K, Bucket<?>>> parallelStream()
+    {
+        return StreamSupport.stream(new BucketSpliterator<>(bucketMap.entrySet().spliterator(), null, Pair::of), true);
+    }
+
+
+    /**
+     * Visits only the Buckets of the specified type, using the {@link BucketIndex#TYPE} index if it is enabled.
+     */
+    @Override @SuppressWarnings("unchecked")
+    public <T> Stream<Pair<K, T>> streamOfType(final Class<T> t)
+    {
+        return StreamSupport.stream(new BucketSpliterator<>(bucketMap.entrySet().spliterator(), t,
+                (K k, Bucket<?> b) -> Pair.of(k, (T) b.get())), false);
+    }
+
+
+    /**
+     * Iterates the entries of the map directly, and with the {@link BucketIndex#TYPE} index skips the keys without
+     * elements of the type in constant time.
+     */
+    @Override
+    public <T> MultibucketQuery<K, T> select(final Class<T> t)
+    {
+        return new MultibucketQuery<>(t, MultibucketQuery.entriesOf(bucketMap, isIndexed(BucketIndex.TYPE)));
+    }
+
+
+    @Override
+    public MultibucketStats stats()
+    {
+        return MultibucketStats.of(bucketMap.entrySet(), Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+
+    @Override
+    public void forEach(final BiConsumer<? super K, ? super Bucket<?>> action)
+    {
+        for(Map.Entry<K, BucketList> entry : bucketMap.entrySet())
+        {
+            for(Bucket<?> b : entry.getValue())
+            {
+                action.accept(entry.getKey(), b);
+            }
+        }
+    }
+
+
+    private void setOrRemove(final K key, final BucketList list, final int index, final Object next)
+    {
+        if(next != null){
+            list.set(index, Bucket.replacing(list.get(index), next));
+            return;
+        }
+
+        list.remove(index);
+        if(list.isEmpty()) bucketMap.remove(key);
+    }
+
+    /**
+     * Creates the Buckets of a new key. Subclasses may return a {@code BucketList} that keeps indexes of its own.
+     */
+    BucketList newBucketList(final K key, final int initialCapacity)
+    {
+        return new BucketList(initialCapacity, indexes);
+    }
+
+    Map<K,BucketList> bucketMap()
+    {
+        return bucketMap;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AbstractMapMultibucket<?> that = (AbstractMapMultibucket<?>) o;
+        return bucketMap.equals(that.bucketMap);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(bucketMap);
+    }
+
+
+    static Set<BucketIndex> indexSet(final BucketIndex... indexes)
+    {
+        Set<BucketIndex> out = EnumSet.noneOf(BucketIndex.class);
+        out.addAll(Arrays.asList(indexes));
+        return out;
+    }
+}
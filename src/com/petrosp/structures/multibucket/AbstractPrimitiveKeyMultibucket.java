@@ -0,0 +1,251 @@
+package com.petrosp.structures.multibucket;
+
+import java.util.*;
+
+/**
+ * The base of the multibuckets with primitive keys, {@link IntMultibucket} and {@link LongMultibucket}. The Buckets
+ * of every key are kept in a {@code BucketList}, in an open-addressed table whose keys are stored by the subclass, in
+ * a table of its own primitive type at the same slots. This class grows the tables and implements the operations on
+ * the Buckets of a key, so that the subclasses only hash, probe and store their type of key.
+ */
+abstract class AbstractPrimitiveKeyMultibucket
+{
+    static final int DEFAULT_CAPACITY = 16;
+    static final Object REMOVED = new Object();
+    private static final float LOAD_FACTOR = 0.6f;
+    private static final int MIGRATION_STEP = 8;
+
+    private final Set<BucketIndex> indexes;
+
+    Object[] values;
+    int used;
+
+    Object[] oldValues;
+    int migrated;
+
+    private int size;
+
+    AbstractPrimitiveKeyMultibucket(final int initialCapacity, final BucketIndex... indexes)
+    {
+        this.values = new Object[tableSizeFor((int) Math.ceil(Math.max(initialCapacity, 1) / LOAD_FACTOR))];
+        this.indexes = EnumSet.noneOf(BucketIndex.class);
+        this.indexes.addAll(Arrays.asList(indexes));
+    }
+
+
+    /**
+     * @return Number of keys.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * Move the current table of keys to the old one, and allocate a current one of the given capacity.
+     */
+    abstract void swapKeyTables(int capacity);
+
+    /**
+     * Insert the key of the given slot of the old table in the current table, together with the given value.
+     */
+    abstract void migrateKey(int oldSlot, Object value);
+
+    /**
+     * Drop the old table of keys, after all of its keys were migrated.
+     */
+    abstract void dropOldKeys();
+
+
+    /**
+     * Count a new key, growing the tables if needed.
+     * @return The {@code BucketList} that the subclass must insert in the current table, together with the key.
+     */
+    final BucketList newEntry()
+    {
+        if(used + 1 > values.length * LOAD_FACTOR) startResize();
+
+        size++;
+        return new BucketList(indexes);
+    }
+
+    final List<Bucket<?>> removeAt(final Object[] values, final int slot)
+    {
+        BucketList removed = (BucketList) values[slot];
+        values[slot] = REMOVED;
+        size--;
+        return removed;
+    }
+
+    /**
+     * Allocate the new table. A table that is mostly full of removed entries is rehashed with the same capacity.
+     */
+    private void startResize()
+    {
+        if(oldValues != null) completeMigration();
+
+        int capacity = size >= used / 2 ? values.length << 1 : values.length;
+        swapKeyTables(capacity);
+        oldValues = values;
+        migrated = 0;
+        values = new Object[capacity];
+        used = 0;
+    }
+
+    final void migrateStep()
+    {
+        if(oldValues == null) return;
+
+        int end = Math.min(migrated + MIGRATION_STEP, oldValues.length);
+        for (; migrated < end; migrated++) {
+            Object value = oldValues[migrated];
+            if(value != null && value != REMOVED){
+                migrateKey(migrated, value);
+                oldValues[migrated] = REMOVED;
+            }
+        }
+
+        if(migrated == oldValues.length){
+            oldValues = null;
+            dropOldKeys();
+        }
+    }
+
+    private void completeMigration()
+    {
+        while(oldValues != null)
+        {
+            migrateStep();
+        }
+    }
+
+    private static int tableSizeFor(final int capacity)
+    {
+        int n = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        return n < 0 ? 1 << 30 : n;
+    }
+
+
+    // The operations on the Buckets of a key, given the list of the key, or null if the key doesn't exist.
+
+    static <V> boolean contains(final BucketList existing, final V e)
+    {
+        return existing != null && existing.indexOfElement(e) != -1;
+    }
+
+    static <T> boolean containsType(final BucketList existing, final Class<T> t)
+    {
+        return existing != null && existing.containsType(t);
+    }
+
+    static <V> boolean putIfAbsent(final BucketList list, final V e)
+    {
+        if(list.indexOfElement(e) != -1) return false;
+
+        list.add(Bucket.of(e));
+        return true;
+    }
+
+    static <V> boolean putIfAbsentType(final BucketList list, final Class<?> type, final V e)
+    {
+        if(list.containsType(type)) return false;
+
+        list.add(Bucket.of(e));
+        return true;
+    }
+
+    static <V> boolean putInCollection(final BucketList existing, final V e, final int index)
+    {
+        if(existing == null) return false;
+
+        try{
+            return existing.update(index, b -> {
+                if(!b.containsCollection()) return false;
+                b.addToCollection(e);
+                return true;
+            });
+        }catch (Exception ex) {
+            return false;
+        }
+    }
+
+    static <M, V> boolean putInMap(final BucketList existing, final M mapKey, final V e, final int index)
+    {
+        if(existing == null) return false;
+
+        try{
+            return existing.update(index, b -> {
+                if(!b.containsMap()) return false;
+                b.addToMap(mapKey, e);
+                return true;
+            });
+        }catch (Exception ex) {
+            return false;
+        }
+    }
+
+    static <V> Object replace(final BucketList existing, final V e, final int index)
+    {
+        if(existing == null || index < 0 || index >= existing.size()) return null;
+
+        return existing.set(index, Bucket.of(e)).get();
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> V replaceSameType(final BucketList existing, final V e, final int index)
+    {
+        if(existing == null) return null;
+
+        int generalIndex = existing.indexOfType(e.getClass(), index);
+        if(generalIndex == -1) return null;
+
+        return (V)existing.set(generalIndex, Bucket.of(e)).get();
+    }
+
+    static <V> int getFirstIndex(final BucketList existing, final V e)
+    {
+        return existing == null ? -1 : existing.indexOfElement(e);
+    }
+
+    static <V> int[] getAllIndexes(final BucketList existing, final V e)
+    {
+        return existing == null ? new int[0] : existing.indexesOfElement(e);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> E get(final BucketList existing, final int index)
+    {
+        if(existing == null || index < 0 || index >= existing.size()) return null;
+
+        return (E)existing.get(index).get();
+    }
+
+    @SuppressWarnings("unchecked")
+    static <M, V> V getFromMap(final BucketList existing, final M mapKey, final int index)
+    {
+        Object element = get(existing, index);
+        if(!(element instanceof Map)) return null;
+
+        return ((Map<M,V>)element).get(mapKey);
+    }
+
+    static <T> List<Bucket<?>> getAllOfType(final BucketList existing, final Class<T> t)
+    {
+        return existing == null ? new ArrayList<>() : existing.getAllOfType(t);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T getOfType(final BucketList existing, final Class<T> t, final int index)
+    {
+        if(existing == null) return null;
+
+        int generalIndex = existing.indexOfType(t, index);
+        return generalIndex == -1 ? null : (T)existing.get(generalIndex).get();
+    }
+
+    static List<Bucket<?>> getAll(final BucketList existing)
+    {
+        return existing == null ? Collections.emptyList() : existing.readOnly();
+    }
+}
@@ -0,0 +1,108 @@
+package com.petrosp.structures.multibucket;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The base of the read-only {@code Multibucket} implementations, where all the methods that would change the
+ * structure throw {@code UnsupportedOperationException}.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ *
+ *
+ * @param <K> Type of the keys.
+ */
+abstract class AbstractReadOnlyMultibucket<K> implements Multibucket<K>
+{
+    @Override
+    public <V> void put(final K key, final V e)
+    {
+        throw readOnly();
+    }
+
+
+    @Override
+    public <V> void putAll(final K key, final Collection<V> elements)
+    {
+        throw readOnly();
+    }
+
+
+    @Override
+    public void putAll(final Map<K, ? extends Collection<?>> elements)
+    {
+        throw readOnly();
+    }
+
+
+    @Override
+    public <V> boolean putIfAbsent(final K key, final V e)
+    {
+        throw readOnly();
+    }
+
+
+    @Override
+    public <V> boolean putIfAbsentType(final K key, final V e)
+    {
+        throw readOnly();
+    }
+
+
+    @Override
+    public <V> boolean putInCollection(final K key, final V e, final int index)
+    {
+        throw readOnly();
+    }
+
+
+    @Override
+    public <T, V> boolean putInCollectionOfType(final K key, final V e, final T t, final int index)
+    {
+        throw readOnly();
+    }
+
+
+    @Override
+    public <M, V> boolean putInMap(final K key, final M mapKey, final V e, final int index)
+    {
+        throw readOnly();
+    }
+
+
+    @Override
+    public <V> Object replace(final K key, final V e, final int index)
+    {
+        throw readOnly();
+    }
+
+
+    @Override
+    public <V> V replaceSameType(final K key, final V e, final int index)
+    {
+        throw readOnly();
+    }
+
+
+    @Override
+    public List<Bucket<?>> remove(final K key)
+    {
+        throw readOnly();
+    }
+
+
+    @Override
+    public Object remove(final K key, final int index)
+    {
+        throw readOnly();
+    }
+
+
+    private UnsupportedOperationException readOnly()
+    {
+        return new UnsupportedOperationException(getClass().getSimpleName()+" is read-only");
+    }
+}
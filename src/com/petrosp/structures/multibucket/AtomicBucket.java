@@ -0,0 +1,258 @@
+package com.petrosp.structures.multibucket;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.UnaryOperator;
+
+/**
+ * A {@code Bucket} that can be shared between threads. Its element is swapped with compare-and-set instead of locks,
+ * so that concurrent calls of {@code put}, {@code putIfEmpty} and {@code empty} never lose an update, and every
+ * thread sees the latest element.
+ * <p>
+ * {@code addToCollection} and {@code addToMap} are only as safe as the {@code Collection} or {@code Map} inside the
+ * Bucket, so the static factories create Buckets with concurrent ones, that scale with the number of threads:
+ * <pre>{@code
+ * AtomicBucket<Set<String>> visitors = AtomicBucket.ofConcurrentSet();
+ * // from any thread
+ * visitors.addToCollection(name);
+ * }</pre>
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ *
+ *
+ * @param <E> The type of the element of the Bucket.
+ */
+public class AtomicBucket<E> implements GenericBucket<E>
+{
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<AtomicBucket, Object> ELEMENT =
+            AtomicReferenceFieldUpdater.newUpdater(AtomicBucket.class, Object.class, "element");
+
+    private volatile E element;
+
+    public AtomicBucket() { }
+
+    public AtomicBucket(final E element)
+    {
+        this.element = element;
+    }
+
+    public static <T> AtomicBucket<T> of(final T element)
+    {
+        return new AtomicBucket<>(element);
+    }
+
+    public static <T> AtomicBucket<T> emptyBucket()
+    {
+        return new AtomicBucket<>();
+    }
+
+
+    /**
+     * @return A Bucket of a {@code Set} that is backed by a {@code ConcurrentHashMap}.
+     */
+    public static <T> AtomicBucket<Set<T>> ofConcurrentSet()
+    {
+        return new AtomicBucket<>(ConcurrentHashMap.newKeySet());
+    }
+
+
+    /**
+     * @return A Bucket of a lock-free {@code ConcurrentLinkedQueue}, for elements that are added from many threads
+     * and read in insertion order.
+     */
+    public static <T> AtomicBucket<Queue<T>> ofConcurrentQueue()
+    {
+        return new AtomicBucket<>(new ConcurrentLinkedQueue<>());
+    }
+
+
+    /**
+     * @return A Bucket of a {@code CopyOnWriteArrayList}, for lists that are read much more often than they change.
+     */
+    public static <T> AtomicBucket<List<T>> ofCopyOnWriteList()
+    {
+        return new AtomicBucket<>(new CopyOnWriteArrayList<>());
+    }
+
+
+    /**
+     * @return A Bucket of a {@code ConcurrentHashMap}.
+     */
+    public static <K, V> AtomicBucket<ConcurrentMap<K, V>> ofConcurrentMap()
+    {
+        return new AtomicBucket<>(new ConcurrentHashMap<>());
+    }
+
+
+    /**
+     * @return A Bucket of a {@code ConcurrentSkipListMap}, that keeps its keys sorted.
+     */
+    public static <K, V> AtomicBucket<ConcurrentNavigableMap<K, V>> ofConcurrentSortedMap()
+    {
+        return new AtomicBucket<>(new ConcurrentSkipListMap<>());
+    }
+
+
+    @Override
+    public boolean isEmpty()
+    {
+        return element == null;
+    }
+
+
+    @Override
+    public void empty()
+    {
+        this.element = null;
+    }
+
+
+    @Override
+    public boolean containsCollection()
+    {
+        return element instanceof Collection;
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <V> boolean containedInCollection(final V e)
+    {
+        E current = element;
+        if(!(current instanceof Collection)) return false;
+
+        return ((Collection<V>) current).contains(e);
+    }
+
+
+    @Override
+    public boolean containsMap()
+    {
+        return element instanceof Map;
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public E put(final E e)
+    {
+        return (E) ELEMENT.getAndSet(this, e);
+    }
+
+
+    @Override
+    public E putIfEmpty(final E e)
+    {
+        while(true)
+        {
+            E current = element;
+            if(current != null) return current;
+            if(ELEMENT.compareAndSet(this, null, e)) return null;
+        }
+    }
+
+
+    /**
+     * Put the element inside the {@code Bucket}, only if the current element is the expected one,
+     * compared by identity.
+     * @return {@code true} if the element was put.
+     */
+    public boolean compareAndSet(final E expected, final E e)
+    {
+        return ELEMENT.compareAndSet(this, expected, e);
+    }
+
+
+    /**
+     * Replace the element with the result of the function, applied to the current element. The function may be
+     * applied more than once when other threads change the element at the same time, so it must have no side
+     * effects, for example {@code counter.updateAndGet(n -> n == null ? 1 : n + 1)}.
+     * @return The new element.
+     */
+    public E updateAndGet(final UnaryOperator<E> updateFunction)
+    {
+        while(true)
+        {
+            E current = element;
+            E next = updateFunction.apply(current);
+            if(ELEMENT.compareAndSet(this, current, next)) return next;
+        }
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <V> boolean addToCollection(final V e)
+    {
+        E current = element;
+        if(!(current instanceof Collection)) return false;
+
+        return ((Collection<V>) current).add(e);
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <K,V> V addToMap(final K key, final V value)
+    {
+        E current = element;
+        if(!(current instanceof Map)) return null;
+
+        return ((Map<K, V>) current).put(key, value);
+    }
+
+
+    @Override
+    public E get()
+    {
+        return element;
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <K, V> V getFromMap(final K key)
+    {
+        E current = element;
+        if(!(current instanceof Map)) return null;
+
+        return ((Map<K, V>) current).get(key);
+    }
+
+    @Override
+    public Class<?> getType()
+    {
+        return element.getClass();
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AtomicBucket<?> bucket = (AtomicBucket<?>) o;
+        return Objects.equals(element, bucket.element);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(element);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.valueOf(element);
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.petrosp.structures.multibucket;
+
+/**
+ * A blocked Bloom filter: every object sets its bits inside a single block of 512 bits, the size of a cache line,
+ * so a lookup reads one block instead of one random word per bit. This costs a slightly higher false positive rate
+ * than a plain Bloom filter of the same size, which the sizing makes up for with a few more bits per object.
+ * Objects are hashed by {@code hashCode}, so objects with equal hash codes can't be told apart.
+ */
+final class BloomFilter
+{
+    private static final int BLOCK_LONGS = 8;
+    private static final int BLOCK_BITS = BLOCK_LONGS * 64;
+    private static final int MAXIMUM_BLOCKS = 1 << 24;
+    private static final double BLOCKING_OVERHEAD = 1.2;
+
+    private final long[] bits;
+    private final int blocks;
+    private final int hashes;
+    private long added;
+
+    /**
+     * @param expectedObjects The number of objects that the filter is sized for.
+     * @param falsePositiveRate The rate of false positives when the expected number of objects has been added.
+     */
+    BloomFilter(final long expectedObjects, final double falsePositiveRate)
+    {
+        if(!(falsePositiveRate > 0 && falsePositiveRate < 1)){
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+
+        double bitsPerObject = -Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        long totalBits = (long) Math.ceil(Math.max(expectedObjects, 1) * bitsPerObject * BLOCKING_OVERHEAD);
+        blocks = (int) Math.min(Math.max((totalBits + BLOCK_BITS - 1) / BLOCK_BITS, 1), MAXIMUM_BLOCKS);
+        hashes = (int) Math.min(Math.max(Math.round(bitsPerObject * Math.log(2)), 1), 16);
+        bits = new long[blocks * BLOCK_LONGS];
+    }
+
+
+    void add(final int hash)
+    {
+        long h = mix(hash);
+        int base = blockOf(h);
+        int h1 = (int) h, h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = (h1 + i * h2) & (BLOCK_BITS - 1);
+            bits[base + (bit >>> 6)] |= 1L << bit;
+        }
+        added++;
+    }
+
+
+    boolean mightContain(final int hash)
+    {
+        long h = mix(hash);
+        int base = blockOf(h);
+        int h1 = (int) h, h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = (h1 + i * h2) & (BLOCK_BITS - 1);
+            if((bits[base + (bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * @return The number of objects added since the filter was created, counting repeated ones again.
+     */
+    long added()
+    {
+        return added;
+    }
+
+
+    /**
+     * @return The false positive rate estimated from the fraction of the bits that are set.
+     */
+    double estimatedFalsePositiveRate()
+    {
+        long set = 0;
+        for(long word : bits)
+        {
+            set += Long.bitCount(word);
+        }
+        return Math.pow((double) set / ((long) bits.length * 64), hashes);
+    }
+
+
+    /**
+     * @return The size of the filter in bytes.
+     */
+    long bytes()
+    {
+        return (long) bits.length * Long.BYTES;
+    }
+
+    private int blockOf(final long h)
+    {
+        return (int) (((h >>> 40) * blocks) >>> 24) * BLOCK_LONGS;
+    }
+
+    /**
+     * The finalizer of SplitMix64, that spreads the 32 bits of a hash code over a {@code long}.
+     */
+    private static long mix(final int hash)
+    {
+        long z = hash * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,464 @@
+package com.petrosp.structures.multibucket;
+
+import com.petrosp.structures.Pair;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * A {@code Multibucket} that passes every call to another one, and keeps a Bloom filter of its keys in front of it,
+ * so that the lookups of absent keys are mostly answered without touching it. Useful when most lookups miss,
+ * and a lookup in the wrapped multibucket is expensive, for example when it is stored off-heap or on disk.
+ * Optionally, a second filter of the (key, element) pairs answers {@code contains} for the absent pairs of
+ * existing keys too.
+ * <p>
+ * The filters are updated by the changes made through this class, but can't forget a key or an element: after
+ * removals they keep answering "maybe" for what was removed, which is correct but slower, until {@link #rebuild()}
+ * is called. Changes made directly to the returned Buckets, or to the wrapped multibucket, must also be followed by
+ * a {@code rebuild()}, or the filters may hide keys and elements that exist. When more keys are added than the
+ * filters were sized for, their false positive rate grows, and a {@code rebuild()} sizes them for the current keys.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ *
+ *
+ * @param <K> Type of the keys.
+ */
+public class BloomFilteredMultibucket<K> implements Multibucket<K>
+{
+    private final Multibucket<K> delegate;
+    private final long expectedKeys;
+    private final double falsePositiveRate;
+    private final boolean filterElements;
+    private BloomFilter keyFilter;
+    private BloomFilter elementFilter;
+    private long filteredLookups;
+    private long passedLookups;
+    private long falsePositives;
+    private long removalsSinceRebuild;
+
+    /**
+     * Filter only the keys.
+     * @param delegate The multibucket that stores the keys, that may already contain some.
+     * @param expectedKeys The number of keys that the filter is sized for.
+     * @param falsePositiveRate The rate of the lookups of absent keys that are not answered by the filter, when
+     * the expected number of keys exists, for example {@code 0.01}.
+     */
+    public BloomFilteredMultibucket(Multibucket<K> delegate, long expectedKeys, double falsePositiveRate)
+    {
+        this(delegate, expectedKeys, falsePositiveRate, false);
+    }
+
+    /**
+     * @param delegate The multibucket that stores the keys, that may already contain some.
+     * @param expectedKeys The number of keys that the filters are sized for.
+     * @param falsePositiveRate The rate of the lookups of absent keys that are not answered by the filter, when
+     * the expected number of keys exists, for example {@code 0.01}.
+     * @param filterElements Whether to also filter the (key, element) pairs for {@code contains}. The filter of
+     * the pairs is sized for the Buckets that exist when it is built, or for one per expected key.
+     */
+    public BloomFilteredMultibucket(Multibucket<K> delegate, long expectedKeys, double falsePositiveRate,
+                                    boolean filterElements)
+    {
+        this.delegate = delegate;
+        this.expectedKeys = expectedKeys;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filterElements = filterElements;
+        rebuild();
+    }
+
+
+    /**
+     * Build new filters from the current keys and elements, sized for the expected keys or for the existing ones,
+     * whichever are more. This forgets the removed keys and elements, and resets {@link #removalsSinceRebuild()}.
+     */
+    public void rebuild()
+    {
+        keyFilter = new BloomFilter(Math.max(expectedKeys, delegate.size()), falsePositiveRate);
+        for(K key : delegate.keySet())
+        {
+            keyFilter.add(Objects.hashCode(key));
+        }
+
+        if(filterElements){
+            long[] buckets = {0};
+            delegate.forEach((k, b) -> buckets[0]++);
+            elementFilter = new BloomFilter(Math.max(expectedKeys, buckets[0]), falsePositiveRate);
+            delegate.forEach((k, b) -> elementFilter.add(pairHash(k, b.get())));
+        }
+        removalsSinceRebuild = 0;
+    }
+
+
+    /**
+     * @return The number of lookups that the filters answered without touching the wrapped multibucket.
+     */
+    public long filteredLookups()
+    {
+        return filteredLookups;
+    }
+
+
+    /**
+     * @return The number of lookups that the filters passed to the wrapped multibucket.
+     */
+    public long passedLookups()
+    {
+        return passedLookups;
+    }
+
+
+    /**
+     * @return The number of the passed lookups of {@code containsKey} and {@code contains}, that found nothing.
+     */
+    public long falsePositives()
+    {
+        return falsePositives;
+    }
+
+
+    /**
+     * @return The number of keys and Buckets removed since the last {@link #rebuild()}, that the filters still
+     * consider present.
+     */
+    public long removalsSinceRebuild()
+    {
+        return removalsSinceRebuild;
+    }
+
+
+    /**
+     * @return The false positive rate that the filter of the keys was built for.
+     */
+    public double falsePositiveRate()
+    {
+        return falsePositiveRate;
+    }
+
+
+    /**
+     * @return The false positive rate of the filter of the keys, estimated from how full it is.
+     */
+    public double estimatedFalsePositiveRate()
+    {
+        return keyFilter.estimatedFalsePositiveRate();
+    }
+
+
+    /**
+     * @return The size of the filters in bytes.
+     */
+    public long filterBytes()
+    {
+        return keyFilter.bytes() + (filterElements ? elementFilter.bytes() : 0);
+    }
+
+
+    @Override
+    public int size()
+    {
+        return delegate.size();
+    }
+
+
+    @Override
+    public Set<K> keySet()
+    {
+        return Collections.unmodifiableSet(delegate.keySet());
+    }
+
+
+    @Override
+    public <V> boolean contains(final K key, final V e)
+    {
+        boolean maybe = keyFilter.mightContain(Objects.hashCode(key))
+                && (!filterElements || elementFilter.mightContain(pairHash(key, e)));
+        if(!maybe){
+            filteredLookups++;
+            return false;
+        }
+
+        passedLookups++;
+        boolean found = delegate.contains(key, e);
+        if(!found) falsePositives++;
+        return found;
+    }
+
+
+    @Override
+    public <T> boolean containsType(final K key, final Class<T> t)
+    {
+        return mightContainKey(key) && delegate.containsType(key, t);
+    }
+
+
+    @Override
+    public boolean containsKey(final K key)
+    {
+        if(!mightContainKey(key)) return false;
+
+        boolean found = delegate.containsKey(key);
+        if(!found) falsePositives++;
+        return found;
+    }
+
+
+    @Override
+    public <V> void put(final K key, final V e)
+    {
+        delegate.put(key, e);
+        added(key, e);
+    }
+
+
+    @Override
+    public <V> boolean putIfAbsent(final K key, final V e)
+    {
+        if(!delegate.putIfAbsent(key, e)) return false;
+
+        added(key, e);
+        return true;
+    }
+
+
+    @Override
+    public <V> boolean putIfAbsentType(final K key, final V e)
+    {
+        if(!delegate.putIfAbsentType(key, e)) return false;
+
+        added(key, e);
+        return true;
+    }
+
+
+    @Override
+    public <V> boolean putInCollection(final K key, final V e, final int index)
+    {
+        if(!delegate.putInCollection(key, e, index)) return false;
+
+        changedInPlace(key);
+        return true;
+    }
+
+
+    @Override
+    public <T, V> boolean putInCollectionOfType(final K key, final V e, final T t, final int index)
+    {
+        if(!delegate.putInCollectionOfType(key, e, t, index)) return false;
+
+        changedInPlace(key);
+        return true;
+    }
+
+
+    @Override
+    public <M, V> boolean putInMap(final K key, final M mapKey, final V e, final int index)
+    {
+        if(!delegate.putInMap(key, mapKey, e, index)) return false;
+
+        changedInPlace(key);
+        return true;
+    }
+
+
+    @Override
+    public <V> Object replace(final K key, final V e, final int index)
+    {
+        if(!mightContainKey(key)) return null;
+
+        Object prev = delegate.replace(key, e, index);
+        replaced(key, e, prev != null);
+        return prev;
+    }
+
+
+    @Override
+    public <V> V replaceSameType(final K key, final V e, final int index)
+    {
+        if(!mightContainKey(key)) return null;
+
+        V prev = delegate.replaceSameType(key, e, index);
+        replaced(key, e, prev != null);
+        return prev;
+    }
+
+
+    @Override
+    public <V> int getFirstIndex(final K key, final V e)
+    {
+        return mightContainKey(key) ? delegate.getFirstIndex(key, e) : -1;
+    }
+
+
+    @Override
+    public <V> List<Integer> getAllIndexes(final K key, final V e)
+    {
+        return mightContainKey(key) ? delegate.getAllIndexes(key, e) : new ArrayList<>();
+    }
+
+
+    @Override
+    public <V> int[] getAllIndexesAsArray(final K key, final V e)
+    {
+        return mightContainKey(key) ? delegate.getAllIndexesAsArray(key, e) : new int[0];
+    }
+
+
+    @Override
+    public <V> PrimitiveIterator.OfInt indexCursor(final K key, final V e)
+    {
+        return mightContainKey(key) ? delegate.indexCursor(key, e) : BucketList.EMPTY_CURSOR;
+    }
+
+
+    @Override
+    public <E> E get(final K key, final int index)
+    {
+        return mightContainKey(key) ? delegate.get(key, index) : null;
+    }
+
+
+    @Override
+    public <M, V> V getFromMap(final K key, final M mapKey, final int index)
+    {
+        return mightContainKey(key) ? delegate.getFromMap(key, mapKey, index) : null;
+    }
+
+
+    @Override
+    public <T> List<Bucket<?>> getAllOfType(final K key, final Class<T> t)
+    {
+        return mightContainKey(key) ? delegate.getAllOfType(key, t) : new ArrayList<>();
+    }
+
+
+    @Override
+    public <T> List<Bucket<?>> viewAllOfType(final K key, final Class<T> t)
+    {
+        return mightContainKey(key) ? delegate.viewAllOfType(key, t) : Collections.emptyList();
+    }
+
+
+    @Override
+    public <T> T getOfType(final K key, final Class<T> t, final int index)
+    {
+        return mightContainKey(key) ? delegate.getOfType(key, t, index) : null;
+    }
+
+
+    @Override
+    public List<Bucket<?>> getAll(final K key)
+    {
+        return mightContainKey(key) ? delegate.getAll(key) : Collections.emptyList();
+    }
+
+
+    @Override
+    public Stream<Pair<K, Bucket<?>>> stream()
+    {
+        return delegate.stream();
+    }
+
+
+    @Override
+    public <T> Stream<Pair<K, T>> streamOfType(final Class<T> t)
+    {
+        return delegate.streamOfType(t);
+    }
+
+
+    @Override
+    public <T> MultibucketQuery<K, T> select(final Class<T> t)
+    {
+        return delegate.select(t);
+    }
+
+
+    @Override
+    public void forEach(final BiConsumer<? super K, ? super Bucket<?>> action)
+    {
+        delegate.forEach(action);
+    }
+
+
+    @Override
+    public MultibucketStats stats()
+    {
+        return delegate.stats();
+    }
+
+
+    @Override
+    public List<Bucket<?>> remove(final K key)
+    {
+        if(!mightContainKey(key)) return null;
+
+        List<Bucket<?>> removed = delegate.remove(key);
+        if(removed != null) removalsSinceRebuild++;
+        return removed;
+    }
+
+
+    @Override
+    public Object remove(final K key, final int index)
+    {
+        if(!mightContainKey(key)) return null;
+
+        Object prev = delegate.remove(key, index);
+        if(prev != null) removalsSinceRebuild++;
+        return prev;
+    }
+
+
+    private boolean mightContainKey(final K key)
+    {
+        if(keyFilter.mightContain(Objects.hashCode(key))){
+            passedLookups++;
+            return true;
+        }
+        filteredLookups++;
+        return false;
+    }
+
+    private void added(final K key, final Object e)
+    {
+        keyFilter.add(Objects.hashCode(key));
+        if(filterElements) elementFilter.add(pairHash(key, e));
+    }
+
+    private void replaced(final K key, final Object e, final boolean replacedExisting)
+    {
+        if(replacedExisting) removalsSinceRebuild++;
+        if(filterElements) elementFilter.add(pairHash(key, e));
+    }
+
+    /**
+     * The element of a Bucket of the key changed without being replaced, so its hash code may have changed too.
+     */
+    private void changedInPlace(final K key)
+    {
+        if(!filterElements) return;
+
+        for(Bucket<?> b : delegate.getAll(key))
+        {
+            elementFilter.add(pairHash(key, b.get()));
+        }
+    }
+
+    private static int pairHash(final Object key, final Object e)
+    {
+        return 31 * Objects.hashCode(key) + Objects.hashCode(e);
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return  "BloomFilteredMultibucket of size: "+size()+", filtered lookups: "+filteredLookups+
+                ", passed lookups: "+passedLookups+", over: "+delegate;
+    }
+}
@@ -34,6 +34,19 @@ public class Bucket<E> implements GenericBucket<E>
     }
 
 
+    /**
+     * @return A new {@code Bucket} of the element, that stores it without boxing if the previous {@code Bucket} did.
+     */
+    static Bucket<?> replacing(final Bucket<?> previous, final Object element)
+    {
+        if(previous instanceof IntBucket && element instanceof Integer) return IntBucket.of((int) element);
+        if(previous instanceof LongBucket && element instanceof Long) return LongBucket.of((long) element);
+        if(previous instanceof DoubleBucket && element instanceof Double) return DoubleBucket.of((double) element);
+
+        return of(element);
+    }
+
+
     @Override
     public boolean isEmpty()
     {
@@ -133,19 +146,23 @@ public class Bucket<E> implements GenericBucket<E>
         return element.getClass();
     }
 
+    /**
+     * Buckets are equal when their elements are, so a {@code Bucket} that stores a primitive without boxing is equal
+     * to a {@code Bucket} of its boxed value.
+     */
     @Override
     public boolean equals(Object o)
     {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (!(o instanceof Bucket)) return false;
         Bucket<?> bucket = (Bucket<?>) o;
-        return Objects.equals(element, bucket.element);
+        return Objects.equals(get(), bucket.get());
     }
 
     @Override
     public int hashCode()
     {
-        return Objects.hash(element);
+        return Objects.hash(get());
     }
 
     @Override
@@ -0,0 +1,27 @@
+package com.petrosp.structures.multibucket;
+
+/**
+ * The optional indexes that a {@code HashMultibucket} can keep for the Buckets of every key.
+ * Indexes are updated on every put, replace and remove, trading some memory and write time for faster lookups.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ */
+public enum BucketIndex
+{
+    /**
+     * Keeps the positions of the Buckets of every class type, which makes {@code containsType},
+     * {@code putIfAbsentType}, {@code replaceSameType} and {@code getOfType} constant time, and {@code getAllOfType}
+     * proportional only to the number of matching Buckets.
+     */
+    TYPE,
+
+    /**
+     * Keeps the positions of the Buckets of every distinct element, which makes {@code contains},
+     * {@code getFirstIndex} and {@code putIfAbsent} constant time on average, and {@code getAllIndexes} proportional
+     * only to the number of matching Buckets. Elements that are mutated while inside a {@code Bucket} must keep
+     * their {@code hashCode} unless they are mutated through {@code putInCollection} or {@code putInMap}.
+     */
+    VALUE
+}
@@ -0,0 +1,515 @@
+package com.petrosp.structures.multibucket;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * The Buckets of a single key, together with the optional {@link BucketIndex} structures that are kept for them.
+ * Only the methods of this class keep the indexes up to date, so the Buckets must not be added or removed in any
+ * other way. Subclasses can keep indexes of their own in sync by overriding {@link #indexed}, {@link #unindexed}
+ * and {@link #shifted}.
+ */
+class BucketList extends AbstractList<Bucket<?>> implements RandomAccess
+{
+    static final int DEFAULT_CAPACITY = 4;
+
+    /**
+     * The cursor of the indexes of a key that doesn't exist.
+     */
+    static final PrimitiveIterator.OfInt EMPTY_CURSOR = new PrimitiveIterator.OfInt()
+    {
+        @Override
+        public boolean hasNext()
+        {
+            return false;
+        }
+
+        @Override
+        public int nextInt()
+        {
+            throw new NoSuchElementException();
+        }
+    };
+
+    private Bucket<?>[] buckets;
+    private int size;
+    private final Map<Class<?>, IntList> typeIndex;
+    private final Map<Object, IntList> valueIndex;
+    private List<Bucket<?>> readOnlyView;
+
+    BucketList(final Set<BucketIndex> indexes)
+    {
+        this(DEFAULT_CAPACITY, indexes);
+    }
+
+    BucketList(final int initialCapacity, final Set<BucketIndex> indexes)
+    {
+        buckets = new Bucket<?>[Math.max(initialCapacity, 1)];
+        typeIndex = indexes.contains(BucketIndex.TYPE) ? new HashMap<>() : null;
+        valueIndex = indexes.contains(BucketIndex.VALUE) ? new HashMap<>() : null;
+    }
+
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+
+    @Override
+    public Bucket<?> get(final int index)
+    {
+        rangeCheck(index);
+        return buckets[index];
+    }
+
+
+    @Override
+    public boolean add(final Bucket<?> bucket)
+    {
+        ensureCapacity(size + 1);
+        buckets[size] = bucket;
+        indexBucket(bucket, size);
+        size++;
+        modCount++;
+        return true;
+    }
+
+
+    @Override
+    public Bucket<?> set(final int index, final Bucket<?> bucket)
+    {
+        rangeCheck(index);
+        Bucket<?> previous = buckets[index];
+        unindexBucket(previous, index);
+        buckets[index] = bucket;
+        indexBucket(bucket, index);
+        return previous;
+    }
+
+
+    /**
+     * Removes the Bucket and shifts the following ones to the left. With indexes enabled, every stored position
+     * after the removed one is shifted too, so this is linear to the number of Buckets of the key.
+     */
+    @Override
+    public Bucket<?> remove(final int index)
+    {
+        rangeCheck(index);
+        Bucket<?> previous = buckets[index];
+        unindexBucket(previous, index);
+
+        System.arraycopy(buckets, index + 1, buckets, index, size - index - 1);
+        buckets[--size] = null;
+        modCount++;
+
+        if(typeIndex != null){
+            for(IntList positions : typeIndex.values()){
+                positions.decrementAbove(index);
+            }
+        }
+        if(valueIndex != null){
+            for(IntList positions : valueIndex.values()){
+                positions.decrementAbove(index);
+            }
+        }
+        shifted(index);
+
+        return previous;
+    }
+
+
+    /**
+     * Removes all the matching Buckets in one pass and indexes the rest again, so unlike removing them one by one,
+     * this is linear to the number of Buckets of the key however many of them are removed.
+     */
+    @Override
+    public boolean removeIf(final Predicate<? super Bucket<?>> filter)
+    {
+        boolean[] matching = new boolean[size];
+        boolean any = false;
+        for (int i = 0; i < size; i++) {
+            matching[i] = filter.test(buckets[i]);
+            any |= matching[i];
+        }
+        if(!any) return false;
+
+        for (int i = 0; i < size; i++) {
+            unindexed(buckets[i], i);
+        }
+        if(typeIndex != null) typeIndex.clear();
+        if(valueIndex != null) valueIndex.clear();
+
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if(!matching[i]) buckets[kept++] = buckets[i];
+        }
+        Arrays.fill(buckets, kept, size, null);
+        size = kept;
+        modCount++;
+
+        for (int i = 0; i < size; i++) {
+            indexBucket(buckets[i], i);
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Apply a change that mutates the element of the {@code Bucket} at the given index in place
+     * (e.g. adding to its {@code Collection}), keeping the value index in sync with the new state of the element.
+     * The entry of the value index may be keyed by the element that is mutated, so it is taken out before the
+     * change, and the positions of the equal elements are put back under one of them, that is left unchanged.
+     */
+    <R> R update(final int index, final Function<Bucket<?>, R> change)
+    {
+        rangeCheck(index);
+        Bucket<?> bucket = buckets[index];
+        IntList equalPositions = null;
+        if(valueIndex != null){
+            equalPositions = valueIndex.remove(bucket.get());
+            if(equalPositions != null) equalPositions.removeSorted(index);
+        }
+        unindexed(bucket, index);
+        try{
+            return change.apply(bucket);
+        }finally {
+            if(valueIndex != null){
+                if(equalPositions != null && !equalPositions.isEmpty()){
+                    valueIndex.put(buckets[equalPositions.get(0)].get(), equalPositions);
+                }
+                valueIndex.computeIfAbsent(bucket.get(), v -> new IntList()).addSorted(index);
+            }
+            indexed(bucket, index);
+        }
+    }
+
+
+    /**
+     * Called after a Bucket was placed at the given index, or after its element was changed in place.
+     */
+    void indexed(final Bucket<?> bucket, final int index) {}
+
+
+    /**
+     * Called before a Bucket is taken out of the given index, or before its element is changed in place.
+     */
+    void unindexed(final Bucket<?> bucket, final int index) {}
+
+
+    /**
+     * Called after the Bucket at the given index was removed and the following ones were shifted to the left.
+     */
+    void shifted(final int removedIndex) {}
+
+
+    void ensureCapacity(final int capacity)
+    {
+        if(capacity > buckets.length){
+            buckets = Arrays.copyOf(buckets, Math.max(capacity, buckets.length << 1));
+        }
+    }
+
+
+    /**
+     * @return The index of the first Bucket with an element equal to the given, or -1.
+     */
+    int indexOfElement(final Object e)
+    {
+        if(valueIndex != null){
+            IntList positions = valueIndex.get(e);
+            return positions == null ? -1 : positions.get(0);
+        }
+
+        for (int i = 0; i < size; i++) {
+            if(Objects.equals(buckets[i].get(), e)) return i;
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * @return The index of the first Bucket with an element equal to the given, starting from the given index, or -1.
+     */
+    int nextIndexOfElement(final Object e, final int from)
+    {
+        if(valueIndex != null){
+            IntList positions = valueIndex.get(e);
+            return positions == null ? -1 : positions.ceiling(from);
+        }
+
+        for (int i = from; i < size; i++) {
+            if(Objects.equals(buckets[i].get(), e)) return i;
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * @return The indexes of all the Buckets with an element equal to the given, in ascending order.
+     */
+    int[] indexesOfElement(final Object e)
+    {
+        if(valueIndex != null){
+            IntList positions = valueIndex.get(e);
+            return positions == null ? new int[0] : positions.toArray();
+        }
+
+        IntList out = new IntList();
+        for (int i = 0; i < size; i++) {
+            if(Objects.equals(buckets[i].get(), e)) out.add(i);
+        }
+
+        return out.toArray();
+    }
+
+
+    /**
+     * @param nth The index relative only to the Buckets of the given type.
+     * @return The index (relative to all the Buckets) of the nth Bucket of the given type, or -1.
+     */
+    int indexOfType(final Class<?> type, final int nth)
+    {
+        if(nth < 0) return -1;
+
+        Class<?> t = wrapperOf(type);
+        if(typeIndex != null){
+            IntList positions = typeIndex.get(t);
+            if(positions == null || nth >= positions.size()) return -1;
+            return positions.get(nth);
+        }
+
+        int typeCounter = 0;
+        for (int i = 0; i < size; i++) {
+            if(t == typeOf(buckets[i]) && typeCounter++ == nth) return i;
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * @return The index of the first Bucket of the given type, starting from the given index, or -1.
+     */
+    int nextIndexOfType(final Class<?> type, final int from)
+    {
+        Class<?> t = wrapperOf(type);
+        if(typeIndex != null){
+            IntList positions = typeIndex.get(t);
+            return positions == null ? -1 : positions.ceiling(from);
+        }
+
+        for (int i = from; i < size; i++) {
+            if(t == typeOf(buckets[i])) return i;
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * @return The number of the Buckets of the given type.
+     */
+    int countOfType(final Class<?> type)
+    {
+        Class<?> t = wrapperOf(type);
+        if(typeIndex != null){
+            IntList positions = typeIndex.get(t);
+            return positions == null ? 0 : positions.size();
+        }
+
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if(t == typeOf(buckets[i])) count++;
+        }
+
+        return count;
+    }
+
+
+    boolean containsType(final Class<?> t)
+    {
+        return indexOfType(t, 0) != -1;
+    }
+
+
+    /**
+     * @return A new {@code ArrayList} with the Buckets of the given type.
+     */
+    List<Bucket<?>> getAllOfType(final Class<?> type)
+    {
+        Class<?> t = wrapperOf(type);
+        if(typeIndex != null){
+            IntList positions = typeIndex.get(t);
+            if(positions == null) return new ArrayList<>();
+
+            List<Bucket<?>> out = new ArrayList<>(positions.size());
+            for (int i = 0; i < positions.size(); i++) {
+                out.add(buckets[positions.get(i)]);
+            }
+            return out;
+        }
+
+        List<Bucket<?>> out = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if(t == typeOf(buckets[i])) out.add(buckets[i]);
+        }
+
+        return out;
+    }
+
+
+    /**
+     * @return A read-only view of this list, created once.
+     */
+    List<Bucket<?>> readOnly()
+    {
+        if(readOnlyView == null) readOnlyView = Collections.unmodifiableList(this);
+
+        return readOnlyView;
+    }
+
+
+    /**
+     * @return A live, read-only view of the Buckets of the given type.
+     */
+    List<Bucket<?>> viewOfType(final Class<?> t)
+    {
+        return new AbstractList<Bucket<?>>()
+        {
+            @Override
+            public Bucket<?> get(int index)
+            {
+                int generalIndex = indexOfType(t, index);
+                if(generalIndex == -1) throw new IndexOutOfBoundsException("Index: "+index);
+
+                return buckets[generalIndex];
+            }
+
+            @Override
+            public int size()
+            {
+                return countOfType(t);
+            }
+
+            @Override
+            public Iterator<Bucket<?>> iterator()
+            {
+                return new Iterator<Bucket<?>>()
+                {
+                    private int next = nextIndexOfType(t, 0);
+
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return next != -1;
+                    }
+
+                    @Override
+                    public Bucket<?> next()
+                    {
+                        if(next == -1) throw new NoSuchElementException();
+
+                        Bucket<?> bucket = buckets[next];
+                        next = nextIndexOfType(t, next + 1);
+                        return bucket;
+                    }
+                };
+            }
+        };
+    }
+
+
+    /**
+     * @return A cursor over the indexes of the Buckets with an element equal to the given, in ascending order.
+     */
+    PrimitiveIterator.OfInt indexCursor(final Object e)
+    {
+        return new PrimitiveIterator.OfInt()
+        {
+            private int next = nextIndexOfElement(e, 0);
+
+            @Override
+            public boolean hasNext()
+            {
+                return next != -1;
+            }
+
+            @Override
+            public int nextInt()
+            {
+                if(next == -1) throw new NoSuchElementException();
+
+                int current = next;
+                next = nextIndexOfElement(e, current + 1);
+                return current;
+            }
+        };
+    }
+
+
+    private void indexBucket(final Bucket<?> bucket, final int index)
+    {
+        Class<?> type = typeOf(bucket);
+        if(typeIndex != null && type != null){
+            typeIndex.computeIfAbsent(type, t -> new IntList()).addSorted(index);
+        }
+        if(valueIndex != null){
+            valueIndex.computeIfAbsent(bucket.get(), v -> new IntList()).addSorted(index);
+        }
+        indexed(bucket, index);
+    }
+
+    private void unindexBucket(final Bucket<?> bucket, final int index)
+    {
+        Class<?> type = typeOf(bucket);
+        if(typeIndex != null && type != null){
+            removePosition(typeIndex, type, index);
+        }
+        if(valueIndex != null){
+            removePosition(valueIndex, bucket.get(), index);
+        }
+        unindexed(bucket, index);
+    }
+
+    private static <T> void removePosition(final Map<T, IntList> index, final T key, final int position)
+    {
+        IntList positions = index.get(key);
+        if(positions == null) return;
+
+        positions.removeSorted(position);
+        if(positions.isEmpty()) index.remove(key);
+    }
+
+    /**
+     * @return The wrapper class of a primitive class, because Buckets of primitives report their wrapper type.
+     */
+    private static Class<?> wrapperOf(final Class<?> t)
+    {
+        if(t == null || !t.isPrimitive()) return t;
+        if(t == int.class) return Integer.class;
+        if(t == long.class) return Long.class;
+        if(t == double.class) return Double.class;
+        if(t == boolean.class) return Boolean.class;
+        if(t == char.class) return Character.class;
+        if(t == byte.class) return Byte.class;
+        if(t == short.class) return Short.class;
+        if(t == float.class) return Float.class;
+        return Void.class;
+    }
+
+    private static Class<?> typeOf(final Bucket<?> bucket)
+    {
+        return bucket.isEmpty() ? null : bucket.getType();
+    }
+
+    private void rangeCheck(final int index)
+    {
+        if(index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+    }
+}
@@ -0,0 +1,112 @@
+package com.petrosp.structures.multibucket;
+
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * A {@code Spliterator} over every (key, Bucket) entry of a map of {@code BucketList}s, optionally only over the
+ * Buckets of a specific type. It splits by splitting the {@code Spliterator} of the entries of the map, so parallel
+ * traversals divide the keys without copying them, and it visits the Buckets of every key straight from their
+ * {@code BucketList}.
+ *
+ * @param <K> Type of the keys.
+ * @param <R> Type of the results of the mapper, for every (key, Bucket) entry.
+ */
+final class BucketSpliterator<K, R> implements Spliterator<R>
+{
+    private final Spliterator<Map.Entry<K, BucketList>> entries;
+    private final Class<?> type;
+    private final BiFunction<? super K, Bucket<?>, ? extends R> mapper;
+
+    private K currentKey;
+    private BucketList current;
+    private int index;
+
+    /**
+     * @param type The type of the Buckets to visit, or {@code null} to visit all of them.
+     */
+    BucketSpliterator(final Spliterator<Map.Entry<K, BucketList>> entries, final Class<?> type,
+                      final BiFunction<? super K, Bucket<?>, ? extends R> mapper)
+    {
+        this.entries = entries;
+        this.type = type;
+        this.mapper = mapper;
+    }
+
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super R> action)
+    {
+        while(true)
+        {
+            if(current != null){
+                index = nextIndex(current, index);
+                if(index != -1){
+                    action.accept(mapper.apply(currentKey, current.get(index++)));
+                    return true;
+                }
+                current = null;
+            }
+
+            if(!entries.tryAdvance(entry -> {
+                currentKey = entry.getKey();
+                current = entry.getValue();
+                index = 0;
+            })) return false;
+        }
+    }
+
+
+    @Override
+    public void forEachRemaining(final Consumer<? super R> action)
+    {
+        if(current != null){
+            visit(currentKey, current, index, action);
+            current = null;
+        }
+
+        entries.forEachRemaining(entry -> visit(entry.getKey(), entry.getValue(), 0, action));
+    }
+
+
+    @Override
+    public Spliterator<R> trySplit()
+    {
+        Spliterator<Map.Entry<K, BucketList>> split = entries.trySplit();
+        return split == null ? null : new BucketSpliterator<>(split, type, mapper);
+    }
+
+
+    /**
+     * @return The number of remaining keys, since the number of their Buckets is not known without visiting them.
+     */
+    @Override
+    public long estimateSize()
+    {
+        return entries.estimateSize();
+    }
+
+
+    @Override
+    public int characteristics()
+    {
+        return entries.characteristics() & ~(SIZED | SUBSIZED | DISTINCT | SORTED);
+    }
+
+
+    private void visit(final K key, final BucketList list, final int from, final Consumer<? super R> action)
+    {
+        for (int i = nextIndex(list, from); i != -1; i = nextIndex(list, i + 1)) {
+            action.accept(mapper.apply(key, list.get(i)));
+        }
+    }
+
+    private int nextIndex(final BucketList list, final int from)
+    {
+        if(type != null) return list.nextIndexOfType(type, from);
+
+        return from < list.size() ? from : -1;
+    }
+}
@@ -0,0 +1,719 @@
+package com.petrosp.structures.multibucket;
+
+import com.petrosp.structures.Pair;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * A bounded {@code Multibucket}, meant to be used as a cache in front of a slower store. When the number of keys
+ * (or their total weight, if a {@link Weigher} is given) exceeds the maximum, keys are evicted together with all of
+ * their Buckets, as chosen by the {@link EvictionPolicy}. The bookkeeping of every access is constant time.
+ * <p>
+ * Reads of a key count as a hit or a miss, and both reads and writes of a key count as an access for the eviction
+ * policy. {@code containsKey}, {@code keySet}, {@code forEach} and the streams neither count nor access.
+ * This class is not thread-safe.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ *
+ *
+ * @param <K> Type of the keys.
+ */
+public class CachingMultibucket<K> implements Multibucket<K>
+{
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+
+    private final Map<K,Node<K>> nodes = new HashMap<>();
+    private final Set<BucketIndex> indexes;
+    private final long maximum;
+    private final Weigher<? super K> weigher;
+    private final EvictionPolicy policy;
+
+    private final AccessQueue<K> window = new AccessQueue<>();
+    private final AccessQueue<K> probation = new AccessQueue<>();
+    private final AccessQueue<K> protectedQueue = new AccessQueue<>();
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final FrequencySketch sketch;
+
+    private RemovalListener<? super K> removalListener;
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maximumKeys The maximum number of keys to keep.
+     * @param indexes The indexes to keep for the Buckets of every key.
+     */
+    public CachingMultibucket(long maximumKeys, EvictionPolicy policy, BucketIndex... indexes)
+    {
+        this(maximumKeys, (k, buckets) -> 1, policy, indexes);
+    }
+
+    /**
+     * @param maximumWeight The maximum total weight of the keys to keep.
+     * @param weigher Computes the weight of a key from its Buckets, every time they change.
+     * @param indexes The indexes to keep for the Buckets of every key.
+     */
+    public CachingMultibucket(long maximumWeight, Weigher<? super K> weigher, EvictionPolicy policy, BucketIndex... indexes)
+    {
+        if(maximumWeight < 0) throw new IllegalArgumentException("Negative maximum: "+maximumWeight);
+
+        this.maximum = maximumWeight;
+        this.weigher = weigher;
+        this.policy = policy;
+        this.indexes = EnumSet.noneOf(BucketIndex.class);
+        this.indexes.addAll(Arrays.asList(indexes));
+
+        if(policy == EvictionPolicy.W_TINY_LFU){
+            windowMaximum = Math.max(1, maximumWeight * WINDOW_PERCENT / 100);
+            protectedMaximum = (maximumWeight - windowMaximum) * PROTECTED_PERCENT / 100;
+            sketch = new FrequencySketch(maximumWeight);
+        }else{
+            windowMaximum = 0;
+            protectedMaximum = 0;
+            sketch = null;
+        }
+    }
+
+
+    /**
+     * Set the listener that is called synchronously after every key is evicted or removed.
+     * @param removalListener The listener, or {@code null} for none.
+     */
+    public void setRemovalListener(RemovalListener<? super K> removalListener)
+    {
+        this.removalListener = removalListener;
+    }
+
+
+    /**
+     * @return The number of reads of a key that existed.
+     */
+    public long hitCount()
+    {
+        return hits;
+    }
+
+
+    /**
+     * @return The number of reads of a key that didn't exist.
+     */
+    public long missCount()
+    {
+        return misses;
+    }
+
+
+    /**
+     * @return The ratio of hits to all reads, or 1 if nothing has been read.
+     */
+    public double hitRate()
+    {
+        long reads = hits + misses;
+        return reads == 0 ? 1.0 : (double) hits / reads;
+    }
+
+
+    /**
+     * @return The number of keys that have been evicted.
+     */
+    public long evictionCount()
+    {
+        return evictions;
+    }
+
+
+    /**
+     * @return The total weight of the keys, which is their number if no {@code Weigher} was given.
+     */
+    public long weight()
+    {
+        return weight;
+    }
+
+
+    @Override
+    public int size()
+    {
+        return nodes.size();
+    }
+
+
+    @Override
+    public <V> void put(final K key, final V e)
+    {
+        Node<K> node = nodeForWrite(key);
+        node.buckets.add(Bucket.of(e));
+        afterWrite(node);
+    }
+
+
+    /**
+     * Grows the Buckets of the key and checks for eviction only once for all the elements.
+     */
+    @Override
+    public <V> void putAll(final K key, final Collection<V> elements)
+    {
+        if(elements.isEmpty()) return;
+
+        Node<K> node = nodeForWrite(key);
+        node.buckets.ensureCapacity(node.buckets.size() + elements.size());
+        for(V e : elements)
+        {
+            node.buckets.add(Bucket.of(e));
+        }
+        afterWrite(node);
+    }
+
+
+    @Override
+    public <V> boolean putIfAbsent(final K key, final V e)
+    {
+        Node<K> node = nodeForWrite(key);
+        if(node.buckets.indexOfElement(e) != -1) return false;
+
+        node.buckets.add(Bucket.of(e));
+        afterWrite(node);
+        return true;
+    }
+
+
+    @Override
+    public <V> boolean putIfAbsentType(final K key, final V e)
+    {
+        Class<?> type = e.getClass();
+        Node<K> node = nodeForWrite(key);
+        if(node.buckets.containsType(type)) return false;
+
+        node.buckets.add(Bucket.of(e));
+        afterWrite(node);
+        return true;
+    }
+
+
+    @Override
+    public <V> boolean putInCollection(final K key, final V e, final int index)
+    {
+        Node<K> node = existingForWrite(key);
+        if(node == null) return false;
+
+        boolean added;
+        try{
+            added = node.buckets.update(index, b -> {
+                if(!b.containsCollection()) return false;
+                b.addToCollection(e);
+                return true;
+            });
+        }catch (Exception ex) {
+            return false;
+        }
+
+        if(added) afterWrite(node);
+        return added;
+    }
+
+
+    @Override
+    public <T, V> boolean putInCollectionOfType(final K key, final V e, final T t, final int index)
+    {
+        return putInCollection(key, e, index);
+    }
+
+
+    @Override
+    public <M, V> boolean putInMap(final K key, final M mapKey, final V e, final int index)
+    {
+        Node<K> node = existingForWrite(key);
+        if(node == null) return false;
+
+        boolean added;
+        try{
+            added = node.buckets.update(index, b -> {
+                if(!b.containsMap()) return false;
+                b.addToMap(mapKey, e);
+                return true;
+            });
+        }catch (Exception ex) {
+            return false;
+        }
+
+        if(added) afterWrite(node);
+        return added;
+    }
+
+
+    @Override
+    public <V> Object replace(final K key, final V e, final int index)
+    {
+        Node<K> node = existingForWrite(key);
+        if(node == null || index < 0 || index >= node.buckets.size()) return null;
+
+        Object prev = node.buckets.set(index, Bucket.of(e)).get();
+        afterWrite(node);
+        return prev;
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <V> V replaceSameType(final K key, final V e, final int index)
+    {
+        Node<K> node = existingForWrite(key);
+        if(node == null) return null;
+
+        int generalIndex = node.buckets.indexOfType(e.getClass(), index);
+        if(generalIndex == -1) return null;
+
+        V prev = (V)node.buckets.set(generalIndex, Bucket.of(e)).get();
+        afterWrite(node);
+        return prev;
+    }
+
+
+    @Override
+    public <V> boolean contains(final K key, final V e)
+    {
+        BucketList existing = read(key);
+        return existing != null && existing.indexOfElement(e) != -1;
+    }
+
+
+    @Override
+    public <T> boolean containsType(final K key, final Class<T> t)
+    {
+        BucketList existing = read(key);
+        return existing != null && existing.containsType(t);
+    }
+
+
+    @Override
+    public boolean containsKey(final K key)
+    {
+        return nodes.containsKey(key);
+    }
+
+
+    /**
+     * @return A read-only view of the keys, since removing keys through it would bypass the eviction bookkeeping.
+     */
+    @Override
+    public Set<K> keySet()
+    {
+        return Collections.unmodifiableSet(nodes.keySet());
+    }
+
+
+    @Override
+    public <V> int getFirstIndex(final K key, final V e)
+    {
+        BucketList existing = read(key);
+        return existing == null ? -1 : existing.indexOfElement(e);
+    }
+
+
+    @Override
+    public <V> List<Integer> getAllIndexes(final K key, final V e)
+    {
+        List<Integer> out = new ArrayList<>();
+        for(int i : getAllIndexesAsArray(key, e))
+        {
+            out.add(i);
+        }
+
+        return out;
+    }
+
+
+    @Override
+    public <V> int[] getAllIndexesAsArray(final K key, final V e)
+    {
+        BucketList existing = read(key);
+        return existing == null ? new int[0] : existing.indexesOfElement(e);
+    }
+
+
+    @Override
+    public <V> PrimitiveIterator.OfInt indexCursor(final K key, final V e)
+    {
+        BucketList existing = read(key);
+        return existing == null ? BucketList.EMPTY_CURSOR : existing.indexCursor(e);
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <E> E get(final K key, final int index)
+    {
+        BucketList existing = read(key);
+        if(existing == null || index < 0 || index >= existing.size()) return null;
+
+        return (E)existing.get(index).get();
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <M, V> V getFromMap(final K key, final M mapKey, final int index)
+    {
+        Object element = get(key, index);
+        if(!(element instanceof Map)) return null;
+
+        return ((Map<M,V>)element).get(mapKey);
+    }
+
+
+    @Override
+    public <T> List<Bucket<?>> getAllOfType(final K key, final Class<T> t)
+    {
+        BucketList existing = read(key);
+        return existing == null ? new ArrayList<>() : existing.getAllOfType(t);
+    }
+
+
+    @Override
+    public <T> List<Bucket<?>> viewAllOfType(final K key, final Class<T> t)
+    {
+        BucketList existing = read(key);
+        return existing == null ? Collections.emptyList() : existing.viewOfType(t);
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <T> T getOfType(final K key, final Class<T> t, final int index)
+    {
+        BucketList existing = read(key);
+        if(existing == null) return null;
+
+        int generalIndex = existing.indexOfType(t, index);
+        return generalIndex == -1 ? null : (T)existing.get(generalIndex).get();
+    }
+
+
+    @Override
+    public List<Bucket<?>> getAll(final K key)
+    {
+        BucketList existing = read(key);
+        return existing == null ? Collections.emptyList() : existing.readOnly();
+    }
+
+
+    @Override
+    public List<Bucket<?>> remove(final K key)
+    {
+        Node<K> node = nodes.get(key);
+        if(node == null) return null;
+
+        discard(node, RemovalCause.EXPLICIT);
+        return node.buckets;
+    }
+
+
+    @Override
+    public Object remove(final K key, final int index)
+    {
+        Node<K> node = nodes.get(key);
+        if(node == null || index < 0 || index >= node.buckets.size()) return null;
+
+        Object prev = node.buckets.remove(index).get();
+        if(node.buckets.isEmpty()){
+            discard(node, RemovalCause.EXPLICIT);
+        }else{
+            reweigh(node);
+        }
+
+        return prev;
+    }
+
+
+    @Override
+    public Stream<Pair<K, Bucket<?>>> stream()
+    {
+        return nodes.values().stream().flatMap(n -> n.buckets.stream().map(b -> Pair.<K, Bucket<?>>of(n.key, b)));
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <T> Stream<Pair<K, T>> streamOfType(final Class<T> t)
+    {
+        return nodes.values().stream().flatMap(n -> n.buckets.viewOfType(t).stream().map(b -> Pair.of(n.key, (T) b.get())));
+    }
+
+
+    /**
+     * Like the streams, a query neither counts as hits nor changes the eviction order.
+     */
+    @Override
+    public <T> MultibucketQuery<K, T> select(final Class<T> t)
+    {
+        return new MultibucketQuery<>(t, MultibucketQuery.entriesOf(nodes.entrySet(), e -> e.getValue().buckets,
+                                                                    indexes.contains(BucketIndex.TYPE)));
+    }
+
+
+    /**
+     * Like the streams, the stats neither count as hits nor change the eviction order.
+     */
+    @Override
+    public MultibucketStats stats()
+    {
+        return MultibucketStats.of(nodes.values(), n -> n.key, n -> n.buckets);
+    }
+
+
+    @Override
+    public void forEach(final BiConsumer<? super K, ? super Bucket<?>> action)
+    {
+        for(Node<K> node : nodes.values())
+        {
+            for(Bucket<?> b : node.buckets)
+            {
+                action.accept(node.key, b);
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return  "CachingMultibucket of size: "+size()+", weight: "+weight+"/"+maximum+", policy: "+policy;
+    }
+
+
+    private BucketList read(final K key)
+    {
+        Node<K> node = nodes.get(key);
+        if(node == null){
+            misses++;
+            if(sketch != null) sketch.increment(key);
+            return null;
+        }
+
+        hits++;
+        onAccess(node);
+        return node.buckets;
+    }
+
+    private Node<K> existingForWrite(final K key)
+    {
+        Node<K> node = nodes.get(key);
+        if(node != null) onAccess(node);
+
+        return node;
+    }
+
+    private Node<K> nodeForWrite(final K key)
+    {
+        Node<K> node = nodes.get(key);
+        if(node != null){
+            onAccess(node);
+            return node;
+        }
+
+        node = new Node<>(key, new BucketList(indexes));
+        nodes.put(key, node);
+        if(sketch != null){
+            sketch.increment(key);
+            window.addLast(node);
+        }else{
+            probation.addLast(node);
+        }
+
+        return node;
+    }
+
+    private void onAccess(final Node<K> node)
+    {
+        if(sketch == null){
+            probation.moveToLast(node);
+            return;
+        }
+
+        sketch.increment(node.key);
+        if(node.queue == probation){
+            probation.remove(node);
+            protectedQueue.addLast(node);
+            while(protectedQueue.weight > protectedMaximum && protectedQueue.first() != node)
+            {
+                Node<K> demoted = protectedQueue.first();
+                protectedQueue.remove(demoted);
+                probation.addLast(demoted);
+            }
+        }else{
+            node.queue.moveToLast(node);
+        }
+    }
+
+    private void afterWrite(final Node<K> node)
+    {
+        reweigh(node);
+        evict();
+    }
+
+    private void reweigh(final Node<K> node)
+    {
+        int newWeight = weigher.weigh(node.key, node.buckets.readOnly());
+        if(newWeight < 0) throw new IllegalArgumentException("Negative weight: "+newWeight);
+
+        node.queue.weight += newWeight - node.weight;
+        weight += newWeight - node.weight;
+        node.weight = newWeight;
+    }
+
+    /**
+     * With W-TinyLFU, the keys that overflow the window become candidates at the end of the probation queue,
+     * and every one of them is admitted only if it is more frequent than the victim at its start.
+     */
+    private void evict()
+    {
+        if(sketch == null){
+            while(weight > maximum)
+            {
+                evictNode(probation.first());
+            }
+            return;
+        }
+
+        while(window.weight > windowMaximum)
+        {
+            Node<K> candidate = window.first();
+            window.remove(candidate);
+            probation.addLast(candidate);
+        }
+
+        while(weight > maximum)
+        {
+            Node<K> victim = probation.first();
+            Node<K> candidate = probation.last();
+            if(victim == null){
+                evictNode(protectedQueue.first() != null ? protectedQueue.first() : window.first());
+            }else if(victim == candidate || sketch.frequency(candidate.key) > sketch.frequency(victim.key)){
+                evictNode(victim);
+            }else{
+                evictNode(candidate);
+            }
+        }
+    }
+
+    private void evictNode(final Node<K> node)
+    {
+        evictions++;
+        discard(node, RemovalCause.EVICTED);
+    }
+
+    private void discard(final Node<K> node, final RemovalCause cause)
+    {
+        nodes.remove(node.key);
+        weight -= node.weight;
+        node.queue.remove(node);
+        if(removalListener != null) removalListener.onRemoval(node.key, node.buckets.readOnly(), cause);
+    }
+
+
+    /**
+     * Computes the weight of a key from its Buckets.
+     */
+    @FunctionalInterface
+    public interface Weigher<K>
+    {
+        /**
+         * @return The non-negative weight of the key.
+         */
+        int weigh(K key, List<Bucket<?>> buckets);
+    }
+
+
+    /**
+     * Notified after a key has been removed from a {@code CachingMultibucket}.
+     */
+    @FunctionalInterface
+    public interface RemovalListener<K>
+    {
+        void onRemoval(K key, List<Bucket<?>> buckets, RemovalCause cause);
+    }
+
+
+    public enum RemovalCause
+    {
+        /**
+         * Removed by {@code remove}, or by removing its last {@code Bucket}.
+         */
+        EXPLICIT,
+
+        /**
+         * Evicted because the maximum was exceeded.
+         */
+        EVICTED
+    }
+
+
+    private static final class Node<K>
+    {
+        private final K key;
+        private final BucketList buckets;
+        private int weight;
+        private AccessQueue<K> queue;
+        private Node<K> prev;
+        private Node<K> next;
+
+        private Node(final K key, final BucketList buckets)
+        {
+            this.key = key;
+            this.buckets = buckets;
+        }
+    }
+
+
+    /**
+     * A doubly linked list of nodes, from the least to the most recently accessed, that sums their weights.
+     */
+    private static final class AccessQueue<K>
+    {
+        private final Node<K> head = new Node<>(null, null);
+        private long weight;
+
+        private AccessQueue()
+        {
+            head.prev = head;
+            head.next = head;
+        }
+
+        private Node<K> first()
+        {
+            return head.next == head ? null : head.next;
+        }
+
+        private Node<K> last()
+        {
+            return head.prev == head ? null : head.prev;
+        }
+
+        private void addLast(final Node<K> node)
+        {
+            node.prev = head.prev;
+            node.next = head;
+            head.prev.next = node;
+            head.prev = node;
+            node.queue = this;
+            weight += node.weight;
+        }
+
+        private void remove(final Node<K> node)
+        {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            node.queue = null;
+            weight -= node.weight;
+        }
+
+        private void moveToLast(final Node<K> node)
+        {
+            remove(node);
+            addLast(node);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.petrosp.structures.multibucket;
+
+import java.util.Objects;
+
+/**
+ * A single change of a {@link ChangeTrackingMultibucket}, as read from its {@link ChangeLog}. An event records the
+ * call that made the change, so applying the events in order to a copy of the multibucket, with
+ * {@link #applyTo(Multibucket)}, makes the same changes to the copy. The elements are not copied, so a copy in the
+ * same process may share its Collections and Maps with the tracked multibucket. Such a copy already sees the changes
+ * of the events that {@link #changesInPlace()}, and must skip them, or it would make those changes a second time.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ *
+ *
+ * @param <K> Type of the keys.
+ */
+public final class ChangeEvent<K>
+{
+    public enum Type
+    {
+        /** {@code put(key, value)}. The index is -1. */
+        PUT,
+        /** {@code replace(key, value, index)}. */
+        REPLACE,
+        /** {@code replaceSameType(key, value, index)}. */
+        REPLACE_SAME_TYPE,
+        /** {@code putInCollection(key, value, index)}. */
+        PUT_IN_COLLECTION,
+        /** {@code putInCollectionOfType(key, value, argument, index)}. */
+        PUT_IN_COLLECTION_OF_TYPE,
+        /** {@code putInMap(key, argument, value, index)}, where the argument is the key of the {@code Map}. */
+        PUT_IN_MAP,
+        /** {@code remove(key, index)}. The value is {@code null}. */
+        REMOVE,
+        /** {@code remove(key)}. The index is -1 and the value is {@code null}. */
+        REMOVE_KEY
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final K key;
+    private final int index;
+    private final Object value;
+    private final Object argument;
+
+    ChangeEvent(final long sequence, final Type type, final K key, final int index, final Object value, final Object argument)
+    {
+        this.sequence = sequence;
+        this.type = type;
+        this.key = key;
+        this.index = index;
+        this.value = value;
+        this.argument = argument;
+    }
+
+
+    /**
+     * @return The position of the event in its {@code ChangeLog}, starting from 0.
+     */
+    public long sequence()
+    {
+        return sequence;
+    }
+
+
+    public Type type()
+    {
+        return type;
+    }
+
+
+    public K key()
+    {
+        return key;
+    }
+
+
+    /**
+     * @return The index of the {@code Bucket}, as it was given to the call, or -1 if the call has no index.
+     */
+    public int index()
+    {
+        return index;
+    }
+
+
+    public Object value()
+    {
+        return value;
+    }
+
+
+    /**
+     * @return The extra argument of the call, or {@code null} if the call has none.
+     */
+    public Object argument()
+    {
+        return argument;
+    }
+
+
+    /**
+     * @return {@code true} for the {@code PUT_IN_*} events, that changed a Collection or a Map of the tracked
+     * multibucket in place, instead of replacing a Bucket.
+     */
+    public boolean changesInPlace()
+    {
+        return type == Type.PUT_IN_COLLECTION || type == Type.PUT_IN_COLLECTION_OF_TYPE || type == Type.PUT_IN_MAP;
+    }
+
+
+    /**
+     * Make the same call to the given multibucket.
+     */
+    public void applyTo(final Multibucket<K> target)
+    {
+        switch (type)
+        {
+            case PUT:
+                target.put(key, value);
+                break;
+            case REPLACE:
+                target.replace(key, value, index);
+                break;
+            case REPLACE_SAME_TYPE:
+                target.replaceSameType(key, value, index);
+                break;
+            case PUT_IN_COLLECTION:
+                target.putInCollection(key, value, index);
+                break;
+            case PUT_IN_COLLECTION_OF_TYPE:
+                target.putInCollectionOfType(key, value, argument, index);
+                break;
+            case PUT_IN_MAP:
+                target.putInMap(key, argument, value, index);
+                break;
+            case REMOVE:
+                target.remove(key, index);
+                break;
+            case REMOVE_KEY:
+                target.remove(key);
+                break;
+        }
+    }
+
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ChangeEvent<?> that = (ChangeEvent<?>) o;
+        return sequence == that.sequence && index == that.index && type == that.type && Objects.equals(key, that.key)
+                && Objects.equals(value, that.value) && Objects.equals(argument, that.argument);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(sequence, type, key, index, value, argument);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ChangeEvent #"+sequence+" "+type+" key: "+key+", index: "+index+", value: "+value
+                + (argument == null ? "" : ", argument: "+argument);
+    }
+}
@@ -0,0 +1,182 @@
+package com.petrosp.structures.multibucket;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A fixed-size ring buffer of the latest {@link ChangeEvent}s of a {@link ChangeTrackingMultibucket}. The writer never
+ * waits for the consumers: appending an event is a store in the buffer and an ordered write of the new head, and
+ * when the buffer is full the oldest events are overwritten. Every consumer reads through its own {@link Cursor},
+ * from any thread, in batches of any size.
+ * <p>
+ * A consumer that falls behind by more than the capacity has missed events and is <i>overrun</i>. It must copy the
+ * whole tracked multibucket again, and then {@link Cursor#reset()} its cursor to the head.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ *
+ *
+ * @param <K> Type of the keys.
+ */
+public final class ChangeLog<K>
+{
+    private final AtomicReferenceArray<ChangeEvent<K>> slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param capacity The number of the latest events that are kept, rounded up to a power of two.
+     */
+    public ChangeLog(int capacity)
+    {
+        if(capacity <= 0) throw new IllegalArgumentException("Non-positive capacity: "+capacity);
+
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+
+    public int capacity()
+    {
+        return mask + 1;
+    }
+
+
+    /**
+     * @return The sequence of the next event, which is also the number of events that were ever appended.
+     */
+    public long head()
+    {
+        return head.get();
+    }
+
+
+    /**
+     * @return A cursor that starts from the next event.
+     */
+    public Cursor cursor()
+    {
+        return new Cursor(head.get());
+    }
+
+
+    /**
+     * Only one thread may append at a time.
+     */
+    void append(final ChangeEvent.Type type, final K key, final int index, final Object value, final Object argument)
+    {
+        long sequence = head.get();
+        slots.lazySet((int) sequence & mask, new ChangeEvent<>(sequence, type, key, index, value, argument));
+        head.lazySet(sequence + 1);
+    }
+
+
+    /**
+     * The position of a single consumer in the log. A cursor must be used by one thread at a time.
+     */
+    public final class Cursor
+    {
+        private long position;
+        private boolean overrun;
+
+        private Cursor(final long position)
+        {
+            this.position = position;
+        }
+
+
+        /**
+         * @return The sequence of the next event to read.
+         */
+        public long position()
+        {
+            return position;
+        }
+
+
+        /**
+         * @return The number of events that are available to read, or -1 if the cursor is overrun.
+         */
+        public long lag()
+        {
+            return isOverrun() ? -1 : head.get() - position;
+        }
+
+
+        /**
+         * @return {@code true} if events that weren't read yet were overwritten.
+         */
+        public boolean isOverrun()
+        {
+            if(!overrun && head.get() - position > capacity()) overrun = true;
+            return overrun;
+        }
+
+
+        /**
+         * Skip all the available events, after the consumer copied the whole tracked multibucket.
+         */
+        public void reset()
+        {
+            position = head.get();
+            overrun = false;
+        }
+
+
+        /**
+         * Pass the available events to the consumer, in order.
+         * @param maxEvents The maximum number of events to read.
+         * @return The number of events that were read, or -1 if the cursor is overrun.
+         */
+        public int poll(final Consumer<? super ChangeEvent<K>> consumer, final int maxEvents)
+        {
+            if(isOverrun()) return -1;
+
+            long end = Math.min(head.get(), position + maxEvents);
+            int read = 0;
+            while(position < end)
+            {
+                ChangeEvent<K> event = slots.get((int) position & mask);
+                if(event == null || event.sequence() != position){
+                    overrun = true;
+                    return -1;
+                }
+
+                consumer.accept(event);
+                position++;
+                read++;
+            }
+
+            return read;
+        }
+
+
+        /**
+         * Apply all the available events to the given copy of the tracked multibucket, in order. When the cursor is
+         * overrun, the copy has missed changes: copy the whole tracked multibucket again and {@link #reset()} the cursor.
+         * @return The number of events that were read, or -1 if the cursor is overrun.
+         */
+        public int applyTo(final Multibucket<K> replica)
+        {
+            return applyTo(replica, false);
+        }
+
+
+        /**
+         * Same as {@link #applyTo(Multibucket)}, but if the copy shares its Collections and Maps with the tracked
+         * multibucket, the events that {@link ChangeEvent#changesInPlace()} are already visible in it, and are skipped.
+         * @param sharesElements Whether the copy holds the same Collections and Maps as the tracked multibucket,
+         *                       as a copy made in the same process without copying the elements does.
+         * @return The number of events that were read, or -1 if the cursor is overrun.
+         */
+        public int applyTo(final Multibucket<K> replica, final boolean sharesElements)
+        {
+            return poll(e -> {
+                if(!sharesElements || !e.changesInPlace()) e.applyTo(replica);
+            }, Integer.MAX_VALUE);
+        }
+    }
+}
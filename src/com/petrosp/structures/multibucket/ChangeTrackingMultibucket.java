@@ -0,0 +1,311 @@
+package com.petrosp.structures.multibucket;
+
+import com.petrosp.structures.Pair;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * A {@code Multibucket} that passes every call to another one, and records every change in a {@link ChangeLog}, so
+ * that copies of it can be kept in sync by applying only the changes, instead of copying all the keys again:
+ * <pre>{@code
+ * ChangeLog<K>.Cursor cursor = tracked.changeLog().cursor();
+ * // copy the tracked multibucket to the replica
+ * ...
+ * if(cursor.applyTo(replica) == -1) { // copy it again and cursor.reset() }
+ * }</pre>
+ * A change is recorded as the call that made it. Calls that report that they changed nothing are not recorded,
+ * while calls that can't report it, such as {@code replace} and {@code remove(key, index)}, are always recorded,
+ * and also change nothing when they are applied to an identical copy. {@code compute}, {@code merge} and
+ * {@code computeIfAbsentOfType} are recorded as the {@code put}, {@code replace} or {@code remove} that they made.
+ * The events hold the same elements, not copies of them, so a copy that was built in the same process usually shares
+ * its Collections and Maps with the tracked multibucket, and already sees {@code putInCollection},
+ * {@code putInCollectionOfType} and {@code putInMap}: such a copy must be synced with
+ * {@code cursor.applyTo(replica, true)}, that skips their events.
+ * <p>
+ * Changes made directly to the returned Buckets, or to the wrapped multibucket, are not recorded. This class is
+ * not thread-safe, but the log can be read from any thread.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ *
+ *
+ * @param <K> Type of the keys.
+ */
+public class ChangeTrackingMultibucket<K> implements Multibucket<K>
+{
+    private final Multibucket<K> delegate;
+    private final ChangeLog<K> changeLog;
+
+    /**
+     * @param delegate The multibucket that stores the keys.
+     * @param logCapacity The number of the latest changes that are kept for the consumers.
+     */
+    public ChangeTrackingMultibucket(Multibucket<K> delegate, int logCapacity)
+    {
+        this.delegate = delegate;
+        this.changeLog = new ChangeLog<>(logCapacity);
+    }
+
+
+    public ChangeLog<K> changeLog()
+    {
+        return changeLog;
+    }
+
+
+    @Override
+    public int size()
+    {
+        return delegate.size();
+    }
+
+
+    @Override
+    public Set<K> keySet()
+    {
+        return Collections.unmodifiableSet(delegate.keySet());
+    }
+
+
+    @Override
+    public <V> boolean contains(final K key, final V e)
+    {
+        return delegate.contains(key, e);
+    }
+
+
+    @Override
+    public <T> boolean containsType(final K key, final Class<T> t)
+    {
+        return delegate.containsType(key, t);
+    }
+
+
+    @Override
+    public boolean containsKey(final K key)
+    {
+        return delegate.containsKey(key);
+    }
+
+
+    @Override
+    public <V> void put(final K key, final V e)
+    {
+        delegate.put(key, e);
+        changeLog.append(ChangeEvent.Type.PUT, key, -1, e, null);
+    }
+
+
+    @Override
+    public <V> void putAll(final K key, final Collection<V> elements)
+    {
+        delegate.putAll(key, elements);
+        for(V e : elements)
+        {
+            changeLog.append(ChangeEvent.Type.PUT, key, -1, e, null);
+        }
+    }
+
+
+    @Override
+    public <V> boolean putIfAbsent(final K key, final V e)
+    {
+        if(!delegate.putIfAbsent(key, e)) return false;
+
+        changeLog.append(ChangeEvent.Type.PUT, key, -1, e, null);
+        return true;
+    }
+
+
+    @Override
+    public <V> boolean putIfAbsentType(final K key, final V e)
+    {
+        if(!delegate.putIfAbsentType(key, e)) return false;
+
+        changeLog.append(ChangeEvent.Type.PUT, key, -1, e, null);
+        return true;
+    }
+
+
+    @Override
+    public <V> boolean putInCollection(final K key, final V e, final int index)
+    {
+        if(!delegate.putInCollection(key, e, index)) return false;
+
+        changeLog.append(ChangeEvent.Type.PUT_IN_COLLECTION, key, index, e, null);
+        return true;
+    }
+
+
+    @Override
+    public <T, V> boolean putInCollectionOfType(final K key, final V e, final T t, final int index)
+    {
+        if(!delegate.putInCollectionOfType(key, e, t, index)) return false;
+
+        changeLog.append(ChangeEvent.Type.PUT_IN_COLLECTION_OF_TYPE, key, index, e, t);
+        return true;
+    }
+
+
+    @Override
+    public <M, V> boolean putInMap(final K key, final M mapKey, final V e, final int index)
+    {
+        if(!delegate.putInMap(key, mapKey, e, index)) return false;
+
+        changeLog.append(ChangeEvent.Type.PUT_IN_MAP, key, index, e, mapKey);
+        return true;
+    }
+
+
+    @Override
+    public <V> Object replace(final K key, final V e, final int index)
+    {
+        Object prev = delegate.replace(key, e, index);
+        changeLog.append(ChangeEvent.Type.REPLACE, key, index, e, null);
+        return prev;
+    }
+
+
+    @Override
+    public <V> V replaceSameType(final K key, final V e, final int index)
+    {
+        V prev = delegate.replaceSameType(key, e, index);
+        changeLog.append(ChangeEvent.Type.REPLACE_SAME_TYPE, key, index, e, null);
+        return prev;
+    }
+
+
+    @Override
+    public <V> int getFirstIndex(final K key, final V e)
+    {
+        return delegate.getFirstIndex(key, e);
+    }
+
+
+    @Override
+    public <V> List<Integer> getAllIndexes(final K key, final V e)
+    {
+        return delegate.getAllIndexes(key, e);
+    }
+
+
+    @Override
+    public <V> int[] getAllIndexesAsArray(final K key, final V e)
+    {
+        return delegate.getAllIndexesAsArray(key, e);
+    }
+
+
+    @Override
+    public <V> PrimitiveIterator.OfInt indexCursor(final K key, final V e)
+    {
+        return delegate.indexCursor(key, e);
+    }
+
+
+    @Override
+    public <E> E get(final K key, final int index)
+    {
+        return delegate.get(key, index);
+    }
+
+
+    @Override
+    public <M, V> V getFromMap(final K key, final M mapKey, final int index)
+    {
+        return delegate.getFromMap(key, mapKey, index);
+    }
+
+
+    @Override
+    public <T> List<Bucket<?>> getAllOfType(final K key, final Class<T> t)
+    {
+        return delegate.getAllOfType(key, t);
+    }
+
+
+    @Override
+    public <T> List<Bucket<?>> viewAllOfType(final K key, final Class<T> t)
+    {
+        return delegate.viewAllOfType(key, t);
+    }
+
+
+    @Override
+    public <T> T getOfType(final K key, final Class<T> t, final int index)
+    {
+        return delegate.getOfType(key, t, index);
+    }
+
+
+    @Override
+    public List<Bucket<?>> getAll(final K key)
+    {
+        return delegate.getAll(key);
+    }
+
+
+    @Override
+    public Stream<Pair<K, Bucket<?>>> stream()
+    {
+        return delegate.stream();
+    }
+
+
+    @Override
+    public <T> Stream<Pair<K, T>> streamOfType(final Class<T> t)
+    {
+        return delegate.streamOfType(t);
+    }
+
+
+    @Override
+    public <T> MultibucketQuery<K, T> select(final Class<T> t)
+    {
+        return delegate.select(t);
+    }
+
+
+    @Override
+    public void forEach(final BiConsumer<? super K, ? super Bucket<?>> action)
+    {
+        delegate.forEach(action);
+    }
+
+
+    @Override
+    public MultibucketStats stats()
+    {
+        return delegate.stats();
+    }
+
+
+    @Override
+    public List<Bucket<?>> remove(final K key)
+    {
+        List<Bucket<?>> removed = delegate.remove(key);
+        if(removed != null){
+            changeLog.append(ChangeEvent.Type.REMOVE_KEY, key, -1, null, null);
+        }
+        return removed;
+    }
+
+
+    @Override
+    public Object remove(final K key, final int index)
+    {
+        Object prev = delegate.remove(key, index);
+        changeLog.append(ChangeEvent.Type.REMOVE, key, index, null, null);
+        return prev;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return  "ChangeTrackingMultibucket of size: "+size()+", changes: "+changeLog.head()+", over: "+delegate;
+    }
+}
@@ -0,0 +1,161 @@
+package com.petrosp.structures.multibucket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A registry of {@link ValueCodec}s keyed by the class type of the elements. Every registered class type gets a
+ * numeric id, which is stored next to the encoded elements so that they can be decoded back to the same class type.
+ * The id {@code 0} is reserved for {@code null} elements.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ */
+public final class CodecRegistry
+{
+    static final int NULL_ID = 0;
+
+    private final Map<Class<?>, Integer> ids = new HashMap<>();
+    private final List<Class<?>> types = new ArrayList<>();
+    private final List<ValueCodec<?>> codecs = new ArrayList<>();
+
+    public CodecRegistry()
+    {
+        types.add(null);
+        codecs.add(null);
+    }
+
+
+    /**
+     * @return A registry with codecs for {@code String}, {@code byte[]} and the boxed primitive types.
+     */
+    public static CodecRegistry withDefaults()
+    {
+        CodecRegistry registry = new CodecRegistry();
+        registry.register(String.class, ValueCodec.of(
+                s -> s.getBytes(StandardCharsets.UTF_8).length,
+                (s, b) -> b.put(s.getBytes(StandardCharsets.UTF_8)),
+                (b, length) -> {
+                    byte[] bytes = new byte[length];
+                    b.get(bytes);
+                    return new String(bytes, StandardCharsets.UTF_8);
+                }));
+        registry.register(Integer.class, ValueCodec.of(i -> Integer.BYTES, (i, b) -> b.putInt(i), (b, length) -> b.getInt()));
+        registry.register(Long.class, ValueCodec.of(l -> Long.BYTES, (l, b) -> b.putLong(l), (b, length) -> b.getLong()));
+        registry.register(Double.class, ValueCodec.of(d -> Double.BYTES, (d, b) -> b.putDouble(d), (b, length) -> b.getDouble()));
+        registry.register(Float.class, ValueCodec.of(f -> Float.BYTES, (f, b) -> b.putFloat(f), (b, length) -> b.getFloat()));
+        registry.register(Short.class, ValueCodec.of(s -> Short.BYTES, (s, b) -> b.putShort(s), (b, length) -> b.getShort()));
+        registry.register(Character.class, ValueCodec.of(c -> Character.BYTES, (c, b) -> b.putChar(c), (b, length) -> b.getChar()));
+        registry.register(Byte.class, ValueCodec.of(v -> Byte.BYTES, (v, b) -> b.put(v), (b, length) -> b.get()));
+        registry.register(Boolean.class, ValueCodec.of(v -> 1, (v, b) -> b.put((byte)(v ? 1 : 0)), (b, length) -> b.get() != 0));
+        registry.register(byte[].class, ValueCodec.of(v -> v.length, (v, b) -> b.put(v), (b, length) -> {
+            byte[] bytes = new byte[length];
+            b.get(bytes);
+            return bytes;
+        }));
+
+        return registry;
+    }
+
+
+    /**
+     * Register the codec of a class type. Registering a class type again replaces its codec but keeps its id.
+     * @return This registry, to chain registrations.
+     */
+    public <T> CodecRegistry register(final Class<T> type, final ValueCodec<T> codec)
+    {
+        Integer id = ids.get(type);
+        if(id != null){
+            codecs.set(id, codec);
+        }else{
+            ids.put(type, types.size());
+            types.add(type);
+            codecs.add(codec);
+        }
+
+        return this;
+    }
+
+
+    /**
+     * @return {@code true} if a codec is registered for the class type.
+     */
+    public boolean isRegistered(final Class<?> type)
+    {
+        return ids.containsKey(type);
+    }
+
+
+    /**
+     * @return The registered class type with the given name, or {@code null}.
+     */
+    public Class<?> typeNamed(final String name)
+    {
+        for (int id = NULL_ID + 1; id < types.size(); id++) {
+            if(types.get(id).getName().equals(name)) return types.get(id);
+        }
+
+        return null;
+    }
+
+
+    /**
+     * @return The id of the class type, or -1 if it isn't registered.
+     */
+    int idOf(final Class<?> type)
+    {
+        Integer id = ids.get(type);
+        return id == null ? -1 : id;
+    }
+
+
+    /**
+     * @return The id of the class type of the element.
+     * @throws IllegalArgumentException If no codec is registered for the class type of the element.
+     */
+    int idOfElement(final Object element)
+    {
+        if(element == null) return NULL_ID;
+
+        int id = idOf(element.getClass());
+        if(id == -1) throw new IllegalArgumentException("No codec registered for "+element.getClass().getName());
+
+        return id;
+    }
+
+
+    Class<?> typeOf(final int id)
+    {
+        return types.get(id);
+    }
+
+
+    @SuppressWarnings("unchecked")
+    ValueCodec<Object> codecOf(final int id)
+    {
+        return (ValueCodec<Object>) codecs.get(id);
+    }
+
+
+    /**
+     * @return The number of bytes of the encoded element.
+     */
+    int sizeOf(final int id, final Object element)
+    {
+        return id == NULL_ID ? 0 : codecOf(id).sizeOf(element);
+    }
+
+
+    void encode(final int id, final Object element, final ByteBuffer buffer)
+    {
+        if(id != NULL_ID) codecOf(id).encode(element, buffer);
+    }
+
+
+    Object decode(final int id, final ByteBuffer buffer, final int length)
+    {
+        return id == NULL_ID ? null : codecOf(id).decode(buffer, length);
+    }
+}
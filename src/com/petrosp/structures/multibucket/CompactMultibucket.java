@@ -0,0 +1,414 @@
+package com.petrosp.structures.multibucket;
+
+import java.util.*;
+
+/**
+ * A memory efficient {@code Multibucket}, that stores the raw elements of every key in a growable {@code Object[]}
+ * instead of wrapping each one of them in a {@code Bucket} inside an {@code ArrayList}.
+ * <p>
+ * Buckets are only created as views when they are requested by {@code getAll} and {@code getAllOfType}. These
+ * Buckets are detached: they contain the same element objects, but replacing their element does not affect the
+ * structure. Use {@code replace} instead.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ *
+ *
+ * @param <K> Type of the keys.
+ */
+public class CompactMultibucket<K> implements Multibucket<K>
+{
+    private static final int DEFAULT_VALUES_CAPACITY = 2;
+
+    private final Map<K,Values> valuesMap;
+
+    public CompactMultibucket()
+    {
+        valuesMap = new HashMap<>();
+    }
+
+    public CompactMultibucket(int initialCapacity)
+    {
+        valuesMap = new HashMap<>(initialCapacity);
+    }
+
+    public CompactMultibucket(int initialCapacity, float loadFactor)
+    {
+        valuesMap = new HashMap<>(initialCapacity, loadFactor);
+    }
+
+
+    @Override
+    public int size()
+    {
+        return valuesMap.size();
+    }
+
+
+    @Override
+    public <V> void put(final K key, final V e)
+    {
+        valuesMap.computeIfAbsent(key, k -> new Values()).add(e);
+    }
+
+
+    @Override
+    public <V> boolean putIfAbsent(final K key, final V e)
+    {
+        Values values = valuesMap.computeIfAbsent(key, k -> new Values());
+        if(values.indexOf(e) != -1) return false;
+
+        values.add(e);
+        return true;
+    }
+
+
+    @Override
+    public <V> boolean putIfAbsentType(final K key, final V e)
+    {
+        Class<?> type = e.getClass();
+        Values values = valuesMap.computeIfAbsent(key, k -> new Values());
+        if(values.indexOfType(type, 0) != -1) return false;
+
+        values.add(e);
+        return true;
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <V> boolean putInCollection(final K key, final V e, final int index)
+    {
+        Object element = get(key, index);
+        if(!(element instanceof Collection)) return false;
+
+        try{
+            ((Collection<V>) element).add(e);
+        }catch (Exception ex) {
+            return false;
+        }
+
+        return true;
+    }
+
+
+    @Override
+    public <T, V> boolean putInCollectionOfType(final K key, final V e, final T t, final int index)
+    {
+        return putInCollection(key, e, index);
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <M, V> boolean putInMap(final K key, final M mapKey, final V e, final int index)
+    {
+        Object element = get(key, index);
+        if(!(element instanceof Map)) return false;
+
+        try{
+            ((Map<M, V>) element).put(mapKey, e);
+        }catch (Exception ex) {
+            return false;
+        }
+
+        return true;
+    }
+
+
+    @Override
+    public <V> Object replace(final K key, final V e, final int index)
+    {
+        Values values = valuesMap.get(key);
+        if(values == null || index < 0 || index >= values.size) return null;
+
+        Object prev = values.elements[index];
+        values.elements[index] = e;
+        return prev;
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <V> V replaceSameType(final K key, final V e, final int index)
+    {
+        Values values = valuesMap.get(key);
+        if(values == null) return null;
+
+        int generalIndex = values.indexOfType(e.getClass(), index);
+        if(generalIndex == -1) return null;
+
+        V prev = (V)values.elements[generalIndex];
+        values.elements[generalIndex] = e;
+        return prev;
+    }
+
+
+    @Override
+    public <V> boolean contains(final K key, final V e)
+    {
+        Values values = valuesMap.get(key);
+        if(values == null) return false;
+
+        return values.indexOf(e) != -1;
+    }
+
+
+    @Override
+    public <T> boolean containsType(final K key, final Class<T> t)
+    {
+        Values values = valuesMap.get(key);
+        if(values == null) return false;
+
+        return values.indexOfType(t, 0) != -1;
+    }
+
+
+    @Override
+    public boolean containsKey(final K key)
+    {
+        return valuesMap.containsKey(key);
+    }
+
+
+    @Override
+    public Set<K> keySet()
+    {
+        return valuesMap.keySet();
+    }
+
+
+    @Override
+    public <V> int getFirstIndex(final K key, final V e)
+    {
+        Values values = valuesMap.get(key);
+        if(values == null) return -1;
+
+        return values.indexOf(e);
+    }
+
+
+    @Override
+    public <V> List<Integer> getAllIndexes(final K key, final V e)
+    {
+        List<Integer> out = new ArrayList<>();
+        Values values = valuesMap.get(key);
+        if(values == null) return out;
+
+        for (int i = 0; i < values.size; i++) {
+            if(Objects.equals(values.elements[i], e)) out.add(i);
+        }
+
+        return out;
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <E> E get(final K key, final int index)
+    {
+        Values values = valuesMap.get(key);
+        if(values == null || index < 0 || index >= values.size) return null;
+
+        return (E)values.elements[index];
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <M, V> V getFromMap(final K key, final M mapKey, final int index)
+    {
+        Object element = get(key, index);
+        if(!(element instanceof Map)) return null;
+
+        return ((Map<M,V>)element).get(mapKey);
+    }
+
+
+    @Override
+    public <T> List<Bucket<?>> getAllOfType(final K key, final Class<T> t)
+    {
+        List<Bucket<?>> out = new ArrayList<>();
+        Values values = valuesMap.get(key);
+        if(values == null) return out;
+
+        for (int i = 0; i < values.size; i++) {
+            if(typeOf(values.elements[i]) == t) out.add(Bucket.of(values.elements[i]));
+        }
+
+        return out;
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <T> T getOfType(final K key, final Class<T> t, final int index)
+    {
+        Values values = valuesMap.get(key);
+        if(values == null) return null;
+
+        int generalIndex = values.indexOfType(t, index);
+        return generalIndex == -1 ? null : (T)values.elements[generalIndex];
+    }
+
+
+    @Override
+    public List<Bucket<?>> getAll(final K key)
+    {
+        Values values = valuesMap.get(key);
+        if(values == null) return Collections.emptyList();
+
+        List<Bucket<?>> out = new ArrayList<>(values.size);
+        for (int i = 0; i < values.size; i++) {
+            out.add(Bucket.of(values.elements[i]));
+        }
+
+        return Collections.unmodifiableList(out);
+    }
+
+
+    @Override
+    public List<Bucket<?>> remove(final K key)
+    {
+        Values values = valuesMap.remove(key);
+        if(values == null) return null;
+
+        List<Bucket<?>> out = new ArrayList<>(values.size);
+        for (int i = 0; i < values.size; i++) {
+            out.add(Bucket.of(values.elements[i]));
+        }
+
+        return out;
+    }
+
+
+    @Override
+    public Object remove(final K key, final int index)
+    {
+        Values values = valuesMap.get(key);
+        if(values == null || index < 0 || index >= values.size) return null;
+
+        Object prev = values.remove(index);
+        if(values.size == 0) valuesMap.remove(key);
+
+        return prev;
+    }
+
+
+    /**
+     * The heap estimate counts the elements as stored in the arrays of the keys, without a {@code Bucket} each.
+     */
+    @Override
+    public MultibucketStats stats()
+    {
+        return MultibucketStats.of(valuesMap.keySet(), k -> k, this::getAll, false);
+    }
+
+
+    /**
+     * Shrink the arrays of all the keys to the exact number of their elements. Useful after a bulk load,
+     * when no more elements are expected.
+     */
+    public void trimToSize()
+    {
+        for(Values values : valuesMap.values())
+        {
+            if(values.elements.length != values.size){
+                values.elements = Arrays.copyOf(values.elements, values.size);
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CompactMultibucket<?> that = (CompactMultibucket<?>) o;
+        return valuesMap.equals(that.valuesMap);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(valuesMap);
+    }
+
+    @Override
+    public String toString()
+    {
+        return  "CompactMultibucket of size: "+size();
+    }
+
+
+    private static Class<?> typeOf(final Object element)
+    {
+        return element == null ? null : element.getClass();
+    }
+
+
+    /**
+     * The raw elements of a single key.
+     */
+    private static final class Values
+    {
+        private Object[] elements = new Object[DEFAULT_VALUES_CAPACITY];
+        private int size;
+
+        private void add(final Object e)
+        {
+            if(size == elements.length){
+                elements = Arrays.copyOf(elements, Math.max(size + (size >> 1), size + 1));
+            }
+            elements[size++] = e;
+        }
+
+        private Object remove(final int index)
+        {
+            Object prev = elements[index];
+            System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+            elements[--size] = null;
+            return prev;
+        }
+
+        private int indexOf(final Object e)
+        {
+            for (int i = 0; i < size; i++) {
+                if(Objects.equals(elements[i], e)) return i;
+            }
+
+            return -1;
+        }
+
+        private int indexOfType(final Class<?> t, final int nth)
+        {
+            int typeCounter = 0;
+            for (int i = 0; i < size; i++) {
+                if(typeOf(elements[i]) == t && typeCounter++ == nth) return i;
+            }
+
+            return -1;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Values that = (Values) o;
+            if(size != that.size) return false;
+
+            for (int i = 0; i < size; i++) {
+                if(!Objects.equals(elements[i], that.elements[i])) return false;
+            }
+
+            return true;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int hash = 1;
+            for (int i = 0; i < size; i++) {
+                hash = 31 * hash + Objects.hashCode(elements[i]);
+            }
+
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,580 @@
+package com.petrosp.structures.multibucket;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A thread-safe {@code Multibucket}. Every key owns its own lock, so writers on different keys never contend,
+ * and readers never lock at all: they read the Buckets that the writers publish with a volatile write.
+ * <p>
+ * Elements that are mutated in place (Collections and Maps inside Buckets) are only protected while they are
+ * changed through {@code putInCollection}/{@code putInMap}.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ *
+ *
+ * @param <K> Type of the keys.
+ */
+public class ConcurrentHashMultibucket<K> implements Multibucket<K>
+{
+    private static final Bucket<?>[] EMPTY_SLOT = new Bucket<?>[0];
+    private static final Published EMPTY_PUBLISHED = new Published(EMPTY_SLOT, 0);
+
+    private final ConcurrentHashMap<K,Slot> bucketMap;
+
+    public ConcurrentHashMultibucket()
+    {
+        bucketMap = new ConcurrentHashMap<>();
+    }
+
+    public ConcurrentHashMultibucket(int initialCapacity)
+    {
+        bucketMap = new ConcurrentHashMap<>(initialCapacity);
+    }
+
+    public ConcurrentHashMultibucket(int initialCapacity, float loadFactor, int concurrencyLevel)
+    {
+        bucketMap = new ConcurrentHashMap<>(initialCapacity, loadFactor, concurrencyLevel);
+    }
+
+
+    @Override
+    public int size()
+    {
+        return bucketMap.size();
+    }
+
+
+    @Override
+    public <V> void put(final K key, final V e)
+    {
+        Bucket<V> bucket = Bucket.of(e);
+        while(true)
+        {
+            Slot slot = bucketMap.computeIfAbsent(key, k -> new Slot());
+            synchronized (slot) {
+                if(slot.removed) continue;
+                slot.add(bucket);
+                return;
+            }
+        }
+    }
+
+
+    @Override
+    public <V> boolean putIfAbsent(final K key, final V e)
+    {
+        while(true)
+        {
+            Slot slot = bucketMap.computeIfAbsent(key, k -> new Slot());
+            synchronized (slot) {
+                if(slot.removed) continue;
+                if(slot.indexOf(e) != -1) return false;
+                slot.add(Bucket.of(e));
+                return true;
+            }
+        }
+    }
+
+
+    @Override
+    public <V> boolean putIfAbsentType(final K key, final V e)
+    {
+        Class<?> type = e.getClass();
+        while(true)
+        {
+            Slot slot = bucketMap.computeIfAbsent(key, k -> new Slot());
+            synchronized (slot) {
+                if(slot.removed) continue;
+                if(slot.indexOfType(type, 0) != -1) return false;
+                slot.add(Bucket.of(e));
+                return true;
+            }
+        }
+    }
+
+
+    @Override
+    public <V> boolean putInCollection(final K key, final V e, final int index)
+    {
+        Slot slot = bucketMap.get(key);
+        if(slot == null) return false;
+
+        synchronized (slot) {
+            if(index < 0 || index >= slot.size) return false;
+
+            Bucket<?> b = slot.buckets[index];
+            if(!b.containsCollection()) return false;
+            try{
+                b.addToCollection(e);
+            }catch (Exception ex) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    @Override
+    public <T, V> boolean putInCollectionOfType(final K key, final V e, final T t, final int index)
+    {
+        return putInCollection(key, e, index);
+    }
+
+
+    @Override
+    public <M, V> boolean putInMap(final K key, final M mapKey, final V e, final int index)
+    {
+        Slot slot = bucketMap.get(key);
+        if(slot == null) return false;
+
+        synchronized (slot) {
+            if(index < 0 || index >= slot.size) return false;
+
+            Bucket<?> b = slot.buckets[index];
+            if(!b.containsMap()) return false;
+            try{
+                b.addToMap(mapKey, e);
+            }catch (Exception ex) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    @Override
+    public <V> Object replace(final K key, final V e, final int index)
+    {
+        Slot slot = bucketMap.get(key);
+        if(slot == null) return null;
+
+        synchronized (slot) {
+            if(index < 0 || index >= slot.size) return null;
+
+            return slot.set(index, Bucket.of(e)).get();
+        }
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <V> V replaceSameType(final K key, final V e, final int index)
+    {
+        Slot slot = bucketMap.get(key);
+        if(slot == null) return null;
+
+        synchronized (slot) {
+            int generalIndex = slot.indexOfType(e.getClass(), index);
+            if(generalIndex == -1) return null;
+
+            return (V)slot.set(generalIndex, Bucket.of(e)).get();
+        }
+    }
+
+
+    /**
+     * The function is applied atomically, while the Buckets of the key are locked.
+     */
+    @Override @SuppressWarnings("unchecked")
+    public <V> V compute(final K key, final int index, final Function<? super V, ? extends V> remappingFunction)
+    {
+        Slot slot = bucketMap.get(key);
+        if(slot == null) return null;
+
+        synchronized (slot) {
+            if(slot.removed || index < 0 || index >= slot.size) return null;
+
+            V next = remappingFunction.apply((V) slot.buckets[index].get());
+            setOrRemove(key, slot, index, next);
+            return next;
+        }
+    }
+
+
+    /**
+     * The supplier is called atomically, while the Buckets of the key are locked, so it is called at most once
+     * for every key and type.
+     */
+    @Override @SuppressWarnings("unchecked")
+    public <T> T computeIfAbsentOfType(final K key, final Class<T> t, final Supplier<? extends T> supplier)
+    {
+        while(true)
+        {
+            Slot slot = bucketMap.computeIfAbsent(key, k -> new Slot());
+            synchronized (slot) {
+                if(slot.removed) continue;
+
+                int generalIndex = slot.indexOfType(t, 0);
+                if(generalIndex != -1) return (T) slot.buckets[generalIndex].get();
+
+                try{
+                    T created = supplier.get();
+                    if(created != null) slot.add(Bucket.of(created));
+                    return created;
+                }finally {
+                    if(slot.size == 0){
+                        slot.removed = true;
+                        bucketMap.remove(key, slot);
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * The function is applied atomically, while the Buckets of the key are locked.
+     */
+    @Override @SuppressWarnings("unchecked")
+    public <V> V merge(final K key, final V e, final BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+    {
+        Class<?> type = e.getClass();
+        while(true)
+        {
+            Slot slot = bucketMap.computeIfAbsent(key, k -> new Slot());
+            synchronized (slot) {
+                if(slot.removed) continue;
+
+                int generalIndex = slot.indexOfType(type, 0);
+                if(generalIndex == -1){
+                    slot.add(Bucket.of(e));
+                    return e;
+                }
+
+                V next = remappingFunction.apply((V) slot.buckets[generalIndex].get(), e);
+                setOrRemove(key, slot, generalIndex, next);
+                return next;
+            }
+        }
+    }
+
+
+    @Override
+    public <V> boolean contains(final K key, final V e)
+    {
+        Slot slot = bucketMap.get(key);
+        if(slot == null) return false;
+
+        return slot.indexOf(e) != -1;
+    }
+
+
+    @Override
+    public <T> boolean containsType(final K key, final Class<T> t)
+    {
+        Slot slot = bucketMap.get(key);
+        if(slot == null) return false;
+
+        return slot.indexOfType(t, 0) != -1;
+    }
+
+
+    @Override
+    public boolean containsKey(final K key)
+    {
+        return bucketMap.containsKey(key);
+    }
+
+
+    @Override
+    public Set<K> keySet()
+    {
+        return bucketMap.keySet();
+    }
+
+
+    @Override
+    public <V> int getFirstIndex(final K key, final V e)
+    {
+        Slot slot = bucketMap.get(key);
+        if(slot == null) return -1;
+
+        return slot.indexOf(e);
+    }
+
+
+    @Override
+    public <V> List<Integer> getAllIndexes(final K key, final V e)
+    {
+        List<Integer> out = new ArrayList<>();
+        Slot slot = bucketMap.get(key);
+        if(slot == null) return out;
+
+        Published published = slot.published;
+        for (int i = 0; i < published.size; i++) {
+            if(Objects.equals(published.buckets[i].get(), e)){
+                out.add(i);
+            }
+        }
+
+        return out;
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <E> E get(final K key, final int index)
+    {
+        Slot slot = bucketMap.get(key);
+        if(slot == null) return null;
+
+        Bucket<?> b = slot.bucketAt(index);
+        return b == null ? null : (E)b.get();
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <M, V> V getFromMap(final K key, final M mapKey, final int index)
+    {
+        Object element = get(key, index);
+        if(!(element instanceof Map)) return null;
+
+        return ((Map<M,V>)element).get(mapKey);
+    }
+
+
+    @Override
+    public <T> List<Bucket<?>> getAllOfType(final K key, final Class<T> t)
+    {
+        List<Bucket<?>> out = new ArrayList<>();
+        Slot slot = bucketMap.get(key);
+        if(slot == null) return out;
+
+        Published published = slot.published;
+        for (int i = 0; i < published.size; i++) {
+            if(typeOf(published.buckets[i]) == t) out.add(published.buckets[i]);
+        }
+
+        return out;
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <T> T getOfType(final K key, final Class<T> t, final int index)
+    {
+        Slot slot = bucketMap.get(key);
+        if(slot == null) return null;
+
+        Published published = slot.published;
+        int generalIndex = Slot.indexOfType(published.buckets, published.size, t, index);
+        return generalIndex == -1 ? null : (T)published.buckets[generalIndex].get();
+    }
+
+
+    /**
+     * The returned {@code List} is a read-only, point-in-time snapshot: Buckets that are added, replaced or removed
+     * afterwards are not visible through it, and it never throws {@code ConcurrentModificationException}.
+     */
+    @Override
+    public List<Bucket<?>> getAll(final K key)
+    {
+        Slot slot = bucketMap.get(key);
+        if(slot == null) return Collections.emptyList();
+
+        Published published = slot.published;
+        return Collections.unmodifiableList(Arrays.asList(published.buckets).subList(0, published.size));
+    }
+
+
+    @Override
+    public List<Bucket<?>> remove(final K key)
+    {
+        Slot slot = bucketMap.remove(key);
+        if(slot == null) return null;
+
+        synchronized (slot) {
+            slot.removed = true;
+            return slot.snapshot();
+        }
+    }
+
+
+    @Override
+    public Object remove(final K key, final int index)
+    {
+        Slot slot = bucketMap.get(key);
+        if(slot == null) return null;
+
+        synchronized (slot) {
+            if(slot.removed || index < 0 || index >= slot.size) return null;
+
+            Object prev = slot.remove(index).get();
+            if(slot.size == 0){
+                slot.removed = true;
+                bucketMap.remove(key, slot);
+            }
+            return prev;
+        }
+    }
+
+    /**
+     * Must be called while the slot is locked.
+     */
+    private void setOrRemove(final K key, final Slot slot, final int index, final Object next)
+    {
+        if(next != null){
+            slot.set(index, Bucket.of(next));
+            return;
+        }
+
+        slot.remove(index);
+        if(slot.size == 0){
+            slot.removed = true;
+            bucketMap.remove(key, slot);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ConcurrentHashMultibucket<?> that = (ConcurrentHashMultibucket<?>) o;
+        if(size() != that.size()) return false;
+
+        for(Map.Entry<K,Slot> entry : bucketMap.entrySet())
+        {
+            Slot other = that.bucketMap.get(entry.getKey());
+            if(other == null || !entry.getValue().snapshot().equals(other.snapshot())) return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int hash = 0;
+        for(Map.Entry<K,Slot> entry : bucketMap.entrySet())
+        {
+            hash += Objects.hashCode(entry.getKey()) ^ entry.getValue().snapshot().hashCode();
+        }
+
+        return hash;
+    }
+
+    @Override
+    public String toString()
+    {
+        return  "ConcurrentHashMultibucket of size: "+size();
+    }
+
+
+    private static Class<?> typeOf(final Bucket<?> bucket)
+    {
+        return bucket.isEmpty() ? null : bucket.getType();
+    }
+
+
+    /**
+     * The Buckets of a single key. Writers synchronize on the {@code Slot} and publish every change with a volatile
+     * write of a {@code Published} view. Adding a Bucket stores it past the published ones, in an array that grows
+     * geometrically, while replacing or removing one copies the array, so the published Buckets of an array are never
+     * written again, and readers iterate a consistent snapshot without locking, seeing every Bucket of it fully
+     * constructed.
+     */
+    private static final class Slot
+    {
+        private Bucket<?>[] buckets = EMPTY_SLOT;
+        private int size;
+        private volatile Published published = EMPTY_PUBLISHED;
+        private boolean removed;
+
+        private void add(final Bucket<?> bucket)
+        {
+            if(size == buckets.length) buckets = Arrays.copyOf(buckets, Math.max(4, size << 1));
+            buckets[size++] = bucket;
+            publish();
+        }
+
+        private Bucket<?> set(final int index, final Bucket<?> bucket)
+        {
+            Bucket<?>[] next = buckets.clone();
+            Bucket<?> previous = next[index];
+            next[index] = bucket;
+            buckets = next;
+            publish();
+            return previous;
+        }
+
+        private Bucket<?> remove(final int index)
+        {
+            Bucket<?>[] current = buckets;
+            Bucket<?>[] next = new Bucket<?>[current.length];
+            System.arraycopy(current, 0, next, 0, index);
+            System.arraycopy(current, index + 1, next, index, size - index - 1);
+            size--;
+            buckets = next;
+            publish();
+            return current[index];
+        }
+
+        private void publish()
+        {
+            published = new Published(buckets, size);
+        }
+
+        private Bucket<?> bucketAt(final int index)
+        {
+            Published published = this.published;
+            if(index < 0 || index >= published.size) return null;
+
+            return published.buckets[index];
+        }
+
+        private int indexOf(final Object e)
+        {
+            Published published = this.published;
+            for (int i = 0; i < published.size; i++) {
+                if(Objects.equals(published.buckets[i].get(), e)) return i;
+            }
+
+            return -1;
+        }
+
+        /**
+         * Must be called while the slot is locked.
+         */
+        private int indexOfType(final Class<?> t, final int nth)
+        {
+            return indexOfType(buckets, size, t, nth);
+        }
+
+        private static int indexOfType(final Bucket<?>[] buckets, final int size, final Class<?> t, final int nth)
+        {
+            int typeCounter = 0;
+            for (int i = 0; i < size; i++) {
+                if(typeOf(buckets[i]) == t && typeCounter++ == nth) return i;
+            }
+
+            return -1;
+        }
+
+        private List<Bucket<?>> snapshot()
+        {
+            Published published = this.published;
+            return Arrays.asList(Arrays.copyOf(published.buckets, published.size));
+        }
+    }
+
+    /**
+     * The first {@code size} Buckets of a {@code Slot}'s array, as they were when they were published.
+     */
+    private static final class Published
+    {
+        private final Bucket<?>[] buckets;
+        private final int size;
+
+        private Published(final Bucket<?>[] buckets, final int size)
+        {
+            this.buckets = buckets;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.petrosp.structures.multibucket;
+
+/**
+ * A {@code Bucket} of a primitive {@code double}, that stores it without boxing. {@link #getAsDouble()}, {@link #set},
+ * and {@link #addAndGet} read and change the value without boxing, while {@code get} boxes it on every call.
+ * Multibuckets treat it as a Bucket of {@code Double}, so it is found by {@code containsType} and {@code getAllOfType}
+ * both with {@code Double.class} and with {@code double.class}.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ */
+public class DoubleBucket extends Bucket<Double>
+{
+    private double value;
+    private boolean present;
+
+    public DoubleBucket(final double value)
+    {
+        this.value = value;
+        this.present = true;
+    }
+
+    public static DoubleBucket of(final double value)
+    {
+        return new DoubleBucket(value);
+    }
+
+
+    /**
+     * @return The value of the {@code Bucket}, or {@code 0} if it is empty.
+     */
+    public double getAsDouble()
+    {
+        return value;
+    }
+
+
+    /**
+     * Put the value inside the {@code Bucket}, replacing the existing one if any.
+     * @return The previous value, or {@code 0} if the {@code Bucket} was empty.
+     */
+    public double set(final double value)
+    {
+        double previous = this.value;
+        this.value = value;
+        this.present = true;
+        return previous;
+    }
+
+
+    /**
+     * Add the delta to the value, or put the delta inside the {@code Bucket} if it is empty.
+     * @return The new value.
+     */
+    public double addAndGet(final double delta)
+    {
+        value += delta;
+        present = true;
+        return value;
+    }
+
+
+    @Override
+    public boolean isEmpty()
+    {
+        return !present;
+    }
+
+
+    @Override
+    public void empty()
+    {
+        value = 0;
+        present = false;
+    }
+
+
+    @Override
+    public boolean containsCollection()
+    {
+        return false;
+    }
+
+
+    @Override
+    public <V> boolean containedInCollection(final V e)
+    {
+        return false;
+    }
+
+
+    @Override
+    public boolean containsMap()
+    {
+        return false;
+    }
+
+
+    /**
+     * @param e The new value, or {@code null} to empty the {@code Bucket}.
+     */
+    @Override
+    public Double put(final Double e)
+    {
+        Double previous = get();
+        if(e == null){
+            empty();
+        }else{
+            set(e);
+        }
+        return previous;
+    }
+
+
+    @Override
+    public Double putIfEmpty(final Double e)
+    {
+        if(present) return value;
+
+        if(e != null) set(e);
+        return null;
+    }
+
+
+    @Override
+    public <V> boolean addToCollection(final V e)
+    {
+        return false;
+    }
+
+
+    @Override
+    public <K, V> V addToMap(final K key, final V value)
+    {
+        return null;
+    }
+
+
+    @Override
+    public Double get()
+    {
+        return present ? value : null;
+    }
+
+
+    @Override
+    public <K, V> V getFromMap(final K key)
+    {
+        return null;
+    }
+
+    @Override
+    public Class<?> getType()
+    {
+        return Double.class;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.valueOf(get());
+    }
+}
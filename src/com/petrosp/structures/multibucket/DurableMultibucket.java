@@ -0,0 +1,879 @@
+package com.petrosp.structures.multibucket;
+
+import com.petrosp.threaded.scheduler.PTaskScheduler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A {@code Multibucket} whose contents survive a crash. The keys are kept in memory, and every change is appended
+ * to a write-ahead log in a directory before the call that made it returns. The changes of many threads are written
+ * together in group commits: the first waiting thread writes all the pending changes and forces them to the disk
+ * once, while the rest wait for it, so there is one {@code fsync} per batch and not per change.
+ * <p>
+ * {@link #open(Path, CodecRegistry)} recovers the contents by loading the latest snapshot and replaying the log
+ * after it. A change whose entry was torn by the crash was never acknowledged, so it is discarded. {@link #compact()}
+ * starts a new log segment and writes a snapshot in the format of {@link HashMultibucket#save(Path)}, blocking the
+ * writers only while it copies the keys, and can run periodically on a {@code PTaskScheduler}. Keys and elements must have a codec
+ * in the {@code CodecRegistry}, and changing an element in place (other than through this multibucket) is not logged.
+ * <pre>
+ * directory: snapshot-N.mb (the contents when segment N started), wal-N.log (the changes after it)
+ * segment:   int MAGIC, short VERSION, entry*
+ * entry:     int length, int crc32, byte[length] body
+ * body:      byte -1, int typeId, short nameLength, utf8 name       (a type of the following records)
+ *            byte op, record key, int index, record value, record argument   (a change, op of ChangeEvent.Type)
+ * record:    int typeId, int length, byte[length] payload
+ * </pre>
+ * The reads are synchronized and return copies, like the ones of {@link ExpiringMultibucket}. A write that cannot
+ * be logged throws {@code UncheckedIOException}, and the multibucket stays read-only afterwards, since its memory
+ * may be ahead of the log.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ *
+ *
+ * @param <K> Type of the keys.
+ */
+public class DurableMultibucket<K> implements Multibucket<K>, Closeable
+{
+    private static final int MAGIC = 0x504D574C;
+    private static final short VERSION = 1;
+    private static final int HEADER_BYTES = Integer.BYTES + Short.BYTES;
+    private static final int ENTRY_HEADER_BYTES = 2 * Integer.BYTES;
+    private static final byte TYPE_DEFINITION = -1;
+    private static final int BATCH_BYTES = 1 << 16;
+    private static final Pattern SEGMENT = Pattern.compile("wal-(\\d+)\\.log");
+    private static final Pattern SNAPSHOT = Pattern.compile("snapshot-(\\d+)\\.mb");
+    private static final ChangeEvent.Type[] OPS = ChangeEvent.Type.values();
+
+    private final Path directory;
+    private final CodecRegistry codecs;
+    private final HashMultibucket<K> memory;
+    private final Map<Class<?>, Integer> segmentTypes;
+    private final CRC32 crc = new CRC32();
+    private final Object commitLock = new Object();
+    private final Object compactLock = new Object();
+
+    // Guarded by this.
+    private FileChannel channel;
+    private long generation;
+    private ByteBuffer pending = ByteBuffer.allocate(BATCH_BYTES);
+    private ByteBuffer spare = ByteBuffer.allocate(BATCH_BYTES);
+    private long appended;
+    private long segmentBytes;
+    private boolean closed;
+
+    // Guarded by commitLock.
+    private long durable;
+    private boolean flushing;
+
+    private volatile IOException failure;
+    private volatile Exception compactionFailure;
+    private PTaskScheduler scheduler;
+    private int compactTaskId;
+
+    private DurableMultibucket(final Path directory, final CodecRegistry codecs, final HashMultibucket<K> memory,
+                               final long generation, final FileChannel channel, final Map<Class<?>, Integer> segmentTypes)
+            throws IOException
+    {
+        this.directory = directory;
+        this.codecs = codecs;
+        this.memory = memory;
+        this.generation = generation;
+        this.channel = channel;
+        this.segmentTypes = segmentTypes;
+        this.segmentBytes = channel.size();
+    }
+
+
+    /**
+     * Open the log in the directory, using the default codecs of {@link CodecRegistry#withDefaults()}.
+     */
+    public static <K> DurableMultibucket<K> open(final Path directory) throws IOException
+    {
+        return open(directory, CodecRegistry.withDefaults());
+    }
+
+
+    /**
+     * Open the log in the directory, creating it if needed, and recover its contents: the latest snapshot is loaded
+     * and the log segments after it are replayed in order. A torn entry at the end of the last segment is cut off,
+     * and so is one at the end of a segment that is only followed by empty segments.
+     * @param codecs The codecs of the class types of the keys and the elements.
+     * @throws IOException If the files cannot be read, or are corrupted before their last entry.
+     */
+    public static <K> DurableMultibucket<K> open(final Path directory, final CodecRegistry codecs) throws IOException
+    {
+        Files.createDirectories(directory);
+        long snapshot = -1;
+        List<Long> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory))
+        {
+            for(Path file : (Iterable<Path>) files::iterator)
+            {
+                String name = file.getFileName().toString();
+                Matcher matcher = SNAPSHOT.matcher(name);
+                if(matcher.matches()) snapshot = Math.max(snapshot, Long.parseLong(matcher.group(1)));
+                matcher = SEGMENT.matcher(name);
+                if(matcher.matches()) segments.add(Long.parseLong(matcher.group(1)));
+            }
+        }
+        Collections.sort(segments);
+
+        HashMultibucket<K> memory = snapshot == -1 ? new HashMultibucket<>() : HashMultibucket.load(snapshotPath(directory, snapshot), codecs);
+        long generation = Math.max(snapshot, 0);
+        Map<Class<?>, Integer> segmentTypes = new HashMap<>();
+        for (int i = 0; i < segments.size(); i++) {
+            long segment = segments.get(i);
+            if(segment < generation) continue;
+
+            segmentTypes = replay(segmentPath(directory, segment), memory, codecs,
+                    emptyAfter(directory, segments.subList(i + 1, segments.size())));
+            generation = segment;
+        }
+
+        Path active = segmentPath(directory, generation);
+        FileChannel channel = FileChannel.open(active, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        if(channel.size() == 0) writeHeader(channel);
+
+        DurableMultibucket<K> out = new DurableMultibucket<>(directory, codecs, memory, generation, channel, segmentTypes);
+        out.deleteBefore(Math.max(snapshot, 0));
+        return out;
+    }
+
+
+    /**
+     * Start a new log segment, and write the current contents to a snapshot that replaces the older snapshot and
+     * segments. Only writing the pending changes to the current segment, starting the next one and copying the keys
+     * block the writers; the snapshot is written afterwards, on the calling thread. The Collections and Maps are
+     * copied through their codecs, so that the changes made to them in place after the copy, which are logged in
+     * the next segment, are not also in the snapshot. The current segment is complete
+     * on the disk before the next one is created, so a crash can only tear the tail of the last segment. Compactions
+     * don't run concurrently.
+     */
+    public void compact() throws IOException
+    {
+        synchronized (compactLock)
+        {
+            synchronized (this)
+            {
+                checkWritable();
+            }
+            claimFlush();
+
+            HashMultibucket<K> copy = new HashMultibucket<>();
+            long next;
+            Batch batch;
+            IOException written, error = null;
+            synchronized (this)
+            {
+                batch = takeBatch();
+                next = generation + 1;
+                written = writeOut(batch);
+                if(written == null){
+                    try{
+                        FileChannel nextChannel = FileChannel.open(segmentPath(directory, next), StandardOpenOption.CREATE,
+                                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                        try{
+                            writeHeader(nextChannel);
+                        }catch (IOException ex) {
+                            nextChannel.close();
+                            throw ex;
+                        }
+                        FileChannel previous = channel;
+                        channel = nextChannel;
+                        generation = next;
+                        segmentTypes.clear();
+                        segmentBytes = HEADER_BYTES;
+                        for(K key : memory.keySet())
+                        {
+                            for(Bucket<?> b : memory.getAll(key))
+                            {
+                                copy.put(key, snapshotOf(b.get()));
+                            }
+                        }
+                        previous.close();
+                    }catch (IOException ex) {
+                        error = ex;
+                    }
+                }
+            }
+            finishBatch(batch, written);
+            if(error != null) throw error;
+
+            Path temporary = directory.resolve("snapshot-" + next + ".tmp");
+            copy.save(temporary, codecs);
+            try (FileChannel snapshot = FileChannel.open(temporary, StandardOpenOption.WRITE))
+            {
+                snapshot.force(true);
+            }
+            Files.move(temporary, snapshotPath(directory, next), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            deleteBefore(next);
+        }
+    }
+
+
+    /**
+     * Call {@link #compact()} repeatedly on the given scheduler, replacing any previous compacting task. A failed
+     * compaction leaves the log as it was, is reported by {@link #lastCompactionFailure()}, and is retried on the
+     * next run.
+     * @param taskId The id of the compacting task in the scheduler.
+     * @param intervalMillis The delay between two checks (in milliseconds).
+     * @param minimumLogBytes Compact only when the current log segment has grown to at least this size.
+     */
+    public synchronized void startCompacting(final PTaskScheduler scheduler, final int taskId, final int intervalMillis,
+                                             final long minimumLogBytes)
+    {
+        stopCompacting();
+        this.scheduler = scheduler;
+        this.compactTaskId = taskId;
+        scheduler.startRepeating(taskId, () -> {
+            if(logBytes() < minimumLogBytes) return;
+            try{
+                compact();
+                compactionFailure = null;
+            }catch (IOException | RuntimeException ex) {
+                compactionFailure = ex;
+            }
+        }, intervalMillis, intervalMillis);
+    }
+
+
+    /**
+     * @return The error of the latest compaction of the compacting task, or {@code null} if it succeeded or if
+     * none has run yet.
+     */
+    public Exception lastCompactionFailure()
+    {
+        return compactionFailure;
+    }
+
+
+    /**
+     * Stop the compacting task started by {@link #startCompacting(PTaskScheduler, int, int, long)}, if any.
+     */
+    public synchronized void stopCompacting()
+    {
+        if(scheduler == null) return;
+
+        scheduler.interruptNow(compactTaskId);
+        scheduler = null;
+    }
+
+
+    /**
+     * @return The size of the current log segment in bytes, including the changes that aren't written yet.
+     */
+    public synchronized long logBytes()
+    {
+        return segmentBytes + pending.position();
+    }
+
+
+    /**
+     * Write the pending changes, stop any compacting task and close the log. The multibucket can still be read.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        stopCompacting();
+        long last;
+        synchronized (this)
+        {
+            if(closed) return;
+            last = appended;
+        }
+        try{
+            awaitDurable(last);
+        }catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }finally {
+            synchronized (this)
+            {
+                closed = true;
+                channel.close();
+            }
+        }
+    }
+
+
+    @Override
+    public synchronized int size()
+    {
+        return memory.size();
+    }
+
+
+    /**
+     * @return A copy of the keys.
+     */
+    @Override
+    public synchronized Set<K> keySet()
+    {
+        return new HashSet<>(memory.keySet());
+    }
+
+
+    @Override
+    public synchronized <V> boolean contains(final K key, final V e)
+    {
+        return memory.contains(key, e);
+    }
+
+
+    @Override
+    public synchronized <T> boolean containsType(final K key, final Class<T> t)
+    {
+        return memory.containsType(key, t);
+    }
+
+
+    @Override
+    public synchronized boolean containsKey(final K key)
+    {
+        return memory.containsKey(key);
+    }
+
+
+    @Override
+    public <V> void put(final K key, final V e)
+    {
+        write(ChangeEvent.Type.PUT, key, -1, e, null, () -> {
+            memory.put(key, e);
+            return Boolean.TRUE;
+        }, r -> true);
+    }
+
+
+    @Override
+    public <V> boolean putIfAbsent(final K key, final V e)
+    {
+        return write(ChangeEvent.Type.PUT, key, -1, e, null, () -> memory.putIfAbsent(key, e), r -> r);
+    }
+
+
+    @Override
+    public <V> boolean putIfAbsentType(final K key, final V e)
+    {
+        return write(ChangeEvent.Type.PUT, key, -1, e, null, () -> memory.putIfAbsentType(key, e), r -> r);
+    }
+
+
+    @Override
+    public <V> boolean putInCollection(final K key, final V e, final int index)
+    {
+        return write(ChangeEvent.Type.PUT_IN_COLLECTION, key, index, e, null,
+                () -> memory.putInCollection(key, e, index), r -> r);
+    }
+
+
+    @Override
+    public <T, V> boolean putInCollectionOfType(final K key, final V e, final T t, final int index)
+    {
+        return write(ChangeEvent.Type.PUT_IN_COLLECTION_OF_TYPE, key, index, e, t,
+                () -> memory.putInCollectionOfType(key, e, t, index), r -> r);
+    }
+
+
+    @Override
+    public <M, V> boolean putInMap(final K key, final M mapKey, final V e, final int index)
+    {
+        return write(ChangeEvent.Type.PUT_IN_MAP, key, index, e, mapKey,
+                () -> memory.putInMap(key, mapKey, e, index), r -> r);
+    }
+
+
+    @Override
+    public <V> Object replace(final K key, final V e, final int index)
+    {
+        return write(ChangeEvent.Type.REPLACE, key, index, e, null, () -> memory.replace(key, e, index), r -> true);
+    }
+
+
+    @Override
+    public <V> V replaceSameType(final K key, final V e, final int index)
+    {
+        return write(ChangeEvent.Type.REPLACE_SAME_TYPE, key, index, e, null,
+                () -> memory.replaceSameType(key, e, index), r -> true);
+    }
+
+
+    @Override
+    public synchronized <V> int getFirstIndex(final K key, final V e)
+    {
+        return memory.getFirstIndex(key, e);
+    }
+
+
+    @Override
+    public synchronized <V> List<Integer> getAllIndexes(final K key, final V e)
+    {
+        return memory.getAllIndexes(key, e);
+    }
+
+
+    @Override
+    public synchronized <E> E get(final K key, final int index)
+    {
+        return memory.get(key, index);
+    }
+
+
+    @Override
+    public synchronized <M, V> V getFromMap(final K key, final M mapKey, final int index)
+    {
+        return memory.getFromMap(key, mapKey, index);
+    }
+
+
+    @Override
+    public synchronized <T> List<Bucket<?>> getAllOfType(final K key, final Class<T> t)
+    {
+        return memory.getAllOfType(key, t);
+    }
+
+
+    @Override
+    public synchronized <T> T getOfType(final K key, final Class<T> t, final int index)
+    {
+        return memory.getOfType(key, t, index);
+    }
+
+
+    /**
+     * @return A read-only copy of the Buckets of the key.
+     */
+    @Override
+    public synchronized List<Bucket<?>> getAll(final K key)
+    {
+        List<Bucket<?>> existing = memory.getAll(key);
+        return existing.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(existing));
+    }
+
+
+    @Override
+    public List<Bucket<?>> remove(final K key)
+    {
+        return write(ChangeEvent.Type.REMOVE_KEY, key, -1, null, null, () -> memory.remove(key), Objects::nonNull);
+    }
+
+
+    @Override
+    public Object remove(final K key, final int index)
+    {
+        return write(ChangeEvent.Type.REMOVE, key, index, null, null, () -> memory.remove(key, index), r -> true);
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return  "DurableMultibucket of size: "+size()+", log: "+directory+", segment: "+generation;
+    }
+
+
+    /**
+     * Apply the change to the memory and append it to the pending batch, then wait until the batch is on the disk.
+     * @param changed Whether the result of the change means that something changed and must be logged.
+     */
+    private <R> R write(final ChangeEvent.Type type, final K key, final int index, final Object value,
+                        final Object argument, final Supplier<R> change, final Predicate<? super R> changed)
+    {
+        R result;
+        long sequence;
+        synchronized (this)
+        {
+            checkWritable();
+            codecs.idOfElement(key);
+            codecs.idOfElement(value);
+            codecs.idOfElement(argument);
+
+            result = change.get();
+            if(!changed.test(result)) return result;
+
+            append(type, key, index, value, argument);
+            sequence = ++appended;
+        }
+
+        awaitDurable(sequence);
+        return result;
+    }
+
+    private void checkWritable()
+    {
+        if(closed) throw new IllegalStateException("DurableMultibucket is closed");
+        if(failure != null) throw new UncheckedIOException("The log has failed, the multibucket is read-only", failure);
+    }
+
+    private void append(final ChangeEvent.Type type, final K key, final int index, final Object value, final Object argument)
+    {
+        defineType(key);
+        defineType(value);
+        defineType(argument);
+
+        int keyId = codecs.idOfElement(key), valueId = codecs.idOfElement(value), argumentId = codecs.idOfElement(argument);
+        int length = 1 + recordBytes(keyId, key) + Integer.BYTES + recordBytes(valueId, value) + recordBytes(argumentId, argument);
+        ensurePending(ENTRY_HEADER_BYTES + length);
+
+        int start = pending.position();
+        pending.position(start + ENTRY_HEADER_BYTES);
+        pending.put((byte) type.ordinal());
+        putRecord(keyId, key);
+        pending.putInt(index);
+        putRecord(valueId, value);
+        putRecord(argumentId, argument);
+        sealEntry(start, length);
+    }
+
+    private void defineType(final Object element)
+    {
+        if(element == null || segmentTypes.containsKey(element.getClass())) return;
+
+        int id = segmentTypes.size() + 1;
+        byte[] name = element.getClass().getName().getBytes(StandardCharsets.UTF_8);
+        int length = 1 + Integer.BYTES + Short.BYTES + name.length;
+        ensurePending(ENTRY_HEADER_BYTES + length);
+
+        int start = pending.position();
+        pending.position(start + ENTRY_HEADER_BYTES);
+        pending.put(TYPE_DEFINITION).putInt(id).putShort((short) name.length).put(name);
+        sealEntry(start, length);
+        segmentTypes.put(element.getClass(), id);
+    }
+
+    private int recordBytes(final int id, final Object element)
+    {
+        return 2 * Integer.BYTES + codecs.sizeOf(id, element);
+    }
+
+    private void putRecord(final int id, final Object element)
+    {
+        pending.putInt(element == null ? CodecRegistry.NULL_ID : segmentTypes.get(element.getClass()));
+        pending.putInt(codecs.sizeOf(id, element));
+        codecs.encode(id, element, pending);
+    }
+
+    private void sealEntry(final int start, final int length)
+    {
+        ByteBuffer body = pending.duplicate();
+        body.position(start + ENTRY_HEADER_BYTES).limit(start + ENTRY_HEADER_BYTES + length);
+        crc.reset();
+        crc.update(body);
+        pending.putInt(start, length).putInt(start + Integer.BYTES, (int) crc.getValue());
+    }
+
+    private void ensurePending(final int bytes)
+    {
+        if(pending.remaining() >= bytes) return;
+
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() << 1, pending.position() + bytes));
+        pending.flip();
+        grown.put(pending);
+        pending = grown;
+    }
+
+
+    /**
+     * Wait until the change of the given sequence is on the disk. If no other thread is writing a batch, this thread
+     * writes all the pending changes itself.
+     */
+    private void awaitDurable(final long sequence)
+    {
+        synchronized (commitLock)
+        {
+            boolean interrupted = false;
+            while(durable < sequence && flushing)
+            {
+                try{
+                    commitLock.wait();
+                }catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if(interrupted) Thread.currentThread().interrupt();
+            if(durable >= sequence) return;
+            if(failure != null) throw new UncheckedIOException(failure);
+            flushing = true;
+        }
+
+        Batch batch;
+        synchronized (this)
+        {
+            batch = takeBatch();
+        }
+        writeBatch(batch);
+    }
+
+    private void claimFlush()
+    {
+        synchronized (commitLock)
+        {
+            boolean interrupted = false;
+            while(flushing)
+            {
+                try{
+                    commitLock.wait();
+                }catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if(interrupted) Thread.currentThread().interrupt();
+            flushing = true;
+        }
+    }
+
+    /**
+     * Called while holding both the flush and this.
+     */
+    private Batch takeBatch()
+    {
+        Batch batch = new Batch(pending, appended, channel);
+        pending = spare;
+        spare = null;
+        segmentBytes += batch.buffer.position();
+        return batch;
+    }
+
+    /**
+     * Write the batch and release the flush, waking up the threads that wait for it.
+     */
+    private void writeBatch(final Batch batch)
+    {
+        finishBatch(batch, writeOut(batch));
+    }
+
+    /**
+     * Write the batch to its segment and force it to the disk.
+     * @return The error of the write, or {@code null}.
+     */
+    private static IOException writeOut(final Batch batch)
+    {
+        try{
+            batch.buffer.flip();
+            while(batch.buffer.hasRemaining())
+            {
+                batch.target.write(batch.buffer);
+            }
+            batch.target.force(false);
+            return null;
+        }catch (IOException ex) {
+            return ex;
+        }
+    }
+
+    /**
+     * Release the flush after the batch was written, waking up the threads that wait for it.
+     */
+    private void finishBatch(final Batch batch, final IOException error)
+    {
+        batch.buffer.clear();
+        synchronized (this)
+        {
+            if(error == null){
+                spare = batch.buffer;
+            }else{
+                spare = ByteBuffer.allocate(BATCH_BYTES);
+            }
+        }
+        synchronized (commitLock)
+        {
+            flushing = false;
+            if(error == null){
+                durable = Math.max(durable, batch.lastSequence);
+            }else if(failure == null){
+                failure = error;
+            }
+            commitLock.notifyAll();
+        }
+        if(error != null) throw new UncheckedIOException(error);
+    }
+
+    /**
+     * @return A copy of the element if it is a Collection or a Map, that can change in place, or else the element.
+     */
+    private Object snapshotOf(final Object element)
+    {
+        if(!(element instanceof Collection) && !(element instanceof Map)) return element;
+
+        int id = codecs.idOfElement(element);
+        int length = codecs.sizeOf(id, element);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        codecs.encode(id, element, buffer);
+        buffer.flip();
+        return codecs.decode(id, buffer, length);
+    }
+
+    private void deleteBefore(final long next) throws IOException
+    {
+        try (Stream<Path> files = Files.list(directory))
+        {
+            for(Path file : (Iterable<Path>) files::iterator)
+            {
+                String name = file.getFileName().toString();
+                Matcher segment = SEGMENT.matcher(name);
+                Matcher snapshot = SNAPSHOT.matcher(name);
+                if((segment.matches() && Long.parseLong(segment.group(1)) < next)
+                        || (snapshot.matches() && Long.parseLong(snapshot.group(1)) < next)){
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if none of the given segments contains an entry.
+     */
+    private static boolean emptyAfter(final Path directory, final List<Long> segments) throws IOException
+    {
+        for(long segment : segments)
+        {
+            if(Files.size(segmentPath(directory, segment)) > HEADER_BYTES) return false;
+        }
+        return true;
+    }
+
+    private static Path segmentPath(final Path directory, final long generation)
+    {
+        return directory.resolve("wal-" + generation + ".log");
+    }
+
+    private static Path snapshotPath(final Path directory, final long generation)
+    {
+        return directory.resolve("snapshot-" + generation + ".mb");
+    }
+
+    private static void writeHeader(final FileChannel channel) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putShort(VERSION);
+        header.flip();
+        while(header.hasRemaining())
+        {
+            channel.write(header);
+        }
+        channel.force(false);
+    }
+
+
+    /**
+     * Apply the changes of a segment to the multibucket.
+     * @param last Whether no later segment contains an entry, so a torn tail is cut off.
+     * @return The type ids of the segment, to keep appending to it.
+     */
+    private static <K> Map<Class<?>, Integer> replay(final Path path, final Multibucket<K> target,
+                                                     final CodecRegistry codecs, final boolean last) throws IOException
+    {
+        Map<Class<?>, Integer> types = new HashMap<>();
+        Map<Integer, Integer> registryIds = new HashMap<>();
+        registryIds.put(CodecRegistry.NULL_ID, CodecRegistry.NULL_ID);
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        if(last && buffer.remaining() < HEADER_BYTES){
+            truncate(path, 0);
+            return types;
+        }
+        if(buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) throw new IOException("Not a multibucket log: "+path);
+        short version = buffer.getShort();
+        if(version != VERSION) throw new IOException("Unsupported multibucket log version: "+version);
+
+        CRC32 crc = new CRC32();
+        while(buffer.hasRemaining())
+        {
+            int start = buffer.position();
+            int length = buffer.remaining() >= ENTRY_HEADER_BYTES ? buffer.getInt() : -1;
+            int checksum = length >= 0 ? buffer.getInt() : 0;
+            if(length < 0 || length > buffer.remaining() || !matches(crc, buffer, length, checksum)){
+                if(!last) throw new IOException("Corrupted multibucket log: "+path+" at "+start);
+                truncate(path, start);
+                break;
+            }
+
+            byte op = buffer.get();
+            if(op == TYPE_DEFINITION){
+                int id = buffer.getInt();
+                byte[] name = new byte[buffer.getShort()];
+                buffer.get(name);
+                String typeName = new String(name, StandardCharsets.UTF_8);
+                Class<?> type = codecs.typeNamed(typeName);
+                if(type == null) throw new IOException("No codec registered for "+typeName);
+                types.put(type, id);
+                registryIds.put(id, codecs.idOf(type));
+                continue;
+            }
+
+            @SuppressWarnings("unchecked")
+            K key = (K) readRecord(buffer, registryIds, codecs);
+            int index = buffer.getInt();
+            Object value = readRecord(buffer, registryIds, codecs);
+            Object argument = readRecord(buffer, registryIds, codecs);
+            new ChangeEvent<>(0, OPS[op], key, index, value, argument).applyTo(target);
+        }
+
+        return types;
+    }
+
+    private static void truncate(final Path path, final long size) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE))
+        {
+            channel.truncate(size);
+            channel.force(false);
+        }
+    }
+
+    private static boolean matches(final CRC32 crc, final ByteBuffer buffer, final int length, final int checksum)
+    {
+        ByteBuffer body = buffer.duplicate();
+        body.limit(body.position() + length);
+        crc.reset();
+        crc.update(body);
+        return (int) crc.getValue() == checksum;
+    }
+
+    private static Object readRecord(final ByteBuffer buffer, final Map<Integer, Integer> registryIds,
+                                     final CodecRegistry codecs) throws IOException
+    {
+        Integer id = registryIds.get(buffer.getInt());
+        if(id == null) throw new IOException("Undefined type in multibucket log");
+        int length = buffer.getInt();
+        int end = buffer.position() + length;
+
+        ByteBuffer payload = buffer.duplicate();
+        payload.limit(end);
+        Object element = codecs.decode(id, payload, length);
+        buffer.position(end);
+        return element;
+    }
+
+
+    /**
+     * The changes that a single flush writes, up to a sequence.
+     */
+    private static final class Batch
+    {
+        private final ByteBuffer buffer;
+        private final long lastSequence;
+        private final FileChannel target;
+
+        private Batch(final ByteBuffer buffer, final long lastSequence, final FileChannel target)
+        {
+            this.buffer = buffer;
+            this.lastSequence = lastSequence;
+            this.target = target;
+        }
+    }
+}
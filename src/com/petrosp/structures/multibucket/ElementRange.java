@@ -0,0 +1,35 @@
+package com.petrosp.structures.multibucket;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * A read-only view of a range of an array of elements, as a list of Buckets. Every access creates a detached
+ * {@code Bucket}, so replacing its element does not affect the array.
+ */
+final class ElementRange extends AbstractList<Bucket<?>> implements RandomAccess
+{
+    private final Object[] elements;
+    private final int start, end;
+
+    ElementRange(final Object[] elements, final int start, final int end)
+    {
+        this.elements = elements;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public Bucket<?> get(final int index)
+    {
+        if(index < 0 || index >= end - start) throw new IndexOutOfBoundsException("Index: "+index);
+
+        return Bucket.of(elements[start + index]);
+    }
+
+    @Override
+    public int size()
+    {
+        return end - start;
+    }
+}
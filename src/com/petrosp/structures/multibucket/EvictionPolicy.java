@@ -0,0 +1,26 @@
+package com.petrosp.structures.multibucket;
+
+/**
+ * The policies that a {@code CachingMultibucket} can use to choose which key to evict when it is full.
+ * Both policies cost constant time per access.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ */
+public enum EvictionPolicy
+{
+    /**
+     * Evicts the least recently used key. Simple and predictable, but a single scan over many keys
+     * flushes out all the frequently used ones.
+     */
+    LRU,
+
+    /**
+     * Window TinyLFU: new keys enter a small LRU window, and leave it for the main space only if they have been
+     * used more often than the key they would replace. The frequencies are approximated by a count-min sketch
+     * that is periodically halved, so that old popularity fades. Keeps a higher hit rate than LRU on most
+     * workloads, especially under scans.
+     */
+    W_TINY_LFU
+}
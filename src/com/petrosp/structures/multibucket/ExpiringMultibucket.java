@@ -0,0 +1,593 @@
+package com.petrosp.structures.multibucket;
+
+import com.petrosp.threaded.scheduler.PTaskScheduler;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A {@code Multibucket} whose Buckets can be given a time-to-live when they are put. A {@code Bucket} that has
+ * expired is never returned: the expired Buckets of a key are removed lazily when the key is accessed, and the rest
+ * are reclaimed by {@link #sweep()}, which can run periodically on a {@code PTaskScheduler}.
+ * <p>
+ * The deadlines are kept in a queue ordered by expiry, so a sweep only does work for the Buckets that have expired.
+ * The deadlines of the Buckets that are replaced or removed before they expire stay in the queue until they pass,
+ * unless they become more than the live ones, when the queue is rebuilt without them.
+ * A key is removed together with its last {@code Bucket}. Buckets put without a time-to-live never expire.
+ * All methods are synchronized, so that the sweep can run on another thread.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ *
+ *
+ * @param <K> Type of the keys.
+ */
+public class ExpiringMultibucket<K> implements Multibucket<K>
+{
+    private final Map<K,Entry> entries = new HashMap<>();
+    private final PriorityQueue<Expiry<K>> expiryQueue = new PriorityQueue<>();
+    private int staleExpiries;
+    private final Set<BucketIndex> indexes;
+    private final LongSupplier nanoClock;
+
+    private PTaskScheduler scheduler;
+    private int sweepTaskId;
+
+    /**
+     * @param indexes The indexes to keep for the Buckets of every key.
+     */
+    public ExpiringMultibucket(BucketIndex... indexes)
+    {
+        this(System::nanoTime, indexes);
+    }
+
+    /**
+     * @param nanoClock The source of the current time, in nanoseconds.
+     */
+    ExpiringMultibucket(LongSupplier nanoClock, BucketIndex... indexes)
+    {
+        this.nanoClock = nanoClock;
+        this.indexes = EnumSet.noneOf(BucketIndex.class);
+        this.indexes.addAll(Arrays.asList(indexes));
+    }
+
+
+    /**
+     * Put the element in a new {@code Bucket} that expires after the given time.
+     */
+    public synchronized <V> void put(final K key, final V e, final long ttl, final TimeUnit unit)
+    {
+        Entry entry = entryForWrite(key);
+        entry.add(Bucket.of(e), deadlineAfter(ttl, unit));
+    }
+
+
+    /**
+     * Put the element in a new {@code Bucket} that expires after the given time, if no unexpired {@code Bucket} of
+     * the key contains an equal element. The time-to-live of an existing {@code Bucket} is not refreshed.
+     * @return {@code true} if the element was added.
+     */
+    public synchronized <V> boolean putIfAbsent(final K key, final V e, final long ttl, final TimeUnit unit)
+    {
+        Entry entry = entryForWrite(key);
+        if(entry.buckets.indexOfElement(e) != -1) return false;
+
+        entry.add(Bucket.of(e), deadlineAfter(ttl, unit));
+        return true;
+    }
+
+
+    /**
+     * Remove all the Buckets that have expired.
+     * @return The number of removed Buckets.
+     */
+    public synchronized int sweep()
+    {
+        long now = nanoClock.getAsLong();
+        int removed = 0;
+        while(!expiryQueue.isEmpty() && expiryQueue.peek().deadline - now <= 0)
+        {
+            Expiry<K> expiry = expiryQueue.poll();
+            Entry entry = entries.get(expiry.key);
+            if(entry == null || !entry.isLive(expiry)){
+                staleExpiries--;
+                continue;
+            }
+
+            // The other expired Buckets of the key are purged with it, and their deadlines are still queued.
+            int purged = entry.purge(now);
+            if(purged > 1) expiriesCancelled(purged - 1);
+            if(entry.buckets.isEmpty()) entries.remove(expiry.key);
+            removed += purged;
+        }
+
+        return removed;
+    }
+
+
+    /**
+     * Call {@link #sweep()} repeatedly on the given scheduler, replacing any previous sweeping task.
+     * @param taskId The id of the sweeping task in the scheduler.
+     * @param intervalMillis The delay between two sweeps (in milliseconds).
+     */
+    public synchronized void startSweeping(final PTaskScheduler scheduler, final int taskId, final int intervalMillis)
+    {
+        stopSweeping();
+        this.scheduler = scheduler;
+        this.sweepTaskId = taskId;
+        scheduler.startRepeating(taskId, this::sweep, intervalMillis, intervalMillis);
+    }
+
+
+    /**
+     * Stop the sweeping task started by {@link #startSweeping(PTaskScheduler, int, int)}, if any.
+     */
+    public synchronized void stopSweeping()
+    {
+        if(scheduler == null) return;
+
+        scheduler.interruptNow(sweepTaskId);
+        scheduler = null;
+    }
+
+
+    /**
+     * @return Number of keys, including keys whose Buckets have all expired but have not been removed yet.
+     */
+    @Override
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+
+    @Override
+    public synchronized <V> void put(final K key, final V e)
+    {
+        entryForWrite(key).buckets.add(Bucket.of(e));
+    }
+
+
+    @Override
+    public synchronized <V> boolean putIfAbsent(final K key, final V e)
+    {
+        Entry entry = entryForWrite(key);
+        if(entry.buckets.indexOfElement(e) != -1) return false;
+
+        entry.buckets.add(Bucket.of(e));
+        return true;
+    }
+
+
+    @Override
+    public synchronized <V> boolean putIfAbsentType(final K key, final V e)
+    {
+        Class<?> type = e.getClass();
+        Entry entry = entryForWrite(key);
+        if(entry.buckets.containsType(type)) return false;
+
+        entry.buckets.add(Bucket.of(e));
+        return true;
+    }
+
+
+    @Override
+    public synchronized <V> boolean putInCollection(final K key, final V e, final int index)
+    {
+        BucketList existing = live(key);
+        if(existing == null) return false;
+
+        try{
+            return existing.update(index, b -> {
+                if(!b.containsCollection()) return false;
+                b.addToCollection(e);
+                return true;
+            });
+        }catch (Exception ex) {
+            return false;
+        }
+    }
+
+
+    @Override
+    public <T, V> boolean putInCollectionOfType(final K key, final V e, final T t, final int index)
+    {
+        return putInCollection(key, e, index);
+    }
+
+
+    @Override
+    public synchronized <M, V> boolean putInMap(final K key, final M mapKey, final V e, final int index)
+    {
+        BucketList existing = live(key);
+        if(existing == null) return false;
+
+        try{
+            return existing.update(index, b -> {
+                if(!b.containsMap()) return false;
+                b.addToMap(mapKey, e);
+                return true;
+            });
+        }catch (Exception ex) {
+            return false;
+        }
+    }
+
+
+    /**
+     * The new {@code Bucket} never expires.
+     */
+    @Override
+    public synchronized <V> Object replace(final K key, final V e, final int index)
+    {
+        Entry entry = liveEntry(key);
+        if(entry == null || index < 0 || index >= entry.buckets.size()) return null;
+
+        return entry.set(index, Bucket.of(e)).get();
+    }
+
+
+    /**
+     * The new {@code Bucket} never expires.
+     */
+    @Override @SuppressWarnings("unchecked")
+    public synchronized <V> V replaceSameType(final K key, final V e, final int index)
+    {
+        Entry entry = liveEntry(key);
+        if(entry == null) return null;
+
+        int generalIndex = entry.buckets.indexOfType(e.getClass(), index);
+        if(generalIndex == -1) return null;
+
+        return (V)entry.set(generalIndex, Bucket.of(e)).get();
+    }
+
+
+    /**
+     * Applied atomically, while this multibucket is locked.
+     */
+    @Override
+    public synchronized <V> V compute(final K key, final int index, final Function<? super V, ? extends V> remappingFunction)
+    {
+        return Multibucket.super.compute(key, index, remappingFunction);
+    }
+
+
+    /**
+     * Applied atomically, while this multibucket is locked.
+     */
+    @Override
+    public synchronized <T> T computeIfAbsentOfType(final K key, final Class<T> t, final Supplier<? extends T> supplier)
+    {
+        return Multibucket.super.computeIfAbsentOfType(key, t, supplier);
+    }
+
+
+    /**
+     * Applied atomically, while this multibucket is locked.
+     */
+    @Override
+    public synchronized <V> V merge(final K key, final V e, final BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+    {
+        return Multibucket.super.merge(key, e, remappingFunction);
+    }
+
+
+    @Override
+    public synchronized <V> boolean contains(final K key, final V e)
+    {
+        BucketList existing = live(key);
+        return existing != null && existing.indexOfElement(e) != -1;
+    }
+
+
+    @Override
+    public synchronized <T> boolean containsType(final K key, final Class<T> t)
+    {
+        BucketList existing = live(key);
+        return existing != null && existing.containsType(t);
+    }
+
+
+    @Override
+    public synchronized boolean containsKey(final K key)
+    {
+        return live(key) != null;
+    }
+
+
+    /**
+     * @return A copy of the keys, which may include keys whose Buckets have all expired but have not been removed yet.
+     */
+    @Override
+    public synchronized Set<K> keySet()
+    {
+        return new HashSet<>(entries.keySet());
+    }
+
+
+    @Override
+    public synchronized <V> int getFirstIndex(final K key, final V e)
+    {
+        BucketList existing = live(key);
+        return existing == null ? -1 : existing.indexOfElement(e);
+    }
+
+
+    @Override
+    public synchronized <V> List<Integer> getAllIndexes(final K key, final V e)
+    {
+        List<Integer> out = new ArrayList<>();
+        BucketList existing = live(key);
+        if(existing == null) return out;
+
+        for(int i : existing.indexesOfElement(e))
+        {
+            out.add(i);
+        }
+
+        return out;
+    }
+
+
+    @Override
+    public synchronized <V> int[] getAllIndexesAsArray(final K key, final V e)
+    {
+        BucketList existing = live(key);
+        return existing == null ? new int[0] : existing.indexesOfElement(e);
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public synchronized <E> E get(final K key, final int index)
+    {
+        BucketList existing = live(key);
+        if(existing == null || index < 0 || index >= existing.size()) return null;
+
+        return (E)existing.get(index).get();
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public synchronized <M, V> V getFromMap(final K key, final M mapKey, final int index)
+    {
+        Object element = get(key, index);
+        if(!(element instanceof Map)) return null;
+
+        return ((Map<M,V>)element).get(mapKey);
+    }
+
+
+    @Override
+    public synchronized <T> List<Bucket<?>> getAllOfType(final K key, final Class<T> t)
+    {
+        BucketList existing = live(key);
+        return existing == null ? new ArrayList<>() : existing.getAllOfType(t);
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public synchronized <T> T getOfType(final K key, final Class<T> t, final int index)
+    {
+        BucketList existing = live(key);
+        if(existing == null) return null;
+
+        int generalIndex = existing.indexOfType(t, index);
+        return generalIndex == -1 ? null : (T)existing.get(generalIndex).get();
+    }
+
+
+    /**
+     * @return A copy of the unexpired Buckets, since the Buckets of the key can expire while the list is used.
+     */
+    @Override
+    public synchronized List<Bucket<?>> getAll(final K key)
+    {
+        BucketList existing = live(key);
+        return existing == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(existing));
+    }
+
+
+    @Override
+    public synchronized List<Bucket<?>> remove(final K key)
+    {
+        Entry entry = liveEntry(key);
+        if(entry == null) return null;
+
+        entries.remove(key);
+        expiriesCancelled(entry.deadlines.size());
+        return entry.buckets;
+    }
+
+
+    @Override
+    public synchronized Object remove(final K key, final int index)
+    {
+        Entry entry = liveEntry(key);
+        if(entry == null || index < 0 || index >= entry.buckets.size()) return null;
+
+        Object prev = entry.remove(index).get();
+        if(entry.buckets.isEmpty()) entries.remove(key);
+
+        return prev;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return  "ExpiringMultibucket of size: "+size();
+    }
+
+
+    private long deadlineAfter(final long ttl, final TimeUnit unit)
+    {
+        if(ttl < 0) throw new IllegalArgumentException("Negative time-to-live: "+ttl);
+
+        return nanoClock.getAsLong() + unit.toNanos(ttl);
+    }
+
+    private Entry entryForWrite(final K key)
+    {
+        Entry entry = liveEntry(key);
+        if(entry == null){
+            entry = new Entry(key);
+            entries.put(key, entry);
+        }
+
+        return entry;
+    }
+
+    private BucketList live(final K key)
+    {
+        Entry entry = liveEntry(key);
+        return entry == null ? null : entry.buckets;
+    }
+
+    /**
+     * @return The number of deadlines in the expiry queue, including the stale ones.
+     */
+    synchronized int queuedExpiries()
+    {
+        return expiryQueue.size();
+    }
+
+
+    /**
+     * The given number of deadlines in the expiry queue no longer belong to a {@code Bucket}. Rebuild the queue
+     * without them when they are the majority, so that replacing and removing Buckets doesn't grow it without bound.
+     */
+    private void expiriesCancelled(final int count)
+    {
+        staleExpiries += count;
+        if(staleExpiries <= 64 || staleExpiries <= expiryQueue.size() / 2) return;
+
+        List<Expiry<K>> live = new ArrayList<>(expiryQueue.size() - staleExpiries);
+        for(Expiry<K> expiry : expiryQueue)
+        {
+            Entry entry = entries.get(expiry.key);
+            if(entry != null && entry.isLive(expiry)) live.add(expiry);
+        }
+        expiryQueue.clear();
+        expiryQueue.addAll(live);
+        staleExpiries = 0;
+    }
+
+
+    /**
+     * @return The entry of the key after removing its expired Buckets, or {@code null} if none of them is left.
+     */
+    private Entry liveEntry(final K key)
+    {
+        Entry entry = entries.get(key);
+        if(entry == null) return null;
+
+        int purged = entry.purge(nanoClock.getAsLong());
+        if(purged > 0) expiriesCancelled(purged);
+        if(entry.buckets.isEmpty()){
+            entries.remove(key);
+            return null;
+        }
+
+        return entry;
+    }
+
+
+    /**
+     * The Buckets of a key, and the deadlines of the ones that expire.
+     */
+    private final class Entry
+    {
+        private final K key;
+        private final BucketList buckets = new BucketList(indexes);
+        private final Map<Bucket<?>, Long> deadlines = new IdentityHashMap<>();
+        private long nextDeadline;
+
+        private Entry(final K key)
+        {
+            this.key = key;
+        }
+
+        private void add(final Bucket<?> bucket, final long deadline)
+        {
+            buckets.add(bucket);
+            if(deadlines.isEmpty() || deadline - nextDeadline < 0) nextDeadline = deadline;
+            deadlines.put(bucket, deadline);
+            expiryQueue.add(new Expiry<>(deadline, key, bucket));
+        }
+
+        private Bucket<?> set(final int index, final Bucket<?> bucket)
+        {
+            Bucket<?> prev = buckets.set(index, bucket);
+            if(deadlines.remove(prev) != null) expiriesCancelled(1);
+            return prev;
+        }
+
+        private Bucket<?> remove(final int index)
+        {
+            Bucket<?> prev = buckets.remove(index);
+            if(deadlines.remove(prev) != null) expiriesCancelled(1);
+            return prev;
+        }
+
+        private boolean isLive(final Expiry<K> expiry)
+        {
+            Long deadline = deadlines.get(expiry.bucket);
+            return deadline != null && deadline == expiry.deadline;
+        }
+
+        /**
+         * Remove the expired Buckets in one pass, scanning the deadlines only if the earliest one has passed.
+         * Their deadlines stay in the expiry queue, so the caller must count them as stale.
+         * @return The number of removed Buckets.
+         */
+        private int purge(final long now)
+        {
+            if(deadlines.isEmpty() || nextDeadline - now > 0) return 0;
+
+            Set<Bucket<?>> expired = Collections.newSetFromMap(new IdentityHashMap<>());
+            long earliest = Long.MAX_VALUE;
+            boolean hasNext = false;
+            for(Iterator<Map.Entry<Bucket<?>, Long>> it = deadlines.entrySet().iterator(); it.hasNext();)
+            {
+                Map.Entry<Bucket<?>, Long> deadline = it.next();
+                if(deadline.getValue() - now <= 0){
+                    expired.add(deadline.getKey());
+                    it.remove();
+                }else if(!hasNext || deadline.getValue() - earliest < 0){
+                    earliest = deadline.getValue();
+                    hasNext = true;
+                }
+            }
+            nextDeadline = earliest;
+
+            if(!expired.isEmpty()) buckets.removeIf(expired::contains);
+            return expired.size();
+        }
+    }
+
+
+    private static final class Expiry<K> implements Comparable<Expiry<K>>
+    {
+        private final long deadline;
+        private final K key;
+        private final Bucket<?> bucket;
+
+        private Expiry(final long deadline, final K key, final Bucket<?> bucket)
+        {
+            this.deadline = deadline;
+            this.key = key;
+            this.bucket = bucket;
+        }
+
+        @Override
+        public int compareTo(final Expiry<K> o)
+        {
+            return Long.signum(deadline - o.deadline);
+        }
+    }
+}
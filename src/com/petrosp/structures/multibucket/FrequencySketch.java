@@ -0,0 +1,101 @@
+package com.petrosp.structures.multibucket;
+
+import java.util.Objects;
+
+/**
+ * A count-min sketch of 4-bit counters, that approximates how often every object has been seen recently.
+ * Every {@code long} of the table holds 16 counters, and every object is counted in 4 of them. When the number of
+ * increments reaches 10 times the size of the table, all the counters are halved.
+ */
+final class FrequencySketch
+{
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MAXIMUM_TABLE_SIZE = 1 << 20;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+
+    /**
+     * @param expectedObjects The number of objects that are expected to be tracked at the same time.
+     */
+    FrequencySketch(final long expectedObjects)
+    {
+        int capacity = (int) Math.min(Math.max(expectedObjects, 8), MAXIMUM_TABLE_SIZE);
+        capacity = Integer.highestOneBit(capacity - 1) << 1;
+        table = new long[capacity];
+        tableMask = capacity - 1;
+        sampleSize = 10 * capacity;
+    }
+
+
+    /**
+     * @return The estimated number of times the object has been seen, up to 15.
+     */
+    int frequency(final Object e)
+    {
+        int hash = spread(Objects.hashCode(e));
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            long count = (table[indexOf(hash, i)] >>> ((start + i) << 2)) & 0xfL;
+            frequency = Math.min(frequency, (int) count);
+        }
+
+        return frequency;
+    }
+
+
+    void increment(final Object e)
+    {
+        int hash = spread(Objects.hashCode(e));
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+
+        if(added && ++size == sampleSize) reset();
+    }
+
+
+    private boolean incrementAt(final int index, final int counter)
+    {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if((table[index] & mask) == mask) return false;
+
+        table[index] += 1L << offset;
+        return true;
+    }
+
+    /**
+     * Halve every counter. The odd counters lose their last increment, which {@code size} accounts for.
+     */
+    private void reset()
+    {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(final int hash, final int i)
+    {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+
+    private static int spread(int x)
+    {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
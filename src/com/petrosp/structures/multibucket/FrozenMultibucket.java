@@ -0,0 +1,332 @@
+package com.petrosp.structures.multibucket;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable {@code Multibucket}, created by {@link HashMultibucket#freeze()}. The keys are kept in a flat
+ * open-addressed (linear probing) table, and the elements of all the keys in a single contiguous array, where the
+ * elements of every key occupy a range given by the offsets of its slot. Lookups allocate nothing and follow no
+ * pointers besides the key itself.
+ * <p>
+ * All the methods that would change the structure throw {@code UnsupportedOperationException}. The returned Buckets
+ * are detached copies, so replacing their element does not affect the structure. The elements themselves are not
+ * copied. Since every field is final, a {@code FrozenMultibucket} can be shared between threads without
+ * synchronization.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ *
+ *
+ * @param <K> Type of the keys.
+ */
+public final class FrozenMultibucket<K> extends AbstractReadOnlyMultibucket<K>
+{
+    private static final Object NULL_KEY = new Object();
+
+    private final Object[] keys;
+    private final int[] offsets;
+    private final Object[] elements;
+    private final int size;
+    private final Set<K> keySet = new KeySet();
+
+    FrozenMultibucket(final Map<K,BucketList> bucketMap)
+    {
+        int capacity = Integer.highestOneBit(Math.max(bucketMap.size() * 2, 2) - 1) << 1;
+        keys = new Object[capacity];
+        offsets = new int[capacity + 1];
+        size = bucketMap.size();
+
+        int total = 0;
+        int[] slots = new int[size];
+        int i = 0;
+        for(Map.Entry<K,BucketList> entry : bucketMap.entrySet())
+        {
+            Object key = maskNull(entry.getKey());
+            int slot = spread(key.hashCode()) & (capacity - 1);
+            while(keys[slot] != null)
+            {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            keys[slot] = key;
+            slots[i++] = slot;
+            offsets[slot + 1] = entry.getValue().size();
+            total += entry.getValue().size();
+        }
+        for (int s = 0; s < capacity; s++) {
+            offsets[s + 1] += offsets[s];
+        }
+
+        elements = new Object[total];
+        i = 0;
+        for(BucketList list : bucketMap.values())
+        {
+            int start = offsets[slots[i++]];
+            for (int b = 0; b < list.size(); b++) {
+                elements[start + b] = list.get(b).get();
+            }
+        }
+    }
+
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * @return An unmodifiable view of the keys.
+     */
+    @Override
+    public Set<K> keySet()
+    {
+        return keySet;
+    }
+
+
+    @Override
+    public boolean containsKey(final K key)
+    {
+        return slotOf(key) != -1;
+    }
+
+
+    @Override
+    public <V> boolean contains(final K key, final V e)
+    {
+        return getFirstIndex(key, e) != -1;
+    }
+
+
+    @Override
+    public <T> boolean containsType(final K key, final Class<T> t)
+    {
+        int slot = slotOf(key);
+        if(slot == -1) return false;
+
+        for (int i = offsets[slot]; i < offsets[slot + 1]; i++) {
+            if(typeOf(elements[i]) == t) return true;
+        }
+
+        return false;
+    }
+
+
+    @Override
+    public <V> int getFirstIndex(final K key, final V e)
+    {
+        int slot = slotOf(key);
+        if(slot == -1) return -1;
+
+        int start = offsets[slot];
+        for (int i = start; i < offsets[slot + 1]; i++) {
+            if(Objects.equals(elements[i], e)) return i - start;
+        }
+
+        return -1;
+    }
+
+
+    @Override
+    public <V> List<Integer> getAllIndexes(final K key, final V e)
+    {
+        List<Integer> out = new ArrayList<>();
+        for(int i : getAllIndexesAsArray(key, e))
+        {
+            out.add(i);
+        }
+
+        return out;
+    }
+
+
+    @Override
+    public <V> int[] getAllIndexesAsArray(final K key, final V e)
+    {
+        int slot = slotOf(key);
+        if(slot == -1) return new int[0];
+
+        int start = offsets[slot];
+        int count = 0;
+        int[] out = new int[offsets[slot + 1] - start];
+        for (int i = start; i < offsets[slot + 1]; i++) {
+            if(Objects.equals(elements[i], e)) out[count++] = i - start;
+        }
+
+        return Arrays.copyOf(out, count);
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <E> E get(final K key, final int index)
+    {
+        int slot = slotOf(key);
+        if(slot == -1 || index < 0 || index >= offsets[slot + 1] - offsets[slot]) return null;
+
+        return (E)elements[offsets[slot] + index];
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <M, V> V getFromMap(final K key, final M mapKey, final int index)
+    {
+        Object element = get(key, index);
+        if(!(element instanceof Map)) return null;
+
+        return ((Map<M,V>)element).get(mapKey);
+    }
+
+
+    @Override
+    public <T> List<Bucket<?>> getAllOfType(final K key, final Class<T> t)
+    {
+        List<Bucket<?>> out = new ArrayList<>();
+        int slot = slotOf(key);
+        if(slot == -1) return out;
+
+        for (int i = offsets[slot]; i < offsets[slot + 1]; i++) {
+            if(typeOf(elements[i]) == t) out.add(Bucket.of(elements[i]));
+        }
+
+        return out;
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <T> T getOfType(final K key, final Class<T> t, final int index)
+    {
+        int slot = slotOf(key);
+        if(slot == -1) return null;
+
+        int typeCounter = 0;
+        for (int i = offsets[slot]; i < offsets[slot + 1]; i++) {
+            if(typeOf(elements[i]) == t && typeCounter++ == index) return (T)elements[i];
+        }
+
+        return null;
+    }
+
+
+    /**
+     * @return A read-only view of the range of the key, that creates a detached {@code Bucket} on every access.
+     */
+    @Override
+    public List<Bucket<?>> getAll(final K key)
+    {
+        int slot = slotOf(key);
+        if(slot == -1) return Collections.emptyList();
+
+        return new ElementRange(elements, offsets[slot], offsets[slot + 1]);
+    }
+
+
+    @Override
+    public void forEach(final BiConsumer<? super K, ? super Bucket<?>> action)
+    {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if(keys[slot] == null) continue;
+
+            K key = unmaskNull(keys[slot]);
+            for (int i = offsets[slot]; i < offsets[slot + 1]; i++) {
+                action.accept(key, Bucket.of(elements[i]));
+            }
+        }
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return  "FrozenMultibucket of size: "+size();
+    }
+
+
+    private int slotOf(final Object key)
+    {
+        Object masked = maskNull(key);
+        int mask = keys.length - 1;
+        int slot = spread(masked.hashCode()) & mask;
+        while(keys[slot] != null)
+        {
+            if(keys[slot] == masked || keys[slot].equals(masked)) return slot;
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    private static Object maskNull(final Object key)
+    {
+        return key == null ? NULL_KEY : key;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> K unmaskNull(final Object key)
+    {
+        return key == NULL_KEY ? null : (K) key;
+    }
+
+    private static int spread(final int hash)
+    {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static Class<?> typeOf(final Object element)
+    {
+        return element == null ? null : element.getClass();
+    }
+
+
+    private final class KeySet extends AbstractSet<K>
+    {
+        @Override
+        public Iterator<K> iterator()
+        {
+            return new Iterator<K>()
+            {
+                private int slot = nextSlot(0);
+
+                @Override
+                public boolean hasNext()
+                {
+                    return slot < keys.length;
+                }
+
+                @Override
+                public K next()
+                {
+                    if(slot >= keys.length) throw new NoSuchElementException();
+
+                    K key = unmaskNull(keys[slot]);
+                    slot = nextSlot(slot + 1);
+                    return key;
+                }
+
+                private int nextSlot(int from)
+                {
+                    while(from < keys.length && keys[from] == null)
+                    {
+                        from++;
+                    }
+                    return from;
+                }
+            };
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+
+        @Override
+        public boolean contains(final Object o)
+        {
+            return slotOf(o) != -1;
+        }
+    }
+}
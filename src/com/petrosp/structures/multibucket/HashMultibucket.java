@@ -1,8 +1,14 @@
 package com.petrosp.structures.multibucket;
 
-import java.util.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
 
 /**
+ * A {@code Multibucket} backed by a {@code HashMap}. Optional {@link BucketIndex} indexes can be enabled at
+ * construction time. Indexes only track changes made through the {@code Multibucket} methods, so the elements of
+ * the returned Buckets must not be replaced directly when indexes are enabled.
+ *
  * @author Petros Papatheodorou
  * @author GitHub: subamanis
  * @author petrospapa21@gmail.com
@@ -10,335 +16,96 @@ import java.util.*;
  *
  * @param <K> Type of the keys.
  */
-public class HashMultibucket<K> implements Multibucket<K>
+public class HashMultibucket<K> extends AbstractMapMultibucket<K>
 {
-    private final Map<K,List<Bucket<?>>> bucketMap;
-
     public HashMultibucket()
     {
-        bucketMap = new HashMap<>();
+        super(new HashMap<>(), indexSet());
     }
 
     public HashMultibucket(int initialCapacity)
     {
-        bucketMap = new HashMap<>(initialCapacity);
+        super(new HashMap<>(initialCapacity), indexSet());
     }
 
     public HashMultibucket(int initialCapacity, int loadFactor)
     {
-        bucketMap = new HashMap<>(initialCapacity, loadFactor);
+        super(new HashMap<>(initialCapacity, loadFactor), indexSet());
     }
 
-
-    @Override
-    public int size()
+    /**
+     * @param indexes The indexes to keep for the Buckets of every key.
+     */
+    public HashMultibucket(BucketIndex... indexes)
     {
-        return bucketMap.size();
+        this(16, indexes);
     }
 
-
-    @Override
-    public <V> void put(final K key, final V e)
+    /**
+     * @param indexes The indexes to keep for the Buckets of every key.
+     */
+    public HashMultibucket(int initialCapacity, BucketIndex... indexes)
     {
-        List<Bucket<?>> list = bucketMap.computeIfAbsent(key, k -> new ArrayList<>());
-        list.add(Bucket.of(e));
+        super(new HashMap<>(initialCapacity), indexSet(indexes));
     }
 
 
-    @Override
-    public <V> boolean putIfAbsent(K key, V e)
+    /**
+     * Create an immutable copy of this multibucket, optimized for lookups, that can be shared between threads.
+     * Later changes of this multibucket are not reflected in the copy.
+     */
+    public FrozenMultibucket<K> freeze()
     {
-        List<Bucket<?>> list = bucketMap.get(key);
-        if(list == null){
-            list = new ArrayList<>();
-            list.add(Bucket.of(e));
-            bucketMap.put(key, list);
-            return true;
-        }
-
-        for(Bucket<?> b : list)
-        {
-            if(b.get().equals(e)){
-                return false;
-            }
-        }
-
-        list.add(Bucket.of(e));
-        return true;
+        return new FrozenMultibucket<>(bucketMap);
     }
 
 
-    @Override
-    public <V> boolean putIfAbsentType(final K key, final V e)
+    /**
+     * Write all the keys and elements to a file in a compact, versioned binary format, using the default codecs of
+     * {@link CodecRegistry#withDefaults()}. The file is created or truncated.
+     * @throws IllegalArgumentException If no codec is registered for the class type of a key or element.
+     */
+    public void save(final Path path) throws IOException
     {
-        List<Bucket<?>> list = bucketMap.get(key);
-        if(list == null){
-            list = new ArrayList<>();
-            list.add(Bucket.of(e));
-            bucketMap.put(key, list);
-            return true;
-        }
-
-        Class<?> eClass = e.getClass();
-        for(Bucket<?> b : list)
-        {
-            Class<?> bClass = b.get().getClass();
-            if(bClass.equals(eClass)){
-                return false;
-            }
-        }
-
-        list.add(Bucket.of(e));
-        return true;
+        save(path, CodecRegistry.withDefaults());
     }
 
 
-    @Override
-    public <V> boolean putInCollection(K key, V e, int index)
+    /**
+     * Write all the keys and elements to a file in a compact, versioned binary format. The file is created or truncated.
+     * @param codecs The codecs of the class types of the keys and the elements.
+     * @throws IllegalArgumentException If no codec is registered for the class type of a key or element.
+     */
+    public void save(final Path path, final CodecRegistry codecs) throws IOException
     {
-        List<Bucket<?>> existing = bucketMap.get(key);
-        if(existing == null) return false;
-
-        try{
-            Bucket<?> b = existing.get(index);
-            if(!b.containsCollection()) return false;
-            b.addToCollection(e);
-        }catch (Exception ex) {
-            return false;
-        }
-
-        return true;
+        MultibucketFileFormat.write(bucketMap, path, codecs);
     }
 
 
-    @Override
-    public <T, V> boolean putInCollectionOfType(final K key, final V e, final T t, final int index)
+    /**
+     * Load a file written by {@link #save(Path)}, using the default codecs of {@link CodecRegistry#withDefaults()}.
+     */
+    public static <K> HashMultibucket<K> load(final Path path) throws IOException
     {
-        List<Bucket<?>> existing = bucketMap.get(key);
-        if(existing == null) return false;
-
-        try{
-            Bucket<?> b = existing.get(index);
-            if(!b.containsCollection()) return false;
-            b.addToCollection(e);
-        }catch (Exception ex) {
-            return false;
-        }
-
-        return true;
+        return load(path, CodecRegistry.withDefaults());
     }
 
 
-    @Override
-    public <M, V> boolean putInMap(K key, M mapKey, V e, int index)
+    /**
+     * Load a file written by {@link #save(Path, CodecRegistry)}. The file is memory-mapped and its blocks of keys are
+     * decoded in parallel, straight into a {@code HashMultibucket} that is presized for all the keys.
+     * @param codecs The codecs of the class types of the keys and the elements.
+     * @param indexes The indexes to keep for the Buckets of every key.
+     * @throws IOException If the file cannot be read, is not in the expected format, or contains a class type
+     * without a registered codec.
+     */
+    public static <K> HashMultibucket<K> load(final Path path, final CodecRegistry codecs, final BucketIndex... indexes)
+            throws IOException
     {
-        List<Bucket<?>> existing = bucketMap.get(key);
-        if(existing == null) return false;
-
-        try{
-            Bucket<?> b = existing.get(index);
-            if(!b.containsMap()) return false;
-            b.addToMap(mapKey, e);
-        }catch (Exception ex) {
-            return false;
-        }
-
-        return true;
+        return MultibucketFileFormat.read(path, codecs, indexes);
     }
 
 
-    @Override
-    public <V> Object replace(final K key, final V e, final int index)
-    {
-        List<Bucket<?>> existing = bucketMap.get(key);
-        if(existing == null) return null;
-
-        try{
-            Object prev = existing.get(index).get();
-            Bucket<V> newBucket = Bucket.of(e);
-            existing.set(index, newBucket);
-            return prev;
-        }catch (Exception ex) {
-            return null;
-        }
-    }
-
-
-    @Override @SuppressWarnings("unchecked")
-    public <V> V replaceSameType(final K key, final V e, final int index)
-    {
-        List<Bucket<?>> existing = bucketMap.get(key);
-        if(existing == null) return null;
-
-        try{
-            int typeCounter = 0;
-            int generalCounter = -1;
-            Bucket<V> wantedBucket = null;
-            for(Bucket<?> b : existing){
-                generalCounter++;
-                if(b.getType() == e.getClass()){
-                    if(typeCounter++ == index){
-                        wantedBucket = (Bucket<V>)b;
-                        break;
-                    }
-                }
-            }
-            if(wantedBucket == null) return null;
-
-            V prevElement = (V)existing.get(generalCounter).get();
-            existing.set(generalCounter, Bucket.of(e));
-            return prevElement;
-        }catch (Exception ex) {
-            return null;
-        }
-    }
-
-
-    @Override
-    public <V> boolean contains(final K key, final V e)
-    {
-        List<Bucket<?>> existing = bucketMap.get(key);
-        if(existing == null) return false;
-
-        for(Bucket<?> b : existing)
-        {
-            if(b.get().equals(e)) return true;
-        }
-
-        return false;
-    }
-
-
-    @Override
-    public <T> boolean containsType(final K key, final Class<T> t)
-    {
-        List<Bucket<?>> existing = bucketMap.get(key);
-        if(existing == null) return false;
-
-        for(Bucket<?> b : existing)
-        {
-            if(b.getType() == t) return true;
-        }
-
-        return false;
-    }
-
-
-    @Override
-    public boolean containsKey(K key)
-    {
-        return bucketMap.containsKey(key);
-    }
-
-
-    @Override
-    public Set<K> keySet()
-    {
-        return bucketMap.keySet();
-    }
-
-
-    @Override
-    public <V> int getFirstIndex(final K key, final V e)
-    {
-        List<Bucket<?>> existing = bucketMap.get(key);
-        if(existing == null) return -1;
-
-        for (int i = 0; i < existing.size(); i++) {
-            if(existing.get(i).get().equals(e)){
-                return i;
-            }
-        }
-
-        return -1;
-    }
-
-
-    @Override
-    public <V> List<Integer> getAllIndexes(final K key, final V e)
-    {
-        List<Bucket<?>> existing = bucketMap.get(key);
-        if(existing == null) return new ArrayList<>();
-
-        List<Integer> out = new ArrayList<>();
-        for (int i = 0; i < existing.size(); i++) {
-            if(existing.get(i).get().equals(e)){
-                out.add(i);
-            }
-        }
-
-        return out;
-    }
-
-
-    @Override @SuppressWarnings("unchecked")
-    public <E> E get(final K key, final int index)
-    {
-        List<Bucket<?>> existing = bucketMap.get(key);
-        if(existing == null) return null;
-
-        try{
-            return (E)existing.get(index).get();
-        }catch (Exception e){
-            return null;
-        }
-    }
-
-
-    @Override @SuppressWarnings("unchecked")
-    public <M, V> V getFromMap(final K key, final M mapKey, final int index)
-    {
-        List<Bucket<?>> existing = bucketMap.get(key);
-        if(existing == null) return null;
-
-        try{
-            return ((Map<M,V>)existing.get(index).get()).get(mapKey);
-        }catch (Exception e){
-            return null;
-        }
-    }
-
-
-    @Override
-    public <T> List<Bucket<?>> getAllOfType(final K key, final Class<T> t)
-    {
-        List<Bucket<?>> existing = bucketMap.get(key);
-        if(existing == null) return new ArrayList<>();
-
-        List<Bucket<?>> out = new ArrayList<>();
-        for(Bucket<?> b : existing)
-        {
-            if(b.getType() == t) out.add(b);
-        }
-
-        return out;
-    }
-
-
-    @Override
-    public List<Bucket<?>> getAll(final K key)
-    {
-        List<Bucket<?>> existing = bucketMap.get(key);
-        if(existing == null) return new ArrayList<>();
-
-        return Collections.unmodifiableList(existing);
-    }
-
-    @Override
-    public boolean equals(Object o)
-    {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        HashMultibucket<?> that = (HashMultibucket<?>) o;
-        return bucketMap.equals(that.bucketMap);
-    }
-
-    @Override
-    public int hashCode()
-    {
-        return Objects.hash(bucketMap);
-    }
-
     @Override
     public String toString()
     {
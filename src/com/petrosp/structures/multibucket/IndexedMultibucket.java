@@ -0,0 +1,305 @@
+package com.petrosp.structures.multibucket;
+
+import com.petrosp.structures.Pair;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * A {@link HashMultibucket} with named secondary indexes on the elements of its Buckets. An index is defined by a
+ * class type and an extractor function, and maps every value that the extractor returns for the elements of that
+ * exact type, to the keys and the Bucket indexes of those elements. For example, an index on the {@code status} of
+ * {@code Order} elements finds every key that holds an open order without scanning the keys.
+ * <p>
+ * The indexes are kept up to date by every method that adds, replaces, changes or removes a Bucket, at the cost of
+ * one call of the extractor per index of the type of the element. The extractor must return the same value for an
+ * element until it is replaced or changed through this multibucket, so the indexed properties of the elements must
+ * not be changed directly. The keys are returned as an unmodifiable view, since removing a key through it would
+ * bypass the indexes.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ *
+ *
+ * @param <K> Type of the keys.
+ */
+public class IndexedMultibucket<K> extends HashMultibucket<K>
+{
+    private final Map<String, SecondaryIndex<K>> secondaryIndexes = new HashMap<>();
+    private List<SecondaryIndex<K>> activeIndexes = Collections.emptyList();
+
+    /**
+     * @param indexes The {@link BucketIndex} indexes to keep for the Buckets of every key.
+     */
+    public IndexedMultibucket(BucketIndex... indexes)
+    {
+        super(indexes);
+    }
+
+    /**
+     * @param indexes The {@link BucketIndex} indexes to keep for the Buckets of every key.
+     */
+    public IndexedMultibucket(int initialCapacity, BucketIndex... indexes)
+    {
+        super(initialCapacity, indexes);
+    }
+
+
+    /**
+     * Register a secondary index and build it over the existing elements, which is linear to the number of Buckets.
+     * @param name The name of the index, used by the lookups.
+     * @param t The class type of the elements to index. Elements of subclasses are not indexed.
+     * @param extractor The function that returns the indexed value of an element. It may return {@code null}.
+     * @throws IllegalArgumentException If an index with the same name already exists.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void addIndex(final String name, final Class<T> t, final Function<? super T, ?> extractor)
+    {
+        if(secondaryIndexes.containsKey(name)) throw new IllegalArgumentException("Index already exists: "+name);
+
+        SecondaryIndex<K> index = new SecondaryIndex<>(t, (Function<Object, ?>) extractor);
+        for(Map.Entry<K, BucketList> entry : bucketMap.entrySet())
+        {
+            BucketList list = entry.getValue();
+            for (int i = 0; i < list.size(); i++) {
+                index.add(entry.getKey(), list.get(i), i);
+            }
+        }
+
+        secondaryIndexes.put(name, index);
+        activeIndexes = new ArrayList<>(secondaryIndexes.values());
+    }
+
+
+    /**
+     * @return {@code true} if an index with the given name existed.
+     */
+    public boolean removeIndex(final String name)
+    {
+        if(secondaryIndexes.remove(name) == null) return false;
+
+        activeIndexes = new ArrayList<>(secondaryIndexes.values());
+        return true;
+    }
+
+
+    /**
+     * @return An unmodifiable view of the names of the registered indexes.
+     */
+    public Set<String> indexNames()
+    {
+        return Collections.unmodifiableSet(secondaryIndexes.keySet());
+    }
+
+
+    /**
+     * Find the elements of the index whose extracted value equals the given, in constant time plus the number of matches.
+     * @return The key and the Bucket index of every matching element, with the indexes of a key in ascending order.
+     * @throws IllegalArgumentException If there is no index with the given name.
+     */
+    public List<Pair<K,Integer>> lookup(final String name, final Object value)
+    {
+        Map<K, IntList> matches = indexNamed(name).byValue.get(value);
+        if(matches == null) return new ArrayList<>();
+
+        List<Pair<K,Integer>> out = new ArrayList<>();
+        for(Map.Entry<K, IntList> entry : matches.entrySet())
+        {
+            IntList positions = entry.getValue();
+            for (int i = 0; i < positions.size(); i++) {
+                out.add(Pair.of(entry.getKey(), positions.get(i)));
+            }
+        }
+
+        return out;
+    }
+
+
+    /**
+     * @return An unmodifiable view of the keys that hold at least one element of the index whose extracted value
+     * equals the given.
+     * @throws IllegalArgumentException If there is no index with the given name.
+     */
+    public Set<K> lookupKeys(final String name, final Object value)
+    {
+        Map<K, IntList> matches = indexNamed(name).byValue.get(value);
+        if(matches == null) return Collections.emptySet();
+
+        return Collections.unmodifiableSet(matches.keySet());
+    }
+
+
+    /**
+     * @return An unmodifiable view of the keys.
+     */
+    @Override
+    public Set<K> keySet()
+    {
+        return Collections.unmodifiableSet(bucketMap.keySet());
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public List<Bucket<?>> remove(final K key)
+    {
+        List<Bucket<?>> removed = super.remove(key);
+        if(removed == null) return null;
+
+        ((KeyBucketList) removed).detached = true;
+        for(SecondaryIndex<K> index : activeIndexes)
+        {
+            index.removeKey(key);
+        }
+
+        return removed;
+    }
+
+
+    @Override
+    BucketList newBucketList(final K key, final int initialCapacity)
+    {
+        return new KeyBucketList(key, initialCapacity);
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return  "IndexedMultibucket of size: "+size()+", indexes: "+secondaryIndexes.keySet();
+    }
+
+
+    private SecondaryIndex<K> indexNamed(final String name)
+    {
+        SecondaryIndex<K> index = secondaryIndexes.get(name);
+        if(index == null) throw new IllegalArgumentException("No index named: "+name);
+
+        return index;
+    }
+
+
+    /**
+     * The Buckets of a key, that forward their changes to the secondary indexes until the key is removed.
+     */
+    private final class KeyBucketList extends BucketList
+    {
+        private final K key;
+        private boolean detached;
+
+        KeyBucketList(final K key, final int initialCapacity)
+        {
+            super(initialCapacity, indexes);
+            this.key = key;
+        }
+
+        @Override
+        void indexed(final Bucket<?> bucket, final int index)
+        {
+            if(detached) return;
+            for(SecondaryIndex<K> secondary : activeIndexes)
+            {
+                secondary.add(key, bucket, index);
+            }
+        }
+
+        @Override
+        void unindexed(final Bucket<?> bucket, final int index)
+        {
+            if(detached) return;
+            for(SecondaryIndex<K> secondary : activeIndexes)
+            {
+                secondary.remove(key, bucket, index);
+            }
+        }
+
+        @Override
+        void shifted(final int removedIndex)
+        {
+            if(detached) return;
+            for(SecondaryIndex<K> secondary : activeIndexes)
+            {
+                secondary.shift(key, removedIndex);
+            }
+        }
+    }
+
+
+    /**
+     * Both directions of an index share the same position lists: by value for the lookups, and by key for the
+     * shifting and the removal of a key.
+     */
+    private static final class SecondaryIndex<K>
+    {
+        private final Class<?> type;
+        private final Function<Object, ?> extractor;
+        private final Map<Object, Map<K, IntList>> byValue = new HashMap<>();
+        private final Map<K, Map<Object, IntList>> byKey = new HashMap<>();
+
+        SecondaryIndex(final Class<?> type, final Function<Object, ?> extractor)
+        {
+            this.type = type;
+            this.extractor = extractor;
+        }
+
+        void add(final K key, final Bucket<?> bucket, final int index)
+        {
+            if(bucket.isEmpty() || bucket.getType() != type) return;
+
+            Object value = extractor.apply(bucket.get());
+            Map<Object, IntList> values = byKey.computeIfAbsent(key, k -> new HashMap<>());
+            IntList positions = values.get(value);
+            if(positions == null){
+                positions = new IntList();
+                values.put(value, positions);
+                byValue.computeIfAbsent(value, v -> new HashMap<>()).put(key, positions);
+            }
+            positions.addSorted(index);
+        }
+
+        void remove(final K key, final Bucket<?> bucket, final int index)
+        {
+            if(bucket.isEmpty() || bucket.getType() != type) return;
+
+            Map<Object, IntList> values = byKey.get(key);
+            if(values == null) return;
+
+            Object value = extractor.apply(bucket.get());
+            IntList positions = values.get(value);
+            if(positions == null || !positions.removeSorted(index) || !positions.isEmpty()) return;
+
+            values.remove(value);
+            if(values.isEmpty()) byKey.remove(key);
+            unlink(value, key);
+        }
+
+        void shift(final K key, final int removedIndex)
+        {
+            Map<Object, IntList> values = byKey.get(key);
+            if(values == null) return;
+
+            for(IntList positions : values.values())
+            {
+                positions.decrementAbove(removedIndex);
+            }
+        }
+
+        void removeKey(final K key)
+        {
+            Map<Object, IntList> values = byKey.remove(key);
+            if(values == null) return;
+
+            for(Object value : values.keySet())
+            {
+                unlink(value, key);
+            }
+        }
+
+        private void unlink(final Object value, final K key)
+        {
+            Map<K, IntList> keys = byValue.get(value);
+            keys.remove(key);
+            if(keys.isEmpty()) byValue.remove(value);
+        }
+    }
+}
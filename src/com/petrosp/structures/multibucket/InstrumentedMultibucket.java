@@ -0,0 +1,501 @@
+package com.petrosp.structures.multibucket;
+
+import com.petrosp.structures.Pair;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * A {@code Multibucket} that passes every call to another one, and counts the hits and misses of its lookups, so
+ * that {@link #stats()} also reports how the multibucket is used. The counters are {@code LongAdder}s, that
+ * threads update without contending with each other, so counting costs little more than an increment, and this
+ * class is as thread-safe as the wrapped multibucket.
+ * <p>
+ * {@code get}, {@code getFromMap}, {@code getOfType}, {@code getAll}, {@code getAllOfType} and
+ * {@code viewAllOfType} hit when they find a non-null element or a non-empty list, and {@code contains},
+ * {@code containsKey} and {@code containsType} when they return {@code true}. The primitive {@code getAs*} lookups
+ * are passed through without being counted, because their result can't tell a hit from a miss.
+ * <p>
+ * The stats can also be published over JMX with {@link #registerMBean(String)}. The MBean reads the lookup counters
+ * as they are, and the rest of the stats from the last {@link #refreshStats()}, so that the JMX threads never visit
+ * the wrapped multibucket, which may not be thread-safe, and a poll of all the attributes costs nothing.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ *
+ *
+ * @param <K> Type of the keys.
+ */
+public class InstrumentedMultibucket<K> implements Multibucket<K>
+{
+    private final Multibucket<K> delegate;
+    private final LongAdder getHits = new LongAdder();
+    private final LongAdder getMisses = new LongAdder();
+    private final LongAdder containsHits = new LongAdder();
+    private final LongAdder containsMisses = new LongAdder();
+    private volatile MultibucketStats publishedStats;
+    private ObjectName mbeanName;
+
+    /**
+     * @param delegate The multibucket that stores the keys.
+     */
+    public InstrumentedMultibucket(Multibucket<K> delegate)
+    {
+        this.delegate = delegate;
+    }
+
+
+    /**
+     * @return The stats of the wrapped multibucket, together with the lookup counters.
+     */
+    @Override
+    public MultibucketStats stats()
+    {
+        return delegate.stats().withCounters(getHits.sum(), getMisses.sum(), containsHits.sum(), containsMisses.sum());
+    }
+
+
+    /**
+     * Visit all the keys and Buckets of the wrapped multibucket once, and publish the result to the MBean. Call it
+     * from a thread that may read the wrapped multibucket, as often as the MBean should be updated.
+     * @return The stats of the wrapped multibucket, together with the lookup counters.
+     */
+    public MultibucketStats refreshStats()
+    {
+        MultibucketStats stats = delegate.stats();
+        publishedStats = stats;
+        return stats.withCounters(getHits.sum(), getMisses.sum(), containsHits.sum(), containsMisses.sum());
+    }
+
+
+    /**
+     * Set all the lookup counters to 0. Lookups that run at the same time may be counted or not.
+     */
+    public void resetCounters()
+    {
+        getHits.reset();
+        getMisses.reset();
+        containsHits.reset();
+        containsMisses.reset();
+    }
+
+
+    /**
+     * Register a {@link MultibucketMXBean} of this multibucket with the platform MBean server, under the name
+     * {@code com.petrosp.structures.multibucket:type=Multibucket,name=<name>}, and {@link #refreshStats()} its stats.
+     * @return The name of the registered MBean.
+     * @throws JMException If the name is not valid or another MBean is already registered with it.
+     */
+    public synchronized ObjectName registerMBean(final String name) throws JMException
+    {
+        if(mbeanName != null) throw new IllegalStateException("Already registered as " + mbeanName);
+
+        ObjectName objectName = new ObjectName("com.petrosp.structures.multibucket:type=Multibucket,name="
+                + ObjectName.quote(name));
+        refreshStats();
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MXBean(), objectName);
+        mbeanName = objectName;
+        return objectName;
+    }
+
+
+    /**
+     * Unregister the MBean of this multibucket, if it is registered.
+     */
+    public synchronized void unregisterMBean() throws JMException
+    {
+        if(mbeanName == null) return;
+
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+        mbeanName = null;
+    }
+
+
+    @Override
+    public int size()
+    {
+        return delegate.size();
+    }
+
+
+    @Override
+    public Set<K> keySet()
+    {
+        return delegate.keySet();
+    }
+
+
+    @Override
+    public <V> boolean contains(final K key, final V e)
+    {
+        return countContains(delegate.contains(key, e));
+    }
+
+
+    @Override
+    public <T> boolean containsType(final K key, final Class<T> t)
+    {
+        return countContains(delegate.containsType(key, t));
+    }
+
+
+    @Override
+    public boolean containsKey(final K key)
+    {
+        return countContains(delegate.containsKey(key));
+    }
+
+
+    @Override
+    public <V> void put(final K key, final V e)
+    {
+        delegate.put(key, e);
+    }
+
+
+    @Override
+    public <V> void putAll(final K key, final Collection<V> elements)
+    {
+        delegate.putAll(key, elements);
+    }
+
+
+    @Override
+    public void putAll(final Map<K, ? extends Collection<?>> elements)
+    {
+        delegate.putAll(elements);
+    }
+
+
+    @Override
+    public <V> boolean putIfAbsent(final K key, final V e)
+    {
+        return delegate.putIfAbsent(key, e);
+    }
+
+
+    @Override
+    public <V> boolean putIfAbsentType(final K key, final V e)
+    {
+        return delegate.putIfAbsentType(key, e);
+    }
+
+
+    @Override
+    public <V> boolean putInCollection(final K key, final V e, final int index)
+    {
+        return delegate.putInCollection(key, e, index);
+    }
+
+
+    @Override
+    public <T, V> boolean putInCollectionOfType(final K key, final V e, final T t, final int index)
+    {
+        return delegate.putInCollectionOfType(key, e, t, index);
+    }
+
+
+    @Override
+    public <M, V> boolean putInMap(final K key, final M mapKey, final V e, final int index)
+    {
+        return delegate.putInMap(key, mapKey, e, index);
+    }
+
+
+    @Override
+    public void putInt(final K key, final int e)
+    {
+        delegate.putInt(key, e);
+    }
+
+
+    @Override
+    public void putLong(final K key, final long e)
+    {
+        delegate.putLong(key, e);
+    }
+
+
+    @Override
+    public void putDouble(final K key, final double e)
+    {
+        delegate.putDouble(key, e);
+    }
+
+
+    @Override
+    public int addAndGet(final K key, final int delta)
+    {
+        return delegate.addAndGet(key, delta);
+    }
+
+
+    @Override
+    public long addAndGet(final K key, final long delta)
+    {
+        return delegate.addAndGet(key, delta);
+    }
+
+
+    @Override
+    public double addAndGet(final K key, final double delta)
+    {
+        return delegate.addAndGet(key, delta);
+    }
+
+
+    @Override
+    public int getAsInt(final K key, final int index, final int defaultValue)
+    {
+        return delegate.getAsInt(key, index, defaultValue);
+    }
+
+
+    @Override
+    public long getAsLong(final K key, final int index, final long defaultValue)
+    {
+        return delegate.getAsLong(key, index, defaultValue);
+    }
+
+
+    @Override
+    public double getAsDouble(final K key, final int index, final double defaultValue)
+    {
+        return delegate.getAsDouble(key, index, defaultValue);
+    }
+
+
+    @Override
+    public <V> Object replace(final K key, final V e, final int index)
+    {
+        return delegate.replace(key, e, index);
+    }
+
+
+    @Override
+    public <V> V replaceSameType(final K key, final V e, final int index)
+    {
+        return delegate.replaceSameType(key, e, index);
+    }
+
+
+    @Override
+    public <V> int getFirstIndex(final K key, final V e)
+    {
+        return delegate.getFirstIndex(key, e);
+    }
+
+
+    @Override
+    public <V> List<Integer> getAllIndexes(final K key, final V e)
+    {
+        return delegate.getAllIndexes(key, e);
+    }
+
+
+    @Override
+    public <V> int[] getAllIndexesAsArray(final K key, final V e)
+    {
+        return delegate.getAllIndexesAsArray(key, e);
+    }
+
+
+    @Override
+    public <V> PrimitiveIterator.OfInt indexCursor(final K key, final V e)
+    {
+        return delegate.indexCursor(key, e);
+    }
+
+
+    @Override
+    public <E> E get(final K key, final int index)
+    {
+        return countGet(delegate.get(key, index));
+    }
+
+
+    @Override
+    public <M, V> V getFromMap(final K key, final M mapKey, final int index)
+    {
+        return countGet(delegate.getFromMap(key, mapKey, index));
+    }
+
+
+    @Override
+    public <T> List<Bucket<?>> getAllOfType(final K key, final Class<T> t)
+    {
+        return countGetAll(delegate.getAllOfType(key, t));
+    }
+
+
+    @Override
+    public <T> List<Bucket<?>> viewAllOfType(final K key, final Class<T> t)
+    {
+        return countGetAll(delegate.viewAllOfType(key, t));
+    }
+
+
+    @Override
+    public <T> T getOfType(final K key, final Class<T> t, final int index)
+    {
+        return countGet(delegate.getOfType(key, t, index));
+    }
+
+
+    @Override
+    public List<Bucket<?>> getAll(final K key)
+    {
+        return countGetAll(delegate.getAll(key));
+    }
+
+
+    @Override
+    public Stream<Pair<K, Bucket<?>>> stream()
+    {
+        return delegate.stream();
+    }
+
+
+    @Override
+    public Stream<Pair<K, Bucket<?>>> parallelStream()
+    {
+        return delegate.parallelStream();
+    }
+
+
+    @Override
+    public <T> Stream<Pair<K, T>> streamOfType(final Class<T> t)
+    {
+        return delegate.streamOfType(t);
+    }
+
+
+    @Override
+    public <T> MultibucketQuery<K, T> select(final Class<T> t)
+    {
+        return delegate.select(t);
+    }
+
+
+    @Override
+    public void forEach(final BiConsumer<? super K, ? super Bucket<?>> action)
+    {
+        delegate.forEach(action);
+    }
+
+
+    @Override
+    public List<Bucket<?>> remove(final K key)
+    {
+        return delegate.remove(key);
+    }
+
+
+    @Override
+    public Object remove(final K key, final int index)
+    {
+        return delegate.remove(key, index);
+    }
+
+
+    private boolean countContains(final boolean found)
+    {
+        (found ? containsHits : containsMisses).increment();
+        return found;
+    }
+
+    private <E> E countGet(final E found)
+    {
+        (found != null ? getHits : getMisses).increment();
+        return found;
+    }
+
+    private List<Bucket<?>> countGetAll(final List<Bucket<?>> found)
+    {
+        (found.isEmpty() ? getMisses : getHits).increment();
+        return found;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return  "InstrumentedMultibucket of size: "+size()+", get hits/misses: "+getHits.sum()+"/"+getMisses.sum()+
+                ", contains hits/misses: "+containsHits.sum()+"/"+containsMisses.sum()+", over: "+delegate;
+    }
+
+
+    private final class MXBean implements MultibucketMXBean
+    {
+        @Override
+        public long getKeyCount()
+        {
+            return publishedStats.keyCount();
+        }
+
+        @Override
+        public long getBucketCount()
+        {
+            return publishedStats.bucketCount();
+        }
+
+        @Override
+        public long[] getBucketsPerKeyHistogram()
+        {
+            return publishedStats.bucketsPerKeyHistogram();
+        }
+
+        @Override
+        public Map<String, Long> getTypeCounts()
+        {
+            Map<String, Long> out = new LinkedHashMap<>();
+            for(Map.Entry<Class<?>, Long> entry : publishedStats.typeCounts().entrySet())
+            {
+                out.put(entry.getKey().getName(), entry.getValue());
+            }
+            return out;
+        }
+
+        @Override
+        public long getEstimatedHeapBytes()
+        {
+            return publishedStats.estimatedHeapBytes();
+        }
+
+        @Override
+        public long getGetHits()
+        {
+            return getHits.sum();
+        }
+
+        @Override
+        public long getGetMisses()
+        {
+            return getMisses.sum();
+        }
+
+        @Override
+        public long getContainsHits()
+        {
+            return containsHits.sum();
+        }
+
+        @Override
+        public long getContainsMisses()
+        {
+            return containsMisses.sum();
+        }
+
+        @Override
+        public void resetCounters()
+        {
+            InstrumentedMultibucket.this.resetCounters();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.petrosp.structures.multibucket;
+
+import java.util.Arrays;
+
+/**
+ * A minimal growable list of primitive ints, used by the indexes of the Multibuckets to store Bucket positions
+ * without boxing them. The sorted operations assume that the values were only ever added in ascending order.
+ */
+final class IntList
+{
+    private int[] values;
+    private int size;
+
+    IntList()
+    {
+        values = new int[2];
+    }
+
+    IntList(final int capacity)
+    {
+        values = new int[Math.max(capacity, 1)];
+    }
+
+
+    int size()
+    {
+        return size;
+    }
+
+
+    boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+
+    int get(final int index)
+    {
+        return values[index];
+    }
+
+
+    void add(final int value)
+    {
+        if(size == values.length){
+            values = Arrays.copyOf(values, size << 1);
+        }
+        values[size++] = value;
+    }
+
+
+    /**
+     * Insert the value at its sorted position.
+     */
+    void addSorted(final int value)
+    {
+        if(size == 0 || values[size - 1] < value){
+            add(value);
+            return;
+        }
+
+        int position = Arrays.binarySearch(values, 0, size, value);
+        if(position < 0) position = -position - 1;
+
+        if(size == values.length){
+            values = Arrays.copyOf(values, size << 1);
+        }
+        System.arraycopy(values, position, values, position + 1, size - position);
+        values[position] = value;
+        size++;
+    }
+
+
+    /**
+     * Remove the value, if it exists.
+     * @return {@code true} if the value was found and removed.
+     */
+    boolean removeSorted(final int value)
+    {
+        int position = Arrays.binarySearch(values, 0, size, value);
+        if(position < 0) return false;
+
+        System.arraycopy(values, position + 1, values, position, size - position - 1);
+        size--;
+        return true;
+    }
+
+
+    /**
+     * Decrement by one every value that is greater than the given one.
+     */
+    void decrementAbove(final int value)
+    {
+        for (int i = size - 1; i >= 0 && values[i] > value; i--) {
+            values[i]--;
+        }
+    }
+
+
+    /**
+     * @return The first value that is greater than or equal to the given one, or -1 if none exists.
+     */
+    int ceiling(final int value)
+    {
+        int position = Arrays.binarySearch(values, 0, size, value);
+        if(position < 0) position = -position - 1;
+
+        return position == size ? -1 : values[position];
+    }
+
+
+    int[] toArray()
+    {
+        return Arrays.copyOf(values, size);
+    }
+}
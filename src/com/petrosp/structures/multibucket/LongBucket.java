@@ -0,0 +1,164 @@
+package com.petrosp.structures.multibucket;
+
+/**
+ * A {@code Bucket} of a primitive {@code long}, that stores it without boxing. {@link #getAsLong()}, {@link #set},
+ * and {@link #addAndGet} read and change the value without boxing, while {@code get} boxes it on every call.
+ * Multibuckets treat it as a Bucket of {@code Long}, so it is found by {@code containsType} and {@code getAllOfType}
+ * both with {@code Long.class} and with {@code long.class}.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ */
+public class LongBucket extends Bucket<Long>
+{
+    private long value;
+    private boolean present;
+
+    public LongBucket(final long value)
+    {
+        this.value = value;
+        this.present = true;
+    }
+
+    public static LongBucket of(final long value)
+    {
+        return new LongBucket(value);
+    }
+
+
+    /**
+     * @return The value of the {@code Bucket}, or {@code 0} if it is empty.
+     */
+    public long getAsLong()
+    {
+        return value;
+    }
+
+
+    /**
+     * Put the value inside the {@code Bucket}, replacing the existing one if any.
+     * @return The previous value, or {@code 0} if the {@code Bucket} was empty.
+     */
+    public long set(final long value)
+    {
+        long previous = this.value;
+        this.value = value;
+        this.present = true;
+        return previous;
+    }
+
+
+    /**
+     * Add the delta to the value, or put the delta inside the {@code Bucket} if it is empty.
+     * @return The new value.
+     */
+    public long addAndGet(final long delta)
+    {
+        value += delta;
+        present = true;
+        return value;
+    }
+
+
+    @Override
+    public boolean isEmpty()
+    {
+        return !present;
+    }
+
+
+    @Override
+    public void empty()
+    {
+        value = 0;
+        present = false;
+    }
+
+
+    @Override
+    public boolean containsCollection()
+    {
+        return false;
+    }
+
+
+    @Override
+    public <V> boolean containedInCollection(final V e)
+    {
+        return false;
+    }
+
+
+    @Override
+    public boolean containsMap()
+    {
+        return false;
+    }
+
+
+    /**
+     * @param e The new value, or {@code null} to empty the {@code Bucket}.
+     */
+    @Override
+    public Long put(final Long e)
+    {
+        Long previous = get();
+        if(e == null){
+            empty();
+        }else{
+            set(e);
+        }
+        return previous;
+    }
+
+
+    @Override
+    public Long putIfEmpty(final Long e)
+    {
+        if(present) return value;
+
+        if(e != null) set(e);
+        return null;
+    }
+
+
+    @Override
+    public <V> boolean addToCollection(final V e)
+    {
+        return false;
+    }
+
+
+    @Override
+    public <K, V> V addToMap(final K key, final V value)
+    {
+        return null;
+    }
+
+
+    @Override
+    public Long get()
+    {
+        return present ? value : null;
+    }
+
+
+    @Override
+    public <K, V> V getFromMap(final K key)
+    {
+        return null;
+    }
+
+    @Override
+    public Class<?> getType()
+    {
+        return Long.class;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.valueOf(get());
+    }
+}
@@ -0,0 +1,286 @@
+package com.petrosp.structures.multibucket;
+
+import java.util.*;
+import java.util.function.LongConsumer;
+
+/**
+ * A multibucket with primitive {@code long} keys, offering the same operations as {@code Multibucket} without boxing
+ * the keys. Keys are stored in an open-addressed (linear probing) {@code long[]} table, so lookups allocate nothing.
+ * <p>
+ * Resizing is incremental: when the table gets full, a table of double the capacity is allocated, and every following
+ * write moves a few entries of the old table to the new one, instead of rehashing all of them at once.
+ * Lookups check both tables while a resize is in progress.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ */
+public class LongMultibucket extends AbstractPrimitiveKeyMultibucket
+{
+    private long[] keys;
+    private long[] oldKeys;
+
+    public LongMultibucket()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongMultibucket(int initialCapacity, BucketIndex... indexes)
+    {
+        super(initialCapacity, indexes);
+        this.keys = new long[values.length];
+    }
+
+
+    /**
+     * @return A new array containing the keys, in no particular order.
+     */
+    public long[] keys()
+    {
+        long[] out = new long[size()];
+        int[] counter = {0};
+        forEachKey(k -> out[counter[0]++] = k);
+        return out;
+    }
+
+
+    /**
+     * Perform the given action for every key, in no particular order, without boxing the keys.
+     */
+    public void forEachKey(final LongConsumer action)
+    {
+        if(oldValues != null){
+            for (int i = migrated; i < oldValues.length; i++) {
+                if(oldValues[i] != null && oldValues[i] != REMOVED) action.accept(oldKeys[i]);
+            }
+        }
+        for (int i = 0; i < values.length; i++) {
+            if(values[i] != null && values[i] != REMOVED) action.accept(keys[i]);
+        }
+    }
+
+
+    public boolean containsKey(final long key)
+    {
+        return find(key) != null;
+    }
+
+
+    public <V> boolean contains(final long key, final V e)
+    {
+        return contains(find(key), e);
+    }
+
+
+    public <T> boolean containsType(final long key, final Class<T> t)
+    {
+        return containsType(find(key), t);
+    }
+
+
+    public <V> void put(final long key, final V e)
+    {
+        findOrCreate(key).add(Bucket.of(e));
+    }
+
+
+    public <V> boolean putIfAbsent(final long key, final V e)
+    {
+        return putIfAbsent(findOrCreate(key), e);
+    }
+
+
+    public <V> boolean putIfAbsentType(final long key, final V e)
+    {
+        Class<?> type = e.getClass();
+        return putIfAbsentType(findOrCreate(key), type, e);
+    }
+
+
+    public <V> boolean putInCollection(final long key, final V e, final int index)
+    {
+        return putInCollection(find(key), e, index);
+    }
+
+
+    public <T, V> boolean putInCollectionOfType(final long key, final V e, final T t, final int index)
+    {
+        return putInCollection(key, e, index);
+    }
+
+
+    public <M, V> boolean putInMap(final long key, final M mapKey, final V e, final int index)
+    {
+        return putInMap(find(key), mapKey, e, index);
+    }
+
+
+    public <V> Object replace(final long key, final V e, final int index)
+    {
+        return replace(find(key), e, index);
+    }
+
+
+    public <V> V replaceSameType(final long key, final V e, final int index)
+    {
+        return replaceSameType(find(key), e, index);
+    }
+
+
+    public <V> int getFirstIndex(final long key, final V e)
+    {
+        return getFirstIndex(find(key), e);
+    }
+
+
+    public <V> int[] getAllIndexes(final long key, final V e)
+    {
+        return getAllIndexes(find(key), e);
+    }
+
+
+    public <E> E get(final long key, final int index)
+    {
+        return get(find(key), index);
+    }
+
+
+    public <M, V> V getFromMap(final long key, final M mapKey, final int index)
+    {
+        return getFromMap(find(key), mapKey, index);
+    }
+
+
+    public <T> List<Bucket<?>> getAllOfType(final long key, final Class<T> t)
+    {
+        return getAllOfType(find(key), t);
+    }
+
+
+    public <T> T getOfType(final long key, final Class<T> t, final int index)
+    {
+        return getOfType(find(key), t, index);
+    }
+
+
+    public List<Bucket<?>> getAll(final long key)
+    {
+        return getAll(find(key));
+    }
+
+
+    /**
+     * Remove the given key together with all of its Buckets.
+     * @return The removed Buckets, or {@code null} if no such key exists.
+     */
+    public List<Bucket<?>> remove(final long key)
+    {
+        migrateStep();
+
+        if(oldKeys != null){
+            int slot = slotOf(oldKeys, oldValues, key);
+            if(slot != -1) return removeAt(oldValues, slot);
+        }
+
+        int slot = slotOf(keys, values, key);
+        return slot == -1 ? null : removeAt(values, slot);
+    }
+
+
+    /**
+     * Remove the {@code Bucket} of the specified index. The key itself is removed together with its last {@code Bucket}.
+     * @return The element of the removed {@code Bucket}, or {@code null} if the key doesn't exist or if the index is wrong.
+     */
+    public Object remove(final long key, final int index)
+    {
+        BucketList existing = find(key);
+        if(existing == null || index < 0 || index >= existing.size()) return null;
+
+        Object prev = existing.remove(index).get();
+        if(existing.isEmpty()) remove(key);
+
+        return prev;
+    }
+
+    @Override
+    public String toString()
+    {
+        return  "LongMultibucket of size: "+size();
+    }
+
+
+    @Override
+    void swapKeyTables(final int capacity)
+    {
+        oldKeys = keys;
+        keys = new long[capacity];
+    }
+
+    @Override
+    void migrateKey(final int oldSlot, final Object value)
+    {
+        insert(keys, values, oldKeys[oldSlot], value);
+    }
+
+    @Override
+    void dropOldKeys()
+    {
+        oldKeys = null;
+    }
+
+    private BucketList find(final long key)
+    {
+        if(oldKeys != null){
+            int slot = slotOf(oldKeys, oldValues, key);
+            if(slot != -1) return (BucketList) oldValues[slot];
+        }
+
+        int slot = slotOf(keys, values, key);
+        return slot == -1 ? null : (BucketList) values[slot];
+    }
+
+    private BucketList findOrCreate(final long key)
+    {
+        migrateStep();
+
+        BucketList existing = find(key);
+        if(existing != null) return existing;
+
+        BucketList list = newEntry();
+        insert(keys, values, key, list);
+        return list;
+    }
+
+    private void insert(final long[] keys, final Object[] values, final long key, final Object value)
+    {
+        int mask = values.length - 1;
+        int slot = hash(key) & mask;
+        while(values[slot] != null && values[slot] != REMOVED)
+        {
+            slot = (slot + 1) & mask;
+        }
+
+        if(values[slot] == null) used++;
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    private static int slotOf(final long[] keys, final Object[] values, final long key)
+    {
+        int mask = values.length - 1;
+        int slot = hash(key) & mask;
+        while(values[slot] != null)
+        {
+            if(values[slot] != REMOVED && keys[slot] == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    private static int hash(final long key)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
+    }
+}
@@ -1,7 +1,14 @@
 package com.petrosp.structures.multibucket;
 
-import java.util.List;
-import java.util.Set;
+import com.petrosp.structures.Pair;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * @author Petros Papatheodorou
@@ -55,6 +62,32 @@ public interface Multibucket<K>
     <V> void put(K key, V e);
 
 
+    /**
+     * Create a new {@code Bucket} for every element of the {@code Collection}, in iteration order.
+     * If no such key exists, create a pair.
+     */
+    default <V> void putAll(K key, Collection<V> elements)
+    {
+        for(V e : elements)
+        {
+            put(key, e);
+        }
+    }
+
+
+    /**
+     * Create a new {@code Bucket} for every element of every {@code Collection} of the {@code Map},
+     * associated with the key of its {@code Collection}.
+     */
+    default void putAll(Map<K, ? extends Collection<?>> elements)
+    {
+        for(Map.Entry<K, ? extends Collection<?>> entry : elements.entrySet())
+        {
+            putAll(entry.getKey(), entry.getValue());
+        }
+    }
+
+
     /**
      * Associates the specified value with the given key, if no such an association exists.
      * @return {@code true} if the value has been added, or {@code false} if the value already existed.
@@ -118,6 +151,179 @@ public interface Multibucket<K>
     <V> V replaceSameType(K key, V e, int index);
 
 
+    /**
+     * Replace the element of the {@code Bucket} of the specified index with the result of the given function,
+     * applied to the current element. If the function returns {@code null}, the {@code Bucket} is removed.
+     * @param index The index of the {@code Bucket} relative to all the others.
+     * @return The new element, or {@code null} if the key doesn't exist, if the index is wrong or if the
+     * {@code Bucket} was removed.
+     */
+    @SuppressWarnings("unchecked")
+    default <V> V compute(K key, int index, Function<? super V, ? extends V> remappingFunction)
+    {
+        List<Bucket<?>> buckets = getAll(key);
+        if(index < 0 || index >= buckets.size()) return null;
+
+        V next = remappingFunction.apply((V) buckets.get(index).get());
+        if(next == null){
+            remove(key, index);
+        }else{
+            replace(key, next, index);
+        }
+
+        return next;
+    }
+
+
+    /**
+     * Get the first element of the specified type, or put the element given by the supplier if there is none.
+     * The supplied element must be of exactly the specified type. Nothing is put if the supplier returns {@code null}.
+     * @param t The class obtained by .getClass() or .class.
+     * @return The existing or the new element.
+     */
+    default <T> T computeIfAbsentOfType(K key, Class<T> t, Supplier<? extends T> supplier)
+    {
+        T existing = getOfType(key, t, 0);
+        if(existing != null) return existing;
+
+        T created = supplier.get();
+        if(created != null) put(key, created);
+
+        return created;
+    }
+
+
+    /**
+     * Combine the given element with the first element of the same type, or put it if there is none.
+     * Useful for counters, e.g. {@code merge(key, 1, Integer::sum)}. If the function returns {@code null},
+     * the {@code Bucket} is removed.
+     * @param remappingFunction Applied to the existing and the given element.
+     * @return The new element, or {@code null} if the {@code Bucket} was removed.
+     */
+    @SuppressWarnings("unchecked")
+    default <V> V merge(K key, V e, BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+    {
+        List<Bucket<?>> buckets = getAll(key);
+        for (int i = 0; i < buckets.size(); i++) {
+            Object existing = buckets.get(i).get();
+            if(existing == null || existing.getClass() != e.getClass()) continue;
+
+            V next = remappingFunction.apply((V) existing, e);
+            if(next == null){
+                remove(key, i);
+            }else{
+                replace(key, next, i);
+            }
+            return next;
+        }
+
+        put(key, e);
+        return e;
+    }
+
+
+    /**
+     * Create a new {@code Bucket} for the provided key with a primitive {@code int}. If no such key exists, create a pair.
+     * Implementations that support it store the value in a {@link IntBucket}, without boxing it.
+     */
+    default void putInt(K key, int e)
+    {
+        put(key, e);
+    }
+
+
+    /**
+     * Create a new {@code Bucket} for the provided key with a primitive {@code long}. If no such key exists, create a pair.
+     * Implementations that support it store the value in a {@link LongBucket}, without boxing it.
+     */
+    default void putLong(K key, long e)
+    {
+        put(key, e);
+    }
+
+
+    /**
+     * Create a new {@code Bucket} for the provided key with a primitive {@code double}. If no such key exists, create a pair.
+     * Implementations that support it store the value in a {@link DoubleBucket}, without boxing it.
+     */
+    default void putDouble(K key, double e)
+    {
+        put(key, e);
+    }
+
+
+    /**
+     * Add the delta to the first element of type {@code Integer}, or put the delta in a new {@code Bucket} if there is none.
+     * Same as {@code merge(key, delta, Integer::sum)}, but implementations that support it neither box the delta nor
+     * replace the {@code Bucket} when it is a {@link IntBucket}.
+     * @return The new value.
+     */
+    default int addAndGet(K key, int delta)
+    {
+        return merge(key, delta, Integer::sum);
+    }
+
+
+    /**
+     * Add the delta to the first element of type {@code Long}, or put the delta in a new {@code Bucket} if there is none.
+     * Same as {@code merge(key, delta, Long::sum)}, but implementations that support it neither box the delta nor
+     * replace the {@code Bucket} when it is a {@link LongBucket}.
+     * @return The new value.
+     */
+    default long addAndGet(K key, long delta)
+    {
+        return merge(key, delta, Long::sum);
+    }
+
+
+    /**
+     * Add the delta to the first element of type {@code Double}, or put the delta in a new {@code Bucket} if there is none.
+     * Same as {@code merge(key, delta, Double::sum)}, but implementations that support it neither box the delta nor
+     * replace the {@code Bucket} when it is a {@link DoubleBucket}.
+     * @return The new value.
+     */
+    default double addAndGet(K key, double delta)
+    {
+        return merge(key, delta, Double::sum);
+    }
+
+
+    /**
+     * Get the element of type {@code Integer} of the specified index, relative only to the Buckets of that type,
+     * without boxing it when it is stored in a {@link IntBucket}.
+     * @return The element, or the default value if the key doesn't exist or if the index is wrong.
+     */
+    default int getAsInt(K key, int index, int defaultValue)
+    {
+        Integer e = getOfType(key, Integer.class, index);
+        return e == null ? defaultValue : e;
+    }
+
+
+    /**
+     * Get the element of type {@code Long} of the specified index, relative only to the Buckets of that type,
+     * without boxing it when it is stored in a {@link LongBucket}.
+     * @return The element, or the default value if the key doesn't exist or if the index is wrong.
+     */
+    default long getAsLong(K key, int index, long defaultValue)
+    {
+        Long e = getOfType(key, Long.class, index);
+        return e == null ? defaultValue : e;
+    }
+
+
+    /**
+     * Get the element of type {@code Double} of the specified index, relative only to the Buckets of that type,
+     * without boxing it when it is stored in a {@link DoubleBucket}.
+     * @return The element, or the default value if the key doesn't exist or if the index is wrong.
+     */
+    default double getAsDouble(K key, int index, double defaultValue)
+    {
+        Double e = getOfType(key, Double.class, index);
+        return e == null ? defaultValue : e;
+    }
+
+
     /**
      * Get the index number of the first occurrence of the specified value from the Buckets of the given key.
      * @return The number of the index if such a value was found, or -1 if no such key exists or if the value wasn't found.
@@ -133,6 +339,34 @@ public interface Multibucket<K>
     <V> List<Integer> getAllIndexes(K key, V e);
 
 
+    /**
+     * Same as {@link #getAllIndexes(Object, Object)}, without boxing the indexes.
+     * @return The indexes in ascending order, or an empty array if the key doesn't exist or
+     * no such Buckets are mapped to this key.
+     */
+    default <V> int[] getAllIndexesAsArray(K key, V e)
+    {
+        List<Integer> indexes = getAllIndexes(key, e);
+        int[] out = new int[indexes.size()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = indexes.get(i);
+        }
+
+        return out;
+    }
+
+
+    /**
+     * Same as {@link #getAllIndexes(Object, Object)}, as a cursor that doesn't box or collect the indexes.
+     * @return A cursor over the indexes in ascending order, that is empty if the key doesn't exist or
+     * no such Buckets are mapped to this key.
+     */
+    default <V> PrimitiveIterator.OfInt indexCursor(K key, V e)
+    {
+        return IntStream.of(getAllIndexesAsArray(key, e)).iterator();
+    }
+
+
     /**
      * Return the element of the {@code Bucket} of the specified index from to Buckets of the given key.
      * @param <E> The return type (can be anything).
@@ -160,10 +394,127 @@ public interface Multibucket<K>
     <T> List<Bucket<?>> getAllOfType(K key, Class<T> t);
 
 
+    /**
+     * Same as {@link #getAllOfType(Object, Class)}, as a read-only view instead of a new {@code ArrayList}.
+     * @param t The class obtained by .getClass() or .class.
+     * @return A read-only {@code List} of the matching Buckets, that is empty if the key doesn't exist.
+     */
+    default <T> List<Bucket<?>> viewAllOfType(K key, Class<T> t)
+    {
+        return Collections.unmodifiableList(getAllOfType(key, t));
+    }
+
+
+    /**
+     * Get the element of the {@code Bucket} of the specified index, relative only to the Buckets of the specified type.
+     * @param t The class obtained by .getClass() or .class.
+     * @param index The index of the {@code Bucket} relative to the other Buckets of the same type.
+     * @return The element, or {@code null} if the key doesn't exist or if the index is wrong.
+     */
+    @SuppressWarnings("unchecked")
+    default <T> T getOfType(K key, Class<T> t, int index)
+    {
+        List<Bucket<?>> ofType = getAllOfType(key, t);
+        if(index < 0 || index >= ofType.size()) return null;
+
+        return (T)ofType.get(index).get();
+    }
+
+
     /**
      * Get all the Buckets that are mapped with the specified key.
      * @return An {@code ArrayList} of all the Buckets.
      */
     List<Bucket<?>> getAll(K key);
 
+
+    /**
+     * @return A sequential {@code Stream} of all the (key, Bucket) entries.
+     */
+    default Stream<Pair<K, Bucket<?>>> stream()
+    {
+        return keySet().stream().flatMap(k -> getAll(k).stream().map(b -> Pair.<K, Bucket<?>>of(k, b)));
+    }
+
+
+    /**
+     * @return A parallel {@code Stream} of all the (key, Bucket) entries.
+     */
+    default Stream<Pair<K, Bucket<?>>> parallelStream()
+    {
+        return stream().parallel();
+    }
+
+
+    /**
+     * @param t The class obtained by .getClass() or .class.
+     * @return A sequential {@code Stream} of the (key, element) entries of all the Buckets of the specified type.
+     */
+    @SuppressWarnings("unchecked")
+    default <T> Stream<Pair<K, T>> streamOfType(Class<T> t)
+    {
+        return keySet().stream().flatMap(k -> getAllOfType(k, t).stream().map(b -> Pair.of(k, (T) b.get())));
+    }
+
+
+    /**
+     * Start a query over the elements of the specified type, that runs over the keys in parallel, for example
+     * {@code select(Order.class).where(o -> o.isOpen()).limit(100).groupByKey()}.
+     * @param t The class obtained by .getClass() or .class.
+     */
+    default <T> MultibucketQuery<K, T> select(Class<T> t)
+    {
+        return new MultibucketQuery<>(t, MultibucketQuery.keysOf(this));
+    }
+
+
+    /**
+     * Perform the given action for every (key, Bucket) entry.
+     */
+    default void forEach(BiConsumer<? super K, ? super Bucket<?>> action)
+    {
+        for(K key : keySet())
+        {
+            for(Bucket<?> b : getAll(key))
+            {
+                action.accept(key, b);
+            }
+        }
+    }
+
+
+    /**
+     * Count the keys and the Buckets of this multibucket, and estimate the heap they retain, by visiting all of them.
+     * Wrap it in an {@link InstrumentedMultibucket} to also count its lookups.
+     * @return A snapshot of the current state, that doesn't change with later changes.
+     */
+    default MultibucketStats stats()
+    {
+        return MultibucketStats.of(this);
+    }
+
+
+    /**
+     * Remove the given key together with all of its Buckets. The default implementation throws
+     * {@code UnsupportedOperationException}, so that implementations written before removal was added keep compiling.
+     * @return The removed Buckets, or {@code null} if no such key exists.
+     */
+    default List<Bucket<?>> remove(K key)
+    {
+        throw new UnsupportedOperationException(getClass().getSimpleName()+" does not support remove");
+    }
+
+
+    /**
+     * Remove the {@code Bucket} of the specified index. The following Buckets are shifted one index to the left,
+     * and the key itself is removed together with its last {@code Bucket}. The default implementation throws
+     * {@code UnsupportedOperationException}.
+     * @param index The index of the {@code Bucket} relative to all the others.
+     * @return The element of the removed {@code Bucket}, or {@code null} if the key doesn't exist or if the index is wrong.
+     */
+    default Object remove(K key, int index)
+    {
+        throw new UnsupportedOperationException(getClass().getSimpleName()+" does not support remove");
+    }
+
 }
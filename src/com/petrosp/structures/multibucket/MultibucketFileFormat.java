@@ -0,0 +1,287 @@
+package com.petrosp.structures.multibucket;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The versioned binary file format of {@link HashMultibucket#save(Path)} and {@link HashMultibucket#load(Path)}.
+ * <pre>
+ * header:  int MAGIC, short VERSION
+ * blocks:  int keyCount, then for every key: record key, int bucketCount, record[bucketCount] elements
+ * footer:  int typeCount, utf[typeCount] typeNames,
+ *          int blockCount, then for every block: long offset, int length, then long keyCount
+ * trailer: long footerOffset, int MAGIC
+ * record:  int typeId, int length, byte[length] payload
+ * </pre>
+ * The type ids of the records are indexes (starting from 1) in the type table of the footer, which holds the class
+ * names, so that the file does not depend on the registration order of a {@code CodecRegistry}. Every block is
+ * independent of the others, so blocks are decoded in parallel when the file is loaded.
+ */
+final class MultibucketFileFormat
+{
+    private static final int MAGIC = 0x504D424B;
+    private static final short VERSION = 1;
+    private static final int KEYS_PER_BLOCK = 1024;
+    private static final int TRAILER_BYTES = Long.BYTES + Integer.BYTES;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private MultibucketFileFormat() { }
+
+
+    static <K> void write(final Map<K, BucketList> bucketMap, final Path path, final CodecRegistry codecs) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            Writer writer = new Writer(channel, codecs);
+            writer.buffer.putInt(MAGIC).putShort(VERSION);
+
+            List<Long> blockOffsets = new ArrayList<>();
+            List<Integer> blockLengths = new ArrayList<>();
+            Iterator<Map.Entry<K, BucketList>> entries = bucketMap.entrySet().iterator();
+            while(entries.hasNext())
+            {
+                long blockStart = writer.position();
+                int keysInBlock = Math.min(KEYS_PER_BLOCK, bucketMap.size() - blockOffsets.size() * KEYS_PER_BLOCK);
+                writer.ensureRemaining(Integer.BYTES);
+                writer.buffer.putInt(keysInBlock);
+
+                for (int i = 0; i < keysInBlock; i++) {
+                    Map.Entry<K, BucketList> entry = entries.next();
+                    writer.writeRecord(entry.getKey());
+                    writer.ensureRemaining(Integer.BYTES);
+                    writer.buffer.putInt(entry.getValue().size());
+                    for(Bucket<?> bucket : entry.getValue())
+                    {
+                        writer.writeRecord(bucket.get());
+                    }
+                }
+
+                blockOffsets.add(blockStart);
+                blockLengths.add(Math.toIntExact(writer.position() - blockStart));
+            }
+
+            long footerOffset = writer.position();
+            writer.ensureRemaining(Integer.BYTES);
+            writer.buffer.putInt(writer.fileTypes.size());
+            for(Class<?> type : writer.fileTypes)
+            {
+                byte[] name = type.getName().getBytes(StandardCharsets.UTF_8);
+                writer.ensureRemaining(Short.BYTES + name.length);
+                writer.buffer.putShort((short) name.length).put(name);
+            }
+            writer.ensureRemaining(Integer.BYTES);
+            writer.buffer.putInt(blockOffsets.size());
+            for (int i = 0; i < blockOffsets.size(); i++) {
+                writer.ensureRemaining(Long.BYTES + Integer.BYTES);
+                writer.buffer.putLong(blockOffsets.get(i)).putInt(blockLengths.get(i));
+            }
+            writer.ensureRemaining(Long.BYTES + TRAILER_BYTES);
+            writer.buffer.putLong(bucketMap.size()).putLong(footerOffset).putInt(MAGIC);
+            writer.flush();
+        }
+    }
+
+
+    static <K> HashMultibucket<K> read(final Path path, final CodecRegistry codecs, final BucketIndex... indexes)
+            throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            long fileSize = channel.size();
+            if(fileSize < Integer.BYTES + Short.BYTES + TRAILER_BYTES) throw new IOException("Not a multibucket file: "+path);
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Integer.BYTES + Short.BYTES);
+            ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, fileSize - TRAILER_BYTES, TRAILER_BYTES);
+            long footerOffset = trailer.getLong();
+            if(header.getInt() != MAGIC || trailer.getInt() != MAGIC) throw new IOException("Not a multibucket file: "+path);
+            short version = header.getShort();
+            if(version != VERSION) throw new IOException("Unsupported multibucket file version: "+version);
+
+            ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, footerOffset, fileSize - TRAILER_BYTES - footerOffset);
+            int[] fileTypeIds = readTypeTable(footer, codecs);
+            int blockCount = footer.getInt();
+            long[] blockOffsets = new long[blockCount];
+            int[] blockLengths = new int[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                blockOffsets[i] = footer.getLong();
+                blockLengths[i] = footer.getInt();
+            }
+            long keyCount = footer.getLong();
+
+            Set<BucketIndex> indexSet = EnumSet.noneOf(BucketIndex.class);
+            indexSet.addAll(Arrays.asList(indexes));
+
+            List<Block<K>> blocks;
+            try{
+                blocks = IntStream.range(0, blockCount).parallel()
+                        .mapToObj(i -> MultibucketFileFormat.<K>readBlock(channel, blockOffsets[i], blockLengths[i],
+                                fileTypeIds, codecs, indexSet))
+                        .collect(Collectors.toList());
+            }catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            HashMultibucket<K> out = new HashMultibucket<>((int) Math.min(Integer.MAX_VALUE, keyCount * 4 / 3 + 1), indexes);
+            Map<K, BucketList> bucketMap = out.bucketMap();
+            for(Block<K> block : blocks)
+            {
+                for (int i = 0; i < block.keys.length; i++) {
+                    bucketMap.put(block.keys[i], block.lists[i]);
+                }
+            }
+
+            return out;
+        }
+    }
+
+
+    /**
+     * @return The id in the registry, of every type id of the file.
+     */
+    private static int[] readTypeTable(final ByteBuffer footer, final CodecRegistry codecs) throws IOException
+    {
+        int typeCount = footer.getInt();
+        int[] fileTypeIds = new int[typeCount + 1];
+        fileTypeIds[CodecRegistry.NULL_ID] = CodecRegistry.NULL_ID;
+        for (int i = 1; i <= typeCount; i++) {
+            byte[] name = new byte[footer.getShort()];
+            footer.get(name);
+            String typeName = new String(name, StandardCharsets.UTF_8);
+            Class<?> type = codecs.typeNamed(typeName);
+            if(type == null) throw new IOException("No codec registered for "+typeName);
+            fileTypeIds[i] = codecs.idOf(type);
+        }
+
+        return fileTypeIds;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> Block<K> readBlock(final FileChannel channel, final long offset, final int length,
+                                          final int[] fileTypeIds, final CodecRegistry codecs, final Set<BucketIndex> indexes)
+    {
+        MappedByteBuffer buffer;
+        try{
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        }catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        int keyCount = buffer.getInt();
+        Block<K> block = new Block<>(keyCount);
+        for (int i = 0; i < keyCount; i++) {
+            block.keys[i] = (K) readRecord(buffer, fileTypeIds, codecs);
+            int bucketCount = buffer.getInt();
+            BucketList list = new BucketList(bucketCount, indexes);
+            for (int b = 0; b < bucketCount; b++) {
+                list.add(Bucket.of(readRecord(buffer, fileTypeIds, codecs)));
+            }
+            block.lists[i] = list;
+        }
+
+        return block;
+    }
+
+    private static Object readRecord(final ByteBuffer buffer, final int[] fileTypeIds, final CodecRegistry codecs)
+    {
+        int id = fileTypeIds[buffer.getInt()];
+        int length = buffer.getInt();
+        int end = buffer.position() + length;
+
+        ByteBuffer payload = buffer.duplicate();
+        payload.limit(end);
+        Object value = codecs.decode(id, payload, length);
+        buffer.position(end);
+        return value;
+    }
+
+
+    private static final class Block<K>
+    {
+        private final K[] keys;
+        private final BucketList[] lists;
+
+        @SuppressWarnings("unchecked")
+        private Block(final int keyCount)
+        {
+            keys = (K[]) new Object[keyCount];
+            lists = new BucketList[keyCount];
+        }
+    }
+
+
+    /**
+     * Buffers the writes to the channel, and assigns the type ids of the file in the order the types are met.
+     */
+    private static final class Writer
+    {
+        private final FileChannel channel;
+        private final CodecRegistry codecs;
+        private final List<Class<?>> fileTypes = new ArrayList<>();
+        private final Map<Class<?>, Integer> fileTypeIds = new HashMap<>();
+        private ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES);
+
+        private Writer(final FileChannel channel, final CodecRegistry codecs)
+        {
+            this.channel = channel;
+            this.codecs = codecs;
+        }
+
+        private long position() throws IOException
+        {
+            return channel.position() + buffer.position();
+        }
+
+        private void writeRecord(final Object element) throws IOException
+        {
+            int id = codecs.idOfElement(element);
+            int length = codecs.sizeOf(id, element);
+            ensureRemaining(2 * Integer.BYTES + length);
+
+            buffer.putInt(fileTypeId(element));
+            buffer.putInt(length);
+            codecs.encode(id, element, buffer);
+        }
+
+        private int fileTypeId(final Object element)
+        {
+            if(element == null) return CodecRegistry.NULL_ID;
+
+            Integer id = fileTypeIds.get(element.getClass());
+            if(id == null){
+                fileTypes.add(element.getClass());
+                id = fileTypes.size();
+                fileTypeIds.put(element.getClass(), id);
+            }
+
+            return id;
+        }
+
+        private void ensureRemaining(final int bytes) throws IOException
+        {
+            if(buffer.remaining() >= bytes) return;
+
+            flush();
+            if(buffer.capacity() < bytes) buffer = ByteBuffer.allocate(bytes);
+        }
+
+        private void flush() throws IOException
+        {
+            buffer.flip();
+            while(buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
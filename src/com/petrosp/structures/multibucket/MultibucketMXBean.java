@@ -0,0 +1,44 @@
+package com.petrosp.structures.multibucket;
+
+import java.util.Map;
+
+/**
+ * The JMX view of an {@link InstrumentedMultibucket}, registered with
+ * {@link InstrumentedMultibucket#registerMBean(String)}. No attribute touches the multibucket: the lookup counters
+ * are read as they are, and the other attributes as of the last {@link InstrumentedMultibucket#refreshStats()}.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ */
+public interface MultibucketMXBean
+{
+    long getKeyCount();
+
+    long getBucketCount();
+
+    /**
+     * @see MultibucketStats#bucketsPerKeyHistogram()
+     */
+    long[] getBucketsPerKeyHistogram();
+
+    /**
+     * @return The number of the non-empty Buckets of every element type, by the name of the type.
+     */
+    Map<String, Long> getTypeCounts();
+
+    long getEstimatedHeapBytes();
+
+    long getGetHits();
+
+    long getGetMisses();
+
+    long getContainsHits();
+
+    long getContainsMisses();
+
+    /**
+     * Set all the lookup counters to 0.
+     */
+    void resetCounters();
+}
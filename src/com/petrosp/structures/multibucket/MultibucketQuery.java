@@ -0,0 +1,324 @@
+package com.petrosp.structures.multibucket;
+
+import com.petrosp.structures.Pair;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A query over the elements of a single class type of a {@code Multibucket}, created by
+ * {@link Multibucket#select(Class)}. The keys are split in chunks that are filtered in parallel on a
+ * {@code ForkJoinPool}, and every chunk stops early as soon as the limit of the query is reached.
+ * Multibuckets that keep the {@link BucketIndex#TYPE} index skip the keys without elements of the type, without
+ * visiting their Buckets.
+ * <p>
+ * The results keep the order of the keys, and of the Buckets of every key. When a limit is set and there are
+ * more matches than the limit, which matches are returned is not specified. The predicates are called from the
+ * threads of the pool, and the multibucket must not be changed while a query runs, unless it is thread-safe.
+ * A query object can be run more than once, and every run reflects the current contents.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ *
+ *
+ * @param <K> Type of the keys.
+ * @param <T> Type of the selected elements.
+ */
+public final class MultibucketQuery<K, T>
+{
+    /**
+     * Below this number of keys, the query runs on the calling thread.
+     */
+    static final int SEQUENTIAL_THRESHOLD = 1024;
+
+    private final Class<T> type;
+    private final Source<K> source;
+    private Predicate<? super T> predicate;
+    private long limit = Long.MAX_VALUE;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private boolean parallel = true;
+
+    MultibucketQuery(final Class<T> type, final Source<K> source)
+    {
+        this.type = type;
+        this.source = source;
+    }
+
+
+    /**
+     * Keep only the elements that match the predicate. Calling it again combines the predicates with a logical AND.
+     */
+    public MultibucketQuery<K, T> where(final Predicate<? super T> condition)
+    {
+        if(predicate == null){
+            predicate = condition;
+        }else{
+            Predicate<? super T> previous = predicate;
+            predicate = e -> previous.test(e) && condition.test(e);
+        }
+        return this;
+    }
+
+
+    /**
+     * Return at most the given number of elements.
+     */
+    public MultibucketQuery<K, T> limit(final long maxSize)
+    {
+        if(maxSize < 0) throw new IllegalArgumentException("Negative limit: "+maxSize);
+
+        limit = maxSize;
+        return this;
+    }
+
+
+    /**
+     * Run on the given pool instead of the common pool.
+     */
+    public MultibucketQuery<K, T> on(final ForkJoinPool forkJoinPool)
+    {
+        pool = Objects.requireNonNull(forkJoinPool);
+        return this;
+    }
+
+
+    /**
+     * Run on the calling thread, which is needed for multibuckets that must not be read by many threads at once.
+     */
+    public MultibucketQuery<K, T> sequential()
+    {
+        parallel = false;
+        return this;
+    }
+
+
+    /**
+     * @return The (key, element) entries of the matching elements.
+     */
+    public List<Pair<K, T>> toList()
+    {
+        List<Pair<K, T>> out = new ArrayList<>();
+        for(List<Pair<K, T>> part : run())
+        {
+            if(part != null) out.addAll(part);
+        }
+
+        return out;
+    }
+
+
+    /**
+     * @return The matching elements grouped by their key, in the order of the keys.
+     */
+    public Map<K, List<T>> groupByKey()
+    {
+        Map<K, List<T>> out = new LinkedHashMap<>();
+        for(List<Pair<K, T>> part : run())
+        {
+            if(part == null) continue;
+            for(Pair<K, T> match : part)
+            {
+                out.computeIfAbsent(match.first, k -> new ArrayList<>()).add(match.second);
+            }
+        }
+
+        return out;
+    }
+
+
+    /**
+     * @return The number of matching elements, which is at most the limit.
+     */
+    public long count()
+    {
+        long count = 0;
+        for(List<Pair<K, T>> part : run())
+        {
+            if(part != null) count += part.size();
+        }
+
+        return count;
+    }
+
+
+    /**
+     * @return The matches of every chunk of keys, in the order of the chunks. Chunks that were skipped are null.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<Pair<K, T>>[] run()
+    {
+        Object[] items = source.items();
+        if(limit == 0 || items.length == 0) return new List[0];
+
+        int chunkSize = items.length;
+        if(parallel && items.length > SEQUENTIAL_THRESHOLD){
+            chunkSize = Math.max(SEQUENTIAL_THRESHOLD / 4, items.length / (pool.getParallelism() * 8));
+        }
+        int chunks = (items.length + chunkSize - 1) / chunkSize;
+        List<Pair<K, T>>[] parts = new List[chunks];
+        AtomicLong remaining = limit == Long.MAX_VALUE ? null : new AtomicLong(limit);
+
+        ChunkTask task = new ChunkTask(items, chunkSize, 0, chunks, parts, remaining);
+        if(chunks == 1){
+            task.compute();
+        }else{
+            pool.invoke(task);
+        }
+
+        return parts;
+    }
+
+
+    /**
+     * How a multibucket exposes its keys to a query. The items are the keys themselves, or whatever structure of
+     * the multibucket leads to the Buckets of a key with no further lookup.
+     */
+    interface Source<K>
+    {
+        Object[] items();
+
+        K keyOf(Object item);
+
+        /**
+         * @return The Buckets of the type of the query, or an empty list to skip the item.
+         */
+        List<Bucket<?>> bucketsOfType(Object item, Class<?> t);
+    }
+
+
+    /**
+     * A source that reads through the public methods of any multibucket.
+     */
+    static <K> Source<K> keysOf(final Multibucket<K> multibucket)
+    {
+        return new Source<K>()
+        {
+            @Override
+            public Object[] items()
+            {
+                return multibucket.keySet().toArray();
+            }
+
+            @Override @SuppressWarnings("unchecked")
+            public K keyOf(final Object item)
+            {
+                return (K) item;
+            }
+
+            @Override
+            public List<Bucket<?>> bucketsOfType(final Object item, final Class<?> t)
+            {
+                return multibucket.viewAllOfType(keyOf(item), t);
+            }
+        };
+    }
+
+
+    /**
+     * A source over the entries of a map of {@code BucketList}, that skips the keys with no elements of the type
+     * when the type index is kept.
+     */
+    static <K> Source<K> entriesOf(final Map<K, BucketList> bucketMap, final boolean typeIndexed)
+    {
+        return entriesOf(bucketMap.entrySet(), Map.Entry::getValue, typeIndexed);
+    }
+
+
+    static <K, E extends Map.Entry<K, ?>> Source<K> entriesOf(final Collection<E> entries,
+                                                              final Function<? super E, BucketList> buckets,
+                                                              final boolean typeIndexed)
+    {
+        return new Source<K>()
+        {
+            @Override
+            public Object[] items()
+            {
+                return entries.toArray();
+            }
+
+            @Override @SuppressWarnings("unchecked")
+            public K keyOf(final Object item)
+            {
+                return ((Map.Entry<K, ?>) item).getKey();
+            }
+
+            @Override @SuppressWarnings("unchecked")
+            public List<Bucket<?>> bucketsOfType(final Object item, final Class<?> t)
+            {
+                BucketList list = buckets.apply((E) item);
+                if(typeIndexed && !list.containsType(t)) return Collections.emptyList();
+
+                return list.viewOfType(t);
+            }
+        };
+    }
+
+
+    private final class ChunkTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Object[] items;
+        private final int chunkSize;
+        private final int fromChunk;
+        private final int toChunk;
+        private final List<Pair<K, T>>[] parts;
+        private final AtomicLong remaining;
+
+        ChunkTask(final Object[] items, final int chunkSize, final int fromChunk, final int toChunk,
+                  final List<Pair<K, T>>[] parts, final AtomicLong remaining)
+        {
+            this.items = items;
+            this.chunkSize = chunkSize;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+            this.parts = parts;
+            this.remaining = remaining;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(limitReached(remaining)) return;
+
+            if(toChunk - fromChunk > 1){
+                int middle = (fromChunk + toChunk) >>> 1;
+                invokeAll(new ChunkTask(items, chunkSize, fromChunk, middle, parts, remaining),
+                          new ChunkTask(items, chunkSize, middle, toChunk, parts, remaining));
+                return;
+            }
+
+            parts[fromChunk] = filter(fromChunk * chunkSize, Math.min(items.length, (fromChunk + 1) * chunkSize));
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<Pair<K, T>> filter(final int from, final int to)
+        {
+            List<Pair<K, T>> out = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                if(limitReached(remaining)) break;
+
+                for(Bucket<?> bucket : source.bucketsOfType(items[i], type))
+                {
+                    T element = (T) bucket.get();
+                    if(predicate != null && !predicate.test(element)) continue;
+                    if(remaining != null && remaining.getAndDecrement() <= 0) return out;
+
+                    out.add(Pair.of(source.keyOf(items[i]), element));
+                }
+            }
+
+            return out;
+        }
+    }
+
+    private static boolean limitReached(final AtomicLong remaining)
+    {
+        return remaining != null && remaining.get() <= 0;
+    }
+}
@@ -0,0 +1,276 @@
+package com.petrosp.structures.multibucket;
+
+import java.lang.reflect.Array;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * A snapshot of the shape of a {@code Multibucket}, as returned by {@link Multibucket#stats()}: the number of keys
+ * and Buckets, how the Buckets are spread over the keys and over the element types, an estimate of the heap that
+ * the multibucket retains, and the lookup counters of an {@link InstrumentedMultibucket}, that are 0 for the other
+ * implementations.
+ * <p>
+ * The heap estimate assumes a 64-bit JVM with compressed references and a {@code HashMap} of keys, and it only
+ * samples the elements of large Collections and Maps, so it is meant for comparing multibuckets and spotting
+ * growth, not for exact accounting. Objects that are referenced more than once are counted every time.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ */
+public final class MultibucketStats
+{
+    private static final int KEY_OVERHEAD = 32 + 8 + 24 + 16;
+    private static final int BUCKET_OVERHEAD = 4;
+    private static final int SAMPLED_ELEMENTS = 8;
+    private static final int MAXIMUM_DEPTH = 3;
+
+    private final long keyCount;
+    private final long bucketCount;
+    private final long[] bucketsPerKey;
+    private final Map<Class<?>, Long> typeCounts;
+    private final long estimatedHeapBytes;
+    private final long getHits;
+    private final long getMisses;
+    private final long containsHits;
+    private final long containsMisses;
+
+    private MultibucketStats(final long keyCount, final long bucketCount, final long[] bucketsPerKey,
+                             final Map<Class<?>, Long> typeCounts, final long estimatedHeapBytes, final long getHits,
+                             final long getMisses, final long containsHits, final long containsMisses)
+    {
+        this.keyCount = keyCount;
+        this.bucketCount = bucketCount;
+        this.bucketsPerKey = bucketsPerKey;
+        this.typeCounts = typeCounts;
+        this.estimatedHeapBytes = estimatedHeapBytes;
+        this.getHits = getHits;
+        this.getMisses = getMisses;
+        this.containsHits = containsHits;
+        this.containsMisses = containsMisses;
+    }
+
+
+    /**
+     * Visit every key and Bucket of the multibucket, in time linear to the number of Buckets.
+     */
+    static <K> MultibucketStats of(final Multibucket<K> multibucket)
+    {
+        return of(multibucket.keySet(), k -> k, multibucket::getAll);
+    }
+
+
+    /**
+     * Visit every key and Bucket of the given entries, in time linear to the number of Buckets.
+     */
+    static <E> MultibucketStats of(final Iterable<E> entries, final Function<? super E, ?> keyOf,
+                                   final Function<? super E, ? extends List<Bucket<?>>> bucketsOf)
+    {
+        return of(entries, keyOf, bucketsOf, true);
+    }
+
+
+    /**
+     * Same as {@link #of(Iterable, Function, Function)}, for multibuckets that may store their elements without
+     * wrapping each one of them in a {@code Bucket} object.
+     * @param wrapped Whether every element is held by a {@code Bucket} object, or directly by the array of its key.
+     */
+    static <E> MultibucketStats of(final Iterable<E> entries, final Function<? super E, ?> keyOf,
+                                   final Function<? super E, ? extends List<Bucket<?>>> bucketsOf,
+                                   final boolean wrapped)
+    {
+        long keys = 0, buckets = 0, heap = 0;
+        long[] histogram = new long[32];
+        Map<Class<?>, Long> types = new HashMap<>();
+        for(E entry : entries)
+        {
+            Object key = keyOf.apply(entry);
+            List<Bucket<?>> list = bucketsOf.apply(entry);
+            keys++;
+            buckets += list.size();
+            histogram[list.isEmpty() ? 0 : 31 - Integer.numberOfLeadingZeros(list.size())]++;
+            heap += KEY_OVERHEAD + estimateBytes(key, 0) + (long) BUCKET_OVERHEAD * list.size();
+            for(Bucket<?> b : list)
+            {
+                heap += wrapped ? bucketBytes(b) : estimateBytes(b.get(), 0);
+                if(!b.isEmpty()) types.merge(b.getType(), 1L, Long::sum);
+            }
+        }
+
+        int used = histogram.length;
+        while(used > 0 && histogram[used - 1] == 0) used--;
+
+        List<Map.Entry<Class<?>, Long>> sorted = new ArrayList<>(types.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        Map<Class<?>, Long> typeCounts = new LinkedHashMap<>();
+        for(Map.Entry<Class<?>, Long> entry : sorted)
+        {
+            typeCounts.put(entry.getKey(), entry.getValue());
+        }
+
+        return new MultibucketStats(keys, buckets, Arrays.copyOf(histogram, used),
+                Collections.unmodifiableMap(typeCounts), heap, 0, 0, 0, 0);
+    }
+
+
+    /**
+     * @return A copy of these stats with the given lookup counters.
+     */
+    MultibucketStats withCounters(final long getHits, final long getMisses, final long containsHits,
+                                  final long containsMisses)
+    {
+        return new MultibucketStats(keyCount, bucketCount, bucketsPerKey, typeCounts, estimatedHeapBytes,
+                getHits, getMisses, containsHits, containsMisses);
+    }
+
+
+    public long keyCount()
+    {
+        return keyCount;
+    }
+
+
+    public long bucketCount()
+    {
+        return bucketCount;
+    }
+
+
+    /**
+     * @return The histogram of the number of Buckets per key, where position {@code i} counts the keys that have
+     * from {@code 2^i} up to {@code 2^(i+1) - 1} Buckets, and position 0 also counts the keys without Buckets.
+     */
+    public long[] bucketsPerKeyHistogram()
+    {
+        return bucketsPerKey.clone();
+    }
+
+
+    /**
+     * @return The number of the non-empty Buckets of every element type, from the most common type to the least.
+     */
+    public Map<Class<?>, Long> typeCounts()
+    {
+        return typeCounts;
+    }
+
+
+    /**
+     * @return The estimated number of bytes that the keys, the Buckets and their elements take on the heap.
+     */
+    public long estimatedHeapBytes()
+    {
+        return estimatedHeapBytes;
+    }
+
+
+    /**
+     * @return The number of the lookups of elements and Buckets that found something.
+     */
+    public long getHits()
+    {
+        return getHits;
+    }
+
+
+    /**
+     * @return The number of the lookups of elements and Buckets that found nothing.
+     */
+    public long getMisses()
+    {
+        return getMisses;
+    }
+
+
+    /**
+     * @return The number of the {@code contains}, {@code containsKey} and {@code containsType} calls that returned
+     * {@code true}.
+     */
+    public long containsHits()
+    {
+        return containsHits;
+    }
+
+
+    /**
+     * @return The number of the {@code contains}, {@code containsKey} and {@code containsType} calls that returned
+     * {@code false}.
+     */
+    public long containsMisses()
+    {
+        return containsMisses;
+    }
+
+
+    private static long bucketBytes(final Bucket<?> b)
+    {
+        if(b instanceof IntBucket || b instanceof LongBucket || b instanceof DoubleBucket) return 24;
+
+        return 16 + estimateBytes(b.get(), 0);
+    }
+
+    /**
+     * @return The estimated size of the object and of the objects it holds, if it is a String, a boxed primitive,
+     * an array, a Collection or a Map. Other objects are counted as an object header and a reference.
+     */
+    private static long estimateBytes(final Object o, final int depth)
+    {
+        if(o == null) return 0;
+        if(o instanceof String) return 24 + align(16 + 2L * ((String) o).length());
+        if(o instanceof Long || o instanceof Double) return 24;
+        if(o instanceof Number || o instanceof Character || o instanceof Boolean) return 16;
+
+        Class<?> type = o.getClass();
+        if(type.isArray()){
+            Class<?> component = type.getComponentType();
+            int length = Array.getLength(o);
+            if(component == long.class || component == double.class) return align(16 + 8L * length);
+            if(component == int.class || component == float.class) return align(16 + 4L * length);
+            if(component == char.class || component == short.class) return align(16 + 2L * length);
+            if(component.isPrimitive()) return align(16 + length);
+            return align(16 + 4L * length) + sampled(Arrays.asList((Object[]) o), length, depth);
+        }
+        if(o instanceof Collection){
+            Collection<?> c = (Collection<?>) o;
+            return 40 + 16L * c.size() + sampled(c, c.size(), depth);
+        }
+        if(o instanceof Map){
+            Map<?, ?> m = (Map<?, ?>) o;
+            return 48 + 40L * m.size() + sampled(m.keySet(), m.size(), depth) + sampled(m.values(), m.size(), depth);
+        }
+
+        return 16;
+    }
+
+    /**
+     * @return The estimated size of all the elements, from the average size of the first few.
+     */
+    private static long sampled(final Iterable<?> elements, final int size, final int depth)
+    {
+        if(size == 0 || depth == MAXIMUM_DEPTH) return 0;
+
+        long total = 0;
+        int sampled = 0;
+        for(Object e : elements)
+        {
+            if(sampled == SAMPLED_ELEMENTS) break;
+            total += estimateBytes(e, depth + 1);
+            sampled++;
+        }
+        return sampled == 0 ? 0 : total * size / sampled;
+    }
+
+    private static long align(final long bytes)
+    {
+        return (bytes + 7) & ~7L;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return "MultibucketStats{keys: "+keyCount+", buckets: "+bucketCount+", buckets per key (powers of 2): "+
+                Arrays.toString(bucketsPerKey)+", types: "+typeCounts+", estimated heap bytes: "+estimatedHeapBytes+
+                ", get hits/misses: "+getHits+"/"+getMisses+", contains hits/misses: "+containsHits+"/"+containsMisses+"}";
+    }
+}
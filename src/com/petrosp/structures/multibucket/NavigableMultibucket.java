@@ -0,0 +1,163 @@
+package com.petrosp.structures.multibucket;
+
+import java.util.*;
+
+/**
+ * A {@code Multibucket} that keeps its keys sorted, backed by a {@code TreeMap}. Besides the exact-key operations it
+ * offers floor/ceiling lookups, and range views of the keys that are backed by this multibucket, so that a range is
+ * scanned without copying anything. Changes through a range view are reflected in this multibucket and vice versa,
+ * and putting a key outside of the range of a view throws an {@code IllegalArgumentException}.
+ * <p>
+ * {@code keySet}, {@code forEach} and the streams visit the keys in ascending order.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ *
+ *
+ * @param <K> Type of the keys.
+ */
+public class NavigableMultibucket<K> extends AbstractMapMultibucket<K>
+{
+    private final NavigableMap<K,BucketList> navigableMap;
+
+    /**
+     * Sort the keys by their natural ordering.
+     * @param indexes The indexes to keep for the Buckets of every key.
+     */
+    public NavigableMultibucket(BucketIndex... indexes)
+    {
+        this(new TreeMap<>(), indexSet(indexes));
+    }
+
+    /**
+     * @param comparator The comparator that sorts the keys.
+     * @param indexes The indexes to keep for the Buckets of every key.
+     */
+    public NavigableMultibucket(Comparator<? super K> comparator, BucketIndex... indexes)
+    {
+        this(new TreeMap<>(comparator), indexSet(indexes));
+    }
+
+    private NavigableMultibucket(final NavigableMap<K,BucketList> navigableMap, final Set<BucketIndex> indexes)
+    {
+        super(navigableMap, indexes);
+        this.navigableMap = navigableMap;
+    }
+
+
+    /**
+     * @return The keys in ascending order.
+     */
+    @Override
+    public NavigableSet<K> keySet()
+    {
+        return navigableMap.navigableKeySet();
+    }
+
+
+    /**
+     * @return The lowest key, or {@code null} if there are no keys.
+     */
+    public K firstKey()
+    {
+        return navigableMap.isEmpty() ? null : navigableMap.firstKey();
+    }
+
+
+    /**
+     * @return The highest key, or {@code null} if there are no keys.
+     */
+    public K lastKey()
+    {
+        return navigableMap.isEmpty() ? null : navigableMap.lastKey();
+    }
+
+
+    /**
+     * @return The greatest key less than or equal to the given, or {@code null} if there is no such key.
+     */
+    public K floorKey(final K key)
+    {
+        return navigableMap.floorKey(key);
+    }
+
+
+    /**
+     * @return The least key greater than or equal to the given, or {@code null} if there is no such key.
+     */
+    public K ceilingKey(final K key)
+    {
+        return navigableMap.ceilingKey(key);
+    }
+
+
+    /**
+     * @return The greatest key strictly less than the given, or {@code null} if there is no such key.
+     */
+    public K lowerKey(final K key)
+    {
+        return navigableMap.lowerKey(key);
+    }
+
+
+    /**
+     * @return The least key strictly greater than the given, or {@code null} if there is no such key.
+     */
+    public K higherKey(final K key)
+    {
+        return navigableMap.higherKey(key);
+    }
+
+
+    /**
+     * @return A view of the keys from {@code fromKey} to {@code toKey}.
+     */
+    public NavigableMultibucket<K> subMultibucket(final K fromKey, final boolean fromInclusive,
+                                                  final K toKey, final boolean toInclusive)
+    {
+        return new NavigableMultibucket<>(navigableMap.subMap(fromKey, fromInclusive, toKey, toInclusive), indexes);
+    }
+
+
+    /**
+     * @return A view of the keys from {@code fromKey} (inclusive) to {@code toKey} (exclusive).
+     */
+    public NavigableMultibucket<K> subMultibucket(final K fromKey, final K toKey)
+    {
+        return subMultibucket(fromKey, true, toKey, false);
+    }
+
+
+    /**
+     * @return A view of the keys less than (or equal to, if {@code inclusive}) {@code toKey}.
+     */
+    public NavigableMultibucket<K> headMultibucket(final K toKey, final boolean inclusive)
+    {
+        return new NavigableMultibucket<>(navigableMap.headMap(toKey, inclusive), indexes);
+    }
+
+
+    /**
+     * @return A view of the keys greater than (or equal to, if {@code inclusive}) {@code fromKey}.
+     */
+    public NavigableMultibucket<K> tailMultibucket(final K fromKey, final boolean inclusive)
+    {
+        return new NavigableMultibucket<>(navigableMap.tailMap(fromKey, inclusive), indexes);
+    }
+
+
+    /**
+     * @return A view of all the keys in descending order.
+     */
+    public NavigableMultibucket<K> descendingMultibucket()
+    {
+        return new NavigableMultibucket<>(navigableMap.descendingMap(), indexes);
+    }
+
+    @Override
+    public String toString()
+    {
+        return  "NavigableMultibucket of size: "+size();
+    }
+}
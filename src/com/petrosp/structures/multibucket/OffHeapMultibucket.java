@@ -0,0 +1,534 @@
+package com.petrosp.structures.multibucket;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A {@code Multibucket} that stores the elements of its Buckets outside of the Java heap, encoded by the
+ * {@link ValueCodec}s of a {@link CodecRegistry}, in direct {@code ByteBuffer}s or in a memory-mapped file.
+ * The heap only holds the keys and one {@code long} address per {@code Bucket}, so the garbage collector never
+ * has to trace the elements. Storage is segmented, so it can grow past 2 GB.
+ * <p>
+ * Every element is stored with the id of its class type, so type checks such as {@code containsType} and
+ * {@code getAllOfType} never decode elements of other types, and the Buckets report the same {@code getType()}.
+ * Elements are only decoded when they are read, and {@code getAll} returns a view that decodes each {@code Bucket}
+ * when it is accessed. Decoded Buckets are detached copies: use {@code replace} to change an element.
+ * <p>
+ * Replacing or removing a {@code Bucket} leaves its old bytes behind; {@link #compact()} reclaims them.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ *
+ *
+ * @param <K> Type of the keys.
+ */
+public class OffHeapMultibucket<K> implements Multibucket<K>, Closeable
+{
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    private final Map<K,Addresses> addressMap = new HashMap<>();
+    private final CodecRegistry codecs;
+    private final int segmentSize;
+    private final boolean fileBacked;
+    private SegmentedBuffer storage;
+
+    /**
+     * Store the elements in direct buffers.
+     */
+    public OffHeapMultibucket(CodecRegistry codecs)
+    {
+        this(codecs, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Store the elements in direct buffers.
+     * @param segmentSize The size of every buffer, which is also the maximum size of an encoded element.
+     */
+    public OffHeapMultibucket(CodecRegistry codecs, int segmentSize)
+    {
+        this.codecs = codecs;
+        this.segmentSize = segmentSize;
+        this.fileBacked = false;
+        this.storage = new SegmentedBuffer(segmentSize, null);
+    }
+
+    /**
+     * Store the elements in a memory-mapped file, which is created or truncated.
+     * @param segmentSize The size of every mapped region, which is also the maximum size of an encoded element.
+     */
+    public OffHeapMultibucket(CodecRegistry codecs, Path file, int segmentSize) throws IOException
+    {
+        this.codecs = codecs;
+        this.segmentSize = segmentSize;
+        this.fileBacked = true;
+        this.storage = new SegmentedBuffer(segmentSize, FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+
+    @Override
+    public int size()
+    {
+        return addressMap.size();
+    }
+
+
+    /**
+     * @throws IllegalArgumentException If no codec is registered for the class type of the element.
+     */
+    @Override
+    public <V> void put(final K key, final V e)
+    {
+        long address = write(e);
+        addressMap.computeIfAbsent(key, k -> new Addresses()).add(address);
+    }
+
+
+    @Override
+    public <V> boolean putIfAbsent(final K key, final V e)
+    {
+        Addresses addresses = addressMap.get(key);
+        if(addresses != null && indexOf(addresses, e) != -1) return false;
+
+        put(key, e);
+        return true;
+    }
+
+
+    @Override
+    public <V> boolean putIfAbsentType(final K key, final V e)
+    {
+        Addresses addresses = addressMap.get(key);
+        if(addresses != null && indexOfType(addresses, codecs.idOfElement(e), 0) != -1) return false;
+
+        put(key, e);
+        return true;
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <V> boolean putInCollection(final K key, final V e, final int index)
+    {
+        Object element = get(key, index);
+        if(!(element instanceof Collection)) return false;
+
+        try{
+            ((Collection<V>) element).add(e);
+        }catch (Exception ex) {
+            return false;
+        }
+
+        replace(key, element, index);
+        return true;
+    }
+
+
+    @Override
+    public <T, V> boolean putInCollectionOfType(final K key, final V e, final T t, final int index)
+    {
+        return putInCollection(key, e, index);
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <M, V> boolean putInMap(final K key, final M mapKey, final V e, final int index)
+    {
+        Object element = get(key, index);
+        if(!(element instanceof Map)) return false;
+
+        try{
+            ((Map<M, V>) element).put(mapKey, e);
+        }catch (Exception ex) {
+            return false;
+        }
+
+        replace(key, element, index);
+        return true;
+    }
+
+
+    @Override
+    public <V> Object replace(final K key, final V e, final int index)
+    {
+        Addresses addresses = addressMap.get(key);
+        if(addresses == null || index < 0 || index >= addresses.size) return null;
+
+        Object prev = read(addresses.values[index]);
+        addresses.values[index] = write(e);
+        return prev;
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <V> V replaceSameType(final K key, final V e, final int index)
+    {
+        Addresses addresses = addressMap.get(key);
+        if(addresses == null) return null;
+
+        int generalIndex = indexOfType(addresses, codecs.idOfElement(e), index);
+        if(generalIndex == -1) return null;
+
+        V prev = (V) read(addresses.values[generalIndex]);
+        addresses.values[generalIndex] = write(e);
+        return prev;
+    }
+
+
+    @Override
+    public <V> boolean contains(final K key, final V e)
+    {
+        Addresses addresses = addressMap.get(key);
+        if(addresses == null) return false;
+
+        return indexOf(addresses, e) != -1;
+    }
+
+
+    @Override
+    public <T> boolean containsType(final K key, final Class<T> t)
+    {
+        Addresses addresses = addressMap.get(key);
+        int id = codecs.idOf(t);
+        if(addresses == null || id == -1) return false;
+
+        return indexOfType(addresses, id, 0) != -1;
+    }
+
+
+    @Override
+    public boolean containsKey(final K key)
+    {
+        return addressMap.containsKey(key);
+    }
+
+
+    @Override
+    public Set<K> keySet()
+    {
+        return addressMap.keySet();
+    }
+
+
+    @Override
+    public <V> int getFirstIndex(final K key, final V e)
+    {
+        Addresses addresses = addressMap.get(key);
+        if(addresses == null) return -1;
+
+        return indexOf(addresses, e);
+    }
+
+
+    @Override
+    public <V> List<Integer> getAllIndexes(final K key, final V e)
+    {
+        List<Integer> out = new ArrayList<>();
+        Addresses addresses = addressMap.get(key);
+        if(addresses == null || !isStorable(e)) return out;
+
+        ByteBuffer encoded = encode(e);
+        int id = codecs.idOfElement(e);
+        for (int i = 0; i < addresses.size; i++) {
+            if(matches(addresses.values[i], id, encoded)) out.add(i);
+        }
+
+        return out;
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <E> E get(final K key, final int index)
+    {
+        Addresses addresses = addressMap.get(key);
+        if(addresses == null || index < 0 || index >= addresses.size) return null;
+
+        return (E) read(addresses.values[index]);
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <M, V> V getFromMap(final K key, final M mapKey, final int index)
+    {
+        Object element = get(key, index);
+        if(!(element instanceof Map)) return null;
+
+        return ((Map<M,V>)element).get(mapKey);
+    }
+
+
+    @Override
+    public <T> List<Bucket<?>> getAllOfType(final K key, final Class<T> t)
+    {
+        List<Bucket<?>> out = new ArrayList<>();
+        Addresses addresses = addressMap.get(key);
+        int id = codecs.idOf(t);
+        if(addresses == null || id == -1) return out;
+
+        for (int i = 0; i < addresses.size; i++) {
+            if(storage.getInt(addresses.values[i]) == id) out.add(Bucket.of(read(addresses.values[i])));
+        }
+
+        return out;
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public <T> T getOfType(final K key, final Class<T> t, final int index)
+    {
+        Addresses addresses = addressMap.get(key);
+        int id = codecs.idOf(t);
+        if(addresses == null || id == -1) return null;
+
+        int generalIndex = indexOfType(addresses, id, index);
+        return generalIndex == -1 ? null : (T) read(addresses.values[generalIndex]);
+    }
+
+
+    /**
+     * @return A read-only view, that decodes every {@code Bucket} when it is accessed.
+     */
+    @Override
+    public List<Bucket<?>> getAll(final K key)
+    {
+        Addresses addresses = addressMap.get(key);
+        if(addresses == null) return Collections.emptyList();
+
+        return new AbstractList<Bucket<?>>()
+        {
+            @Override
+            public Bucket<?> get(int index)
+            {
+                if(index < 0 || index >= addresses.size) throw new IndexOutOfBoundsException("Index: "+index);
+                return Bucket.of(read(addresses.values[index]));
+            }
+
+            @Override
+            public int size()
+            {
+                return addresses.size;
+            }
+        };
+    }
+
+
+    /**
+     * Get the class type of the element of a {@code Bucket}, without decoding it.
+     * @return The class type, or {@code null} if the key doesn't exist, the index is wrong or the element is {@code null}.
+     */
+    public Class<?> getType(final K key, final int index)
+    {
+        Addresses addresses = addressMap.get(key);
+        if(addresses == null || index < 0 || index >= addresses.size) return null;
+
+        return codecs.typeOf(storage.getInt(addresses.values[index]));
+    }
+
+
+    @Override
+    public List<Bucket<?>> remove(final K key)
+    {
+        Addresses addresses = addressMap.remove(key);
+        if(addresses == null) return null;
+
+        List<Bucket<?>> out = new ArrayList<>(addresses.size);
+        for (int i = 0; i < addresses.size; i++) {
+            out.add(Bucket.of(read(addresses.values[i])));
+        }
+
+        return out;
+    }
+
+
+    @Override
+    public Object remove(final K key, final int index)
+    {
+        Addresses addresses = addressMap.get(key);
+        if(addresses == null || index < 0 || index >= addresses.size) return null;
+
+        Object prev = read(addresses.values[index]);
+        addresses.remove(index);
+        if(addresses.size == 0) addressMap.remove(key);
+
+        return prev;
+    }
+
+
+    /**
+     * Copy the encoded elements that are still in use to new buffers, releasing the space of the replaced and removed
+     * ones. Only supported when the elements are stored in direct buffers.
+     */
+    public void compact()
+    {
+        if(fileBacked) throw new UnsupportedOperationException("Compaction of a memory-mapped OffHeapMultibucket");
+
+        SegmentedBuffer compacted = new SegmentedBuffer(segmentSize, null);
+        for(Addresses addresses : addressMap.values())
+        {
+            for (int i = 0; i < addresses.size; i++) {
+                long address = addresses.values[i];
+                int length = HEADER_BYTES + storage.getInt(address + Integer.BYTES);
+                long newAddress = compacted.allocate(length);
+                compacted.slice(newAddress, length).put(storage.slice(address, length));
+                addresses.values[i] = newAddress;
+            }
+        }
+
+        storage = compacted;
+    }
+
+
+    /**
+     * @return The number of off-heap bytes that are currently allocated.
+     */
+    public long allocatedBytes()
+    {
+        return storage.capacity();
+    }
+
+
+    /**
+     * Release the storage. The multibucket cannot be used afterwards.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        addressMap.clear();
+        storage.close();
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        OffHeapMultibucket<?> that = (OffHeapMultibucket<?>) o;
+        return toHeapMap().equals(that.toHeapMap());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return toHeapMap().hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return  "OffHeapMultibucket of size: "+size();
+    }
+
+
+    private long write(final Object e)
+    {
+        int id = codecs.idOfElement(e);
+        int length = codecs.sizeOf(id, e);
+        long address = storage.allocate(HEADER_BYTES + length);
+
+        ByteBuffer buffer = storage.slice(address, HEADER_BYTES + length);
+        buffer.putInt(id);
+        buffer.putInt(length);
+        codecs.encode(id, e, buffer);
+        return address;
+    }
+
+    private Object read(final long address)
+    {
+        int id = storage.getInt(address);
+        int length = storage.getInt(address + Integer.BYTES);
+        return codecs.decode(id, storage.slice(address + HEADER_BYTES, length), length);
+    }
+
+    private boolean isStorable(final Object e)
+    {
+        return e == null || codecs.isRegistered(e.getClass());
+    }
+
+    private ByteBuffer encode(final Object e)
+    {
+        int id = codecs.idOfElement(e);
+        ByteBuffer encoded = ByteBuffer.allocate(codecs.sizeOf(id, e));
+        codecs.encode(id, e, encoded);
+        encoded.flip();
+        return encoded;
+    }
+
+    /**
+     * Compare the stored bytes with the encoded element, without decoding the stored element.
+     */
+    private boolean matches(final long address, final int id, final ByteBuffer encoded)
+    {
+        if(storage.getInt(address) != id) return false;
+
+        int length = storage.getInt(address + Integer.BYTES);
+        return length == encoded.remaining() && storage.slice(address + HEADER_BYTES, length).equals(encoded);
+    }
+
+    private int indexOf(final Addresses addresses, final Object e)
+    {
+        if(!isStorable(e)) return -1;
+
+        ByteBuffer encoded = encode(e);
+        int id = codecs.idOfElement(e);
+        for (int i = 0; i < addresses.size; i++) {
+            if(matches(addresses.values[i], id, encoded)) return i;
+        }
+
+        return -1;
+    }
+
+    private int indexOfType(final Addresses addresses, final int id, final int nth)
+    {
+        int typeCounter = 0;
+        for (int i = 0; i < addresses.size; i++) {
+            if(storage.getInt(addresses.values[i]) == id && typeCounter++ == nth) return i;
+        }
+
+        return -1;
+    }
+
+    private Map<K, List<Object>> toHeapMap()
+    {
+        Map<K, List<Object>> out = new HashMap<>();
+        for(Map.Entry<K, Addresses> entry : addressMap.entrySet())
+        {
+            List<Object> elements = new ArrayList<>();
+            for (int i = 0; i < entry.getValue().size; i++) {
+                elements.add(read(entry.getValue().values[i]));
+            }
+            out.put(entry.getKey(), elements);
+        }
+
+        return out;
+    }
+
+
+    /**
+     * The storage addresses of the elements of a single key.
+     */
+    private static final class Addresses
+    {
+        private long[] values = new long[2];
+        private int size;
+
+        private void add(final long address)
+        {
+            if(size == values.length){
+                values = Arrays.copyOf(values, size << 1);
+            }
+            values[size++] = address;
+        }
+
+        private void remove(final int index)
+        {
+            System.arraycopy(values, index + 1, values, index, size - index - 1);
+            size--;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.petrosp.structures.multibucket;
+
+import com.petrosp.structures.Pair;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a {@code HashMultibucket} from a large number of (key, element) pairs using all the threads of a
+ * {@code ForkJoinPool}, instead of calling {@code put} once for every element.
+ * <p>
+ * The pairs are partitioned by the hash of their key, so that every key belongs to exactly one partition, and the
+ * partitions are filled in parallel. Every partition first counts the elements of each of its keys, so that its map
+ * and the Buckets of every key are allocated once with their exact sizes. The partitions are finally merged into
+ * a {@code HashMultibucket} presized for all the keys. The Buckets of every key keep the order of the pairs.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ *
+ *
+ * @param <K> Type of the keys.
+ */
+public final class ParallelMultibucketBuilder<K>
+{
+    private static final int MIN_PAIRS_PER_TASK = 8192;
+
+    private final ForkJoinPool pool;
+    private final BucketIndex[] indexes;
+    private final Set<BucketIndex> indexSet;
+
+    /**
+     * Build on the common {@code ForkJoinPool}.
+     * @param indexes The indexes to keep for the Buckets of every key of the built {@code HashMultibucket}.
+     */
+    public ParallelMultibucketBuilder(BucketIndex... indexes)
+    {
+        this(ForkJoinPool.commonPool(), indexes);
+    }
+
+    /**
+     * @param indexes The indexes to keep for the Buckets of every key of the built {@code HashMultibucket}.
+     */
+    public ParallelMultibucketBuilder(ForkJoinPool pool, BucketIndex... indexes)
+    {
+        this.pool = pool;
+        this.indexes = indexes.clone();
+        this.indexSet = EnumSet.noneOf(BucketIndex.class);
+        this.indexSet.addAll(Arrays.asList(indexes));
+    }
+
+
+    /**
+     * @param pairs The (key, element) pairs. A {@code RandomAccess} list is expected, it is copied otherwise.
+     * @return A new {@code HashMultibucket} with a {@code Bucket} for every pair.
+     */
+    public HashMultibucket<K> build(final List<? extends Pair<? extends K, ?>> pairs)
+    {
+        List<? extends Pair<? extends K, ?>> input = pairs instanceof RandomAccess ? pairs : new ArrayList<>(pairs);
+
+        int partitionCount = Integer.highestOneBit(Math.max(1, pool.getParallelism() * 4 - 1)) << 1;
+        int[] partitionOf = new int[input.size()];
+        int[] partitionSizes = new int[partitionCount];
+        pool.invoke(new PartitionTask(input, partitionOf, 0, input.size(), partitionCount));
+        for(int partition : partitionOf)
+        {
+            partitionSizes[partition]++;
+        }
+
+        int[] partitionStarts = new int[partitionCount + 1];
+        for (int p = 0; p < partitionCount; p++) {
+            partitionStarts[p + 1] = partitionStarts[p] + partitionSizes[p];
+        }
+        int[] ordered = new int[input.size()];
+        int[] cursors = Arrays.copyOf(partitionStarts, partitionCount);
+        for (int i = 0; i < partitionOf.length; i++) {
+            ordered[cursors[partitionOf[i]]++] = i;
+        }
+
+        List<Map<K, BucketList>> partitions = pool.submit(() -> IntStream.range(0, partitionCount).parallel()
+                .mapToObj(p -> fillPartition(input, ordered, partitionStarts[p], partitionStarts[p + 1]))
+                .collect(Collectors.toList())).join();
+
+        int keyCount = 0;
+        for(Map<K, BucketList> partition : partitions)
+        {
+            keyCount += partition.size();
+        }
+
+        HashMultibucket<K> out = new HashMultibucket<>(capacityFor(keyCount), indexes);
+        Map<K, BucketList> bucketMap = out.bucketMap();
+        for(Map<K, BucketList> partition : partitions)
+        {
+            bucketMap.putAll(partition);
+        }
+
+        return out;
+    }
+
+
+    /**
+     * The keys of a {@code Map} are already unique, so its entries are split among the threads as they are: the
+     * Buckets of every key are created in parallel, and the keys are put once in the presized {@code HashMultibucket}.
+     * Keys without elements are skipped.
+     * @param elements The elements of every key.
+     * @return A new {@code HashMultibucket} with a {@code Bucket} for every element.
+     */
+    public HashMultibucket<K> build(final Map<? extends K, ? extends Collection<?>> elements)
+    {
+        List<Map.Entry<? extends K, ? extends Collection<?>>> entries = new ArrayList<>(elements.entrySet());
+        List<BucketList> lists = pool.submit(() -> entries.parallelStream()
+                .map(entry -> bucketsOf(entry.getValue()))
+                .collect(Collectors.toList())).join();
+
+        HashMultibucket<K> out = new HashMultibucket<>(capacityFor(entries.size()), indexes);
+        Map<K, BucketList> bucketMap = out.bucketMap();
+        for (int i = 0; i < entries.size(); i++) {
+            if(!lists.get(i).isEmpty()) bucketMap.put(entries.get(i).getKey(), lists.get(i));
+        }
+
+        return out;
+    }
+
+
+    private Map<K, BucketList> fillPartition(final List<? extends Pair<? extends K, ?>> input, final int[] ordered,
+                                             final int from, final int to)
+    {
+        Map<K, int[]> counts = new HashMap<>(capacityFor(to - from));
+        for (int i = from; i < to; i++) {
+            counts.computeIfAbsent(input.get(ordered[i]).first, k -> new int[1])[0]++;
+        }
+
+        Map<K, BucketList> partition = new HashMap<>(capacityFor(counts.size()));
+        for (int i = from; i < to; i++) {
+            Pair<? extends K, ?> pair = input.get(ordered[i]);
+            partition.computeIfAbsent(pair.first, k -> new BucketList(counts.get(k)[0], indexSet))
+                     .add(Bucket.of(pair.second));
+        }
+
+        return partition;
+    }
+
+    private BucketList bucketsOf(final Collection<?> elements)
+    {
+        BucketList list = new BucketList(elements.size(), indexSet);
+        for(Object e : elements)
+        {
+            list.add(Bucket.of(e));
+        }
+
+        return list;
+    }
+
+    private static int capacityFor(final int entries)
+    {
+        return (int) Math.min(Integer.MAX_VALUE, entries * 4L / 3 + 1);
+    }
+
+
+    /**
+     * Computes the partition of every pair, splitting the input in ranges.
+     */
+    private static final class PartitionTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final List<? extends Pair<?, ?>> input;
+        private final int[] partitionOf;
+        private final int from, to, partitionCount;
+
+        private PartitionTask(final List<? extends Pair<?, ?>> input, final int[] partitionOf,
+                              final int from, final int to, final int partitionCount)
+        {
+            this.input = input;
+            this.partitionOf = partitionOf;
+            this.from = from;
+            this.to = to;
+            this.partitionCount = partitionCount;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(to - from <= MIN_PAIRS_PER_TASK){
+                for (int i = from; i < to; i++) {
+                    partitionOf[i] = partitionOf(Objects.hashCode(input.get(i).first));
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new PartitionTask(input, partitionOf, from, middle, partitionCount),
+                      new PartitionTask(input, partitionOf, middle, to, partitionCount));
+        }
+
+        /**
+         * Uses the high bits of the mixed hash, since the low bits select the buckets of the maps of the partitions.
+         */
+        private int partitionOf(final int hash)
+        {
+            if(partitionCount == 1) return 0;
+
+            return (hash * 0x9E3779B9) >>> (Integer.SIZE - Integer.numberOfTrailingZeros(partitionCount));
+        }
+    }
+}
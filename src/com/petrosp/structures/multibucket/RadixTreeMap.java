@@ -0,0 +1,497 @@
+package com.petrosp.structures.multibucket;
+
+import java.util.*;
+
+/**
+ * A map of String keys on a compressed radix trie: every edge holds the longest run of characters that the keys
+ * below it share, so a common prefix is stored once for all of its keys, and the keys themselves are only built
+ * when they are iterated. Every node counts the keys below it, so the number of keys with a prefix is found in time
+ * proportional to the length of the prefix, and the keys with a prefix are iterated in time proportional to their
+ * number. Keys are iterated in lexicographic order. {@code null} keys are not supported.
+ * <p>
+ * The iterators are fail-fast, and they don't support removal.
+ *
+ * @param <V> Type of the values.
+ */
+final class RadixTreeMap<V> extends AbstractMap<String, V>
+{
+    private static final char[] NO_CHARS = new char[0];
+
+    private final Node<V> root = new Node<>("");
+    private int modCount;
+    private Set<Entry<String, V>> entrySet;
+
+
+    @Override
+    public int size()
+    {
+        return root.count;
+    }
+
+
+    @Override
+    public boolean containsKey(final Object key)
+    {
+        Node<V> node = find(key);
+        return node != null && node.present;
+    }
+
+
+    @Override
+    public V get(final Object key)
+    {
+        Node<V> node = find(key);
+        return node == null ? null : node.value;
+    }
+
+
+    @Override
+    public V put(final String key, final V value)
+    {
+        Node<V> existing = find(key);
+        if(existing != null && existing.present){
+            V previous = existing.value;
+            existing.value = value;
+            return previous;
+        }
+
+        modCount++;
+        Node<V> node = root;
+        int i = 0;
+        while(true)
+        {
+            node.count++;
+            if(i == key.length()){
+                node.value = value;
+                node.present = true;
+                return null;
+            }
+
+            int slot = node.slotOf(key.charAt(i));
+            if(slot < 0){
+                Node<V> leaf = new Node<>(key.substring(i));
+                leaf.value = value;
+                leaf.present = true;
+                leaf.count = 1;
+                node.insertChild(-slot - 1, leaf);
+                return null;
+            }
+
+            Node<V> child = node.children[slot];
+            int common = commonLength(child.label, key, i);
+            if(common < child.label.length()){
+                Node<V> middle = new Node<>(child.label.substring(0, common));
+                middle.count = child.count;
+                child.label = child.label.substring(common);
+                middle.insertChild(0, child);
+                node.children[slot] = middle;
+                child = middle;
+            }
+            node = child;
+            i += common;
+        }
+    }
+
+
+    @Override
+    public V remove(final Object key)
+    {
+        if(!(key instanceof String)) return null;
+
+        String k = (String) key;
+        Node<V> grandParent = null, parent = null, node = root;
+        int i = 0;
+        while(i < k.length())
+        {
+            int slot = node.slotOf(k.charAt(i));
+            if(slot < 0) return null;
+
+            Node<V> child = node.children[slot];
+            if(!k.startsWith(child.label, i)) return null;
+
+            grandParent = parent;
+            parent = node;
+            node = child;
+            i += child.label.length();
+        }
+        if(!node.present) return null;
+
+        modCount++;
+        V previous = node.value;
+        node.value = null;
+        node.present = false;
+        decrementCounts(k, 1);
+
+        if(node == root) return previous;
+        if(node.childCount == 0){
+            parent.removeChild(node);
+            if(parent != root && !parent.present && parent.childCount == 1) merge(grandParent, parent);
+        }else if(node.childCount == 1){
+            merge(parent, node);
+        }
+
+        return previous;
+    }
+
+
+    @Override
+    public void clear()
+    {
+        modCount++;
+        root.value = null;
+        root.present = false;
+        root.count = 0;
+        root.children = null;
+        root.firstChars = NO_CHARS;
+        root.childCount = 0;
+    }
+
+
+    @Override
+    public Set<Entry<String, V>> entrySet()
+    {
+        if(entrySet == null){
+            entrySet = new AbstractSet<Entry<String, V>>()
+            {
+                @Override
+                public Iterator<Entry<String, V>> iterator()
+                {
+                    return new EntryIterator(root, "");
+                }
+
+                @Override
+                public int size()
+                {
+                    return root.count;
+                }
+
+                @Override
+                public boolean contains(final Object o)
+                {
+                    if(!(o instanceof Entry)) return false;
+
+                    Entry<?, ?> entry = (Entry<?, ?>) o;
+                    Node<V> node = find(entry.getKey());
+                    return node != null && node.present && Objects.equals(node.value, entry.getValue());
+                }
+            };
+        }
+        return entrySet;
+    }
+
+
+    /**
+     * @return The number of keys that start with the prefix.
+     */
+    int countWithPrefix(final String prefix)
+    {
+        Prefix<V> match = findPrefix(prefix);
+        return match == null ? 0 : match.node.count;
+    }
+
+
+    /**
+     * @return The entries of the keys that start with the prefix, in lexicographic order.
+     */
+    Iterator<Entry<String, V>> prefixIterator(final String prefix)
+    {
+        Prefix<V> match = findPrefix(prefix);
+        if(match == null) return Collections.emptyIterator();
+
+        return new EntryIterator(match.node, match.path);
+    }
+
+
+    /**
+     * Remove all the keys that start with the prefix, in time proportional to the length of the prefix.
+     * @return The number of removed keys.
+     */
+    int removeWithPrefix(final String prefix)
+    {
+        if(prefix.isEmpty()){
+            int removed = size();
+            clear();
+            return removed;
+        }
+
+        Node<V> grandParent = null, parent = null, node = root;
+        int i = 0, parentEnd = 0;
+        while(i < prefix.length())
+        {
+            int slot = node.slotOf(prefix.charAt(i));
+            if(slot < 0) return 0;
+
+            Node<V> child = node.children[slot];
+            int common = commonLength(child.label, prefix, i);
+            if(common < child.label.length() && common < prefix.length() - i) return 0;
+
+            grandParent = parent;
+            parent = node;
+            node = child;
+            parentEnd = i;
+            i += common;
+        }
+
+        modCount++;
+        int removed = node.count;
+        decrementCounts(prefix.substring(0, parentEnd), removed);
+        parent.removeChild(node);
+        if(parent != root && !parent.present && parent.childCount == 1) merge(grandParent, parent);
+
+        return removed;
+    }
+
+
+    /**
+     * Subtract from the counts of the root and of the nodes along the given path, that must exist.
+     */
+    private void decrementCounts(final String path, final int amount)
+    {
+        Node<V> node = root;
+        node.count -= amount;
+        int i = 0;
+        while(i < path.length())
+        {
+            node = node.children[node.slotOf(path.charAt(i))];
+            node.count -= amount;
+            i += node.label.length();
+        }
+    }
+
+    /**
+     * Replace a node without a value and with a single child, by its child.
+     */
+    private static <V> void merge(final Node<V> parent, final Node<V> node)
+    {
+        Node<V> child = node.children[0];
+        child.label = node.label + child.label;
+        parent.children[parent.slotOf(node.label.charAt(0))] = child;
+    }
+
+    private Node<V> find(final Object key)
+    {
+        if(!(key instanceof String)) return null;
+
+        String k = (String) key;
+        Node<V> node = root;
+        int i = 0;
+        while(i < k.length())
+        {
+            int slot = node.slotOf(k.charAt(i));
+            if(slot < 0) return null;
+
+            node = node.children[slot];
+            if(!k.startsWith(node.label, i)) return null;
+            i += node.label.length();
+        }
+
+        return node;
+    }
+
+    /**
+     * @return The highest node whose keys all start with the prefix, with the key of that node, or {@code null}.
+     */
+    private Prefix<V> findPrefix(final String prefix)
+    {
+        Node<V> node = root;
+        int i = 0;
+        while(i < prefix.length())
+        {
+            int slot = node.slotOf(prefix.charAt(i));
+            if(slot < 0) return null;
+
+            Node<V> child = node.children[slot];
+            int common = commonLength(child.label, prefix, i);
+            if(common < child.label.length()){
+                if(common < prefix.length() - i) return null;
+                return new Prefix<>(child, prefix.substring(0, i) + child.label);
+            }
+            node = child;
+            i += common;
+        }
+
+        return new Prefix<>(node, prefix);
+    }
+
+    /**
+     * @return The length of the common prefix of the label and the key from the given offset.
+     */
+    private static int commonLength(final String label, final String key, final int offset)
+    {
+        int max = Math.min(label.length(), key.length() - offset);
+        int i = 0;
+        while(i < max && label.charAt(i) == key.charAt(offset + i))
+        {
+            i++;
+        }
+        return i;
+    }
+
+
+    private static final class Node<V>
+    {
+        private String label;
+        private V value;
+        private boolean present;
+        private int count;
+        private char[] firstChars = NO_CHARS;
+        private Node<V>[] children;
+        private int childCount;
+
+        private Node(final String label)
+        {
+            this.label = label;
+        }
+
+        /**
+         * @return The slot of the child whose label starts with the character, or (-(insertion point) - 1).
+         */
+        private int slotOf(final char c)
+        {
+            return Arrays.binarySearch(firstChars, 0, childCount, c);
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void insertChild(final int slot, final Node<V> child)
+        {
+            if(children == null || childCount == children.length){
+                int capacity = childCount == 0 ? 2 : childCount << 1;
+                firstChars = Arrays.copyOf(firstChars, capacity);
+                children = children == null ? new Node[capacity] : Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(firstChars, slot, firstChars, slot + 1, childCount - slot);
+            System.arraycopy(children, slot, children, slot + 1, childCount - slot);
+            firstChars[slot] = child.label.charAt(0);
+            children[slot] = child;
+            childCount++;
+        }
+
+        private void removeChild(final Node<V> child)
+        {
+            int slot = slotOf(child.label.charAt(0));
+            System.arraycopy(firstChars, slot + 1, firstChars, slot, childCount - slot - 1);
+            System.arraycopy(children, slot + 1, children, slot, childCount - slot - 1);
+            children[--childCount] = null;
+        }
+    }
+
+    private static final class Prefix<V>
+    {
+        private final Node<V> node;
+        private final String path;
+
+        private Prefix(final Node<V> node, final String path)
+        {
+            this.node = node;
+            this.path = path;
+        }
+    }
+
+
+    /**
+     * A depth-first walk of a subtree, that visits the children of every node in the order of their first character.
+     */
+    private final class EntryIterator implements Iterator<Entry<String, V>>
+    {
+        private final Deque<Node<V>> nodes = new ArrayDeque<>();
+        private final Deque<String> paths = new ArrayDeque<>();
+        private final int expectedModCount = modCount;
+        private Node<V> next;
+        private String nextKey;
+
+        private EntryIterator(final Node<V> start, final String path)
+        {
+            nodes.push(start);
+            paths.push(path);
+            advance();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return next != null;
+        }
+
+        @Override
+        public Entry<String, V> next()
+        {
+            if(modCount != expectedModCount) throw new ConcurrentModificationException();
+            if(next == null) throw new NoSuchElementException();
+
+            Entry<String, V> entry = new TrieEntry(nextKey, next);
+            advance();
+            return entry;
+        }
+
+        private void advance()
+        {
+            next = null;
+            while(next == null && !nodes.isEmpty())
+            {
+                Node<V> node = nodes.pop();
+                String path = paths.pop();
+                for (int i = node.childCount - 1; i >= 0; i--) {
+                    nodes.push(node.children[i]);
+                    paths.push(path + node.children[i].label);
+                }
+                if(node.present){
+                    next = node;
+                    nextKey = path;
+                }
+            }
+        }
+    }
+
+    private final class TrieEntry implements Entry<String, V>
+    {
+        private final String key;
+        private final Node<V> node;
+
+        private TrieEntry(final String key, final Node<V> node)
+        {
+            this.key = key;
+            this.node = node;
+        }
+
+        @Override
+        public String getKey()
+        {
+            return key;
+        }
+
+        @Override
+        public V getValue()
+        {
+            return node.value;
+        }
+
+        @Override
+        public V setValue(final V value)
+        {
+            V previous = node.value;
+            node.value = value;
+            return previous;
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if(!(o instanceof Entry)) return false;
+
+            Entry<?, ?> entry = (Entry<?, ?>) o;
+            return key.equals(entry.getKey()) && Objects.equals(node.value, entry.getValue());
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return key.hashCode() ^ Objects.hashCode(node.value);
+        }
+
+        @Override
+        public String toString()
+        {
+            return key + "=" + node.value;
+        }
+    }
+}
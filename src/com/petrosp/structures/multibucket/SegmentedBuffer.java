@@ -0,0 +1,112 @@
+package com.petrosp.structures.multibucket;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An append-only byte storage made of fixed size segments, either direct {@code ByteBuffer}s or regions of a
+ * memory-mapped file. Positions are {@code long} addresses, so the storage is not limited by the 2 GB maximum size
+ * of a single buffer. A single allocation never spans two segments.
+ */
+final class SegmentedBuffer implements Closeable
+{
+    private final int segmentSize;
+    private final FileChannel channel;
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private int position;
+
+    /**
+     * @param channel The file to map the segments from, or {@code null} to allocate direct buffers.
+     */
+    SegmentedBuffer(final int segmentSize, final FileChannel channel)
+    {
+        if(segmentSize <= 0) throw new IllegalArgumentException("Segment size must be positive: "+segmentSize);
+
+        this.segmentSize = segmentSize;
+        this.channel = channel;
+    }
+
+
+    /**
+     * @return The address of a new region of the given length.
+     */
+    long allocate(final int length)
+    {
+        if(length > segmentSize){
+            throw new IllegalArgumentException("Cannot allocate "+length+" bytes in segments of "+segmentSize+" bytes");
+        }
+
+        if(segments.isEmpty() || position + length > segmentSize){
+            addSegment();
+        }
+
+        long address = (long)(segments.size() - 1) * segmentSize + position;
+        position += length;
+        return address;
+    }
+
+
+    /**
+     * @return A new buffer over the region, positioned at its start and limited at its end.
+     */
+    ByteBuffer slice(final long address, final int length)
+    {
+        ByteBuffer segment = segments.get(segmentOf(address)).duplicate();
+        int offset = offsetOf(address);
+        segment.limit(offset + length);
+        segment.position(offset);
+        return segment;
+    }
+
+
+    int getInt(final long address)
+    {
+        return segments.get(segmentOf(address)).getInt(offsetOf(address));
+    }
+
+
+    /**
+     * @return The total number of bytes of the allocated segments.
+     */
+    long capacity()
+    {
+        return (long) segments.size() * segmentSize;
+    }
+
+
+    @Override
+    public void close() throws IOException
+    {
+        segments.clear();
+        if(channel != null) channel.close();
+    }
+
+
+    private void addSegment()
+    {
+        if(channel == null){
+            segments.add(ByteBuffer.allocateDirect(segmentSize));
+        }else{
+            try{
+                segments.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) segments.size() * segmentSize, segmentSize));
+            }catch (IOException e) {
+                throw new IllegalStateException("Could not map a new segment of the file", e);
+            }
+        }
+        position = 0;
+    }
+
+    private int segmentOf(final long address)
+    {
+        return (int)(address / segmentSize);
+    }
+
+    private int offsetOf(final long address)
+    {
+        return (int)(address % segmentSize);
+    }
+}
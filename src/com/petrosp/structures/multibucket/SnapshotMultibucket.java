@@ -0,0 +1,636 @@
+package com.petrosp.structures.multibucket;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A {@code Multibucket} for one writer and many readers, where readers never lock and never see a change while
+ * they read. The elements of every key are kept in an array that is never modified: every write copies the array of
+ * the key it changes, so a write costs time proportional to the Buckets of that key only.
+ * <p>
+ * Every write creates a new version. {@link #snapshot()} returns a read-only view of the version at the time it was
+ * taken, that is not affected by any later write, until it is closed. The older arrays of a key are kept only as
+ * long as an open snapshot needs them: they are dropped when the key is written again, or by {@link #prune()}.
+ * <p>
+ * The reads of this multibucket itself see the latest version, and are lock-free as well. The writes are
+ * synchronized. The returned Buckets are detached copies. Collections and Maps inside Buckets are changed in place
+ * by {@code putInCollection} and {@code putInMap}, so such changes are visible to all the snapshots.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ *
+ *
+ * @param <K> Type of the keys.
+ */
+public class SnapshotMultibucket<K> implements Multibucket<K>
+{
+    private static final Object[] EMPTY = new Object[0];
+
+    private final ConcurrentHashMap<K,Version> versions = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long,Integer> openSnapshots = new ConcurrentSkipListMap<>();
+    private final View latest = new View(Long.MAX_VALUE);
+    private volatile long version;
+    private volatile int size;
+
+
+    /**
+     * Take a point-in-time view of all the keys and their Buckets, without locking.
+     * The snapshot must be closed, so that the versions it needs can be dropped.
+     */
+    public Snapshot snapshot()
+    {
+        while(true)
+        {
+            long current = version;
+            openSnapshots.merge(current, 1, Integer::sum);
+            if(version == current) return new Snapshot(current);
+
+            release(current);
+        }
+    }
+
+
+    /**
+     * @return The current version, which is increased by every write.
+     */
+    public long version()
+    {
+        return version;
+    }
+
+
+    /**
+     * Drop the versions of all the keys that no open snapshot needs.
+     */
+    public synchronized void prune()
+    {
+        long oldest = oldestNeeded();
+        for(Map.Entry<K,Version> entry : versions.entrySet())
+        {
+            prune(entry.getKey(), entry.getValue(), oldest);
+        }
+    }
+
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+
+    @Override
+    public synchronized <V> void put(final K key, final V e)
+    {
+        Object[] current = latest.elementsOf(key);
+        Object[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = e;
+        write(key, next);
+    }
+
+
+    /**
+     * Copies the array of the key only once for all the elements.
+     */
+    @Override
+    public synchronized <V> void putAll(final K key, final Collection<V> elements)
+    {
+        if(elements.isEmpty()) return;
+
+        Object[] current = latest.elementsOf(key);
+        Object[] next = Arrays.copyOf(current, current.length + elements.size());
+        int i = current.length;
+        for(V e : elements)
+        {
+            next[i++] = e;
+        }
+        write(key, next);
+    }
+
+
+    @Override
+    public synchronized <V> boolean putIfAbsent(final K key, final V e)
+    {
+        if(latest.contains(key, e)) return false;
+
+        put(key, e);
+        return true;
+    }
+
+
+    @Override
+    public synchronized <V> boolean putIfAbsentType(final K key, final V e)
+    {
+        if(latest.containsType(key, e.getClass())) return false;
+
+        put(key, e);
+        return true;
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public synchronized <V> boolean putInCollection(final K key, final V e, final int index)
+    {
+        Object element = latest.get(key, index);
+        if(!(element instanceof Collection)) return false;
+
+        try{
+            ((Collection<V>) element).add(e);
+        }catch (Exception ex) {
+            return false;
+        }
+
+        return true;
+    }
+
+
+    @Override
+    public <T, V> boolean putInCollectionOfType(final K key, final V e, final T t, final int index)
+    {
+        return putInCollection(key, e, index);
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public synchronized <M, V> boolean putInMap(final K key, final M mapKey, final V e, final int index)
+    {
+        Object element = latest.get(key, index);
+        if(!(element instanceof Map)) return false;
+
+        try{
+            ((Map<M, V>) element).put(mapKey, e);
+        }catch (Exception ex) {
+            return false;
+        }
+
+        return true;
+    }
+
+
+    @Override
+    public synchronized <V> Object replace(final K key, final V e, final int index)
+    {
+        Object[] current = latest.elementsOf(key);
+        if(index < 0 || index >= current.length) return null;
+
+        Object[] next = current.clone();
+        next[index] = e;
+        write(key, next);
+        return current[index];
+    }
+
+
+    @Override @SuppressWarnings("unchecked")
+    public synchronized <V> V replaceSameType(final K key, final V e, final int index)
+    {
+        Object[] current = latest.elementsOf(key);
+        int generalIndex = indexOfType(current, e.getClass(), index);
+        if(generalIndex == -1) return null;
+
+        Object[] next = current.clone();
+        next[generalIndex] = e;
+        write(key, next);
+        return (V)current[generalIndex];
+    }
+
+
+    /**
+     * Applied atomically, while this multibucket is locked.
+     */
+    @Override
+    public synchronized <V> V compute(final K key, final int index, final Function<? super V, ? extends V> remappingFunction)
+    {
+        return Multibucket.super.compute(key, index, remappingFunction);
+    }
+
+
+    /**
+     * Applied atomically, while this multibucket is locked.
+     */
+    @Override
+    public synchronized <T> T computeIfAbsentOfType(final K key, final Class<T> t, final Supplier<? extends T> supplier)
+    {
+        return Multibucket.super.computeIfAbsentOfType(key, t, supplier);
+    }
+
+
+    /**
+     * Applied atomically, while this multibucket is locked.
+     */
+    @Override
+    public synchronized <V> V merge(final K key, final V e, final BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+    {
+        return Multibucket.super.merge(key, e, remappingFunction);
+    }
+
+
+    @Override
+    public <V> boolean contains(final K key, final V e)
+    {
+        return latest.contains(key, e);
+    }
+
+
+    @Override
+    public <T> boolean containsType(final K key, final Class<T> t)
+    {
+        return latest.containsType(key, t);
+    }
+
+
+    @Override
+    public boolean containsKey(final K key)
+    {
+        return latest.containsKey(key);
+    }
+
+
+    /**
+     * @return A read-only view of the latest keys.
+     */
+    @Override
+    public Set<K> keySet()
+    {
+        return latest.keySet();
+    }
+
+
+    @Override
+    public <V> int getFirstIndex(final K key, final V e)
+    {
+        return latest.getFirstIndex(key, e);
+    }
+
+
+    @Override
+    public <V> List<Integer> getAllIndexes(final K key, final V e)
+    {
+        return latest.getAllIndexes(key, e);
+    }
+
+
+    @Override
+    public <E> E get(final K key, final int index)
+    {
+        return latest.get(key, index);
+    }
+
+
+    @Override
+    public <M, V> V getFromMap(final K key, final M mapKey, final int index)
+    {
+        return latest.getFromMap(key, mapKey, index);
+    }
+
+
+    @Override
+    public <T> List<Bucket<?>> getAllOfType(final K key, final Class<T> t)
+    {
+        return latest.getAllOfType(key, t);
+    }
+
+
+    @Override
+    public <T> T getOfType(final K key, final Class<T> t, final int index)
+    {
+        return latest.getOfType(key, t, index);
+    }
+
+
+    /**
+     * @return A read-only view of the Buckets of the latest version of the key, that no later write changes.
+     */
+    @Override
+    public List<Bucket<?>> getAll(final K key)
+    {
+        return latest.getAll(key);
+    }
+
+
+    @Override
+    public synchronized List<Bucket<?>> remove(final K key)
+    {
+        Object[] current = latest.elementsOf(key);
+        if(current.length == 0) return null;
+
+        write(key, null);
+        return new ArrayList<>(new ElementRange(current, 0, current.length));
+    }
+
+
+    @Override
+    public synchronized Object remove(final K key, final int index)
+    {
+        Object[] current = latest.elementsOf(key);
+        if(index < 0 || index >= current.length) return null;
+
+        Object[] next = null;
+        if(current.length > 1){
+            next = new Object[current.length - 1];
+            System.arraycopy(current, 0, next, 0, index);
+            System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+        }
+        write(key, next);
+        return current[index];
+    }
+
+    @Override
+    public String toString()
+    {
+        return  "SnapshotMultibucket of size: "+size()+", version: "+version;
+    }
+
+
+    /**
+     * Publish the new elements of the key, or remove it if they are {@code null}. The version is increased before
+     * the open snapshots are checked, so a snapshot that is being taken concurrently either sees the new version
+     * or is seen by the pruning.
+     */
+    private void write(final K key, final Object[] elements)
+    {
+        Version previous = versions.get(key);
+        boolean existed = previous != null && previous.elements != null;
+        Version next = new Version(version + 1, elements, previous);
+        versions.put(key, next);
+        version = next.version;
+
+        if(!existed && elements != null) size++;
+        else if(existed && elements == null) size--;
+
+        prune(key, next, oldestNeeded());
+    }
+
+    private long oldestNeeded()
+    {
+        Map.Entry<Long,Integer> oldest = openSnapshots.firstEntry();
+        return oldest == null ? version : Math.min(oldest.getKey(), version);
+    }
+
+    /**
+     * Keep the versions of the key down to the newest one that is not newer than {@code oldest}, which is all that
+     * the open snapshots can read, and remove the key if that version is a removal.
+     */
+    private void prune(final K key, final Version head, final long oldest)
+    {
+        Version needed = head;
+        while(needed != null && needed.version > oldest)
+        {
+            needed = needed.previous;
+        }
+        if(needed == null) return;
+
+        needed.previous = null;
+        if(needed == head && head.elements == null) versions.remove(key, head);
+    }
+
+    private void release(final long snapshotVersion)
+    {
+        openSnapshots.computeIfPresent(snapshotVersion, (v, count) -> count == 1 ? null : count - 1);
+    }
+
+    private static int indexOfType(final Object[] elements, final Class<?> t, final int nth)
+    {
+        int typeCounter = 0;
+        for (int i = 0; i < elements.length; i++) {
+            Class<?> type = elements[i] == null ? null : elements[i].getClass();
+            if(type == t && typeCounter++ == nth) return i;
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * The elements of a key since a version, or its removal if they are {@code null}.
+     */
+    private static final class Version
+    {
+        private final long version;
+        private final Object[] elements;
+        private volatile Version previous;
+
+        private Version(final long version, final Object[] elements, final Version previous)
+        {
+            this.version = version;
+            this.elements = elements;
+            this.previous = previous;
+        }
+    }
+
+
+    /**
+     * A read-only view of the keys as of a version.
+     */
+    private class View extends AbstractReadOnlyMultibucket<K>
+    {
+        final long viewVersion;
+
+        private View(final long viewVersion)
+        {
+            this.viewVersion = viewVersion;
+        }
+
+        /**
+         * @return The elements of the key as of the version of the view, which are empty if the key didn't exist.
+         */
+        Object[] elementsOf(final Object key)
+        {
+            Version v = versions.get(key);
+            while(v != null && v.version > viewVersion)
+            {
+                v = v.previous;
+            }
+
+            return v == null || v.elements == null ? EMPTY : v.elements;
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+
+        @Override
+        public Set<K> keySet()
+        {
+            return new AbstractSet<K>()
+            {
+                @Override
+                public Iterator<K> iterator()
+                {
+                    return versions.keySet().stream().filter(k -> elementsOf(k).length > 0).iterator();
+                }
+
+                @Override
+                public int size()
+                {
+                    return View.this.size();
+                }
+
+                @Override
+                public boolean contains(final Object o)
+                {
+                    return elementsOf(o).length > 0;
+                }
+            };
+        }
+
+        @Override
+        public boolean containsKey(final K key)
+        {
+            return elementsOf(key).length > 0;
+        }
+
+        @Override
+        public <V> boolean contains(final K key, final V e)
+        {
+            return getFirstIndex(key, e) != -1;
+        }
+
+        @Override
+        public <T> boolean containsType(final K key, final Class<T> t)
+        {
+            return indexOfType(elementsOf(key), t, 0) != -1;
+        }
+
+        @Override
+        public <V> int getFirstIndex(final K key, final V e)
+        {
+            Object[] elements = elementsOf(key);
+            for (int i = 0; i < elements.length; i++) {
+                if(Objects.equals(elements[i], e)) return i;
+            }
+
+            return -1;
+        }
+
+        @Override
+        public <V> List<Integer> getAllIndexes(final K key, final V e)
+        {
+            List<Integer> out = new ArrayList<>();
+            Object[] elements = elementsOf(key);
+            for (int i = 0; i < elements.length; i++) {
+                if(Objects.equals(elements[i], e)) out.add(i);
+            }
+
+            return out;
+        }
+
+        @Override @SuppressWarnings("unchecked")
+        public <E> E get(final K key, final int index)
+        {
+            Object[] elements = elementsOf(key);
+            if(index < 0 || index >= elements.length) return null;
+
+            return (E)elements[index];
+        }
+
+        @Override @SuppressWarnings("unchecked")
+        public <M, V> V getFromMap(final K key, final M mapKey, final int index)
+        {
+            Object element = get(key, index);
+            if(!(element instanceof Map)) return null;
+
+            return ((Map<M,V>)element).get(mapKey);
+        }
+
+        @Override
+        public <T> List<Bucket<?>> getAllOfType(final K key, final Class<T> t)
+        {
+            List<Bucket<?>> out = new ArrayList<>();
+            for(Object element : elementsOf(key))
+            {
+                if(element != null && element.getClass() == t) out.add(Bucket.of(element));
+            }
+
+            return out;
+        }
+
+        @Override @SuppressWarnings("unchecked")
+        public <T> T getOfType(final K key, final Class<T> t, final int index)
+        {
+            Object[] elements = elementsOf(key);
+            int generalIndex = indexOfType(elements, t, index);
+            return generalIndex == -1 ? null : (T)elements[generalIndex];
+        }
+
+        @Override
+        public List<Bucket<?>> getAll(final K key)
+        {
+            Object[] elements = elementsOf(key);
+            return elements.length == 0 ? Collections.emptyList() : new ElementRange(elements, 0, elements.length);
+        }
+    }
+
+
+    /**
+     * A read-only, point-in-time view of a {@code SnapshotMultibucket}, that must be closed after use.
+     */
+    public final class Snapshot extends View implements AutoCloseable
+    {
+        private volatile boolean closed;
+        private int snapshotSize = -1;
+
+        private Snapshot(final long snapshotVersion)
+        {
+            super(snapshotVersion);
+        }
+
+        /**
+         * @return The version of the multibucket that this snapshot reads.
+         */
+        public long version()
+        {
+            return viewVersion;
+        }
+
+        /**
+         * Counted on the first call, by visiting all the keys.
+         */
+        @Override
+        public int size()
+        {
+            if(snapshotSize == -1){
+                int count = 0;
+                for(K key : versions.keySet())
+                {
+                    if(elementsOf(key).length > 0) count++;
+                }
+                snapshotSize = count;
+            }
+
+            return snapshotSize;
+        }
+
+        @Override
+        Object[] elementsOf(final Object key)
+        {
+            if(closed) throw new IllegalStateException("The snapshot is closed");
+
+            return super.elementsOf(key);
+        }
+
+        /**
+         * Release the versions that only this snapshot needs. Closing it again has no effect.
+         */
+        @Override
+        public synchronized void close()
+        {
+            if(closed) return;
+
+            closed = true;
+            release(viewVersion);
+        }
+
+        @Override
+        public String toString()
+        {
+            return  "Snapshot of size: "+size()+", version: "+viewVersion;
+        }
+    }
+}
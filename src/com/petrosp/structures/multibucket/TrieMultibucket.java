@@ -0,0 +1,136 @@
+package com.petrosp.structures.multibucket;
+
+import com.petrosp.structures.Pair;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A {@code Multibucket} of String keys, backed by a compressed radix trie. Keys that share a prefix, such as
+ * hierarchical keys like {@code tenant/region/device/metric}, store that prefix only once, and the keys under a
+ * prefix are counted in time proportional to the length of the prefix, and visited in time proportional to their
+ * number, without scanning the rest of the keys.
+ * <p>
+ * The keys are not kept as String objects, so {@code keySet}, {@code forEach} and the streams build every key
+ * when they visit it, and visit the keys in lexicographic order. The key set is a read-only view, and
+ * {@code null} keys are not supported.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ */
+public class TrieMultibucket extends AbstractMapMultibucket<String>
+{
+    private final RadixTreeMap<BucketList> trie;
+
+    /**
+     * @param indexes The indexes to keep for the Buckets of every key.
+     */
+    public TrieMultibucket(BucketIndex... indexes)
+    {
+        this(new RadixTreeMap<>(), indexes);
+    }
+
+    private TrieMultibucket(final RadixTreeMap<BucketList> trie, final BucketIndex... indexes)
+    {
+        super(trie, indexSet(indexes));
+        this.trie = trie;
+    }
+
+
+    /**
+     * @return A read-only view of the keys, in lexicographic order.
+     */
+    @Override
+    public Set<String> keySet()
+    {
+        return Collections.unmodifiableSet(trie.keySet());
+    }
+
+
+    /**
+     * @return The number of keys that start with the prefix.
+     */
+    public int countWithPrefix(final String prefix)
+    {
+        return trie.countWithPrefix(prefix);
+    }
+
+
+    /**
+     * @return The number of Buckets of all the keys that start with the prefix.
+     */
+    public long countBucketsWithPrefix(final String prefix)
+    {
+        long count = 0;
+        Iterator<Map.Entry<String, BucketList>> entries = trie.prefixIterator(prefix);
+        while(entries.hasNext())
+        {
+            count += entries.next().getValue().size();
+        }
+        return count;
+    }
+
+
+    /**
+     * @return The keys that start with the prefix, in lexicographic order.
+     */
+    public List<String> keysWithPrefix(final String prefix)
+    {
+        List<String> out = new ArrayList<>(trie.countWithPrefix(prefix));
+        Iterator<Map.Entry<String, BucketList>> entries = trie.prefixIterator(prefix);
+        while(entries.hasNext())
+        {
+            out.add(entries.next().getKey());
+        }
+        return out;
+    }
+
+
+    /**
+     * Perform the given action for every (key, Bucket) entry of the keys that start with the prefix.
+     */
+    public void forEachWithPrefix(final String prefix, final BiConsumer<? super String, ? super Bucket<?>> action)
+    {
+        Iterator<Map.Entry<String, BucketList>> entries = trie.prefixIterator(prefix);
+        while(entries.hasNext())
+        {
+            Map.Entry<String, BucketList> entry = entries.next();
+            for(Bucket<?> b : entry.getValue())
+            {
+                action.accept(entry.getKey(), b);
+            }
+        }
+    }
+
+
+    /**
+     * @return A sequential {@code Stream} of the (key, Bucket) entries of the keys that start with the prefix.
+     */
+    public Stream<Pair<String, Bucket<?>>> streamWithPrefix(final String prefix)
+    {
+        Spliterator<Map.Entry<String, BucketList>> entries = Spliterators.spliterator(trie.prefixIterator(prefix),
+                trie.countWithPrefix(prefix), Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+        return StreamSupport.stream(new BucketSpliterator<>(entries, null, Pair::of), false);
+    }
+
+
+    /**
+     * Remove all the keys that start with the prefix together with their Buckets, in time proportional to the
+     * length of the prefix.
+     * @return The number of removed keys.
+     */
+    public int removeWithPrefix(final String prefix)
+    {
+        return trie.removeWithPrefix(prefix);
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return  "TrieMultibucket of size: "+size();
+    }
+}
@@ -0,0 +1,70 @@
+package com.petrosp.structures.multibucket;
+
+import java.nio.ByteBuffer;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Converts the elements of a specific class type to bytes and back, for the Multibuckets that store their elements
+ * outside of the Java heap or on disk. Codecs are registered by class type in a {@link CodecRegistry}.
+ * <p>
+ * Equal elements must be encoded to equal bytes, since the encoded forms may be compared directly.
+ *
+ * @author Petros Papatheodorou
+ * @author GitHub: subamanis
+ * @author petrospapa21@gmail.com
+ *
+ *
+ * @param <T> The type of the elements.
+ */
+public interface ValueCodec<T>
+{
+
+    /**
+     * @return The number of bytes that {@link #encode(Object, ByteBuffer)} will write for the given element.
+     */
+    int sizeOf(T value);
+
+
+    /**
+     * Write the element at the current position of the buffer, advancing it by exactly {@code sizeOf(value)} bytes.
+     */
+    void encode(T value, ByteBuffer buffer);
+
+
+    /**
+     * Read an element from the current position of the buffer.
+     * @param length The number of bytes that were written for the element.
+     */
+    T decode(ByteBuffer buffer, int length);
+
+
+    /**
+     * Create a codec out of its three functions.
+     */
+    static <T> ValueCodec<T> of(final ToIntFunction<T> sizeOf, final BiConsumer<T, ByteBuffer> encoder,
+                                final BiFunction<ByteBuffer, Integer, T> decoder)
+    {
+        return new ValueCodec<T>()
+        {
+            @Override
+            public int sizeOf(T value)
+            {
+                return sizeOf.applyAsInt(value);
+            }
+
+            @Override
+            public void encode(T value, ByteBuffer buffer)
+            {
+                encoder.accept(value, buffer);
+            }
+
+            @Override
+            public T decode(ByteBuffer buffer, int length)
+            {
+                return decoder.apply(buffer, length);
+            }
+        };
+    }
+}
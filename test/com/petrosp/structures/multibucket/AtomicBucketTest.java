@@ -0,0 +1,93 @@
+package com.petrosp.structures.multibucket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AtomicBucketTest
+{
+    private static final int THREADS = 8;
+    private static final int PER_THREAD = 10_000;
+
+    private static void race(IntConsumer work) throws InterruptedException
+    {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                try{
+                    start.await();
+                }catch (InterruptedException ex) {
+                    return;
+                }
+                work.accept(thread);
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for(Thread thread : threads)
+        {
+            thread.join();
+        }
+    }
+
+    @Test
+    void onlyOnePutIfEmptyWins() throws InterruptedException
+    {
+        AtomicBucket<Integer> bucket = AtomicBucket.emptyBucket();
+        AtomicInteger winners = new AtomicInteger();
+        race(thread -> {
+            if(bucket.putIfEmpty(thread) == null) winners.incrementAndGet();
+        });
+
+        assertEquals(1, winners.get());
+        assertFalse(bucket.isEmpty());
+        assertEquals(Integer.class, bucket.getType());
+    }
+
+    @Test
+    void concurrentUpdatesAreNotLost() throws InterruptedException
+    {
+        AtomicBucket<Integer> counter = AtomicBucket.of(0);
+        AtomicBucket<Set<Integer>> set = AtomicBucket.ofConcurrentSet();
+        AtomicBucket<Queue<Integer>> queue = AtomicBucket.ofConcurrentQueue();
+        AtomicBucket<ConcurrentMap<Integer, Integer>> map = AtomicBucket.ofConcurrentMap();
+        race(thread -> {
+            for (int i = 0; i < PER_THREAD; i++) {
+                counter.updateAndGet(n -> n + 1);
+                assertTrue(set.addToCollection(thread * PER_THREAD + i));
+                assertTrue(queue.addToCollection(i));
+                map.addToMap(thread * PER_THREAD + i, thread);
+            }
+        });
+
+        assertEquals(THREADS * PER_THREAD, (int) counter.get());
+        assertEquals(THREADS * PER_THREAD, set.get().size());
+        assertEquals(THREADS * PER_THREAD, queue.get().size());
+        assertEquals(THREADS * PER_THREAD, map.get().size());
+        assertEquals(3, (int) map.getFromMap(3 * PER_THREAD));
+        assertTrue(set.containedInCollection(5));
+    }
+
+    @Test
+    void compareAndSetComparesByIdentity()
+    {
+        String first = new String("a");
+        AtomicBucket<String> bucket = AtomicBucket.of(first);
+        assertFalse(bucket.compareAndSet(new String("a"), "b"));
+        assertTrue(bucket.compareAndSet(first, "b"));
+        assertEquals("b", bucket.put("c"));
+        assertFalse(bucket.addToCollection("d"));
+        assertNull(bucket.addToMap("k", "v"));
+        bucket.empty();
+        assertNull(bucket.putIfEmpty("e"));
+        assertEquals("e", bucket.putIfEmpty("f"));
+    }
+}
@@ -0,0 +1,97 @@
+package com.petrosp.structures.multibucket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilteredMultibucketTest
+{
+    @Test
+    void answersLikeTheWrappedMultibucket()
+    {
+        HashMultibucket<Integer> expected = new HashMultibucket<>();
+        BloomFilteredMultibucket<Integer> filtered = new BloomFilteredMultibucket<>(new HashMultibucket<>(), 1000, 0.01, true);
+        Random random = new Random(5);
+        for (int i = 0; i < 50_000; i++) {
+            int key = random.nextInt(2000);
+            int value = random.nextInt(5);
+            switch (random.nextInt(6)) {
+                case 0:
+                    expected.put(key, value);
+                    filtered.put(key, value);
+                    break;
+                case 1:
+                    assertEquals(expected.remove(key, 0), filtered.remove(key, 0));
+                    break;
+                case 2:
+                    assertEquals(expected.replace(key, value, 0), filtered.replace(key, value, 0));
+                    break;
+                case 3:
+                    assertEquals(expected.contains(key, value), filtered.contains(key, value));
+                    break;
+                case 4:
+                    assertEquals(expected.containsKey(key), filtered.containsKey(key));
+                    assertEquals(expected.getAll(key), filtered.getAll(key));
+                    break;
+                default:
+                    Object first = expected.get(key, 0);
+                    assertEquals(first, filtered.get(key, 0));
+                    if(i % 1000 == 0) filtered.rebuild();
+            }
+        }
+        assertEquals(expected.keySet(), filtered.keySet());
+    }
+
+    @Test
+    void collectionsChangedInPlaceAreStillFound()
+    {
+        BloomFilteredMultibucket<String> filtered = new BloomFilteredMultibucket<>(new HashMultibucket<>(), 100, 0.01, true);
+        filtered.put("a", new ArrayList<>(Collections.singletonList(1)));
+        assertTrue(filtered.putInCollection("a", 2, 0));
+        assertTrue(filtered.contains("a", Arrays.asList(1, 2)));
+        assertFalse(filtered.contains("a", Arrays.asList(1, 3)));
+    }
+
+    @Test
+    void missesAreAnsweredByTheFilter()
+    {
+        HashMultibucket<Integer> existing = new HashMultibucket<>();
+        for (int i = 0; i < 100_000; i++) {
+            existing.put(i, i);
+        }
+        BloomFilteredMultibucket<Integer> filtered = new BloomFilteredMultibucket<>(existing, 100_000, 0.01);
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(filtered.containsKey(i));
+        }
+
+        int misses = 200_000;
+        for (int i = 0; i < misses; i++) {
+            assertFalse(filtered.containsKey(1_000_000 + i));
+        }
+        double rate = (double) filtered.falsePositives() / misses;
+        assertEquals(misses, filtered.filteredLookups() + filtered.falsePositives());
+        assertTrue(rate < 0.02, "false positive rate: " + rate);
+        double estimated = filtered.estimatedFalsePositiveRate();
+        assertTrue(estimated > 0 && estimated < 0.02, "estimated false positive rate: " + estimated);
+
+        for (int i = 0; i < 50_000; i++) {
+            filtered.remove(i);
+        }
+        assertEquals(50_000, filtered.removalsSinceRebuild());
+        long filteredBefore = filtered.filteredLookups();
+        for (int i = 0; i < 50_000; i++) {
+            assertFalse(filtered.containsKey(i));
+        }
+        assertTrue(filtered.filteredLookups() - filteredBefore < 1000);
+
+        filtered.rebuild();
+        assertEquals(0, filtered.removalsSinceRebuild());
+        filteredBefore = filtered.filteredLookups();
+        for (int i = 0; i < 50_000; i++) {
+            assertFalse(filtered.containsKey(i));
+        }
+        assertTrue(filtered.filteredLookups() - filteredBefore > 48_000);
+    }
+}
@@ -0,0 +1,114 @@
+package com.petrosp.structures.multibucket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingMultibucketTest
+{
+    @Test
+    void lruEvictsLeastRecentlyUsed()
+    {
+        CachingMultibucket<String> cache = new CachingMultibucket<>(2, EvictionPolicy.LRU);
+        List<String> evicted = new ArrayList<>();
+        cache.setRemovalListener((k, buckets, cause) -> {
+            if(cause == CachingMultibucket.RemovalCause.EVICTED) evicted.add(k);
+        });
+
+        cache.put("a", 1);
+        cache.put("b", 2);
+        assertEquals(1, (int) cache.get("a", 0));
+        cache.put("c", 3);
+
+        assertEquals(2, cache.size());
+        assertFalse(cache.containsKey("b"));
+        assertEquals(1, cache.evictionCount());
+        assertEquals(1, evicted.size());
+        assertEquals("b", evicted.get(0));
+
+        assertNull(cache.get("b", 0));
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    void weigherBoundsTotalWeight()
+    {
+        CachingMultibucket<String> cache = new CachingMultibucket<>(10, (k, buckets) -> buckets.size(), EvictionPolicy.LRU);
+        for (int i = 0; i < 6; i++) {
+            cache.put("a", i);
+        }
+        for (int i = 0; i < 6; i++) {
+            cache.put("b", i);
+        }
+
+        assertEquals(6, cache.weight());
+        assertFalse(cache.containsKey("a"));
+
+        cache.remove("b", 0);
+        assertEquals(5, cache.weight());
+        cache.remove("b");
+        assertEquals(0, cache.weight());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void removalListenerSeesExplicitRemovals()
+    {
+        CachingMultibucket<String> cache = new CachingMultibucket<>(10, EvictionPolicy.W_TINY_LFU);
+        List<CachingMultibucket.RemovalCause> causes = new ArrayList<>();
+        cache.setRemovalListener((k, buckets, cause) -> causes.add(cause));
+
+        cache.put("a", 1);
+        cache.put("b", 1);
+        cache.put("b", 2);
+        cache.remove("a");
+        cache.remove("b", 0);
+        cache.remove("b", 0);
+
+        assertEquals(2, causes.size());
+        assertEquals(CachingMultibucket.RemovalCause.EXPLICIT, causes.get(1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void staysWithinMaximum()
+    {
+        for(EvictionPolicy policy : EvictionPolicy.values())
+        {
+            CachingMultibucket<Integer> cache = new CachingMultibucket<>(100, policy, BucketIndex.TYPE);
+            Random random = new Random(1);
+            for (int i = 0; i < 100_000; i++) {
+                int key = random.nextInt(1000);
+                if(cache.getAll(key).isEmpty()) cache.put(key, i);
+                assertTrue(cache.size() <= 100);
+            }
+            assertEquals(cache.size(), cache.weight());
+        }
+    }
+
+    @Test
+    void tinyLfuResistsScans()
+    {
+        double[] hitRates = new double[EvictionPolicy.values().length];
+        for(EvictionPolicy policy : EvictionPolicy.values())
+        {
+            CachingMultibucket<Integer> cache = new CachingMultibucket<>(100, policy);
+            Random random = new Random(7);
+            int scanKey = 1_000;
+            for (int i = 0; i < 200_000; i++) {
+                int key = i % 4 == 0 ? scanKey++ : random.nextInt(80);
+                if(cache.getAll(key).isEmpty()) cache.put(key, i);
+            }
+            hitRates[policy.ordinal()] = cache.hitRate();
+        }
+
+        double lru = hitRates[EvictionPolicy.LRU.ordinal()], tinyLfu = hitRates[EvictionPolicy.W_TINY_LFU.ordinal()];
+        assertTrue(tinyLfu >= lru, "LRU " + lru + ", W-TinyLFU " + tinyLfu);
+        assertTrue(tinyLfu > 0.5, "W-TinyLFU " + tinyLfu);
+    }
+}
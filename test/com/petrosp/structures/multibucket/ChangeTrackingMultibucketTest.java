@@ -0,0 +1,157 @@
+package com.petrosp.structures.multibucket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeTrackingMultibucketTest
+{
+    @Test
+    void replicaFollowsRandomChanges()
+    {
+        ChangeTrackingMultibucket<Integer> tracked = new ChangeTrackingMultibucket<>(new HashMultibucket<>(), 1 << 12);
+        HashMultibucket<Integer> replica = new HashMultibucket<>();
+        ChangeLog<Integer>.Cursor cursor = tracked.changeLog().cursor();
+
+        Random random = new Random(7);
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 200; i++) {
+                int key = random.nextInt(50);
+                switch (random.nextInt(9))
+                {
+                    case 0: tracked.put(key, random.nextInt(10)); break;
+                    case 1: tracked.put(key, "v" + random.nextInt(10)); break;
+                    case 2: tracked.putIfAbsentType(key, "s" + key); break;
+                    case 3: tracked.replace(key, random.nextInt(10), random.nextInt(3)); break;
+                    case 4: tracked.remove(key, random.nextInt(3)); break;
+                    case 5: tracked.replaceSameType(key, "r", 0); break;
+                    case 6: tracked.merge(key, 1, Integer::sum); break;
+                    case 7: tracked.compute(key, 0, v -> null); break;
+                    default: if(random.nextInt(10) == 0) tracked.remove(key);
+                }
+            }
+
+            assertTrue(cursor.applyTo(replica) > 0);
+            assertEquals(tracked.keySet(), replica.keySet());
+            for(Integer key : tracked.keySet())
+            {
+                assertEquals(tracked.getAll(key), replica.getAll(key));
+            }
+        }
+        assertEquals(0, cursor.lag());
+    }
+
+    @Test
+    void sharedCollectionsAreNotChangedTwice()
+    {
+        ChangeTrackingMultibucket<String> tracked = new ChangeTrackingMultibucket<>(new HashMultibucket<>(), 16);
+        HashMultibucket<String> replica = new HashMultibucket<>();
+        ChangeLog<String>.Cursor cursor = tracked.changeLog().cursor();
+
+        tracked.put("k", new ArrayList<>(Collections.singletonList("a")));
+        tracked.put("k", new HashMap<String, Integer>());
+        assertTrue(tracked.putInCollection("k", "b", 0));
+        assertTrue(tracked.putInCollectionOfType("k", "c", new ArrayList<String>(), 0));
+        assertTrue(tracked.putInMap("k", "m", 1, 1));
+
+        assertEquals(5, cursor.applyTo(replica, true));
+        assertEquals(Arrays.asList("a", "b", "c"), replica.get("k", 0));
+        assertEquals(Collections.singletonMap("m", 1), replica.get("k", 1));
+        assertEquals(tracked.getAll("k"), replica.getAll("k"));
+    }
+
+    @Test
+    void separateCollectionsReceiveTheChanges()
+    {
+        ChangeTrackingMultibucket<String> tracked = new ChangeTrackingMultibucket<>(new HashMultibucket<>(), 16);
+        tracked.put("k", new ArrayList<>(Collections.singletonList("a")));
+        tracked.put("k", new HashMap<String, Integer>());
+        HashMultibucket<String> replica = new HashMultibucket<>();
+        replica.put("k", new ArrayList<>(Collections.singletonList("a")));
+        replica.put("k", new HashMap<String, Integer>());
+        ChangeLog<String>.Cursor cursor = tracked.changeLog().cursor();
+
+        assertTrue(tracked.putInCollection("k", "b", 0));
+        assertTrue(tracked.putInMap("k", "m", 1, 1));
+
+        assertEquals(2, cursor.applyTo(replica));
+        assertEquals(tracked.getAll("k"), replica.getAll("k"));
+    }
+
+    @Test
+    void unsuccessfulCallsAreNotRecorded()
+    {
+        ChangeTrackingMultibucket<String> tracked = new ChangeTrackingMultibucket<>(new HashMultibucket<>(), 16);
+        ChangeLog<String>.Cursor cursor = tracked.changeLog().cursor();
+
+        tracked.put("k", 1);
+        assertFalse(tracked.putIfAbsent("k", 1));
+        assertFalse(tracked.putInCollection("k", "x", 0));
+        assertNull(tracked.remove("missing"));
+
+        List<ChangeEvent<String>> events = new ArrayList<>();
+        assertEquals(1, cursor.poll(events::add, 10));
+        assertEquals(ChangeEvent.Type.PUT, events.get(0).type());
+        assertEquals(0, events.get(0).sequence());
+        assertEquals(1, events.get(0).value());
+    }
+
+    @Test
+    void slowConsumersAreOverrun()
+    {
+        ChangeTrackingMultibucket<Integer> tracked = new ChangeTrackingMultibucket<>(new HashMultibucket<>(), 8);
+        ChangeLog<Integer>.Cursor cursor = tracked.changeLog().cursor();
+
+        for (int i = 0; i < 8; i++) {
+            tracked.put(i, i);
+        }
+        assertEquals(8, cursor.lag());
+        assertEquals(3, cursor.poll(e -> {}, 3));
+
+        for (int i = 0; i < 4; i++) {
+            tracked.put(i, i);
+        }
+        assertTrue(cursor.isOverrun());
+        assertEquals(-1, cursor.applyTo(new HashMultibucket<>()));
+
+        cursor.reset();
+        assertFalse(cursor.isOverrun());
+        tracked.remove(0);
+        assertEquals(1, cursor.lag());
+    }
+
+    @Test
+    void consumerOnAnotherThreadSeesEveryEventInOrder() throws InterruptedException
+    {
+        ChangeTrackingMultibucket<Integer> tracked = new ChangeTrackingMultibucket<>(new HashMultibucket<>(), 1 << 20);
+        ChangeLog<Integer>.Cursor cursor = tracked.changeLog().cursor();
+        int events = 500_000;
+        AtomicBoolean inOrder = new AtomicBoolean(true);
+
+        Thread consumer = new Thread(() -> {
+            long[] expected = {0};
+            while(expected[0] < events)
+            {
+                int read = cursor.poll(e -> {
+                    if(e.sequence() != expected[0] || (Integer) e.value() != (int) expected[0]) inOrder.set(false);
+                    expected[0]++;
+                }, 1024);
+                if(read == -1){
+                    inOrder.set(false);
+                    return;
+                }
+            }
+        });
+        consumer.start();
+
+        for (int i = 0; i < events; i++) {
+            tracked.put(i & 1023, i);
+        }
+        consumer.join();
+
+        assertTrue(inOrder.get());
+    }
+}
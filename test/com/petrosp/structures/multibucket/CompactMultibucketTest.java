@@ -0,0 +1,71 @@
+package com.petrosp.structures.multibucket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactMultibucketTest
+{
+    private static final int KEYS = 1_000;
+    private static final int VALUES_PER_KEY = 10;
+
+    @Test
+    void behavesLikeHashMultibucket()
+    {
+        CompactMultibucket<String> compact = new CompactMultibucket<>();
+        HashMultibucket<String> hash = new HashMultibucket<>();
+        for (Multibucket<String> mb : Arrays.<Multibucket<String>>asList(compact, hash))
+        {
+            mb.put("k", 1);
+            mb.put("k", "one");
+            mb.put("k", new ArrayList<Integer>());
+            assertTrue(mb.putIfAbsent("k", 2));
+            assertFalse(mb.putIfAbsent("k", 2));
+            assertTrue(mb.putIfAbsentType("k", 3L));
+            assertTrue(mb.putInCollection("k", 7, 2));
+            assertEquals(1, mb.replace("k", 10, 0));
+            assertEquals(2, (int) mb.replaceSameType("k", 20, 1));
+        }
+
+        assertEquals(hash.size(), compact.size());
+        for (int i = 0; i < hash.getAll("k").size(); i++) {
+            assertEquals(hash.getAll("k").get(i), compact.getAll("k").get(i));
+        }
+        assertEquals(hash.getAllOfType("k", Integer.class), compact.getAllOfType("k", Integer.class));
+        assertEquals(hash.getAllIndexes("k", 20), compact.getAllIndexes("k", 20));
+        assertEquals(Arrays.asList(7), compact.get("k", 2));
+        assertEquals(20, (int) compact.getOfType("k", Integer.class, 1));
+
+        assertEquals(10, compact.remove("k", 0));
+        assertEquals("one", compact.get("k", 0));
+        assertEquals(4, compact.remove("k").size());
+        assertFalse(compact.containsKey("k"));
+        assertTrue(compact.getAll("k").isEmpty());
+    }
+
+    @Test
+    void smallerThanHashMultibucket()
+    {
+        MultibucketStats hash = fill(new HashMultibucket<>(KEYS)).stats();
+        MultibucketStats compact = fill(new CompactMultibucket<>(KEYS)).stats();
+
+        assertEquals(hash.bucketCount(), compact.bucketCount());
+        assertTrue(compact.estimatedHeapBytes() < hash.estimatedHeapBytes(), "HashMultibucket " +
+                hash.estimatedHeapBytes() + " bytes, CompactMultibucket " + compact.estimatedHeapBytes() + " bytes");
+    }
+
+
+    private static <M extends Multibucket<Integer>> M fill(M mb)
+    {
+        for (int k = 0; k < KEYS; k++) {
+            for (int v = 0; v < VALUES_PER_KEY; v++) {
+                mb.put(k, v);
+            }
+        }
+
+        return mb;
+    }
+}
@@ -0,0 +1,196 @@
+package com.petrosp.structures.multibucket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentHashMultibucketTest
+{
+    private static final int THREADS = 8;
+    private static final int KEYS = 64;
+    private static final int OPERATIONS = 20_000;
+
+    @Test
+    void singleThreadedOperations()
+    {
+        ConcurrentHashMultibucket<String> mb = new ConcurrentHashMultibucket<>();
+        mb.put("a", 1);
+        mb.put("a", "one");
+        mb.put("a", 1);
+        assertTrue(mb.putIfAbsent("a", 2));
+        assertFalse(mb.putIfAbsent("a", 2));
+        assertFalse(mb.putIfAbsentType("a", 3));
+        assertTrue(mb.putIfAbsentType("a", 3L));
+
+        assertEquals(1, mb.size());
+        assertEquals(5, mb.getAll("a").size());
+        assertEquals("one", mb.get("a", 1));
+        assertEquals(0, mb.getFirstIndex("a", 1));
+        assertEquals(2, mb.getAllIndexes("a", 1).size());
+        assertEquals(3, mb.getAllOfType("a", Integer.class).size());
+        assertTrue(mb.containsType("a", Long.class));
+
+        assertEquals("one", mb.replace("a", "uno", 1));
+        assertEquals(2, (int) mb.replaceSameType("a", 20, 2));
+        assertEquals(20, (int) mb.get("a", 3));
+        assertNull(mb.replace("a", "x", 10));
+        assertNull(mb.get("b", 0));
+
+        assertEquals(3L, (long) mb.getOfType("a", Long.class, 0));
+        assertEquals(1, mb.remove("a", 0));
+        assertEquals("uno", mb.get("a", 0));
+        assertEquals(4, mb.remove("a").size());
+        assertFalse(mb.containsKey("a"));
+        mb.put("a", 1);
+        assertEquals(1, mb.getAll("a").size());
+    }
+
+    @Test
+    void concurrentWritersDoNotLoseBuckets() throws Exception
+    {
+        ConcurrentHashMultibucket<Integer> mb = new ConcurrentHashMultibucket<>();
+        runConcurrently(threadId -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                int key = i % KEYS;
+                mb.put(key, threadId * OPERATIONS + i);
+                mb.putIfAbsentType(key, "type-marker");
+                mb.get(key, i % 8);
+                mb.getAll(key).size();
+            }
+        });
+
+        assertEquals(KEYS, mb.size());
+        int total = 0;
+        for (Integer key : mb.keySet()) {
+            assertEquals(1, mb.getAllOfType(key, String.class).size());
+            total += mb.getAllOfType(key, Integer.class).size();
+        }
+        assertEquals(THREADS * OPERATIONS, total);
+    }
+
+    @Test
+    void readersSeeStableSnapshotsWhileTheArrayGrows() throws Exception
+    {
+        ConcurrentHashMultibucket<Integer> mb = new ConcurrentHashMultibucket<>();
+        runConcurrently(threadId -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                if(threadId == 0){
+                    mb.put(0, i);
+                    if(i % 3 == 0) mb.remove(0, 0);
+                    continue;
+                }
+
+                List<Bucket<?>> snapshot = mb.getAll(0);
+                List<Bucket<?>> copy = new ArrayList<>(snapshot);
+                for(Bucket<?> b : copy)
+                {
+                    assertNotNull(b.get());
+                }
+                assertEquals(copy, snapshot);
+            }
+        });
+
+        assertEquals(OPERATIONS - (OPERATIONS + 2) / 3, mb.getAll(0).size());
+    }
+
+    @Test
+    void concurrentPutIfAbsentKeepsValuesUnique() throws Exception
+    {
+        ConcurrentHashMultibucket<Integer> mb = new ConcurrentHashMultibucket<>();
+        runConcurrently(threadId -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                mb.putIfAbsent(i % KEYS, i % 100);
+            }
+        });
+
+        for (Integer key : mb.keySet()) {
+            for (Bucket<?> b : mb.getAll(key)) {
+                assertEquals(1, mb.getAllIndexes(key, b.get()).size());
+            }
+        }
+    }
+
+    @Test
+    void concurrentMergeAndComputeAreAtomic() throws Exception
+    {
+        ConcurrentHashMultibucket<Integer> mb = new ConcurrentHashMultibucket<>();
+        runConcurrently(threadId -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                mb.merge(i % KEYS, 1, Integer::sum);
+                mb.computeIfAbsentOfType(i % KEYS, Long.class, () -> 0L);
+                mb.<Long>compute(i % KEYS, 1, v -> v + 1);
+            }
+        });
+
+        int total = 0;
+        long computed = 0;
+        for (int key = 0; key < KEYS; key++) {
+            assertEquals(2, mb.getAll(key).size());
+            total += mb.<Integer>getOfType(key, Integer.class, 0);
+            computed += mb.<Long>getOfType(key, Long.class, 0);
+        }
+        assertEquals(THREADS * OPERATIONS, total);
+        assertEquals(THREADS * OPERATIONS, computed);
+    }
+
+    @Test
+    void matchesSynchronizedHashMultibucket() throws Exception
+    {
+        HashMultibucket<Integer> locked = new HashMultibucket<>();
+        ConcurrentHashMultibucket<Integer> concurrent = new ConcurrentHashMultibucket<>();
+
+        runConcurrently(threadId -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                int key = threadId * KEYS + i % KEYS;
+                synchronized (locked) {
+                    if((i & 3) == 0) locked.put(key, i);
+                    else locked.get(key, 0);
+                }
+            }
+        });
+        runConcurrently(threadId -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                int key = threadId * KEYS + i % KEYS;
+                if((i & 3) == 0) concurrent.put(key, i);
+                else concurrent.get(key, 0);
+            }
+        });
+
+        assertEquals(locked.size(), concurrent.size());
+        for(Integer key : locked.keySet())
+        {
+            assertEquals(locked.getAll(key), concurrent.getAll(key));
+        }
+    }
+
+
+    private interface Worker
+    {
+        void run(int threadId);
+    }
+
+    private static void runConcurrently(Worker worker) throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int threadId = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                worker.run(threadId);
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,242 @@
+package com.petrosp.structures.multibucket;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DurableMultibucketTest
+{
+    /**
+     * Lists of Strings, joined by a separator.
+     */
+    @SuppressWarnings("unchecked")
+    private static CodecRegistry codecs()
+    {
+        return CodecRegistry.withDefaults().register(ArrayList.class, ValueCodec.of(
+                list -> String.join("\n", (List<String>) list).getBytes(StandardCharsets.UTF_8).length,
+                (list, b) -> b.put(String.join("\n", (List<String>) list).getBytes(StandardCharsets.UTF_8)),
+                (b, length) -> {
+                    byte[] bytes = new byte[length];
+                    b.get(bytes);
+                    return new ArrayList<>(Arrays.asList(new String(bytes, StandardCharsets.UTF_8).split("\n")));
+                }));
+    }
+
+    @Test
+    void reopenRecoversAllChanges(@TempDir Path directory) throws IOException
+    {
+        try (DurableMultibucket<String> mb = DurableMultibucket.open(directory, codecs()))
+        {
+            mb.put("a", 1);
+            mb.put("a", "one");
+            mb.put("a", new ArrayList<>(Collections.singletonList("x")));
+            assertTrue(mb.putIfAbsent("b", 2L));
+            assertFalse(mb.putIfAbsent("b", 2L));
+            mb.replace("a", 10, 0);
+            assertTrue(mb.putInCollection("a", "y", 2));
+            mb.put("c", 3.5);
+            mb.remove("c");
+            mb.merge("b", 5L, Long::sum);
+        }
+
+        try (DurableMultibucket<String> mb = DurableMultibucket.open(directory, codecs()))
+        {
+            assertEquals(new HashSet<>(Arrays.asList("a", "b")), mb.keySet());
+            assertEquals(10, (int) mb.get("a", 0));
+            assertEquals("one", mb.get("a", 1));
+            assertEquals(Arrays.asList("x", "y"), mb.get("a", 2));
+            assertEquals(7L, (long) mb.get("b", 0));
+        }
+    }
+
+    @Test
+    void tornTailIsDiscarded(@TempDir Path directory) throws IOException
+    {
+        try (DurableMultibucket<Integer> mb = DurableMultibucket.open(directory))
+        {
+            for (int i = 0; i < 100; i++) {
+                mb.put(i, "v" + i);
+            }
+        }
+        Path log = directory.resolve("wal-0.log");
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE))
+        {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (DurableMultibucket<Integer> mb = DurableMultibucket.open(directory))
+        {
+            assertEquals(99, mb.size());
+            assertFalse(mb.containsKey(99));
+            mb.put(99, "again");
+        }
+        try (DurableMultibucket<Integer> mb = DurableMultibucket.open(directory))
+        {
+            assertEquals("again", mb.get(99, 0));
+        }
+    }
+
+    @Test
+    void tornTailBeforeAnEmptySegmentIsDiscarded(@TempDir Path directory) throws IOException
+    {
+        try (DurableMultibucket<Integer> mb = DurableMultibucket.open(directory))
+        {
+            for (int i = 0; i < 100; i++) {
+                mb.put(i, "v" + i);
+            }
+        }
+        // A crash while a compaction had just created the next segment, and the last batch of the previous one was torn.
+        Path log = directory.resolve("wal-0.log");
+        byte[] header = Arrays.copyOf(Files.readAllBytes(log), Integer.BYTES + Short.BYTES);
+        Files.write(directory.resolve("wal-1.log"), header);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE))
+        {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (DurableMultibucket<Integer> mb = DurableMultibucket.open(directory))
+        {
+            assertEquals(99, mb.size());
+            mb.put(99, "again");
+        }
+        try (DurableMultibucket<Integer> mb = DurableMultibucket.open(directory))
+        {
+            assertEquals("again", mb.get(99, 0));
+            assertEquals("v98", mb.get(98, 0));
+        }
+    }
+
+    @Test
+    void tornTailBeforeAWrittenSegmentIsAnError(@TempDir Path directory) throws IOException
+    {
+        try (DurableMultibucket<Integer> mb = DurableMultibucket.open(directory))
+        {
+            mb.put(1, "a");
+            mb.put(2, "b");
+        }
+        Path log = directory.resolve("wal-0.log");
+        Files.copy(log, directory.resolve("wal-1.log"));
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE))
+        {
+            channel.truncate(channel.size() - 3);
+        }
+
+        assertThrows(IOException.class, () -> DurableMultibucket.open(directory).close());
+    }
+
+    @Test
+    void compactionReplacesTheLogWithASnapshot(@TempDir Path directory) throws IOException
+    {
+        try (DurableMultibucket<Integer> mb = DurableMultibucket.open(directory))
+        {
+            for (int i = 0; i < 1000; i++) {
+                mb.put(i % 10, i);
+            }
+            long before = mb.logBytes();
+            mb.compact();
+            assertTrue(mb.logBytes() < before);
+            mb.put(0, "after");
+            mb.remove(1);
+        }
+
+        assertEquals(Arrays.asList("snapshot-1.mb", "wal-1.log"), files(directory));
+        try (DurableMultibucket<Integer> mb = DurableMultibucket.open(directory))
+        {
+            assertEquals(9, mb.size());
+            assertEquals(101, mb.getAll(0).size());
+            assertEquals("after", mb.get(0, 100));
+            assertEquals(990, (int) mb.get(0, 99));
+        }
+    }
+
+    @Test
+    void changesDuringCompactionAreRecoveredOnce(@TempDir Path directory) throws Exception
+    {
+        List<Object> expected;
+        try (DurableMultibucket<String> mb = DurableMultibucket.open(directory, codecs()))
+        {
+            mb.put("a", new ArrayList<>(Collections.singletonList("0")));
+            Thread writer = new Thread(() -> {
+                for (int i = 1; i <= 2000; i++) {
+                    mb.putInCollection("a", String.valueOf(i), 0);
+                }
+            });
+            writer.start();
+            while(writer.isAlive())
+            {
+                mb.compact();
+            }
+            writer.join();
+            expected = mb.get("a", 0);
+        }
+
+        try (DurableMultibucket<String> mb = DurableMultibucket.open(directory, codecs()))
+        {
+            assertEquals(2001, expected.size());
+            assertEquals(expected, mb.get("a", 0));
+        }
+    }
+
+    @Test
+    void concurrentWritersShareGroupCommits(@TempDir Path directory) throws Exception
+    {
+        int threads = 8, perThread = 500;
+        try (DurableMultibucket<Integer> mb = DurableMultibucket.open(directory))
+        {
+            List<Thread> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                writers.add(new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        mb.put(thread, i);
+                    }
+                }));
+            }
+            writers.forEach(Thread::start);
+            for(Thread writer : writers)
+            {
+                writer.join();
+            }
+        }
+
+        try (DurableMultibucket<Integer> mb = DurableMultibucket.open(directory))
+        {
+            for (int t = 0; t < threads; t++) {
+                List<Object> values = mb.getAll(t).stream().map(Bucket::get).collect(Collectors.toList());
+                assertEquals(perThread, values.size());
+                for (int i = 0; i < perThread; i++) {
+                    assertEquals(i, values.get(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    void unregisteredTypesAreRejectedBeforeTheChange(@TempDir Path directory) throws IOException
+    {
+        try (DurableMultibucket<String> mb = DurableMultibucket.open(directory))
+        {
+            assertThrows(IllegalArgumentException.class, () -> mb.put("k", new Object()));
+            assertFalse(mb.containsKey("k"));
+        }
+    }
+
+    private static List<String> files(Path directory) throws IOException
+    {
+        try (Stream<Path> files = Files.list(directory))
+        {
+            return files.map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.petrosp.structures.multibucket;
+
+import com.petrosp.threaded.scheduler.PTaskScheduler;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpiringMultibucketTest
+{
+    private long now;
+
+    @Test
+    void expiredBucketsAreRemovedOnRead()
+    {
+        ExpiringMultibucket<String> mb = new ExpiringMultibucket<>(() -> now, BucketIndex.VALUE);
+        mb.put("k", "forever");
+        mb.put("k", "short", 1, TimeUnit.SECONDS);
+        mb.put("k", "long", 10, TimeUnit.SECONDS);
+        assertEquals(3, mb.getAll("k").size());
+
+        now += TimeUnit.SECONDS.toNanos(1);
+        assertFalse(mb.contains("k", "short"));
+        assertEquals(1, mb.getFirstIndex("k", "long"));
+        assertTrue(mb.putIfAbsent("k", "short", 1, TimeUnit.SECONDS));
+        assertFalse(mb.putIfAbsent("k", "short", 1, TimeUnit.SECONDS));
+
+        now += TimeUnit.SECONDS.toNanos(10);
+        assertEquals(1, mb.getAll("k").size());
+        assertEquals("forever", mb.get("k", 0));
+    }
+
+    @Test
+    void keyIsRemovedWithItsLastBucket()
+    {
+        ExpiringMultibucket<String> mb = new ExpiringMultibucket<>(() -> now);
+        mb.put("k", 1, 5, TimeUnit.MILLISECONDS);
+        mb.put("k", 2, 5, TimeUnit.MILLISECONDS);
+
+        now += TimeUnit.MILLISECONDS.toNanos(5);
+        assertFalse(mb.containsKey("k"));
+        assertEquals(0, mb.size());
+        assertNull(mb.remove("k"));
+    }
+
+    @Test
+    void sweepOnlyVisitsExpiredBuckets()
+    {
+        ExpiringMultibucket<Integer> mb = new ExpiringMultibucket<>(() -> now);
+        for (int i = 0; i < 1000; i++) {
+            mb.put(i, "a", i < 100 ? 1 : 100, TimeUnit.SECONDS);
+            mb.put(i, "b");
+        }
+        mb.put(0, "c", 1, TimeUnit.SECONDS);
+        mb.replace(0, "d", 2);
+
+        now += TimeUnit.SECONDS.toNanos(1);
+        assertEquals(100, mb.sweep());
+        assertEquals(0, mb.sweep());
+        assertEquals(1000, mb.size());
+        assertEquals("d", mb.get(0, 1));
+
+        now += TimeUnit.SECONDS.toNanos(100);
+        assertEquals(900, mb.sweep());
+        assertEquals(1, mb.getAll(500).size());
+    }
+
+    @Test
+    void sweepPurgesAllTheExpiredBucketsOfAKey()
+    {
+        ExpiringMultibucket<String> mb = new ExpiringMultibucket<>(() -> now, BucketIndex.TYPE, BucketIndex.VALUE);
+        for (int i = 0; i < 10_000; i++) {
+            mb.put("k", i, i % 2 == 0 ? 1 : 2, TimeUnit.SECONDS);
+        }
+        mb.put("k", "forever");
+
+        now += TimeUnit.SECONDS.toNanos(1);
+        assertEquals(5_000, mb.sweep());
+        assertEquals(5_001, mb.getAll("k").size());
+        assertEquals(0, mb.getFirstIndex("k", 1));
+        assertEquals(5_000, mb.getFirstIndex("k", "forever"));
+        assertEquals(5_000, mb.queuedExpiries());
+
+        now += TimeUnit.SECONDS.toNanos(1);
+        assertEquals(5_000, mb.sweep());
+        assertEquals(0, mb.queuedExpiries());
+        assertEquals(1, mb.getAllOfType("k", String.class).size());
+    }
+
+    @Test
+    void replacedAndRemovedBucketsDontGrowTheQueue()
+    {
+        ExpiringMultibucket<Integer> mb = new ExpiringMultibucket<>(() -> now);
+        for (int i = 0; i < 100; i++) {
+            mb.put(i, "a", 1, TimeUnit.HOURS);
+        }
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 100; i++) {
+                mb.put(i, "b", 1, TimeUnit.HOURS);
+                if(round % 2 == 0) mb.remove(i, 0);
+                else mb.remove(i);
+                mb.put(i, "a", 1, TimeUnit.HOURS);
+            }
+        }
+        assertTrue(mb.queuedExpiries() <= 300, "queued: " + mb.queuedExpiries());
+        assertEquals(100, mb.size());
+
+        now += TimeUnit.HOURS.toNanos(1);
+        assertEquals(100, mb.sweep());
+        assertEquals(0, mb.queuedExpiries());
+        assertEquals(0, mb.size());
+    }
+
+    @Test
+    void sweepsOnScheduler() throws InterruptedException
+    {
+        PTaskScheduler scheduler = new PTaskScheduler();
+        ExpiringMultibucket<String> mb = new ExpiringMultibucket<>();
+        mb.put("k", 1, 10, TimeUnit.MILLISECONDS);
+        mb.startSweeping(scheduler, 1, 5);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while(mb.size() > 0 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(5);
+        }
+
+        mb.stopSweeping();
+        scheduler.terminateNow();
+        assertEquals(0, mb.size());
+    }
+}
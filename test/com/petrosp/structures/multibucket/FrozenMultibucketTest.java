@@ -0,0 +1,88 @@
+package com.petrosp.structures.multibucket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrozenMultibucketTest
+{
+    private static final int KEYS = 200_000;
+
+    @Test
+    void behavesLikeTheOriginal()
+    {
+        HashMultibucket<String> mb = new HashMultibucket<>();
+        mb.put("k", 1);
+        mb.put("k", "one");
+        mb.put("k", 1);
+        mb.put("k", new ArrayList<Integer>());
+        mb.put(null, 2);
+        mb.put("other", 3L);
+
+        FrozenMultibucket<String> frozen = mb.freeze();
+        mb.put("k", "later");
+
+        assertEquals(3, frozen.size());
+        assertEquals(new HashSet<>(mb.keySet()), new HashSet<>(frozen.keySet()));
+        assertEquals(4, frozen.getAll("k").size());
+        assertEquals(mb.getAll("k").subList(0, 4), frozen.getAll("k"));
+        assertEquals(mb.getAllIndexes("k", 1), frozen.getAllIndexes("k", 1));
+        assertEquals(mb.getAllOfType("k", Integer.class), frozen.getAllOfType("k", Integer.class));
+        assertEquals("one", frozen.getOfType("k", String.class, 0));
+        assertEquals(2, (int) frozen.get(null, 0));
+        assertTrue(frozen.containsType("other", Long.class));
+        assertTrue(frozen.contains("k", "one"));
+        assertFalse(frozen.contains("k", "later"));
+        assertFalse(frozen.containsKey("missing"));
+        assertTrue(frozen.getAll("missing").isEmpty());
+    }
+
+    @Test @SuppressWarnings("unchecked")
+    void rejectsChanges()
+    {
+        HashMultibucket<String> mb = new HashMultibucket<>();
+        mb.put("k", 1);
+        FrozenMultibucket<String> frozen = mb.freeze();
+
+        assertThrows(UnsupportedOperationException.class, () -> frozen.put("k", 2));
+        assertThrows(UnsupportedOperationException.class, () -> frozen.putAll("k", new ArrayList<>()));
+        assertThrows(UnsupportedOperationException.class, () -> frozen.replace("k", 2, 0));
+        assertThrows(UnsupportedOperationException.class, () -> frozen.remove("k"));
+        assertThrows(UnsupportedOperationException.class, () -> frozen.keySet().remove("k"));
+
+        Bucket<Object> detached = (Bucket<Object>) frozen.getAll("k").get(0);
+        detached.put(5);
+        assertEquals(1, (int) frozen.get("k", 0));
+    }
+
+    @Test
+    void lookupsMatchTheSource()
+    {
+        String[] keys = new String[KEYS];
+        HashMultibucket<String> mb = new HashMultibucket<>();
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "key" + i;
+            mb.put(keys[i], i);
+            mb.put(keys[i], keys[i]);
+        }
+        Collections.shuffle(Arrays.asList(keys), new Random(1));
+        FrozenMultibucket<String> frozen = mb.freeze();
+
+        assertEquals(lookupSum(mb, keys), lookupSum(frozen, keys));
+    }
+
+
+    private static long lookupSum(final Multibucket<String> mb, final String[] keys)
+    {
+        long sum = 0;
+        for(String key : keys)
+        {
+            sum += mb.<Integer>get(key, 0);
+            if(mb.contains(key, key)) sum++;
+        }
+        assertEquals((long) KEYS * (KEYS - 1) / 2 + KEYS, sum);
+        return sum;
+    }
+}
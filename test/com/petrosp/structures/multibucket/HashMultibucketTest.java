@@ -0,0 +1,247 @@
+package com.petrosp.structures.multibucket;
+
+import org.junit.jupiter.api.Test;
+
+import com.petrosp.structures.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashMultibucketTest
+{
+    private static HashMultibucket<String> filled(BucketIndex... indexes)
+    {
+        HashMultibucket<String> mb = new HashMultibucket<>(indexes);
+        mb.put("k", 1);
+        mb.put("k", "one");
+        mb.put("k", 2);
+        mb.put("k", new ArrayList<>(Arrays.asList(1, 2)));
+        mb.put("k", 3);
+        mb.put("k", new HashMap<String, Integer>());
+        return mb;
+    }
+
+    @Test
+    void typeOperations()
+    {
+        for (HashMultibucket<String> mb : Arrays.asList(filled(), filled(BucketIndex.TYPE)))
+        {
+            assertTrue(mb.containsType("k", Integer.class));
+            assertFalse(mb.containsType("k", Long.class));
+            assertFalse(mb.containsType("missing", Integer.class));
+
+            assertEquals(3, mb.getAllOfType("k", Integer.class).size());
+            assertEquals(2, (int) mb.getOfType("k", Integer.class, 1));
+            assertNull(mb.getOfType("k", Integer.class, 3));
+            assertEquals("one", mb.getOfType("k", String.class, 0));
+
+            assertFalse(mb.putIfAbsentType("k", 4));
+            assertTrue(mb.putIfAbsentType("k", 4L));
+            assertTrue(mb.putIfAbsentType("new", 4L));
+
+            assertEquals(3, (int) mb.replaceSameType("k", 30, 2));
+            assertEquals(30, (int) mb.get("k", 4));
+            assertNull(mb.replaceSameType("k", 30, 3));
+        }
+    }
+
+    @Test
+    void replaceAndRemoveKeepTypeIndexInSync()
+    {
+        HashMultibucket<String> plain = filled();
+        HashMultibucket<String> indexed = filled(BucketIndex.TYPE);
+        assertTrue(indexed.isIndexed(BucketIndex.TYPE));
+        assertFalse(plain.isIndexed(BucketIndex.TYPE));
+
+        for (HashMultibucket<String> mb : Arrays.asList(plain, indexed))
+        {
+            assertEquals(1, mb.replace("k", "uno", 0));
+            assertEquals(2, mb.getAllOfType("k", String.class).size());
+            assertEquals(2, (int) mb.getOfType("k", Integer.class, 0));
+
+            assertEquals("one", mb.remove("k", 1));
+            assertEquals("uno", mb.getOfType("k", String.class, 0));
+            assertEquals(3, (int) mb.getOfType("k", Integer.class, 1));
+            assertEquals(3, mb.getFirstIndex("k", 3));
+            assertNull(mb.remove("k", 10));
+        }
+        assertEquals(plain, indexed);
+
+        assertEquals(5, indexed.remove("k").size());
+        assertFalse(indexed.containsKey("k"));
+        assertNull(indexed.remove("k"));
+    }
+
+    @Test
+    void removingLastBucketRemovesKey()
+    {
+        HashMultibucket<String> mb = new HashMultibucket<>(BucketIndex.TYPE);
+        mb.put("k", 1);
+        mb.put("k", 2);
+        assertEquals(1, mb.remove("k", 0));
+        assertTrue(mb.containsKey("k"));
+        assertEquals(2, mb.remove("k", 0));
+        assertFalse(mb.containsKey("k"));
+        assertEquals(0, mb.size());
+    }
+
+    @Test
+    void valueOperations()
+    {
+        for (HashMultibucket<String> mb : Arrays.asList(filled(), filled(BucketIndex.VALUE),
+                filled(BucketIndex.TYPE, BucketIndex.VALUE)))
+        {
+            mb.put("k", 2);
+            assertTrue(mb.contains("k", 2));
+            assertFalse(mb.contains("k", 5));
+            assertEquals(2, mb.getFirstIndex("k", 2));
+            assertArrayEquals(new int[]{2, 6}, mb.getAllIndexesAsArray("k", 2));
+            assertEquals(Arrays.asList(2, 6), mb.getAllIndexes("k", 2));
+            assertEquals(0, mb.getAllIndexesAsArray("missing", 2).length);
+            assertFalse(mb.putIfAbsent("k", 2));
+            assertTrue(mb.putIfAbsent("k", 5));
+
+            assertEquals(2, mb.replace("k", 5, 2));
+            assertArrayEquals(new int[]{6}, mb.getAllIndexesAsArray("k", 2));
+            assertArrayEquals(new int[]{2, 7}, mb.getAllIndexesAsArray("k", 5));
+
+            assertEquals(1, mb.remove("k", 0));
+            assertEquals(-1, mb.getFirstIndex("k", 1));
+            assertArrayEquals(new int[]{1, 6}, mb.getAllIndexesAsArray("k", 5));
+
+            assertTrue(mb.putInCollection("k", 3, 2));
+            assertEquals(2, mb.getFirstIndex("k", Arrays.asList(1, 2, 3)));
+            assertEquals(-1, mb.getFirstIndex("k", Arrays.asList(1, 2)));
+        }
+    }
+
+    @Test
+    void changingACollectionKeepsItsEqualSiblingIndexed()
+    {
+        for (HashMultibucket<String> mb : Arrays.asList(new HashMultibucket<String>(),
+                new HashMultibucket<String>(BucketIndex.VALUE)))
+        {
+            mb.put("k", new ArrayList<>(Arrays.asList(1)));
+            mb.put("k", new ArrayList<>(Arrays.asList(1)));
+            assertTrue(mb.putInCollection("k", 2, 0));
+
+            assertTrue(mb.contains("k", Arrays.asList(1)));
+            assertEquals(1, mb.getFirstIndex("k", Arrays.asList(1)));
+            assertEquals(0, mb.getFirstIndex("k", Arrays.asList(1, 2)));
+
+            assertTrue(mb.putInCollection("k", 2, 1));
+            assertArrayEquals(new int[]{0, 1}, mb.getAllIndexesAsArray("k", Arrays.asList(1, 2)));
+            assertFalse(mb.contains("k", Arrays.asList(1)));
+        }
+    }
+
+    @Test
+    void failedWritesLeaveNoEmptyKey()
+    {
+        List<Multibucket<String>> multibuckets = Arrays.asList(new HashMultibucket<>(),
+                new ConcurrentHashMultibucket<>(), new CompactMultibucket<>(),
+                new CachingMultibucket<>(10, EvictionPolicy.LRU), new ExpiringMultibucket<>());
+        for (Multibucket<String> mb : multibuckets)
+        {
+            assertThrows(NullPointerException.class, () -> mb.putIfAbsentType("x", null));
+            assertThrows(IllegalStateException.class, () -> mb.computeIfAbsentOfType("x", String.class, () -> {
+                throw new IllegalStateException();
+            }));
+            assertFalse(mb.containsKey("x"), mb.getClass().getSimpleName());
+            assertEquals(0, mb.size());
+        }
+        for (Multibucket<String> mb : multibuckets.subList(0, 2))
+        {
+            assertThrows(NullPointerException.class, () -> mb.merge("x", null, (a, b) -> a));
+            assertFalse(mb.containsKey("x"));
+        }
+
+        IntMultibucket primitive = new IntMultibucket();
+        assertThrows(NullPointerException.class, () -> primitive.putIfAbsentType(1, null));
+        assertFalse(primitive.containsKey(1));
+        assertEquals(0, primitive.size());
+    }
+
+    @Test
+    void streams()
+    {
+        List<Multibucket<Integer>> multibuckets = Arrays.asList(new HashMultibucket<>(),
+                new HashMultibucket<>(BucketIndex.TYPE), new ConcurrentHashMultibucket<>());
+        for (Multibucket<Integer> mb : multibuckets)
+        {
+            for (int i = 0; i < 10_000; i++) {
+                mb.put(i % 100, i);
+                if(i % 3 == 0) mb.put(i % 100, "s" + i);
+            }
+
+            assertEquals(13_334, mb.stream().count());
+            assertEquals(13_334, mb.parallelStream().count());
+            assertEquals(49_995_000L, mb.parallelStream()
+                    .filter(p -> p.second.getType() == Integer.class)
+                    .mapToLong(p -> (Integer) p.second.get()).sum());
+            assertEquals(49_995_000L, mb.streamOfType(Integer.class).mapToLong(p -> p.second).sum());
+            assertEquals(3_334, mb.streamOfType(String.class).count());
+            assertEquals(0, mb.streamOfType(Long.class).count());
+            assertTrue(mb.streamOfType(String.class).allMatch(p -> Integer.parseInt(p.second.substring(1)) % 100 == p.first));
+
+            AtomicInteger visited = new AtomicInteger();
+            mb.forEach((k, b) -> visited.incrementAndGet());
+            assertEquals(13_334, visited.get());
+
+            List<Pair<Integer, String>> ofKey = mb.streamOfType(String.class)
+                    .filter(p -> p.first == 0).collect(Collectors.toList());
+            assertEquals(34, ofKey.size());
+        }
+    }
+
+    @Test
+    void collectionsAndMaps()
+    {
+        HashMultibucket<String> mb = filled(BucketIndex.TYPE);
+        assertTrue(mb.putInCollection("k", 3, 3));
+        assertFalse(mb.putInCollection("k", 3, 0));
+        assertTrue(mb.putInMap("k", "a", 1, 5));
+        assertEquals(1, (int) mb.getFromMap("k", "a", 5));
+        assertNull(mb.getFromMap("k", "a", 0));
+        assertEquals(Arrays.asList(1, 2, 3), mb.get("k", 3));
+    }
+
+    @Test
+    void computeAndMerge()
+    {
+        for(HashMultibucket<String> mb : Arrays.asList(new HashMultibucket<String>(),
+                new HashMultibucket<String>(BucketIndex.TYPE, BucketIndex.VALUE)))
+        {
+            mb.put("k", 1);
+            mb.put("k", "one");
+
+            assertEquals(2, (int) mb.<Integer>compute("k", 0, v -> v + 1));
+            assertTrue(mb.contains("k", 2));
+            assertFalse(mb.contains("k", 1));
+            assertNull(mb.compute("k", 5, v -> v));
+            assertNull(mb.compute("missing", 0, v -> v));
+
+            assertEquals(7, (int) mb.merge("k", 5, Integer::sum));
+            assertEquals(3L, (long) mb.merge("k", 3L, Long::sum));
+            assertEquals(3, mb.getAll("k").size());
+            assertEquals(1, mb.getAllIndexes("k", 7).size());
+
+            assertEquals("one", mb.computeIfAbsentOfType("k", String.class, () -> "two"));
+            assertEquals(new ArrayList<Integer>(), mb.computeIfAbsentOfType("list", ArrayList.class, ArrayList::new));
+            assertTrue(mb.containsType("list", ArrayList.class));
+            assertNull(mb.computeIfAbsentOfType("none", String.class, () -> null));
+            assertFalse(mb.containsKey("none"));
+
+            assertNull(mb.<String>compute("k", 1, v -> null));
+            assertNull(mb.merge("k", 1, (a, b) -> null));
+            assertNull(mb.<Long>compute("k", 0, v -> null));
+            assertFalse(mb.containsKey("k"));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.petrosp.structures.multibucket;
+
+import com.petrosp.structures.Pair;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexedMultibucketTest
+{
+    static final class Order
+    {
+        final int id;
+        final String status;
+
+        Order(int id, String status)
+        {
+            this.id = id;
+            this.status = status;
+        }
+    }
+
+    @Test
+    void lookupsFollowPutsReplacesAndRemoves()
+    {
+        IndexedMultibucket<String> mb = new IndexedMultibucket<>();
+        mb.addIndex("status", Order.class, o -> o.status);
+
+        mb.put("alice", "note");
+        mb.put("alice", new Order(1, "OPEN"));
+        mb.put("alice", new Order(2, "CLOSED"));
+        mb.put("alice", new Order(3, "OPEN"));
+        mb.put("bob", new Order(4, "OPEN"));
+
+        assertEquals(set("alice:1", "alice:3", "bob:0"), set(mb.lookup("status", "OPEN")));
+        assertEquals(new HashSet<>(Arrays.asList("alice", "bob")), mb.lookupKeys("status", "OPEN"));
+
+        mb.remove("alice", 0);
+        assertEquals(set("alice:0", "alice:2", "bob:0"), set(mb.lookup("status", "OPEN")));
+        assertEquals(set("alice:1"), set(mb.lookup("status", "CLOSED")));
+
+        mb.replace("alice", new Order(1, "CLOSED"), 0);
+        assertEquals(set("alice:0", "alice:1"), set(mb.lookup("status", "CLOSED")));
+
+        mb.remove("bob");
+        assertEquals(set("alice:2"), set(mb.lookup("status", "OPEN")));
+
+        mb.remove("alice");
+        assertTrue(mb.lookup("status", "OPEN").isEmpty());
+        assertTrue(mb.lookupKeys("status", "CLOSED").isEmpty());
+    }
+
+    @Test
+    void indexesAreBuiltOverExistingElements()
+    {
+        IndexedMultibucket<Integer> mb = new IndexedMultibucket<>(BucketIndex.TYPE);
+        for (int i = 0; i < 100; i++) {
+            mb.put(i % 10, new Order(i, i % 3 == 0 ? "OPEN" : "CLOSED"));
+            mb.put(i % 10, i);
+        }
+        mb.addIndex("status", Order.class, o -> o.status);
+        mb.addIndex("parity", Integer.class, i -> i % 2);
+
+        assertEquals(34, mb.lookup("status", "OPEN").size());
+        assertEquals(50, mb.lookup("parity", 0).size());
+        for(Pair<Integer,Integer> match : mb.lookup("status", "OPEN"))
+        {
+            Order order = mb.get(match.first, match.second);
+            assertEquals("OPEN", order.status);
+        }
+
+        assertTrue(mb.removeIndex("parity"));
+        assertFalse(mb.removeIndex("parity"));
+        assertEquals(Collections.singleton("status"), mb.indexNames());
+        assertThrows(IllegalArgumentException.class, () -> mb.lookup("parity", 0));
+        assertThrows(IllegalArgumentException.class, () -> mb.addIndex("status", Order.class, o -> o.id));
+    }
+
+    @Test
+    void changesInPlaceAndComputeAreIndexed()
+    {
+        IndexedMultibucket<String> mb = new IndexedMultibucket<>();
+        mb.addIndex("size", ArrayList.class, list -> list.size());
+
+        mb.put("k", new ArrayList<>());
+        mb.putInCollection("k", "a", 0);
+        assertEquals(set("k:0"), set(mb.lookup("size", 1)));
+        assertTrue(mb.lookup("size", 0).isEmpty());
+
+        mb.compute("k", 0, list -> null);
+        assertFalse(mb.containsKey("k"));
+        assertTrue(mb.lookup("size", 1).isEmpty());
+        assertThrows(UnsupportedOperationException.class, () -> mb.keySet().clear());
+    }
+
+    @SafeVarargs
+    private static <T> Set<T> set(T... values)
+    {
+        Set<T> out = new HashSet<>();
+        for(T value : values)
+        {
+            out.add(value);
+        }
+        return out;
+    }
+
+    private static Set<String> set(List<Pair<String,Integer>> matches)
+    {
+        Set<String> out = new HashSet<>();
+        for(Pair<String,Integer> match : matches)
+        {
+            out.add(match.first + ":" + match.second);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,125 @@
+package com.petrosp.structures.multibucket;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstrumentedMultibucketTest
+{
+    @Test
+    void statsDescribeTheShape()
+    {
+        HashMultibucket<String> mb = new HashMultibucket<>();
+        mb.put("a", "x");
+        mb.putLong("a", 1L);
+        mb.put("a", 2L);
+        for (int i = 0; i < 5; i++) {
+            mb.put("b", i);
+        }
+        mb.put("c", new ArrayList<>(Arrays.asList("p", "q")));
+
+        MultibucketStats stats = mb.stats();
+        assertEquals(3, stats.keyCount());
+        assertEquals(9, stats.bucketCount());
+        assertArrayEquals(new long[]{1, 1, 1}, stats.bucketsPerKeyHistogram());
+        assertEquals(Arrays.asList(Integer.class, Long.class, String.class, ArrayList.class),
+                new ArrayList<>(stats.typeCounts().keySet()));
+        assertEquals(2L, (long) stats.typeCounts().get(Long.class));
+        assertEquals(0, stats.getHits());
+
+        long small = stats.estimatedHeapBytes();
+        for (int i = 0; i < 1000; i++) {
+            mb.put("key" + i, "value" + i);
+        }
+        long large = mb.stats().estimatedHeapBytes();
+        assertTrue(small > 0 && large > small + 1000 * 100, small + " " + large);
+    }
+
+    @Test
+    void lookupsAreCounted() throws InterruptedException
+    {
+        InstrumentedMultibucket<Integer> mb = new InstrumentedMultibucket<>(new ConcurrentHashMultibucket<>());
+        for (int i = 0; i < 100; i++) {
+            mb.put(i, "v" + i);
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 200; i++) {
+                    mb.get(i, 0);
+                    mb.containsKey(i);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for(Thread thread : threads)
+        {
+            thread.join();
+        }
+        assertTrue(mb.getAll(-1).isEmpty());
+
+        MultibucketStats stats = mb.stats();
+        assertEquals(400, stats.getHits());
+        assertEquals(401, stats.getMisses());
+        assertEquals(400, stats.containsHits());
+        assertEquals(400, stats.containsMisses());
+        assertEquals(100, stats.keyCount());
+
+        mb.resetCounters();
+        assertEquals(0, mb.stats().getMisses());
+    }
+
+    @Test
+    void cachingStatsDontChangeTheEvictionOrder()
+    {
+        CachingMultibucket<Integer> cache = new CachingMultibucket<>(2, EvictionPolicy.LRU);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        assertEquals("a", cache.get(1, 0));
+        assertEquals(2, cache.stats().keyCount());
+        cache.put(3, "c");
+        assertTrue(cache.containsKey(1));
+        assertFalse(cache.containsKey(2));
+    }
+
+    @Test
+    void publishedOverJmx() throws Exception
+    {
+        InstrumentedMultibucket<String> mb = new InstrumentedMultibucket<>(new HashMultibucket<>());
+        mb.put("a", 1);
+        mb.put("a", "one");
+        mb.contains("a", 1);
+        mb.get("b", 0);
+
+        ObjectName name = mb.registerMBean("test");
+        try{
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(1L, server.getAttribute(name, "KeyCount"));
+            assertEquals(2L, server.getAttribute(name, "BucketCount"));
+            assertEquals(1L, server.getAttribute(name, "ContainsHits"));
+            assertEquals(1L, server.getAttribute(name, "GetMisses"));
+            assertNotNull(server.getAttribute(name, "TypeCounts"));
+            assertThrows(IllegalStateException.class, () -> mb.registerMBean("again"));
+
+            mb.put("b", 2);
+            mb.get("c", 0);
+            assertEquals(1L, server.getAttribute(name, "KeyCount"));
+            assertEquals(2L, server.getAttribute(name, "GetMisses"));
+            assertEquals(2, mb.refreshStats().keyCount());
+            assertEquals(2L, server.getAttribute(name, "KeyCount"));
+            assertEquals(3L, server.getAttribute(name, "BucketCount"));
+
+            server.invoke(name, "resetCounters", null, null);
+            assertEquals(0L, server.getAttribute(name, "GetMisses"));
+        }finally {
+            mb.unregisterMBean();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
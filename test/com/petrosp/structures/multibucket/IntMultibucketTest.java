@@ -0,0 +1,63 @@
+package com.petrosp.structures.multibucket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntMultibucketTest
+{
+    @Test
+    void operations()
+    {
+        IntMultibucket mb = new IntMultibucket(4, BucketIndex.TYPE);
+        mb.put(7, 1);
+        mb.put(7, "one");
+        assertTrue(mb.putIfAbsent(7, 2));
+        assertFalse(mb.putIfAbsent(7, 2));
+        assertFalse(mb.putIfAbsentType(7, 3));
+        mb.put(-7, new ArrayList<Integer>());
+
+        assertEquals(2, mb.size());
+        assertEquals("one", mb.get(7, 1));
+        assertEquals(2, (int) mb.getOfType(7, Integer.class, 1));
+        assertArrayEquals(new int[]{2}, mb.getAllIndexes(7, 2));
+        assertTrue(mb.putInCollection(-7, 5, 0));
+        assertEquals(Collections.singletonList(5), mb.get(-7, 0));
+        assertEquals(1, mb.replace(7, 10, 0));
+        assertEquals(10, (int) mb.replaceSameType(7, 11, 0));
+        assertTrue(mb.getAll(8).isEmpty());
+        assertNull(mb.get(8, 0));
+
+        assertEquals(11, mb.remove(7, 0));
+        assertEquals(2, mb.getAll(7).size());
+        assertEquals(1, mb.remove(-7).size());
+        assertFalse(mb.containsKey(-7));
+        assertArrayEquals(new int[]{7}, mb.keys());
+    }
+
+    @Test
+    void incrementalResizeKeepsAllKeys()
+    {
+        IntMultibucket mb = new IntMultibucket();
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            int key = random.nextInt(50_000) - 25_000;
+            if(random.nextInt(4) == 0){
+                mb.remove(key);
+                expected.remove(key);
+            }else{
+                mb.put(key, i);
+                expected.merge(key, 1, Integer::sum);
+            }
+        }
+
+        assertEquals(expected.size(), mb.size());
+        assertEquals(expected.size(), mb.keys().length);
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals((int) entry.getValue(), mb.getAll(entry.getKey()).size());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.petrosp.structures.multibucket;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultibucketFileFormatTest
+{
+    @Test
+    void saveAndLoad(@TempDir Path directory) throws IOException
+    {
+        HashMultibucket<String> mb = new HashMultibucket<>();
+        for (int i = 0; i < 5000; i++) {
+            String key = "key" + (i % 2500);
+            mb.put(key, i);
+            mb.put(key, "value" + i);
+            mb.put(key, (long) i);
+        }
+        mb.put("nulls", null);
+        mb.put("bytes", true);
+
+        Path file = directory.resolve("mb.bin");
+        mb.save(file);
+        HashMultibucket<String> loaded = HashMultibucket.load(file, CodecRegistry.withDefaults(), BucketIndex.TYPE);
+
+        assertEquals(mb, loaded);
+        assertEquals(2502, loaded.size());
+        assertTrue(loaded.isIndexed(BucketIndex.TYPE));
+        assertEquals(Long.class, loaded.getAll("key7").get(2).getType());
+        assertEquals(2507L, (long) loaded.getOfType("key7", Long.class, 1));
+        assertNull(loaded.get("nulls", 0));
+    }
+
+    @Test
+    void emptyMultibucket(@TempDir Path directory) throws IOException
+    {
+        Path file = directory.resolve("empty.bin");
+        new HashMultibucket<Integer>().save(file);
+        assertEquals(0, HashMultibucket.load(file).size());
+    }
+
+    @Test
+    void rejectsInvalidFiles(@TempDir Path directory) throws IOException
+    {
+        Path file = directory.resolve("invalid.bin");
+        Files.write(file, new byte[64]);
+        assertThrows(IOException.class, () -> HashMultibucket.load(file));
+
+        HashMultibucket<Integer> mb = new HashMultibucket<>();
+        mb.put(1, 1.5f);
+        mb.save(file);
+        assertThrows(IOException.class, () -> HashMultibucket.load(file, new CodecRegistry()));
+    }
+}
@@ -0,0 +1,119 @@
+package com.petrosp.structures.multibucket;
+
+import com.petrosp.structures.Pair;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultibucketQueryTest
+{
+    private static <K> void fill(Multibucket<K> mb, java.util.function.IntFunction<K> keyOf, int keys)
+    {
+        for (int i = 0; i < keys; i++) {
+            mb.put(keyOf.apply(i), "s" + i);
+            mb.put(keyOf.apply(i), i);
+            mb.put(keyOf.apply(i), i * 10);
+        }
+    }
+
+    @Test
+    void resultsMatchASequentialScanInKeyOrder()
+    {
+        NavigableMultibucket<Integer> mb = new NavigableMultibucket<>(BucketIndex.TYPE);
+        fill(mb, i -> i, 20_000);
+
+        List<Pair<Integer,Integer>> matches = mb.select(Integer.class).where(i -> i % 7 == 0).toList();
+        List<Pair<Integer,Integer>> expected = mb.streamOfType(Integer.class)
+                .filter(p -> p.second % 7 == 0).collect(Collectors.toList());
+
+        assertEquals(expected.size(), matches.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).first, matches.get(i).first);
+            assertEquals(expected.get(i).second, matches.get(i).second);
+        }
+        assertEquals(expected.size(), mb.select(Integer.class).where(i -> i % 7 == 0).sequential().count());
+    }
+
+    @Test
+    void groupsByKeyAndCombinesPredicates()
+    {
+        HashMultibucket<String> mb = new HashMultibucket<>();
+        fill(mb, i -> "k" + (i % 5), 50);
+
+        Map<String, List<Integer>> groups = mb.select(Integer.class).where(i -> i < 100).where(i -> i % 2 == 0).groupByKey();
+
+        assertEquals(new HashSet<>(Arrays.asList("k0", "k1", "k2", "k3", "k4")), groups.keySet());
+        assertEquals(Arrays.asList(0, 0, 10, 20, 30, 40, 50), sorted(groups.get("k0")));
+        assertEquals(Arrays.asList(2, 12, 20, 22, 32, 42, 70), sorted(groups.get("k2")));
+        assertEquals(50, mb.select(String.class).count());
+        assertTrue(mb.select(Long.class).toList().isEmpty());
+    }
+
+    @Test
+    void limitStopsEarly()
+    {
+        HashMultibucket<Integer> mb = new HashMultibucket<>(BucketIndex.TYPE);
+        fill(mb, i -> i, 100_000);
+
+        AtomicInteger tested = new AtomicInteger();
+        List<Pair<Integer,String>> matches = mb.select(String.class).where(s -> tested.incrementAndGet() > 0).limit(10)
+                .on(new ForkJoinPool(4)).toList();
+
+        assertEquals(10, matches.size());
+        for(Pair<Integer,String> match : matches)
+        {
+            assertEquals("s" + match.first, match.second);
+        }
+        assertTrue(tested.get() < 50_000, "tested " + tested.get());
+        assertEquals(0, mb.select(String.class).limit(0).count());
+        assertThrows(IllegalArgumentException.class, () -> mb.select(String.class).limit(-1));
+    }
+
+    @Test
+    void otherImplementationsAreQueried()
+    {
+        List<Multibucket<Integer>> multibuckets = Arrays.asList(new ConcurrentHashMultibucket<>(),
+                new CompactMultibucket<>(), new CachingMultibucket<>(10_000, EvictionPolicy.LRU, BucketIndex.TYPE));
+        for(Multibucket<Integer> mb : multibuckets)
+        {
+            fill(mb, i -> i, 3_000);
+            assertEquals(330, mb.select(Integer.class).where(i -> i % 100 == 0).count(), mb.toString());
+        }
+
+        CachingMultibucket<Integer> cache = (CachingMultibucket<Integer>) multibuckets.get(2);
+        assertEquals(0, cache.hitCount() + cache.missCount());
+    }
+
+    @Test
+    void queryCountsLikeAScan()
+    {
+        HashMultibucket<Integer> mb = new HashMultibucket<>(BucketIndex.TYPE);
+        for (int i = 0; i < 100_000; i++) {
+            mb.put(i, "s" + i);
+            if(i % 4 == 0) mb.put(i, (long) i);
+        }
+
+        long scanMatches = 0;
+        for(Integer key : mb.keySet())
+        {
+            for(Bucket<?> b : mb.getAllOfType(key, Long.class))
+            {
+                if((Long) b.get() % 3 == 0) scanMatches++;
+            }
+        }
+
+        assertEquals(scanMatches, mb.select(Long.class).where(l -> l % 3 == 0).count());
+    }
+
+    private static List<Integer> sorted(List<Integer> values)
+    {
+        List<Integer> out = new ArrayList<>(values);
+        Collections.sort(out);
+        return out;
+    }
+}
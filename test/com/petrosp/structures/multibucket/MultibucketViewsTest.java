@@ -0,0 +1,93 @@
+package com.petrosp.structures.multibucket;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultibucketViewsTest
+{
+    private static final int ITERATIONS = 1_000_000;
+
+    @Test
+    void viewsMatchCopies()
+    {
+        for (HashMultibucket<String> mb : Arrays.asList(new HashMultibucket<String>(),
+                new HashMultibucket<String>(BucketIndex.TYPE, BucketIndex.VALUE)))
+        {
+            mb.put("k", 1);
+            mb.put("k", "one");
+            mb.put("k", 2);
+            mb.put("k", 1);
+
+            assertEquals(mb.getAllOfType("k", Integer.class), mb.viewAllOfType("k", Integer.class));
+            assertEquals(mb.getAllOfType("k", Integer.class), new ArrayList<>(mb.viewAllOfType("k", Integer.class)));
+            assertEquals(mb.getAllIndexes("k", 1), toList(mb.indexCursor("k", 1)));
+            assertTrue(mb.viewAllOfType("missing", Integer.class).isEmpty());
+            assertFalse(mb.indexCursor("missing", 1).hasNext());
+
+            List<Bucket<?>> view = mb.viewAllOfType("k", String.class);
+            mb.put("k", "two");
+            assertEquals(2, view.size());
+            assertEquals("two", view.get(1).get());
+            assertThrows(UnsupportedOperationException.class, () -> view.add(Bucket.of("three")));
+        }
+    }
+
+    @Test
+    void missingKeysShareEmptyResults()
+    {
+        HashMultibucket<String> mb = new HashMultibucket<>();
+        mb.put("k", 1);
+
+        assertSame(mb.getAll("missing"), mb.getAll("other"));
+        assertSame(mb.getAll("k"), mb.getAll("k"));
+        assertThrows(UnsupportedOperationException.class, () -> mb.getAll("missing").add(Bucket.of(1)));
+    }
+
+    @Test
+    void allocationPerCall()
+    {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if(!threads.isThreadAllocatedMemorySupported()) return;
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        HashMultibucket<String> mb = new HashMultibucket<>(BucketIndex.TYPE, BucketIndex.VALUE);
+        for (int i = 0; i < 32; i++) {
+            mb.put("k", i % 4 == 0 ? "s" + i : i % 8);
+        }
+
+        long[] sink = new long[1];
+        long copies = allocatedPerCall(threads, () -> sink[0] += mb.getAllOfType("k", String.class).size());
+        long views = allocatedPerCall(threads, () -> sink[0] += mb.viewAllOfType("k", String.class).size());
+        long indexes = allocatedPerCall(threads, () -> sink[0] += mb.getAllIndexes("k", 1).size());
+        long cursor = allocatedPerCall(threads, () -> {
+            PrimitiveIterator.OfInt it = mb.indexCursor("k", 1);
+            while(it.hasNext()) sink[0] += it.nextInt();
+        });
+
+        assertTrue(sink[0] > 0);
+        assertTrue(views < copies, "viewAllOfType " + views + ", getAllOfType " + copies);
+        assertTrue(cursor < indexes, "indexCursor " + cursor + ", getAllIndexes " + indexes);
+    }
+
+
+    private static long allocatedPerCall(final com.sun.management.ThreadMXBean threads, final Runnable call)
+    {
+        for (int i = 0; i < ITERATIONS; i++) call.run();
+
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < ITERATIONS; i++) call.run();
+        return (threads.getThreadAllocatedBytes(id) - before) / ITERATIONS;
+    }
+
+    private static List<Integer> toList(final PrimitiveIterator.OfInt it)
+    {
+        List<Integer> out = new ArrayList<>();
+        it.forEachRemaining((java.util.function.IntConsumer) out::add);
+        return out;
+    }
+}
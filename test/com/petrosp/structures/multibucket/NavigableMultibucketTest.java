@@ -0,0 +1,72 @@
+package com.petrosp.structures.multibucket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NavigableMultibucketTest
+{
+    @Test
+    void keysAreOrdered()
+    {
+        NavigableMultibucket<Integer> mb = new NavigableMultibucket<>(BucketIndex.TYPE);
+        for(int key : new int[]{50, 10, 40, 20, 30})
+        {
+            mb.put(key, "v" + key);
+            mb.put(key, key);
+        }
+
+        assertEquals(Arrays.asList(10, 20, 30, 40, 50), mb.keySet().stream().collect(Collectors.toList()));
+        assertEquals(10, (int) mb.firstKey());
+        assertEquals(50, (int) mb.lastKey());
+        assertEquals(20, (int) mb.floorKey(25));
+        assertEquals(30, (int) mb.ceilingKey(25));
+        assertEquals(20, (int) mb.lowerKey(30));
+        assertEquals(40, (int) mb.higherKey(30));
+        assertNull(mb.higherKey(50));
+        assertEquals(Arrays.asList("v10", "v20", "v30", "v40", "v50"),
+                mb.streamOfType(String.class).map(p -> p.second).collect(Collectors.toList()));
+    }
+
+    @Test
+    void rangeViewsAreBackedByTheMultibucket()
+    {
+        NavigableMultibucket<String> mb = new NavigableMultibucket<>();
+        for(String key : new String[]{"a", "b", "c", "d", "e"})
+        {
+            mb.put(key, key.toUpperCase());
+        }
+
+        NavigableMultibucket<String> range = mb.subMultibucket("b", "d");
+        assertEquals(2, range.size());
+        assertEquals("B", range.get("b", 0));
+        assertNull(range.get("d", 0));
+
+        range.put("bb", "BB");
+        assertTrue(mb.containsKey("bb"));
+        mb.remove("c");
+        assertEquals(Arrays.asList("b", "bb"), range.keySet().stream().collect(Collectors.toList()));
+        assertThrows(IllegalArgumentException.class, () -> range.put("z", 1));
+
+        assertEquals(Arrays.asList("a", "b"), mb.headMultibucket("bb", false).keySet().stream().collect(Collectors.toList()));
+        assertEquals("e", mb.tailMultibucket("d", false).firstKey());
+        assertEquals("e", mb.descendingMultibucket().firstKey());
+    }
+
+    @Test
+    void customComparator()
+    {
+        NavigableMultibucket<String> mb = new NavigableMultibucket<>(Comparator.comparing(String::length));
+        mb.put("ccc", 3);
+        mb.put("a", 1);
+        mb.put("bb", 2);
+        mb.put("zz", 4);
+
+        assertEquals(Arrays.asList("a", "bb", "ccc"), mb.keySet().stream().collect(Collectors.toList()));
+        assertEquals(2, mb.getAll("bb").size());
+    }
+}
@@ -0,0 +1,85 @@
+package com.petrosp.structures.multibucket;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapMultibucketTest
+{
+    @Test
+    void operations() throws Exception
+    {
+        try (OffHeapMultibucket<String> mb = new OffHeapMultibucket<>(CodecRegistry.withDefaults(), 64))
+        {
+            mb.put("k", 1);
+            mb.put("k", "one");
+            mb.put("k", 2L);
+            mb.put("k", null);
+            assertTrue(mb.putIfAbsent("k", 2));
+            assertFalse(mb.putIfAbsent("k", "one"));
+            assertFalse(mb.putIfAbsentType("k", 5));
+            assertTrue(mb.putIfAbsentType("k", 5.0));
+
+            assertEquals(6, mb.getAll("k").size());
+            assertEquals(Long.class, mb.getAll("k").get(2).getType());
+            assertEquals(Long.class, mb.getType("k", 2));
+            assertNull(mb.getType("k", 3));
+            assertEquals("one", mb.get("k", 1));
+            assertTrue(mb.contains("k", 2L));
+            assertFalse(mb.contains("k", 2.0));
+            assertEquals(3, mb.getFirstIndex("k", null));
+            assertEquals(2, mb.getAllOfType("k", Integer.class).size());
+            assertTrue(mb.containsType("k", Double.class));
+            assertFalse(mb.containsType("k", ArrayList.class));
+
+            assertEquals("one", mb.replace("k", "uno", 1));
+            assertEquals(2, (int) mb.replaceSameType("k", 20, 1));
+            assertEquals(20, (int) mb.getOfType("k", Integer.class, 1));
+            assertEquals(1, mb.remove("k", 0));
+            assertEquals("uno", mb.get("k", 0));
+
+            assertThrows(IllegalArgumentException.class, () -> mb.put("k", new ArrayList<>()));
+        }
+    }
+
+    @Test
+    void spansSegmentsAndCompacts() throws Exception
+    {
+        try (OffHeapMultibucket<Integer> mb = new OffHeapMultibucket<>(CodecRegistry.withDefaults(), 256))
+        {
+            for (int i = 0; i < 1000; i++) {
+                mb.put(i % 10, "value-" + i);
+            }
+            for (int i = 0; i < 1000; i++) {
+                mb.replace(i % 10, "v" + i, i / 10);
+            }
+            long before = mb.allocatedBytes();
+            mb.compact();
+
+            assertTrue(mb.allocatedBytes() < before);
+            assertEquals(100, mb.getAll(3).size());
+            assertEquals("v993", mb.get(3, 99));
+            assertEquals(99, mb.getFirstIndex(3, "v993"));
+        }
+    }
+
+    @Test
+    void memoryMappedFile(@TempDir Path directory) throws Exception
+    {
+        try (OffHeapMultibucket<String> mb = new OffHeapMultibucket<>(CodecRegistry.withDefaults(),
+                directory.resolve("multibucket.bin"), 4096))
+        {
+            for (int i = 0; i < 2000; i++) {
+                mb.put("key" + (i % 7), i);
+            }
+            assertEquals(7, mb.size());
+            assertEquals(286, mb.getAll("key0").size());
+            assertEquals(1995, (int) mb.get("key0", 285));
+            assertThrows(UnsupportedOperationException.class, mb::compact);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.petrosp.structures.multibucket;
+
+import com.petrosp.structures.Pair;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelMultibucketBuilderTest
+{
+    @Test
+    void buildsSameMultibucketAsSequentialPuts()
+    {
+        List<Pair<Integer, Object>> pairs = new ArrayList<>();
+        HashMultibucket<Integer> expected = new HashMultibucket<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            int key = random.nextInt(5_000);
+            Object value = (i & 1) == 0 ? i : "v" + i;
+            pairs.add(Pair.of(key, value));
+            expected.put(key, value);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        HashMultibucket<Integer> built;
+        try{
+            built = new ParallelMultibucketBuilder<Integer>(pool, BucketIndex.TYPE).build(pairs);
+        }finally {
+            pool.shutdown();
+        }
+
+        assertEquals(expected, built);
+        assertTrue(built.isIndexed(BucketIndex.TYPE));
+        int key = pairs.get(0).first;
+        assertEquals(expected.getAllOfType(key, String.class), built.getAllOfType(key, String.class));
+    }
+
+    @Test
+    void buildFromMapAndPutAll()
+    {
+        Map<String, List<Integer>> elements = new HashMap<>();
+        elements.put("a", Arrays.asList(1, 2, 3));
+        elements.put("b", Collections.singletonList(4));
+        elements.put("c", Collections.emptyList());
+
+        HashMultibucket<String> built = new ParallelMultibucketBuilder<String>().build(elements);
+        HashMultibucket<String> hash = new HashMultibucket<>();
+        hash.putAll(new HashMap<>(elements));
+        ConcurrentHashMultibucket<String> concurrent = new ConcurrentHashMultibucket<>();
+        concurrent.putAll("a", elements.get("a"));
+        concurrent.putAll("a", elements.get("b"));
+
+        assertEquals(hash, built);
+        assertEquals(2, built.size());
+        assertFalse(hash.containsKey("c"));
+        assertEquals(3, (int) hash.get("a", 2));
+        assertEquals(4, concurrent.getAll("a").size());
+        assertEquals(4, (int) concurrent.get("a", 3));
+    }
+}
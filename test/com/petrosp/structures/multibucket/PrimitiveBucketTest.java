@@ -0,0 +1,131 @@
+package com.petrosp.structures.multibucket;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrimitiveBucketTest
+{
+    @Test
+    void bucketsHoldUnboxedValues()
+    {
+        LongBucket counter = LongBucket.of(5L);
+        assertEquals(7L, counter.addAndGet(2));
+        assertEquals(7L, counter.set(1));
+        assertEquals(Long.valueOf(1), counter.get());
+        assertEquals(Long.class, counter.getType());
+        assertFalse(counter.containsCollection());
+
+        counter.empty();
+        assertTrue(counter.isEmpty());
+        assertNull(counter.get());
+        assertNull(counter.putIfEmpty(3L));
+        assertEquals(3L, (long) counter.putIfEmpty(4L));
+
+        IntBucket i = IntBucket.of(1);
+        assertEquals(1, (int) i.put(null));
+        assertTrue(i.isEmpty());
+        assertEquals(IntBucket.of(0), new IntBucket(0));
+        assertEquals(DoubleBucket.of(0.5), DoubleBucket.of(0.25 * 2));
+        assertEquals("2.5", DoubleBucket.of(2.5).toString());
+    }
+
+    @Test
+    void multibucketsTreatThemAsTheirPrimitiveType()
+    {
+        List<Multibucket<String>> multibuckets = Arrays.asList(new HashMultibucket<>(), new HashMultibucket<>(BucketIndex.TYPE, BucketIndex.VALUE));
+        for(Multibucket<String> mb : multibuckets)
+        {
+            mb.put("a", "text");
+            mb.putLong("a", 10L);
+            mb.putInt("a", 3);
+            mb.putDouble("a", 0.5);
+            mb.put("a", 20L);
+
+            assertTrue(mb.containsType("a", long.class));
+            assertTrue(mb.containsType("a", Long.class));
+            assertEquals(2, mb.getAllOfType("a", long.class).size());
+            assertEquals(2, mb.viewAllOfType("a", long.class).size());
+            assertTrue(mb.contains("a", 10L));
+            assertEquals(3, (int) mb.getOfType("a", int.class, 0));
+            assertEquals(20L, mb.getAsLong("a", 1, -1));
+            assertEquals(-1, mb.getAsLong("a", 2, -1));
+            assertEquals(0.5, mb.getAsDouble("a", 0, 0), 0);
+            assertEquals(-1, mb.getAsInt("b", 0, -1));
+
+            assertEquals(15L, mb.addAndGet("a", 5L));
+            assertEquals(5, mb.addAndGet("a", 2));
+            assertEquals(1.0, mb.addAndGet("a", 0.5), 0);
+            assertEquals(1L, mb.addAndGet("b", 1L));
+            assertTrue(mb.contains("a", 15L));
+            assertFalse(mb.contains("a", 10L));
+            assertEquals(1, mb.getFirstIndex("a", 15L));
+
+            assertFalse(mb.putIfAbsentType("a", 1L));
+            assertEquals(15L, (long) mb.replaceSameType("a", 30L, 0));
+            assertEquals(32L, mb.addAndGet("a", 2L));
+        }
+    }
+
+    @Test
+    void bucketsAreEqualToTheBoxedBucket(@TempDir Path dir) throws Exception
+    {
+        assertEquals(Bucket.of(1), IntBucket.of(1));
+        assertEquals(IntBucket.of(1), Bucket.of(1));
+        assertEquals(Bucket.of(1).hashCode(), IntBucket.of(1).hashCode());
+        assertEquals(Bucket.of(2L).hashCode(), LongBucket.of(2L).hashCode());
+        assertEquals(Bucket.of(0.5), DoubleBucket.of(0.5));
+        assertNotEquals(Bucket.of(1L), IntBucket.of(1));
+        IntBucket emptied = IntBucket.of(1);
+        emptied.put(null);
+        assertEquals(Bucket.emptyBucket(), emptied);
+
+        HashMultibucket<String> primitive = new HashMultibucket<>();
+        primitive.putInt("x", 1);
+        primitive.putLong("x", 2L);
+        HashMultibucket<String> boxed = new HashMultibucket<>();
+        boxed.put("x", 1);
+        boxed.put("x", 2L);
+        assertEquals(boxed.getAll("x"), primitive.getAll("x"));
+
+        Path file = dir.resolve("primitive.mb");
+        primitive.save(file);
+        assertEquals(primitive.getAll("x"), HashMultibucket.<String>load(file).getAll("x"));
+    }
+
+
+    @Test
+    void mergeKeepsTheUnboxedBucket()
+    {
+        HashMultibucket<String> mb = new HashMultibucket<>();
+        mb.putInt("a", 1);
+        mb.merge("a", 2, Integer::sum);
+        assertTrue(mb.getAll("a").get(0) instanceof IntBucket);
+        assertEquals(3, mb.getAsInt("a", 0, 0));
+    }
+
+
+    @Test
+    void countersAgreeWithMerge()
+    {
+        int keys = 100, rounds = 100;
+        HashMultibucket<Integer> boxed = new HashMultibucket<>();
+        HashMultibucket<Integer> primitive = new HashMultibucket<>();
+        for (int r = 0; r < rounds; r++) {
+            for (int k = 0; k < keys; k++) {
+                boxed.merge(k, 1_000L, Long::sum);
+                primitive.addAndGet(k, 1_000L);
+            }
+        }
+
+        for (int k = 0; k < keys; k++) {
+            assertEquals(1_000L * rounds, (long) boxed.get(k, 0));
+            assertEquals(1_000L * rounds, primitive.getAsLong(k, 0, 0));
+        }
+    }
+}
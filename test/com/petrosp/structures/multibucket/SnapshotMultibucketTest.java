@@ -0,0 +1,111 @@
+package com.petrosp.structures.multibucket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotMultibucketTest
+{
+    private static final int KEYS = 64;
+    private static final int READERS = 4;
+
+    @Test
+    void snapshotIsIsolatedFromLaterWrites()
+    {
+        SnapshotMultibucket<String> mb = new SnapshotMultibucket<>();
+        mb.put("a", 1);
+        mb.put("a", "one");
+        mb.put("b", 2);
+
+        try (SnapshotMultibucket<String>.Snapshot snapshot = mb.snapshot())
+        {
+            mb.put("a", 3);
+            mb.replace("a", 10, 0);
+            mb.remove("b");
+            mb.put("c", 4);
+
+            assertEquals(2, snapshot.size());
+            assertEquals(2, snapshot.getAll("a").size());
+            assertEquals(1, (int) snapshot.get("a", 0));
+            assertTrue(snapshot.containsKey("b"));
+            assertFalse(snapshot.containsKey("c"));
+            assertEquals("one", snapshot.getOfType("a", String.class, 0));
+            assertThrows(UnsupportedOperationException.class, () -> snapshot.put("a", 5));
+
+            assertEquals(2, mb.size());
+            assertEquals(10, (int) mb.get("a", 0));
+            assertEquals(3, mb.getAll("a").size());
+            assertFalse(mb.containsKey("b"));
+        }
+    }
+
+    @Test
+    void closedSnapshotsReleaseOldVersions()
+    {
+        SnapshotMultibucket<String> mb = new SnapshotMultibucket<>();
+        mb.put("a", 1);
+        SnapshotMultibucket<String>.Snapshot snapshot = mb.snapshot();
+        mb.remove("a");
+        assertTrue(snapshot.containsKey("a"));
+
+        snapshot.close();
+        snapshot.close();
+        assertThrows(IllegalStateException.class, () -> snapshot.get("a", 0));
+
+        mb.prune();
+        assertEquals(0, mb.size());
+        assertTrue(mb.keySet().isEmpty());
+        assertNull(mb.remove("a"));
+    }
+
+    @Test
+    void readersSeeConsistentVersionsWhileWriting() throws Exception
+    {
+        SnapshotMultibucket<Integer> mb = new SnapshotMultibucket<>();
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(READERS + 1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        futures.add(executor.submit(() -> {
+            for (int i = 0; i < 200_000; i++) {
+                int key = i % KEYS;
+                if(mb.getAll(key).size() == 16) mb.remove(key);
+                mb.put(key, mb.getAll(key).size());
+            }
+            done.set(true);
+        }));
+        for (int r = 0; r < READERS; r++) {
+            futures.add(executor.submit(() -> {
+                while(!done.get())
+                {
+                    try (SnapshotMultibucket<Integer>.Snapshot snapshot = mb.snapshot())
+                    {
+                        for (int key = 0; key < KEYS; key++) {
+                            List<Bucket<?>> buckets = snapshot.getAll(key);
+                            for (int i = 0; i < buckets.size(); i++) {
+                                assertEquals(i, buckets.get(i).get());
+                            }
+                            assertEquals(buckets, snapshot.getAll(key));
+                        }
+                    }
+                    for(Bucket<?> bucket : mb.getAll(0))
+                    {
+                        assertNotNull(bucket.get());
+                    }
+                }
+            }));
+        }
+
+        for(Future<?> future : futures)
+        {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertEquals(KEYS, mb.size());
+    }
+}
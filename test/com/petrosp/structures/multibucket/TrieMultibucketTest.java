@@ -0,0 +1,114 @@
+package com.petrosp.structures.multibucket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrieMultibucketTest
+{
+    private static final String[] TENANTS = {"acme", "ac", "globex", "initech"};
+    private static final String[] REGIONS = {"eu", "eu-west", "us"};
+
+    private static String randomKey(Random random)
+    {
+        return TENANTS[random.nextInt(TENANTS.length)] + "/" + REGIONS[random.nextInt(REGIONS.length)]
+                + "/device" + random.nextInt(20) + (random.nextBoolean() ? "/cpu" : "");
+    }
+
+    @Test
+    void behavesLikeASortedMap()
+    {
+        RadixTreeMap<Integer> trie = new RadixTreeMap<>();
+        TreeMap<String, Integer> expected = new TreeMap<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 20_000; i++) {
+            String key = randomKey(random);
+            if(random.nextInt(3) == 0){
+                assertEquals(expected.remove(key), trie.remove(key));
+            }else{
+                assertEquals(expected.put(key, i), trie.put(key, i));
+            }
+        }
+
+        assertEquals(expected.size(), trie.size());
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(trie.entrySet()));
+        assertEquals(expected, trie);
+        for(String prefix : new String[]{"", "a", "ac", "acme/", "acme/eu", "acme/eu-", "globex/us/device1", "x", "acme/eu/device3/cpu/"})
+        {
+            SortedMap<String, Integer> range = prefix.isEmpty() ? expected : expected.subMap(prefix, prefix + Character.MAX_VALUE);
+            assertEquals(range.size(), trie.countWithPrefix(prefix), prefix);
+
+            List<String> keys = new ArrayList<>();
+            trie.prefixIterator(prefix).forEachRemaining(e -> keys.add(e.getKey()));
+            assertEquals(new ArrayList<>(range.keySet()), keys, prefix);
+        }
+
+        for(String prefix : new String[]{"acme/eu", "ac", "globex/us/device1", "zzz"})
+        {
+            SortedMap<String, Integer> range = expected.subMap(prefix, prefix + Character.MAX_VALUE);
+            int removed = range.size();
+            range.clear();
+            assertEquals(removed, trie.removeWithPrefix(prefix), prefix);
+            assertEquals(expected, trie);
+        }
+        trie.put("", 1);
+        assertEquals(1, (int) trie.get(""));
+        assertEquals(expected.size() + 1, trie.removeWithPrefix(""));
+        assertTrue(trie.isEmpty());
+    }
+
+    @Test
+    void prefixQueries()
+    {
+        TrieMultibucket mb = new TrieMultibucket(BucketIndex.TYPE);
+        mb.put("tenant/eu/device1/cpu", 1);
+        mb.put("tenant/eu/device1/cpu", "hot");
+        mb.put("tenant/eu/device2/cpu", 2);
+        mb.put("tenant/eu-west/device3/cpu", 3);
+        mb.put("tenant/us/device4/cpu", 4);
+
+        assertEquals(2, mb.countWithPrefix("tenant/eu/"));
+        assertEquals(3, mb.countWithPrefix("tenant/eu"));
+        assertEquals(3, mb.countBucketsWithPrefix("tenant/eu/"));
+        assertEquals(Arrays.asList("tenant/eu/device1/cpu", "tenant/eu/device2/cpu"), mb.keysWithPrefix("tenant/eu/"));
+        assertEquals(Arrays.asList(1, "hot", 2), mb.streamWithPrefix("tenant/eu/").map(p -> p.second.get()).collect(Collectors.toList()));
+
+        List<String> visited = new ArrayList<>();
+        mb.forEachWithPrefix("tenant/u", (k, b) -> visited.add(k + "=" + b.get()));
+        assertEquals(Collections.singletonList("tenant/us/device4/cpu=4"), visited);
+        assertEquals(Arrays.asList("tenant/eu-west/device3/cpu", "tenant/eu/device1/cpu", "tenant/eu/device2/cpu",
+                "tenant/us/device4/cpu"), new ArrayList<>(mb.keySet()));
+
+        assertEquals("hot", mb.getOfType("tenant/eu/device1/cpu", String.class, 0));
+        assertEquals(1, mb.remove("tenant/eu/device1/cpu", 0));
+        assertEquals(3, mb.removeWithPrefix("tenant/eu"));
+        assertEquals(1, mb.size());
+        assertThrows(UnsupportedOperationException.class, () -> mb.keySet().clear());
+    }
+
+    @Test
+    void prefixLookupsMatchAKeySetScan()
+    {
+        TrieMultibucket trie = new TrieMultibucket();
+        HashMultibucket<String> hash = new HashMultibucket<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 20_000; i++) {
+            String key = "tenant" + random.nextInt(100) + "/region" + random.nextInt(10) + "/device" + i + "/metric";
+            trie.put(key, i);
+            hash.put(key, i);
+        }
+
+        int scanned = 0;
+        for(String key : hash.keySet())
+        {
+            if(key.startsWith("tenant42/region3/")) scanned++;
+        }
+
+        assertTrue(scanned > 0);
+        assertEquals(scanned, trie.keysWithPrefix("tenant42/region3/").size());
+        assertEquals(scanned, trie.countWithPrefix("tenant42/region3/"));
+    }
+}